@@ -0,0 +1,206 @@
+package im.abe.pdfdata.bench;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.PropertyOptions;
+import im.abe.pdfdata.*;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic tables, workbooks, XMP packets and PDFs of any size, for measuring how the reader scales.
+ * Output is fully determined by the seed, so runs with the same seed measure the same data.
+ * <p>
+ * Columns cycle through integers, decimals, booleans, free text (with the occasional comma, quote and line break)
+ * and ISO dates, so every kind of typed column gets exercised.
+ */
+public class CorpusGenerator {
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta",
+            "iota", "kappa", "lambda", "mu", "\"quoted\"", "comma, separated", "line\nbreak"};
+    private static final LocalDate EPOCH = LocalDate.of(2000, 1, 1);
+
+    static {
+        // SCHEMA_OD is a constant, so using it doesn't initialize DataStorage, which is what registers it.
+        try {
+            XMPMetaFactory.getSchemaRegistry().registerNamespace(DataStorage.SCHEMA_OD, "od");
+        } catch (XMPException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long seed;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public List<String> header(int columns) {
+        List<String> header = new ArrayList<>(columns);
+        for (int i = 0; i < columns; i++)
+            header.add("column " + i);
+        return header;
+    }
+
+    public Table table(String name, int rows, int columns) {
+        Random random = new Random(seed);
+        ColumnStore.Builder cells = new ColumnStore.Builder();
+        List<String> row = new ArrayList<>(columns);
+        for (int i = 0; i < rows; i++) {
+            row.clear();
+            for (int j = 0; j < columns; j++)
+                row.add(cell(random, i, j));
+            cells.addRow(row);
+        }
+        return new Table(name, header(columns), cells.build());
+    }
+
+    public String csv(int rows, int columns) {
+        return table("generated", rows, columns).to(Format.CSV);
+    }
+
+    /**
+     * @param rows    The number of rows, not counting the header. At most 65535 for the old format.
+     * @param columns The number of columns.
+     * @param xlsx    True for an Office Open XML workbook, false for the old binary format.
+     * @return The workbook file's contents.
+     * @throws IOException If writing fails.
+     */
+    public byte[] workbook(int rows, int columns, boolean xlsx) throws IOException {
+        Table table = table("generated", rows, columns);
+        Workbook wb = xlsx ? new SXSSFWorkbook() : new HSSFWorkbook();
+        Sheet sheet = wb.createSheet("generated");
+
+        Row header = sheet.createRow(0);
+        for (int j = 0; j < columns; j++)
+            header.createCell(j).setCellValue(table.getColumnNames().get(j));
+
+        for (int i = 0; i < rows; i++) {
+            Row row = sheet.createRow(i + 1);
+            for (int j = 0; j < columns; j++) {
+                String value = table.get(i, j);
+                if (j % 5 < 2)
+                    row.createCell(j).setCellValue(Double.parseDouble(value));
+                else
+                    row.createCell(j).setCellValue(value);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        if (wb instanceof SXSSFWorkbook)
+            ((SXSSFWorkbook) wb).dispose();
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds metadata holding a table in the layout {@link XMPDataStorage} reads.
+     *
+     * @param rows    The number of rows.
+     * @param columns The number of columns.
+     * @return The metadata.
+     * @throws XMPException If building the metadata fails.
+     */
+    public XMPMeta xmp(int rows, int columns) throws XMPException {
+        Table table = table("generated", rows, columns);
+        XMPMeta xmp = XMPMetaFactory.create();
+        PropertyOptions ordered = new PropertyOptions().setArrayOrdered(true);
+
+        xmp.setPropertyInteger(DataStorage.SCHEMA_OD, XMPDataStorage.PROP_ROW_SIZE, columns);
+        for (String column : table.getColumnNames())
+            xmp.appendArrayItem(DataStorage.SCHEMA_OD, "Columns", ordered, column, null);
+        for (List<String> row : table.getCells()) {
+            for (String cell : row)
+                xmp.appendArrayItem(DataStorage.SCHEMA_OD, XMPDataStorage.PROP_DATA, ordered, cell, null);
+        }
+        return xmp;
+    }
+
+    public byte[] xmpPacket(int rows, int columns) throws XMPException {
+        return XMPMetaFactory.serializeToBuffer(xmp(rows, columns), null);
+    }
+
+    /**
+     * Builds a one-page PDF holding the same table twice: as a CSV attachment and as XMP data.
+     *
+     * @param rows    The number of rows.
+     * @param columns The number of columns.
+     * @return The PDF file's contents.
+     * @throws IOException  If writing fails.
+     * @throws XMPException If building the metadata fails.
+     */
+    public byte[] pdf(int rows, int columns) throws IOException, XMPException {
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage());
+
+            XMPMeta xmp = xmp(rows, columns);
+            new AttachmentDataStorage().write(doc, xmp, table("generated", rows, columns), Destination.document());
+
+            PDMetadata metadata = new PDMetadata(doc);
+            metadata.importXMPMetadata(XMPMetaFactory.serializeToBuffer(xmp, null));
+            doc.getDocumentCatalog().setMetadata(metadata);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static String cell(Random random, int row, int column) {
+        switch (column % 5) {
+            case 0:
+                return Integer.toString(row * 31 + random.nextInt(31));
+            case 1:
+                return Double.toString(Math.round(random.nextGaussian() * 100000) / 100.0);
+            case 2:
+                return Boolean.toString(random.nextBoolean());
+            case 3:
+                return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            default:
+                return EPOCH.plusDays(random.nextInt(10000)).toString();
+        }
+    }
+
+    /**
+     * Writes a corpus of CSV files, workbooks and PDFs at increasing sizes.
+     * <p>
+     * Usage: {@code CorpusGenerator <output directory> [columns] [max rows] [seed]}
+     */
+    public static void main(String[] args) throws IOException, XMPException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusGenerator <output directory> [columns] [max rows] [seed]");
+            System.exit(1);
+        }
+
+        Path dir = Paths.get(args[0]);
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int maxRows = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        CorpusGenerator generator = new CorpusGenerator(args.length > 3 ? Long.parseLong(args[3]) : 1);
+
+        Files.createDirectories(dir);
+        for (int rows = 10; rows <= maxRows; rows *= 10) {
+            String name = "generated_" + rows;
+            Files.write(dir.resolve(name + ".csv"), generator.csv(rows, columns).getBytes("UTF-8"));
+            Files.write(dir.resolve(name + ".xlsx"), generator.workbook(rows, columns, true));
+            if (rows < 65536)
+                Files.write(dir.resolve(name + ".xls"), generator.workbook(rows, columns, false));
+            Files.write(dir.resolve(name + ".pdf"), generator.pdf(rows, columns));
+            System.out.println("Wrote " + name);
+        }
+    }
+}
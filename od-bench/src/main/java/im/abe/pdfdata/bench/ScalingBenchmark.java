@@ -0,0 +1,52 @@
+package im.abe.pdfdata.bench;
+
+import com.adobe.xmp.XMPException;
+import im.abe.pdfdata.AttachmentDataStorage;
+import im.abe.pdfdata.DataStorage;
+import im.abe.pdfdata.Table;
+import im.abe.pdfdata.XMPDataStorage;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading generated documents of increasing size, for scaling curves. Each document holds the same table both as an
+ * attachment and as XMP data (see {@link CorpusGenerator#pdf}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    private int rows;
+
+    @Param({"8"})
+    private int columns;
+
+    private byte[] pdf;
+
+    @Setup
+    public void setUp() throws IOException, XMPException {
+        pdf = new CorpusGenerator(1).pdf(rows, columns);
+    }
+
+    @Benchmark
+    public List<Table> attachment() throws IOException, XMPException {
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            return new AttachmentDataStorage().read(doc, DataStorage.loadXMP(doc));
+        }
+    }
+
+    @Benchmark
+    public List<Table> xmp() throws IOException, XMPException {
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            return new XMPDataStorage().read(doc, DataStorage.loadXMP(doc));
+        }
+    }
+}
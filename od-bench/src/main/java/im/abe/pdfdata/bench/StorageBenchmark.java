@@ -0,0 +1,102 @@
+package im.abe.pdfdata.bench;
+
+import com.adobe.xmp.XMPException;
+import im.abe.pdfdata.*;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the sample documents with each storage. Every operation loads the document from memory first, since
+ * storages cache per document; {@link #load} measures that part alone.
+ * <p>
+ * Paths are relative to the {@code pdfdata.root} system property, which the {@code jmh} Gradle task sets to the
+ * project root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    @Param({
+            "od-reader/src/test/resources/docs/annotation.pdf",
+            "od-reader/src/test/resources/docs/attachment.pdf",
+            "od-reader/src/test/resources/docs/country_ranking.pdf",
+            "od-reader/src/test/resources/docs/form.pdf",
+            "od-reader/src/test/resources/docs/journals.pdf",
+            "od-reader/src/test/resources/docs/meta.pdf",
+            "examples/imports_exports/imports_exports.pdf",
+            "examples/tree_data/tree_data.pdf"
+    })
+    private String document;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        bytes = Files.readAllBytes(Paths.get(System.getProperty("pdfdata.root", "."), document));
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) throws IOException, XMPException {
+        try (PDDocument doc = PDDocument.load(bytes)) {
+            blackhole.consume(DataStorage.loadXMP(doc));
+        }
+    }
+
+    @Benchmark
+    public List<Table> read(Storage storage) throws IOException, XMPException {
+        try (PDDocument doc = PDDocument.load(bytes)) {
+            return storage.storage.read(doc, DataStorage.loadXMP(doc));
+        }
+    }
+
+    @Benchmark
+    public List<Table> readAll() throws IOException, XMPException {
+        try (PDDocument doc = PDDocument.load(bytes)) {
+            return DocumentScan.read(doc, DataStorage.loadXMP(doc),
+                    new AnnotationDataStorage(),
+                    new AttachmentDataStorage(),
+                    new FormDataStorage(),
+                    new XMPDataStorage(),
+                    new PDFMetaDataStorage());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Storage {
+        @Param({"annotation", "attachment", "form", "xmp", "meta"})
+        private String name;
+
+        private DataStorage storage;
+
+        @Setup
+        public void setUp() {
+            switch (name) {
+                case "annotation":
+                    storage = new AnnotationDataStorage();
+                    break;
+                case "attachment":
+                    storage = new AttachmentDataStorage();
+                    break;
+                case "form":
+                    storage = new FormDataStorage();
+                    break;
+                case "xmp":
+                    storage = new XMPDataStorage();
+                    break;
+                default:
+                    storage = new PDFMetaDataStorage();
+                    break;
+            }
+        }
+    }
+}
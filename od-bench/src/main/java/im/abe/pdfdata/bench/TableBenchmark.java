@@ -0,0 +1,67 @@
+package im.abe.pdfdata.bench;
+
+import im.abe.pdfdata.Format;
+import im.abe.pdfdata.Table;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading tables from CSV and workbooks, and writing them out in every format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableBenchmark {
+    @Param({"1000", "50000"})
+    private int rows;
+
+    @Param({"8"})
+    private int columns;
+
+    private String csv;
+    private byte[] xls;
+    private byte[] xlsx;
+    private Table table;
+
+    @Setup
+    public void setUp() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(1);
+        table = generator.table("generated", rows, columns);
+        csv = table.to(Format.CSV);
+        xls = generator.workbook(rows, columns, false);
+        xlsx = generator.workbook(rows, columns, true);
+    }
+
+    @Benchmark
+    public Table fromCSV() throws IOException {
+        return Table.fromCSV("generated", new StringReader(csv));
+    }
+
+    @Benchmark
+    public Table fromXLS() throws IOException {
+        return Table.fromXLS("generated", new ByteArrayInputStream(xls));
+    }
+
+    @Benchmark
+    public Table fromXLSX() throws IOException {
+        return Table.fromXLS("generated", new ByteArrayInputStream(xlsx));
+    }
+
+    @Benchmark
+    public String to(Output output) {
+        return table.to(output.format);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Output {
+        @Param({"CSV", "JSON", "RDF_XML", "TURTLE"})
+        private Format format;
+    }
+}
@@ -0,0 +1,52 @@
+package im.abe.pdfdata.bench;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.ParseOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and serializing XMP packets that hold a table, with both the streaming and the DOM parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XMPBenchmark {
+    @Param({"100", "10000"})
+    private int rows;
+
+    @Param({"8"})
+    private int columns;
+
+    private byte[] packet;
+    private XMPMeta xmp;
+
+    @Setup
+    public void setUp() throws XMPException {
+        CorpusGenerator generator = new CorpusGenerator(1);
+        xmp = generator.xmp(rows, columns);
+        packet = XMPMetaFactory.serializeToBuffer(xmp, null);
+    }
+
+    @Benchmark
+    public XMPMeta parse(Parser parser) throws XMPException {
+        return XMPMetaFactory.parseFromBuffer(packet, new ParseOptions().setStreaming(parser.streaming));
+    }
+
+    @Benchmark
+    public byte[] serialize() throws XMPException {
+        return XMPMetaFactory.serializeToBuffer(xmp, null);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Parser {
+        @Param({"true", "false"})
+        private boolean streaming;
+    }
+}
@@ -10,46 +10,114 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Scanner;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.stream.Stream;
 
 /**
  * The PDF reader/writer command-line tool.
  */
 public class PDFData {
+    /**
+     * Shared by every overwrite prompt, since closing a Scanner would close stdin.
+     */
+    private static Scanner stdin;
+
     @Parameter(names = {"-h", "--help"}, description = "Print help message and exit", help = true)
     private boolean help;
 
     @Parameters(separators = "=", commandDescription = "Read data from a PDF file")
     private static class ReadCommand {
-        @Parameter(names = {"-f", "--format"}, description = "Output format (values: JSON, CSV, RDF/XML, TURTLE)")
+        @Parameter(names = {"-f", "--format"}, description = "Output format (see Supported Formats in the help)")
         private String outputFormat = "TURTLE";
 
-        @Parameter(description = "Input PDF file", required = true)
+        @Parameter(description = "Input PDF files or directories", required = true)
         private List<String> inputPaths;
 
         @Parameter(names = "-o", description = "Output file")
         private String outputPath;
 
-        public Format getFormat() {
-            return Format.find(outputFormat);
+        @Parameter(names = {"-d", "--dataset"},
+                description = "Collect every table from every document into one Parquet file, one row per cell")
+        private String datasetPath;
+
+        @Parameter(names = {"-p", "--parallel"}, description = "Number of documents to extract at once")
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = {"-g", "--glob"}, description = "File name pattern to match inside input directories")
+        private String glob = "*.pdf";
+
+        /**
+         * @return The output format, or null if no format has that name.
+         */
+        public TableFormat getFormat() {
+            return TableFormats.find(outputFormat);
+        }
+
+        /**
+         * Expands the input paths into a list of PDF files. Directories are searched recursively for files whose
+         * names match {@link #glob}, in sorted order so that output order is stable.
+         *
+         * @return The input files.
+         * @throws IOException If a directory can't be walked.
+         */
+        public List<File> getInputFiles() throws IOException {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            List<File> files = new ArrayList<>();
+            for (String path : inputPaths) {
+                File file = new File(path);
+                if (file.isDirectory()) {
+                    try (Stream<Path> walk = java.nio.file.Files.walk(file.toPath())) {
+                        walk.filter(java.nio.file.Files::isRegularFile)
+                                .filter(child -> matcher.matches(child.getFileName()))
+                                .sorted()
+                                .forEach(child -> files.add(child.toFile()));
+                    }
+                } else {
+                    files.add(file);
+                }
+            }
+            return files;
         }
     }
 
     @Parameters(separators = "=", commandDescription = "Write data to a PDF file")
     private static class WriteCommand {
-        @Parameter(description = "Source and destination files", required = true,
+        @Parameter(description = "Source files, then the destination PDF", required = true,
                 validateValueWith = PathValidator.class)
         private List<String> paths;
 
+        @Parameter(names = {"-i", "--incremental"},
+                description = "Append the data as an incremental update instead of rewriting the whole PDF")
+        private boolean incremental;
+
+        @Parameter(names = {"-c", "--compression"},
+                description = "Flate level to compress attachments at (1-9, -1 for default, 0 for none)")
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+        @Parameter(names = "--min-compressed-size", description = "Store attachments smaller than this uncompressed")
+        private int minCompressedSize = AttachmentDataStorage.DEFAULT_MIN_COMPRESSED_SIZE;
+
+        @Parameter(names = {"-b", "--binary"},
+                description = "Attach tables in a compact binary encoding that's faster to read than CSV")
+        private boolean binary;
+
+        public AttachmentDataStorage.Payload getPayload() {
+            return binary ? AttachmentDataStorage.Payload.BINARY : AttachmentDataStorage.Payload.CSV;
+        }
+
         private static class PathValidator implements IValueValidator<List<String>> {
             @Override
             public void validate(String name, List<String> value) throws ParameterException {
-                if (value.size() != 2)
-                    throw new ParameterException("Two paths must be provided.");
+                if (value.size() < 2)
+                    throw new ParameterException("At least two paths must be provided.");
             }
         }
     }
@@ -67,37 +135,54 @@ public class PDFData {
     }
 
     public List<Table> readAll(File pdfFile) throws IOException, XMPException {
-        PDDocument doc = PDDocument.load(pdfFile);
-        List<Table> tables = new ArrayList<>();
-
-        tables.addAll(read(new AnnotationDataStorage(), doc));
-        tables.addAll(read(new AttachmentDataStorage(), doc));
-        tables.addAll(read(new FormDataStorage(), doc));
-        tables.addAll(read(new XMPDataStorage(), doc));
-        tables.addAll(read(new PDFMetaDataStorage(), doc));
-
-        doc.close();
-        return tables;
+        try (PDDocument doc = PDDocument.load(pdfFile)) {
+            return DocumentScan.read(doc, DataStorage.loadXMP(doc),
+                    new AnnotationDataStorage(),
+                    new AttachmentDataStorage(),
+                    new FormDataStorage(),
+                    new XMPDataStorage(),
+                    new PDFMetaDataStorage());
+        }
     }
 
     public void write(WritableDataStorage storage, File sourceFile, File pdfFile) throws IOException, XMPException {
-        PDDocument doc = PDDocument.load(pdfFile);
-        PDDocumentCatalog catalog = doc.getDocumentCatalog();
-        final XMPMeta xmp;
-        if (catalog.getMetadata() == null) {
-            xmp = XMPMetaFactory.create();
-        } else {
-            xmp = XMPMetaFactory.parse(catalog.getMetadata().createInputStream());
+        write(storage, Collections.singletonList(sourceFile), pdfFile, false);
+    }
+
+    /**
+     * Writes the tables in some data files to a PDF file, as attachments to the document. Each file is read in
+     * whichever readable format {@link TableFormats} finds it's in. The document is loaded and saved once, however
+     * many tables there are.
+     *
+     * @param storage     The storage method to write with.
+     * @param sourceFiles The data files: CSV, JSON, Arrow, workbooks and so on.
+     * @param pdfFile     The PDF file, which is overwritten.
+     * @param incremental Whether to append the tables as an incremental update, rather than rewrite the whole file.
+     * @throws IOException  If reading or writing a file fails.
+     * @throws XMPException If the PDF's XMP metadata is malformed.
+     */
+    public void write(WritableDataStorage storage, List<File> sourceFiles, File pdfFile,
+                      boolean incremental) throws IOException, XMPException {
+        // every sheet of a workbook gets its own attachment, named after the sheet; any other file's is named after it
+        List<WritableDataStorage.Placement> placements = new ArrayList<>();
+        for (File sourceFile : sourceFiles) {
+            String name = Files.getNameWithoutExtension(sourceFile.getName());
+            try (InputStream in = new FileInputStream(sourceFile)) {
+                for (Table table : TableFormats.read(name, in, sourceFile.getName(), null))
+                    placements.add(new WritableDataStorage.Placement(table, Destination.document()));
+            }
         }
 
-        final Table table;
-        if (DataStorage.isXlsFile(sourceFile.getPath())) {
-            table = Table.fromXLS(pdfFile.getName(), new FileInputStream(sourceFile));
-        } else {
-            table = Table.fromCSV(pdfFile.getName(), new FileReader(sourceFile));
+        PDDocument doc = PDDocument.load(pdfFile);
+        try {
+            storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
+            if (incremental)
+                IncrementalSave.append(doc, pdfFile);
+            else
+                doc.save(pdfFile);
+        } finally {
+            doc.close();
         }
-        storage.write(doc, xmp, table, Destination.document());
-        doc.save(pdfFile);
     }
 
     public static void main(String[] args) throws IOException, XMPException {
@@ -113,56 +198,243 @@ public class PDFData {
         if (pdfData.help) {
             printHelpAndExit(0);
         } else if (Objects.equals(jc.getParsedCommand(), "read")) {
-            for (String path : read.inputPaths) {
-                File pdfFile = new File(path);
-                requireThat(pdfFile.exists(), "PDF file doesn't exist.", jc);
-
-                List<Table> tables = pdfData.readAll(pdfFile);
-
-                String baseFile = read.outputPath;
-                if (baseFile != null) {
-                    String name = Files.getNameWithoutExtension(baseFile);
-                    String extension = Files.getFileExtension(baseFile);
-                    for (int i = 0; i < tables.size(); i++) {
-                        Table table = tables.get(i);
-                        File outFile = new File(new File(baseFile).getParent(),
-                                name + (tables.size() > 1 ? ("_" + i + ".") : ".") + extension);
-                        if (outFile.exists()) {
-                            try (Scanner scanner = new Scanner(System.in)) {
-                                System.out.print("Output file already exists. Overwrite? (y/n) ");
-                                String response = scanner.next(Pattern.compile("y|n", Pattern.CASE_INSENSITIVE));
-
-                                if (!response.equalsIgnoreCase("y")) {
-                                    requireThat(false, "Output file `" + outFile.getPath() + "` already exists.", jc);
-                                }
-                            }
-                        }
-
-                        FileWriter writer = new FileWriter(outFile);
-                        writer.write(table.to(read.getFormat()));
-                        writer.close();
-                    }
-                } else {
-                    for (Table table : tables) {
-                        System.out.println(table.getName() + ":");
-                        System.out.println(table.to(read.getFormat()));
-                    }
-                }
+            requireThat(read.getFormat() != null && read.getFormat().canWrite(),
+                    "Unknown output format `" + read.outputFormat + "`.", jc);
+            requireThat(read.parallelism > 0, "Parallelism must be at least 1.", jc);
+            requireThat(read.outputPath == null || read.datasetPath == null,
+                    "-o and --dataset can't be used together.", jc);
+            requireThat(read.outputPath != null || read.datasetPath != null || !read.getFormat().isBinary(),
+                    "Binary formats can only be written to an output file.", jc);
+
+            List<File> pdfFiles = read.getInputFiles();
+            for (File pdfFile : pdfFiles)
+                requireThat(pdfFile.exists(), "PDF file `" + pdfFile.getPath() + "` doesn't exist.", jc);
+
+            if (read.datasetPath != null && new File(read.datasetPath).exists()
+                    && !confirmOverwrite("Dataset file already exists."))
+                requireThat(false, "Dataset file `" + read.datasetPath + "` already exists.", jc);
+
+            Map<File, String> outputNames = null;
+            if (read.outputPath != null) {
+                outputNames = getOutputNames(pdfFiles, read.outputPath);
+                List<File> existing = getExistingOutputs(read.outputPath, outputNames.values());
+                if (!existing.isEmpty() && !confirmOverwrite(existing.size() == 1 ? "Output file already exists."
+                        : existing.size() + " output files already exist."))
+                    requireThat(false, "Output file `" + existing.get(0).getPath() + "` already exists.", jc);
             }
+
+            if (!pdfData.readAll(pdfFiles, read, outputNames))
+                System.exit(1);
         } else if (Objects.equals(jc.getParsedCommand(), "write")) {
-            WritableDataStorage storage = new AttachmentDataStorage();
-            File sourceFile = new File(write.paths.get(0));
-            File pdfFile = new File(write.paths.get(1));
+            requireThat(write.paths.size() >= 2, "At least two paths must be provided.", jc);
+            requireThat(write.compressionLevel >= -1 && write.compressionLevel <= 9,
+                    "Compression level must be between -1 and 9.", jc);
+
+            WritableDataStorage storage = new AttachmentDataStorage(write.getPayload(), write.compressionLevel,
+                    write.minCompressedSize);
+            List<File> sourceFiles = new ArrayList<>();
+            for (String path : write.paths.subList(0, write.paths.size() - 1))
+                sourceFiles.add(new File(path));
+            File pdfFile = new File(write.paths.get(write.paths.size() - 1));
 
-            requireThat(sourceFile.exists(), "Source file doesn't exist.", jc);
+            for (File sourceFile : sourceFiles)
+                requireThat(sourceFile.exists(), "Source file `" + sourceFile.getPath() + "` doesn't exist.", jc);
             requireThat(pdfFile.exists(), "PDF file doesn't exist.", jc);
 
-            new PDFData().write(storage, sourceFile, pdfFile);
+            new PDFData().write(storage, sourceFiles, pdfFile, write.incremental);
         } else {
             printHelpAndExit(0);
         }
     }
 
+    /**
+     * Extracts every file on a bounded work-stealing pool. With {@code -o}, each worker writes its own document's
+     * output files; otherwise results are printed to stdout, or added to the {@code --dataset} file, in input order.
+     * At most two documents per thread are in flight at once, so memory stays bounded however many files there are.
+     * Workers never prompt or exit: a document that can't be read or written is reported, and the rest carry on.
+     *
+     * @param pdfFiles    The files to read.
+     * @param read        The parsed read command.
+     * @param outputNames The output file name, without extension, for each document, or null without {@code -o}.
+     * @return True if every file was read successfully.
+     * @throws IOException If the dataset file can't be written.
+     */
+    private boolean readAll(List<File> pdfFiles, ReadCommand read, Map<File, String> outputNames)
+            throws IOException {
+        ParquetDataset dataset = read.datasetPath == null ? null
+                : new ParquetDataset(new BufferedOutputStream(new FileOutputStream(read.datasetPath)));
+        try {
+            return readAll(pdfFiles, read, outputNames, dataset);
+        } finally {
+            if (dataset != null)
+                dataset.close();
+        }
+    }
+
+    private boolean readAll(List<File> pdfFiles, ReadCommand read, Map<File, String> outputNames,
+                            ParquetDataset dataset) {
+        Set<File> claimed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        ForkJoinPool pool = new ForkJoinPool(read.parallelism);
+        Deque<ForkJoinTask<List<Table>>> inFlight = new ArrayDeque<>();
+        Iterator<File> inFlightFiles = pdfFiles.iterator(); // the document each in-flight task is reading
+        int window = read.parallelism * 2;
+        boolean success = true;
+
+        for (File pdfFile : pdfFiles) {
+            inFlight.add(pool.submit(() -> {
+                try {
+                    List<Table> tables = readAll(pdfFile);
+                    if (outputNames == null)
+                        return tables;
+
+                    writeOutput(tables, outputNames.get(pdfFile), read, claimed);
+                    return Collections.<Table>emptyList();
+                } catch (IOException | XMPException e) {
+                    throw new RuntimeException("Reading `" + pdfFile.getPath() + "` failed: " + e.getMessage(), e);
+                }
+            }));
+
+            if (inFlight.size() >= window)
+                success &= emitResult(inFlight.remove(), inFlightFiles.next(), read.getFormat(), dataset);
+        }
+
+        while (!inFlight.isEmpty())
+            success &= emitResult(inFlight.remove(), inFlightFiles.next(), read.getFormat(), dataset);
+
+        pool.shutdown();
+        return success;
+    }
+
+    /**
+     * Works out the output file name for each document before any are read, so that workers never have to agree on
+     * names. The names are those of the {@code -o} option; when several documents are being read, the source
+     * document's name is added so that their outputs don't collide, and documents with the same name in different
+     * directories are numbered in input order.
+     *
+     * @param pdfFiles   The documents.
+     * @param outputPath The {@code -o} option.
+     * @return The output file name, without directory or extension, for each document.
+     */
+    private static Map<File, String> getOutputNames(List<File> pdfFiles, String outputPath) {
+        String baseName = Files.getNameWithoutExtension(outputPath);
+        Map<File, String> names = new HashMap<>();
+        Set<String> used = new HashSet<>();
+        for (File pdfFile : pdfFiles) {
+            if (pdfFiles.size() == 1) {
+                names.put(pdfFile, baseName);
+                break;
+            }
+
+            String name = baseName + "_" + Files.getNameWithoutExtension(pdfFile.getName());
+            String unique = name;
+            for (int n = 2; !used.add(unique); n++)
+                unique = name + "-" + n;
+            names.put(pdfFile, unique);
+        }
+        return names;
+    }
+
+    /**
+     * Finds the files that writing the given outputs could overwrite: for each name, the single-table file and any
+     * numbered per-table files, since how many tables a document holds isn't known until it's read.
+     *
+     * @param outputPath The {@code -o} option.
+     * @param names      The output file names, without directory or extension.
+     * @return The existing files, in no particular order.
+     */
+    private static List<File> getExistingOutputs(String outputPath, Collection<String> names) {
+        File directory = getOutputDirectory(outputPath);
+        String[] children = directory.list();
+        if (children == null)
+            return Collections.emptyList();
+
+        String extension = Pattern.quote("." + Files.getFileExtension(outputPath));
+        List<Pattern> patterns = new ArrayList<>();
+        for (String name : names)
+            patterns.add(Pattern.compile(Pattern.quote(name) + "(_\\d+)?" + extension));
+
+        List<File> existing = new ArrayList<>();
+        for (String child : children) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(child).matches()) {
+                    existing.add(new File(directory, child));
+                    break;
+                }
+            }
+        }
+        return existing;
+    }
+
+    private static File getOutputDirectory(String outputPath) {
+        String parent = new File(outputPath).getParent();
+        return new File(parent == null ? "." : parent);
+    }
+
+    /**
+     * Writes one document's tables to files with the given name, numbered if there's more than one. Runs on a
+     * worker, so it doesn't prompt: overwriting was agreed to before any work started. A file another document has
+     * already written is never overwritten, though, since names like "out_a_1" can come from either side.
+     *
+     * @param tables  The tables to write.
+     * @param name    The document's output file name, without directory or extension.
+     * @param read    The parsed read command.
+     * @param claimed The output files written so far, shared by every worker.
+     * @throws IOException If writing fails, or a file would overwrite another document's output.
+     */
+    private void writeOutput(List<Table> tables, String name, ReadCommand read, Set<File> claimed)
+            throws IOException {
+        File directory = getOutputDirectory(read.outputPath);
+        String extension = Files.getFileExtension(read.outputPath);
+
+        for (int i = 0; i < tables.size(); i++) {
+            Table table = tables.get(i);
+            File outFile = new File(directory, name + (tables.size() > 1 ? ("_" + i + ".") : ".") + extension);
+            if (!claimed.add(outFile.getAbsoluteFile()))
+                throw new IOException("`" + outFile.getPath() + "` is already another document's output");
+
+            try (OutputStream out = new FileOutputStream(outFile)) {
+                read.getFormat().write(table, out);
+            }
+        }
+    }
+
+    private static synchronized boolean confirmOverwrite(String message) {
+        if (stdin == null)
+            stdin = new Scanner(System.in);
+
+        System.out.print(message + " Overwrite? (y/n) ");
+        String response = stdin.next(Pattern.compile("y|n", Pattern.CASE_INSENSITIVE));
+        return response.equalsIgnoreCase("y");
+    }
+
+    /**
+     * Waits for a document's tables, then prints them to stdout or adds them to the dataset.
+     *
+     * @param task    The task reading the document.
+     * @param pdfFile The document.
+     * @param format  The format to print in.
+     * @param dataset The dataset to add the tables to, or null to print them.
+     * @return True if the document was read and its tables written successfully.
+     */
+    private static boolean emitResult(ForkJoinTask<List<Table>> task, File pdfFile, TableFormat format,
+                                      ParquetDataset dataset) {
+        try {
+            for (Table table : task.join()) {
+                if (dataset != null) {
+                    dataset.append(pdfFile.getPath(), table);
+                } else {
+                    System.out.println(table.getName() + ":");
+                    format.write(table, System.out);
+                    System.out.println();
+                }
+            }
+            return true;
+        } catch (RuntimeException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return false;
+        }
+    }
+
     private static void requireThat(boolean condition, String error, JCommander jc) {
         if (!condition) {
             System.err.println("Error: " + error + "\n");
@@ -174,14 +446,36 @@ public class PDFData {
         // I'm really not sure of how this should be formatted, but it's fine for now.
 
         System.out.println("Usage: pdfdata\n" +
-                "    read  <pdf file> [-o output file] [-f format]\n" +
-                "    write <source file> <pdf file>\n\n" +
+                "    read  <pdf files or directories...> [-o output file | -d dataset file] [-f format] [-p threads]\n" +
+                "          [-g glob]\n" +
+                "    write <source files...> <pdf file>\n\n" +
 
                 "Options:\n" +
                 "    -h, --help: print this help message and exit\n" +
+                "    -p, --parallel: number of documents to read at once (default: number of cores)\n" +
+                "    -g, --glob: file name pattern for PDFs inside directories (default: *.pdf)\n" +
+                "    -d, --dataset: collect every table into one Parquet file, one row per cell\n" +
                 "\n" +
                 "Supported Formats:\n" +
-                "    TURTLE (default), CSV, JSON, RDF/XML");
+                "    TURTLE (default), CSV, JSON, NDJSON, RDF/XML, NTRIPLES, NQUADS, ARROW (Arrow IPC file),\n" +
+                "    ARROWS (Arrow IPC stream), PARQUET" + getPluginFormats(true) + "\n" +
+                "\n" +
+                "Source files for write can be CSV, JSON, NDJSON, Arrow, Excel workbooks" + getPluginFormats(false) +
+                ".\n" +
+                "Workbooks and Arrow files are recognized by their contents, and the rest by their extension.");
         System.exit(status);
     }
+
+    /**
+     * @param write True for formats that can be written, false for formats that can be read.
+     * @return The names of those formats that plugins add, each preceded by a comma, or "" if there are none.
+     */
+    private static String getPluginFormats(boolean write) {
+        StringBuilder names = new StringBuilder();
+        for (TableFormat format : TableFormats.plugins()) {
+            if (write ? format.canWrite() : format.canRead())
+                names.append(", ").append(format.getName());
+        }
+        return names.toString();
+    }
 }
@@ -0,0 +1,176 @@
+package im.abe.pdfdata.frontend;
+
+import im.abe.pdfdata.AttachmentDataStorage;
+import im.abe.pdfdata.Table;
+import im.abe.pdfdata.TableFormat;
+import im.abe.pdfdata.TableFormats;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads folders of generated documents on several threads, and checks each document's tables come out exactly as
+ * reading it alone would give them, under the names and in the order the command line promises.
+ */
+public class PDFDataTest {
+    private static final TableFormat CSV = TableFormats.find("CSV");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void eachDocumentGetsItsOwnOutputFiles() throws Exception {
+        File in = folder.newFolder("in");
+        List<File> pdfs = new ArrayList<>();
+        for (int i = 0; i < 12; i++)
+            pdfs.add(pdf(in, "doc" + i, (i % 3 + 1) * 100));
+        File out = folder.newFolder("out");
+
+        PDFData.main(new String[]{"read", in.getPath(), "-o", new File(out, "result.csv").getPath(), "-f", "CSV",
+                "-p", "3"});
+
+        int files = 0;
+        for (File pdf : pdfs)
+            files += assertOutputs(pdf, out, "result_" + pdf.getName().replace(".pdf", ""));
+        assertEquals(files, out.list().length);
+    }
+
+    @Test
+    public void printedTablesKeepTheInputOrder() throws Exception {
+        File in = folder.newFolder("in");
+        List<File> pdfs = new ArrayList<>();
+        // more documents than the in-flight window, of very different sizes, so that they finish out of order
+        for (int i = 0; i < 10; i++)
+            pdfs.add(pdf(in, "doc" + i, i % 2 == 0 ? 2000 : 100));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (PrintStream print = new PrintStream(expected, true, "UTF-8")) {
+            for (File pdf : pdfs) {
+                for (Table table : new PDFData().readAll(pdf)) {
+                    print.println(table.getName() + ":");
+                    CSV.write(table, print);
+                    print.println();
+                }
+            }
+        }
+
+        assertEquals(expected.toString("UTF-8"), stdout("read", in.getPath(), "-f", "CSV", "-p", "2"));
+    }
+
+    @Test
+    public void documentsWithTheSameNameAreNumbered() throws Exception {
+        File a = pdf(folder.newFolder("a"), "doc", 100);
+        File b = pdf(folder.newFolder("b"), "doc", 200);
+        File out = folder.newFolder("out");
+
+        PDFData.main(new String[]{"read", a.getPath(), b.getPath(), "-o", new File(out, "result.csv").getPath(),
+                "-f", "CSV", "-p", "2"});
+
+        int files = assertOutputs(a, out, "result_doc") + assertOutputs(b, out, "result_doc-2");
+        assertEquals(files, out.list().length);
+    }
+
+    @Test
+    public void severalSourcesAreWrittenInOneSave() throws Exception {
+        for (boolean incremental : new boolean[]{false, true}) {
+            File dir = folder.newFolder("incremental_" + incremental);
+            File pdf = blank(new File(dir, "doc.pdf"));
+            byte[] before = Files.readAllBytes(pdf.toPath());
+            List<File> sources = Arrays.asList(source(dir, "first", 2), source(dir, "second", 3),
+                    source(dir, "third", 4));
+
+            new PDFData().write(new AttachmentDataStorage(), sources, pdf, incremental);
+
+            List<String> names = new ArrayList<>();
+            for (Table table : new PDFData().readAll(pdf))
+                names.add(table.getName());
+            assertTrue(names.toString(), names.containsAll(Arrays.asList("first", "second", "third")));
+            if (incremental) {
+                byte[] after = Files.readAllBytes(pdf.toPath());
+                assertArrayEquals(before, Arrays.copyOf(after, before.length));
+            }
+        }
+    }
+
+    /**
+     * Makes a one-page document with a CSV file of the given number of rows attached.
+     */
+    private static File pdf(File dir, String name, int rows) throws Exception {
+        File pdf = blank(new File(dir, name + ".pdf"));
+        File source = source(sourceDirectory(dir, name), name, rows);
+        new PDFData().write(new AttachmentDataStorage(), source, pdf);
+        return pdf;
+    }
+
+    /**
+     * @return A directory beside the documents for their sources, so the glob never picks them up.
+     */
+    private static File sourceDirectory(File dir, String name) {
+        File sources = new File(dir.getParentFile(), dir.getName() + "_sources_" + name);
+        assertTrue(sources.mkdirs());
+        return sources;
+    }
+
+    private static File blank(File pdf) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage());
+            doc.save(pdf);
+        }
+        return pdf;
+    }
+
+    private static File source(File dir, String name, int rows) throws IOException {
+        StringBuilder csv = new StringBuilder("n,name,half\n");
+        for (int i = 0; i < rows; i++)
+            csv.append(i).append(',').append(name).append(',').append(i / 2.0).append('\n');
+        File file = new File(dir, name + ".csv");
+        Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Checks a document's output files hold what reading it alone gives.
+     *
+     * @return The number of output files the document has.
+     */
+    private static int assertOutputs(File pdf, File out, String name) throws Exception {
+        List<Table> tables = new PDFData().readAll(pdf);
+        for (int i = 0; i < tables.size(); i++) {
+            File outFile = new File(out, name + (tables.size() > 1 ? "_" + i : "") + ".csv");
+            assertArrayEquals(outFile.getName(), csv(tables.get(i)), Files.readAllBytes(outFile.toPath()));
+        }
+        return tables.size();
+    }
+
+    private static byte[] csv(Table table) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CSV.write(table, out);
+        return out.toByteArray();
+    }
+
+    private static String stdout(String... args) throws Exception {
+        PrintStream original = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, "UTF-8"));
+        try {
+            PDFData.main(args);
+        } finally {
+            System.setOut(original);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -5,7 +5,6 @@ import com.adobe.xmp.XMPMeta;
 import com.google.common.collect.Lists;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageTree;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 
 import java.io.IOException;
@@ -19,26 +18,33 @@ import java.util.List;
  */
 public class AnnotationDataStorage extends DataStorage {
     @Override
-    public List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
-        List<String> columns = Collections.singletonList("Annotation");
-        List<List<String>> cells = new ArrayList<>();
-        PDPageTree pages = doc.getDocumentCatalog().getPages();
+    public List<TableSource> sources(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
+        return DocumentScan.sources(doc, xmp, this);
+    }
 
-        boolean hasAnnotations = false;
-        for (PDPage page : pages) {
-            for (PDAnnotation annotation : page.getAnnotations()) {
-                if (annotation.getContents() == null) {
-                    continue;
-                } else if (!hasAnnotations) {
-                    hasAnnotations = true;
-                }
+    @Override
+    public DocumentScan.Visitor visitor(PDDocument doc, XMPMeta xmp) {
+        return new DocumentScan.Visitor() {
+            private final List<List<String>> cells = new ArrayList<>();
 
-                cells.add(Collections.singletonList(annotation.getContents()));
+            @Override
+            public boolean visitsPages() {
+                return true;
             }
-        }
 
-        if (!hasAnnotations)
-            return new ArrayList<>();
-        return Lists.newArrayList(new Table("Annotations", columns, cells));
+            @Override
+            public void visitAnnotation(PDPage page, int pageIndex, PDAnnotation annotation) {
+                if (annotation.getContents() != null)
+                    cells.add(Collections.singletonList(annotation.getContents()));
+            }
+
+            @Override
+            public List<TableSource> finish() {
+                if (cells.isEmpty())
+                    return new ArrayList<>();
+                List<String> columns = Collections.singletonList("Annotation");
+                return Lists.<TableSource>newArrayList(new Table("Annotations", columns, cells));
+            }
+        };
     }
 }
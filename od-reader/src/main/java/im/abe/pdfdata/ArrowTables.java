@@ -0,0 +1,181 @@
+package im.abe.pdfdata;
+
+import com.google.common.io.ByteStreams;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.ipc.*;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes tables in the Apache Arrow IPC formats, so they can be handed to analytics tools without a CSV
+ * round trip. Columns keep the type of their {@link Column} vector: LONG columns become Int64, DOUBLE columns
+ * Float64, BOOLEAN columns Bool, DATE columns Date32, and everything else Utf8. Every field is nullable; cells past
+ * the end of a short row are written as nulls.
+ */
+final class ArrowTables {
+    /**
+     * Rows per record batch, so that only one batch's vectors are ever held off-heap at once.
+     */
+    private static final int BATCH_SIZE = 65536;
+
+    private static final byte[] FILE_MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final BufferAllocator ROOT = new RootAllocator();
+
+    private ArrowTables() {
+    }
+
+    /**
+     * Writes a table in the Arrow IPC file format, or the streaming format.
+     *
+     * @param table  The table.
+     * @param out    The stream to write to. Not closed.
+     * @param stream True for the streaming format, false for the file format.
+     * @throws IOException If writing fails.
+     */
+    static void write(Table table, OutputStream out, boolean stream) throws IOException {
+        ColumnStore store = table.getStore();
+        ColumnSchema schema = table.getSchema();
+        int columnCount = schema.size();
+
+        List<Field> fields = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            String name = schema.getName(i) != null ? schema.getName(i) : "";
+            fields.add(new Field(name, FieldType.nullable(arrowType(schema.getType(i))), null));
+        }
+
+        // closing a writer closes its channel, and the caller's stream must stay open
+        OutputStream shielded = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+
+        try (BufferAllocator allocator = ROOT.newChildAllocator("write", 0, Long.MAX_VALUE);
+             VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+             ArrowWriter writer = stream
+                     ? new ArrowStreamWriter(root, null, shielded)
+                     : new ArrowFileWriter(root, null, Channels.newChannel(shielded))) {
+            writer.start();
+            int rowCount = store.getRowCount();
+            for (int start = 0; start == 0 || start < rowCount; start += BATCH_SIZE) {
+                int end = Math.min(start + BATCH_SIZE, rowCount);
+                root.allocateNew();
+                for (int i = 0; i < columnCount; i++)
+                    fill(root.getVector(i), store, i, start, end);
+                root.setRowCount(end - start);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+        out.flush();
+    }
+
+    private static ArrowType arrowType(Column.Type type) {
+        switch (type) {
+            case LONG:
+                return new ArrowType.Int(64, true);
+            case DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case BOOLEAN:
+                return ArrowType.Bool.INSTANCE;
+            case DATE:
+                return new ArrowType.Date(DateUnit.DAY);
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    /**
+     * Copies rows {@code [start, end)} of one stored column into a vector. Cells the store has no value for,
+     * including cells past the end of a short row, are skipped, which leaves them null.
+     */
+    private static void fill(FieldVector vector, ColumnStore store, int columnIndex, int start, int end) {
+        Column column = columnIndex < store.getColumnCount() ? store.getColumn(columnIndex) : null;
+        for (int row = start; row < end; row++) {
+            int index = row - start;
+            if (column == null || columnIndex >= store.getRowWidth(row) || column.isNull(row))
+                continue;
+
+            if (vector instanceof BigIntVector) {
+                ((BigIntVector) vector).setSafe(index, column.getLong(row));
+            } else if (vector instanceof Float8Vector) {
+                ((Float8Vector) vector).setSafe(index, column.getDouble(row));
+            } else if (vector instanceof BitVector) {
+                ((BitVector) vector).setSafe(index, column.getBoolean(row) ? 1 : 0);
+            } else if (vector instanceof DateDayVector) {
+                ((DateDayVector) vector).setSafe(index, column.getEpochDay(row));
+            } else {
+                ((VarCharVector) vector).setSafe(index, column.get(row).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        vector.setValueCount(end - start);
+    }
+
+    /**
+     * Reads a table from Arrow IPC data, in either the file or the streaming format. Values of any Arrow type are
+     * read as their string form, and Date32 values as ISO dates; the types this class writes read back exactly as they
+     * went in.
+     *
+     * @param name The table's name.
+     * @param in   The data. Read to the end, but not closed.
+     * @return The table.
+     * @throws IOException If reading fails or the data isn't Arrow IPC.
+     */
+    static Table read(String name, InputStream in) throws IOException {
+        byte[] data = ByteStreams.toByteArray(in);
+        boolean file = data.length >= FILE_MAGIC.length
+                && Arrays.equals(Arrays.copyOf(data, FILE_MAGIC.length), FILE_MAGIC);
+
+        try (BufferAllocator allocator = ROOT.newChildAllocator("read", 0, Long.MAX_VALUE);
+             ArrowReader reader = file
+                     ? new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(data), allocator)
+                     : new ArrowStreamReader(new ByteArrayInputStream(data), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<String> columnNames = new ArrayList<>();
+            for (Field field : root.getSchema().getFields())
+                columnNames.add(field.getName());
+
+            ColumnStore.Builder cells = new ColumnStore.Builder();
+            List<String> row = new ArrayList<>(columnNames.size());
+            while (reader.loadNextBatch()) {
+                List<FieldVector> vectors = root.getFieldVectors();
+                for (int index = 0; index < root.getRowCount(); index++) {
+                    row.clear();
+                    for (FieldVector vector : vectors) {
+                        if (vector instanceof DateDayVector && !vector.isNull(index)) {
+                            // read as a bare day number otherwise
+                            row.add(LocalDate.ofEpochDay(((DateDayVector) vector).get(index)).toString());
+                            continue;
+                        }
+                        Object value = vector.getObject(index);
+                        row.add(value == null ? null : value.toString());
+                    }
+                    cells.addRow(row);
+                }
+            }
+            return new Table(name, columnNames, cells.build());
+        }
+    }
+}
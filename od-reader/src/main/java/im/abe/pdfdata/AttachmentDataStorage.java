@@ -3,147 +3,263 @@ package im.abe.pdfdata;
 import com.adobe.xmp.XMPException;
 import com.adobe.xmp.XMPMeta;
 import com.google.common.io.Files;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentNameDictionary;
-import org.apache.pdfbox.pdmodel.PDEmbeddedFilesNameTreeNode;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
 import org.apache.pdfbox.pdmodel.common.filespecification.PDEmbeddedFile;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
-import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationFileAttachment;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.GregorianCalendar;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * An attachment-based data storage method. Data is stored as an attachment in the PDF file, and linked using XMP.
+ * Attachments are Flate-compressed unless they're too small to benefit; readers decode them transparently.
+ * <p>
+ * Tables are written as CSV by default, or optionally in the compact binary encoding of {@link BinaryTable}, which
+ * reads back without any parsing. The embedded file's MIME type tells the two apart, so either kind is read
+ * whichever payload this storage writes.
  */
 public class AttachmentDataStorage extends WritableDataStorage {
     public static final String STORED_DATA = "Stored Data";
 
+    /**
+     * Attachments smaller than this many bytes are stored uncompressed by default.
+     */
+    public static final int DEFAULT_MIN_COMPRESSED_SIZE = 512;
+
+    private final Payload payload;
+    private final int compressionLevel;
+    private final int minCompressedSize;
+
+    /**
+     * Creates a storage method that writes CSV, compressed at the default level.
+     */
+    public AttachmentDataStorage() {
+        this(Deflater.DEFAULT_COMPRESSION, DEFAULT_MIN_COMPRESSED_SIZE);
+    }
+
+    /**
+     * Creates a storage method that writes CSV with the given compression settings.
+     *
+     * @param compressionLevel  The Flate level to compress attachments at, from 1 (fastest) to 9 (smallest), or -1
+     *                          for the default. 0 turns compression off.
+     * @param minCompressedSize The size in bytes below which attachments are stored uncompressed.
+     */
+    public AttachmentDataStorage(int compressionLevel, int minCompressedSize) {
+        this(Payload.CSV, compressionLevel, minCompressedSize);
+    }
+
+    /**
+     * Creates a storage method that writes the given payload with the given compression settings.
+     *
+     * @param payload           The encoding to write tables in.
+     * @param compressionLevel  The Flate level to compress attachments at, from 1 (fastest) to 9 (smallest), or -1
+     *                          for the default. 0 turns compression off.
+     * @param minCompressedSize The size in bytes below which attachments are stored uncompressed.
+     */
+    public AttachmentDataStorage(Payload payload, int compressionLevel, int minCompressedSize) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be between -1 and 9.");
+        this.payload = payload;
+        this.compressionLevel = compressionLevel;
+        this.minCompressedSize = minCompressedSize;
+    }
+
     @Override
-    public List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
-        List<Table> tables = new ArrayList<>();
-        PDDocumentNameDictionary names = doc.getDocumentCatalog().getNames();
-        if (names == null)
-            return tables;
-        PDEmbeddedFilesNameTreeNode node = names.getEmbeddedFiles();
-        if (node == null)
-            return tables;
-        Map<String, PDComplexFileSpecification> files = node.getNames();
-        for (Map.Entry<String, PDComplexFileSpecification> entry : files.entrySet()) {
-            if (!entry.getKey().startsWith("#"))
-                continue;
-            PDComplexFileSpecification complexFile = entry.getValue();
-            tables.add(Table.fromCSV(Files.getNameWithoutExtension(complexFile.getFilename()),
-                    new StringReader(complexFile.getEmbeddedFile().getCOSObject().toTextString().trim())));
-        }
+    public List<TableSource> sources(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
+        return DocumentScan.sources(doc, xmp, this);
+    }
 
-        for (PDPage page : doc.getDocumentCatalog().getPages()) {
-            for (PDAnnotation annotation : page.getAnnotations()) {
-                if (annotation instanceof PDAnnotationFileAttachment) {
-                    PDAnnotationFileAttachment fileAttachment = (PDAnnotationFileAttachment) annotation;
-                    if (fileAttachment.getSubject().equals(STORED_DATA)) {
-                        PDComplexFileSpecification complexFile = (PDComplexFileSpecification) fileAttachment.getFile();
-                        tables.add(Table.fromCSV(Files.getNameWithoutExtension(complexFile.getFilename()),
-                                new StringReader(complexFile.getEmbeddedFile().getCOSObject()
-                                        .toTextString().trim())));
-                    }
+    /**
+     * Reads attachments from a document scan. The scan's page walk is used to build the document's
+     * {@link AttachmentIndex}, unless one is already cached.
+     */
+    @Override
+    public DocumentScan.Visitor visitor(PDDocument doc, XMPMeta xmp) {
+        AttachmentIndex cached = AttachmentIndex.cached(doc);
+        AttachmentIndex index = cached == null ? new AttachmentIndex() : cached;
+
+        return new DocumentScan.Visitor() {
+            @Override
+            public boolean visitsPages() {
+                return cached == null;
+            }
+
+            @Override
+            public void visitAnnotation(PDPage page, int pageIndex, PDAnnotation annotation) throws IOException {
+                index.addAnnotation(pageIndex, annotation);
+            }
+
+            @Override
+            public List<TableSource> finish() throws IOException {
+                if (cached == null) {
+                    index.addNameTree(doc);
+                    AttachmentIndex.cache(doc, index);
                 }
+
+                List<TableSource> tables = new ArrayList<>();
+                for (PDComplexFileSpecification complexFile : index.getDocumentFiles())
+                    tables.add(source(complexFile));
+                for (PDComplexFileSpecification complexFile : index.getAnnotationFiles())
+                    tables.add(source(complexFile));
+                return tables;
             }
-        }
+        };
+    }
 
-        return tables;
+    private static TableSource source(PDComplexFileSpecification complexFile) {
+        String name = Files.getNameWithoutExtension(complexFile.getFilename());
+        CSVSource.Opener opener = () -> openEmbeddedFile(complexFile.getEmbeddedFile());
+        return isBinary(complexFile) ? new BinaryTable.Source(name, opener) : new CSVSource(name, opener);
     }
 
-    public Table find(PDDocument doc, String fileName, String fragment) throws XMPException, IOException {
-        PDDocumentNameDictionary names = doc.getDocumentCatalog().getNames();
-        if (names == null)
-            return null;
-        PDEmbeddedFilesNameTreeNode node = names.getEmbeddedFiles();
-        if (node == null)
-            return null;
-        Map<String, PDComplexFileSpecification> files = node.getNames();
-        for (Map.Entry<String, PDComplexFileSpecification> entry : files.entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(fragment)) {
-                PDComplexFileSpecification complexFile = entry.getValue();
-                return Table.fromCSV(Files.getNameWithoutExtension(complexFile.getFilename()),
-                        new StringReader(complexFile.getEmbeddedFile().getCOSObject().toTextString().trim()));
-            }
+    private static Table readTable(PDComplexFileSpecification complexFile) throws IOException {
+        String name = Files.getNameWithoutExtension(complexFile.getFilename());
+        try (InputStream in = openEmbeddedFile(complexFile.getEmbeddedFile())) {
+            return isBinary(complexFile) ? BinaryTable.decode(name, in) : Table.fromCSV(name, in);
         }
+    }
 
-        for (PDPage page : doc.getDocumentCatalog().getPages()) {
-            for (PDAnnotation annotation : page.getAnnotations()) {
-                if (annotation instanceof PDAnnotationFileAttachment) {
-                    PDAnnotationFileAttachment fileAttachment = (PDAnnotationFileAttachment) annotation;
-                    if (fileAttachment.getSubject().equals(STORED_DATA)) {
-                        PDComplexFileSpecification complexFile = (PDComplexFileSpecification) fileAttachment.getFile();
-                        if (complexFile.getFilename().equals(fileName)) {
-                            return Table.fromCSV(Files.getNameWithoutExtension(complexFile.getFilename()),
-                                    new StringReader(complexFile.getEmbeddedFile().getCOSObject()
-                                            .toTextString().trim()));
-                        }
-                    }
-                }
-            }
+    /**
+     * Attachments are CSV unless they're marked as binary tables; older attachments aren't marked at all.
+     */
+    private static boolean isBinary(PDComplexFileSpecification complexFile) {
+        PDEmbeddedFile file = complexFile.getEmbeddedFile();
+        return file != null && BinaryTable.MIME_TYPE.equals(file.getSubtype());
+    }
+
+    /**
+     * Opens the decoded contents of an embedded file. Unfiltered streams and plain Flate streams (the only kinds
+     * this class writes) are decoded on the fly as they're read; anything else goes through PDFBox's own filter
+     * chain, which decodes the whole stream up front.
+     *
+     * @param file The embedded file.
+     * @return A stream of the file's decoded bytes.
+     * @throws IOException If the stream can't be opened.
+     */
+    static InputStream openEmbeddedFile(PDEmbeddedFile file) throws IOException {
+        COSStream stream = file.getCOSObject();
+        List<COSName> filters = file.getFilters();
+        boolean hasParameters = stream.getDictionaryObject(COSName.DECODE_PARMS, COSName.DP) != null;
+
+        if (filters == null || filters.isEmpty()) {
+            return stream.createRawInputStream();
+        } else if (filters.size() == 1 && !hasParameters && (filters.get(0).equals(COSName.FLATE_DECODE)
+                || filters.get(0).equals(COSName.FLATE_DECODE_ABBREVIATION))) {
+            return new InflaterInputStream(stream.createRawInputStream());
+        } else {
+            return stream.createInputStream();
         }
+    }
 
-        return null;
+    public Table find(PDDocument doc, String fileName, String fragment) throws XMPException, IOException {
+        AttachmentIndex index = AttachmentIndex.of(doc);
+        PDComplexFileSpecification complexFile = index.findByFragment(fragment);
+        if (complexFile == null)
+            complexFile = index.findByFileName(fileName);
+        return complexFile == null ? null : readTable(complexFile);
     }
 
     public List<FilePreview> preview(PDDocument doc) throws XMPException, IOException {
         List<FilePreview> results = new ArrayList<>();
 
-        PDDocumentNameDictionary names = doc.getDocumentCatalog().getNames();
-        if (names == null)
-            return results;
-        PDEmbeddedFilesNameTreeNode node = names.getEmbeddedFiles();
-        if (node == null)
-            return results;
-        Map<String, PDComplexFileSpecification> files = node.getNames();
-
-        if (files != null) {
-            for (Map.Entry<String, PDComplexFileSpecification> entry : files.entrySet()) {
-                if (!entry.getKey().startsWith("#"))
-                    continue;
-                PDComplexFileSpecification complexFile = entry.getValue();
-                results.add(new FilePreview(complexFile.getFilename(), complexFile.getFileDescription()));
-            }
-        }
-
-        for (PDPage page : doc.getDocumentCatalog().getPages()) {
-            for (PDAnnotation annotation : page.getAnnotations()) {
-                if (annotation instanceof PDAnnotationFileAttachment) {
-                    PDAnnotationFileAttachment fileAttachment = (PDAnnotationFileAttachment) annotation;
-                    if (fileAttachment.getSubject().equals(STORED_DATA)) {
-                        PDComplexFileSpecification complexFile = (PDComplexFileSpecification) fileAttachment.getFile();
-                        results.add(new FilePreview(complexFile.getFilename(), complexFile.getFileDescription()));
-                    }
-                }
-            }
-        }
+        AttachmentIndex index = AttachmentIndex.of(doc);
+        for (PDComplexFileSpecification complexFile : index.getDocumentFiles())
+            results.add(new FilePreview(complexFile.getFilename(), complexFile.getFileDescription()));
+        for (PDComplexFileSpecification complexFile : index.getAnnotationFiles())
+            results.add(new FilePreview(complexFile.getFilename(), complexFile.getFileDescription()));
 
         return results;
     }
 
     @Override
     public void write(PDDocument doc, XMPMeta xmp, Table table, Destination destination) throws XMPException, IOException {
+        destination.writeAttachment(doc, fileSpecification(doc, table, destination));
+    }
+
+    /**
+     * Writes every table in one pass. Tables bound for the same destination are attached together, so the name tree
+     * or each page's annotation list is rebuilt once per destination rather than once per table.
+     */
+    @Override
+    public void writeAll(PDDocument doc, XMPMeta xmp, List<Placement> placements) throws XMPException, IOException {
+        Map<String, Destination> destinations = new LinkedHashMap<>();
+        Map<String, List<PDComplexFileSpecification>> files = new HashMap<>();
+        for (Placement placement : placements) {
+            Destination destination = placement.getDestination();
+            String fragment = destination.toFragmentIdentifier();
+            destinations.putIfAbsent(fragment, destination);
+            files.computeIfAbsent(fragment, k -> new ArrayList<>())
+                    .add(fileSpecification(doc, placement.getTable(), destination));
+        }
+
+        for (Map.Entry<String, Destination> entry : destinations.entrySet())
+            entry.getValue().writeAttachments(doc, files.get(entry.getKey()));
+    }
+
+    private PDComplexFileSpecification fileSpecification(PDDocument doc, Table table,
+                                                         Destination destination) throws IOException {
+        boolean binary = payload == Payload.BINARY;
         PDComplexFileSpecification fs = new PDComplexFileSpecification();
-        fs.setFile(table.getName() + ".csv");
+        fs.setFile(table.getName() + (binary ? BinaryTable.EXTENSION : Format.CSV.getExtension()));
         fs.setFileDescription(destination.toFragmentIdentifier());
 
-        byte[] data = table.to(Format.CSV).getBytes("UTF-8");
-        PDEmbeddedFile ef = new PDEmbeddedFile(doc, new ByteArrayInputStream(data));
+        byte[] data = binary ? BinaryTable.encode(table) : table.to(Format.CSV).getBytes("UTF-8");
+        PDEmbeddedFile ef = embeddedFile(doc, data);
+        ef.setSubtype(binary ? BinaryTable.MIME_TYPE : Format.CSV.getMime());
         ef.setSize(data.length);
         ef.setCreationDate(new GregorianCalendar());
         fs.setEmbeddedFile(ef);
+        return fs;
+    }
+
+    /**
+     * Creates an embedded file stream holding the given bytes, Flate-compressed if they're big enough and actually
+     * shrink. Compressed streams also record their decoded length, so readers can size buffers up front.
+     */
+    private PDEmbeddedFile embeddedFile(PDDocument doc, byte[] data) throws IOException {
+        if (compressionLevel == Deflater.NO_COMPRESSION || data.length < minCompressedSize)
+            return new PDEmbeddedFile(doc, new ByteArrayInputStream(data));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        Deflater deflater = new Deflater(compressionLevel);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+        if (compressed.size() >= data.length)
+            return new PDEmbeddedFile(doc, new ByteArrayInputStream(data));
+
+        PDEmbeddedFile ef = new PDEmbeddedFile(doc);
+        COSStream stream = ef.getCOSObject();
+        try (OutputStream out = stream.createRawOutputStream()) {
+            compressed.writeTo(out);
+        }
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        stream.setInt(COSName.DL, data.length);
+        return ef;
+    }
+
+    /**
+     * The encodings tables can be attached in.
+     */
+    public enum Payload {
+        /**
+         * UTF-8 CSV text, readable by anything.
+         */
+        CSV,
 
-        destination.writeAttachment(doc, fs);
+        /**
+         * The compact typed encoding of {@link BinaryTable}. Much faster to read, but only readable by this library.
+         */
+        BINARY
     }
 
     /**
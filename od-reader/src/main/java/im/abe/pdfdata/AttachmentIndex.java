@@ -0,0 +1,141 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentNameDictionary;
+import org.apache.pdfbox.pdmodel.PDEmbeddedFilesNameTreeNode;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationFileAttachment;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * An index of the data attachments in one document: embedded files by fragment, and stored-data file attachment
+ * annotations by file name and by page. Built with one walk of the name tree and the pages, then cached for as
+ * long as the document is reachable. {@link Destination} drops the cached index whenever it attaches files, which
+ * every attachment write goes through.
+ */
+public class AttachmentIndex {
+    private static final Map<PDDocument, AttachmentIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Embedded files whose name starts with "#", in name tree order.
+     */
+    private final List<PDComplexFileSpecification> documentFiles = new ArrayList<>();
+
+    /**
+     * Every embedded file, keyed by its lower-cased name.
+     */
+    private final Map<String, PDComplexFileSpecification> byFragment = new HashMap<>();
+
+    /**
+     * Stored-data annotation files, in page order.
+     */
+    private final List<PDComplexFileSpecification> annotationFiles = new ArrayList<>();
+    private final Map<String, PDComplexFileSpecification> byFileName = new HashMap<>();
+    private final Map<Integer, List<PDComplexFileSpecification>> byPage = new HashMap<>();
+
+    AttachmentIndex() {
+    }
+
+    /**
+     * Returns the index for the given document, building it if it isn't cached.
+     *
+     * @param doc The document.
+     * @return The index.
+     * @throws IOException If reading the document fails.
+     */
+    public static AttachmentIndex of(PDDocument doc) throws IOException {
+        AttachmentIndex index = cached(doc);
+        if (index == null) {
+            index = new AttachmentIndex();
+            int pageIndex = 0;
+            for (PDPage page : doc.getDocumentCatalog().getPages()) {
+                for (PDAnnotation annotation : page.getAnnotations())
+                    index.addAnnotation(pageIndex, annotation);
+                pageIndex++;
+            }
+            index.addNameTree(doc);
+            INDEXES.put(doc, index);
+        }
+        return index;
+    }
+
+    static AttachmentIndex cached(PDDocument doc) {
+        return INDEXES.get(doc);
+    }
+
+    static void cache(PDDocument doc, AttachmentIndex index) {
+        INDEXES.put(doc, index);
+    }
+
+    static void invalidate(PDDocument doc) {
+        INDEXES.remove(doc);
+    }
+
+    void addAnnotation(int pageIndex, PDAnnotation annotation) throws IOException {
+        if (annotation instanceof PDAnnotationFileAttachment) {
+            PDAnnotationFileAttachment fileAttachment = (PDAnnotationFileAttachment) annotation;
+            if (AttachmentDataStorage.STORED_DATA.equals(fileAttachment.getSubject())) {
+                PDComplexFileSpecification complexFile = (PDComplexFileSpecification) fileAttachment.getFile();
+                annotationFiles.add(complexFile);
+                byFileName.putIfAbsent(complexFile.getFilename(), complexFile);
+                byPage.computeIfAbsent(pageIndex, k -> new ArrayList<>()).add(complexFile);
+            }
+        }
+    }
+
+    void addNameTree(PDDocument doc) throws IOException {
+        PDDocumentNameDictionary names = doc.getDocumentCatalog().getNames();
+        PDEmbeddedFilesNameTreeNode node = names == null ? null : names.getEmbeddedFiles();
+        Map<String, PDComplexFileSpecification> files = node == null ? null : node.getNames();
+        if (files == null)
+            return;
+
+        for (Map.Entry<String, PDComplexFileSpecification> entry : files.entrySet()) {
+            if (entry.getKey().startsWith("#"))
+                documentFiles.add(entry.getValue());
+            byFragment.putIfAbsent(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue());
+        }
+    }
+
+    /**
+     * @return Embedded data files attached to the whole document, in name tree order.
+     */
+    public List<PDComplexFileSpecification> getDocumentFiles() {
+        return Collections.unmodifiableList(documentFiles);
+    }
+
+    /**
+     * @return Data files attached to pages, in page order.
+     */
+    public List<PDComplexFileSpecification> getAnnotationFiles() {
+        return Collections.unmodifiableList(annotationFiles);
+    }
+
+    /**
+     * @param fragment The fragment identifier. Case-insensitive.
+     * @return The embedded file stored under the given fragment, or null.
+     */
+    public PDComplexFileSpecification findByFragment(String fragment) {
+        return fragment == null ? null : byFragment.get(fragment.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param fileName The attachment's file name.
+     * @return The first page-level data file with the given name, or null.
+     */
+    public PDComplexFileSpecification findByFileName(String fileName) {
+        return byFileName.get(fileName);
+    }
+
+    /**
+     * @param pageIndex The zero-based page index.
+     * @return The data files attached to the given page.
+     */
+    public List<PDComplexFileSpecification> findByPage(int pageIndex) {
+        return Collections.unmodifiableList(byPage.getOrDefault(pageIndex, Collections.emptyList()));
+    }
+}
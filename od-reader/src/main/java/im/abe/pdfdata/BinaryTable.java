@@ -0,0 +1,387 @@
+package im.abe.pdfdata;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A compact binary encoding of a {@link Table}, used as an alternative to CSV for attachment payloads. It mirrors the
+ * in-memory {@link ColumnStore}, so decoding is a matter of filling typed vectors rather than parsing text:
+ * <pre>
+ * magic       "ODT" 0x01
+ * columns     varint count, then each heading as a string
+ * rows        varint count
+ * widths      varint 0 if every row spans every stored column, else 1 followed by a varint width per row
+ * stored      varint count of stored columns (can exceed the headings if rows are ragged)
+ * offsets     varint byte length of each stored column's block, so a reader can skip straight to any column
+ * blocks      per stored column: a type byte, the null bitmap as bytes, then the values
+ * </pre>
+ * Values are zigzag varints for LONG columns and for DATE columns' day numbers, 8-byte IEEE doubles for DOUBLE
+ * columns, a bitmap for BOOLEAN columns, and for STRING columns a dictionary of distinct strings followed by a varint
+ * code per row. Null rows hold a zero. Strings are a varint of their UTF-8 length plus one (zero for null), then the
+ * bytes. Varints are unsigned LEB128.
+ */
+final class BinaryTable {
+    static final String EXTENSION = ".odtable";
+    static final String MIME_TYPE = "application/x-pdfdata-table";
+
+    private static final byte[] MAGIC = {'O', 'D', 'T', 1};
+
+    // column type codes, fixed so that new column types can't renumber the old ones
+    private static final int TYPE_LONG = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_BOOLEAN = 2;
+    private static final int TYPE_STRING = 3;
+    private static final int TYPE_DATE = 4;
+
+    private BinaryTable() {
+    }
+
+    /**
+     * Encodes a table. The table's name isn't stored; it's the attachment's file name.
+     *
+     * @param table The table.
+     * @return The encoded bytes.
+     */
+    static byte[] encode(Table table) {
+        ColumnStore store = table.getStore();
+        int rowCount = store.getRowCount();
+        Output out = new Output();
+        out.write(MAGIC, 0, MAGIC.length);
+
+        List<String> columnNames = table.getColumnNames();
+        out.writeVarint(columnNames.size());
+        for (String columnName : columnNames)
+            out.writeString(columnName);
+        out.writeVarint(rowCount);
+
+        boolean uniform = true;
+        for (int row = 0; row < rowCount && uniform; row++)
+            uniform = store.getRowWidth(row) == store.getColumnCount();
+        if (uniform) {
+            out.writeVarint(0);
+        } else {
+            out.writeVarint(1);
+            for (int row = 0; row < rowCount; row++)
+                out.writeVarint(store.getRowWidth(row));
+        }
+
+        Output[] blocks = new Output[store.getColumnCount()];
+        for (int i = 0; i < blocks.length; i++)
+            blocks[i] = encodeColumn(store.getColumn(i));
+
+        out.writeVarint(blocks.length);
+        for (Output block : blocks)
+            out.writeVarint(block.size());
+        for (Output block : blocks)
+            block.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static Output encodeColumn(Column column) {
+        int size = column.size();
+        Output out = new Output();
+        out.write(typeCode(column.getType()));
+        out.writeByteArray(column.nulls.toByteArray());
+
+        switch (column.getType()) {
+            case LONG:
+                for (int row = 0; row < size; row++) {
+                    long value = column.isNull(row) ? 0 : column.getLong(row);
+                    out.writeVarint((value << 1) ^ (value >> 63));
+                }
+                break;
+            case DOUBLE:
+                for (int row = 0; row < size; row++) {
+                    long bits = Double.doubleToRawLongBits(column.isNull(row) ? 0 : column.getDouble(row));
+                    for (int shift = 56; shift >= 0; shift -= 8)
+                        out.write((int) (bits >>> shift));
+                }
+                break;
+            case BOOLEAN:
+                BitSet values = new BitSet(size);
+                for (int row = 0; row < size; row++) {
+                    if (!column.isNull(row) && column.getBoolean(row))
+                        values.set(row);
+                }
+                out.writeByteArray(values.toByteArray());
+                break;
+            case DATE:
+                for (int row = 0; row < size; row++) {
+                    long value = column.isNull(row) ? 0 : column.getEpochDay(row);
+                    out.writeVarint((value << 1) ^ (value >> 63));
+                }
+                break;
+            default:
+                String[] dictionary = column.getDictionary();
+                out.writeVarint(dictionary.length);
+                for (String value : dictionary)
+                    out.writeString(value);
+                for (int row = 0; row < size; row++)
+                    out.writeVarint(column.isNull(row) ? 0 : column.getCode(row));
+        }
+        return out;
+    }
+
+    private static int typeCode(Column.Type type) {
+        switch (type) {
+            case LONG:
+                return TYPE_LONG;
+            case DOUBLE:
+                return TYPE_DOUBLE;
+            case BOOLEAN:
+                return TYPE_BOOLEAN;
+            case DATE:
+                return TYPE_DATE;
+            default:
+                return TYPE_STRING;
+        }
+    }
+
+    /**
+     * Checks whether the given bytes start with this encoding's magic number.
+     *
+     * @param data The bytes.
+     * @return True if they look like an encoded table.
+     */
+    static boolean isBinary(byte[] data) {
+        return data.length >= MAGIC.length && Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * Decodes a table.
+     *
+     * @param name The table's name.
+     * @param in   The encoded bytes. Read to the end, but not closed.
+     * @return The table.
+     * @throws IOException If reading fails or the data isn't a valid encoded table.
+     */
+    static Table decode(String name, InputStream in) throws IOException {
+        byte[] data = ByteStreams.toByteArray(in);
+        if (!isBinary(data))
+            throw new IOException("Not an encoded table: " + name);
+
+        try {
+            Input input = new Input(data, MAGIC.length);
+            int headingCount = input.readCount(1);
+            List<String> columnNames = new ArrayList<>(headingCount);
+            for (int i = 0; i < headingCount; i++)
+                columnNames.add(input.readString());
+            int rowCount = input.readCount();
+
+            int[] rowWidths = null;
+            if (input.readVarint() != 0) {
+                rowWidths = new int[input.checkCount(rowCount, 1)];
+                for (int row = 0; row < rowCount; row++)
+                    rowWidths[row] = input.readCount();
+            }
+
+            Column[] columns = new Column[input.readCount(1)];
+            if (rowWidths != null) {
+                for (int width : rowWidths) {
+                    if (width > columns.length)
+                        throw new IllegalArgumentException("Row wider than the stored columns");
+                }
+            }
+            int[] offsets = new int[columns.length];
+            int offset = 0;
+            for (int i = 0; i < columns.length; i++) {
+                offsets[i] = offset;
+                offset += input.readCount();
+            }
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = decodeColumn(new Input(data, input.position + offsets[i]), rowCount);
+
+            return new Table(name, columnNames, ColumnStore.of(columns, rowCount, rowWidths));
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt encoded table: " + name, e);
+        }
+    }
+
+    private static Column decodeColumn(Input in, int size) {
+        int type = in.read();
+        BitSet nulls = BitSet.valueOf(in.readByteArray());
+
+        switch (type) {
+            case TYPE_LONG:
+                long[] longs = new long[in.checkCount(size, 1)];
+                for (int row = 0; row < size; row++) {
+                    long value = in.readVarint();
+                    longs[row] = (value >>> 1) ^ -(value & 1);
+                }
+                return Column.ofLongs(nulls, size, longs);
+            case TYPE_DOUBLE:
+                double[] doubles = new double[in.checkCount(size, 8)];
+                for (int row = 0; row < size; row++) {
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++)
+                        bits = (bits << 8) | in.read();
+                    doubles[row] = Double.longBitsToDouble(bits);
+                }
+                return Column.ofDoubles(nulls, size, doubles);
+            case TYPE_BOOLEAN:
+                return Column.ofBooleans(nulls, size, BitSet.valueOf(in.readByteArray()));
+            case TYPE_DATE:
+                int[] dates = new int[in.checkCount(size, 1)];
+                for (int row = 0; row < size; row++) {
+                    long value = in.readVarint();
+                    dates[row] = (int) ((value >>> 1) ^ -(value & 1));
+                }
+                return Column.ofDates(nulls, size, dates);
+            case TYPE_STRING:
+                String[] dictionary = new String[in.readCount(1)];
+                for (int i = 0; i < dictionary.length; i++)
+                    dictionary[i] = in.readString();
+                int[] codes = new int[in.checkCount(size, 1)];
+                for (int row = 0; row < size; row++) {
+                    codes[row] = in.readCount();
+                    if (codes[row] >= dictionary.length && !nulls.get(row))
+                        throw new IllegalArgumentException("Dictionary code out of range");
+                }
+                return Column.ofStrings(nulls, size, dictionary, codes);
+            default:
+                throw new IllegalArgumentException("Unknown column type " + type);
+        }
+    }
+
+    /**
+     * A table source that decodes its attachment the first time it's read, then serves the decoded table.
+     */
+    static class Source implements TableSource {
+        private final String name;
+        private final CSVSource.Opener opener;
+        private Table table;
+
+        Source(String name, CSVSource.Opener opener) {
+            this.name = name;
+            this.opener = opener;
+        }
+
+        private Table table() throws IOException {
+            if (table == null) {
+                try (InputStream in = opener.open()) {
+                    table = decode(name, in);
+                }
+            }
+            return table;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<String> getColumnNames() throws IOException {
+            return table().getColumnNames();
+        }
+
+        @Override
+        public RowCursor open() throws IOException {
+            return table().open();
+        }
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private void writeByteArray(byte[] bytes) {
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length + 1L);
+                write(bytes, 0, bytes.length);
+            }
+        }
+
+        private void writeTo(Output out) {
+            out.write(buf, 0, count);
+        }
+    }
+
+    private static class Input {
+        private final byte[] data;
+        private int position;
+
+        private Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        private int read() {
+            return data[position++] & 0xFF;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        /**
+         * Reads a varint that must fit in a non-negative int, such as a count, length or code.
+         */
+        private int readCount() {
+            long value = readVarint();
+            if (value < 0 || value > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Count out of range: " + value);
+            return (int) value;
+        }
+
+        /**
+         * Reads a count of items that each take at least the given number of bytes, so that a corrupt count can't
+         * make the caller allocate more than the data could hold.
+         */
+        private int readCount(int bytesEach) {
+            return checkCount(readCount(), bytesEach);
+        }
+
+        private int checkCount(int count, int bytesEach) {
+            if (count > (data.length - position) / bytesEach)
+                throw new IllegalArgumentException("Count exceeds the remaining data: " + count);
+            return count;
+        }
+
+        private byte[] readByteArray() {
+            int length = readCount();
+            if (position + length > data.length)
+                throw new IllegalArgumentException("Truncated data");
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        private String readString() {
+            int length = readCount();
+            if (length == 0)
+                return null;
+            if (position + length - 1 > data.length)
+                throw new IllegalArgumentException("Truncated data");
+            String value = new String(data, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+    }
+}
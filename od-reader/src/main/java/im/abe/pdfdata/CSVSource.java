@@ -0,0 +1,78 @@
+package im.abe.pdfdata;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A table source backed by UTF-8 CSV data that is re-opened for every cursor. The header is read once and cached.
+ */
+class CSVSource implements TableSource {
+    private final String name;
+    private final Opener opener;
+    private List<String> columnNames;
+
+    CSVSource(String name, Opener opener) {
+        this.name = name;
+        this.opener = opener;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<String> getColumnNames() throws IOException {
+        if (columnNames == null) {
+            try (CSVParser parser = Table.openCSV(opener.open())) {
+                columnNames = Table.getHeaders(parser);
+            }
+        }
+        return columnNames;
+    }
+
+    @Override
+    public RowCursor open() throws IOException {
+        CSVParser parser = Table.openCSV(opener.open());
+        if (columnNames == null)
+            columnNames = Table.getHeaders(parser);
+
+        Iterator<CSVRecord> records = parser.iterator();
+        return new RowCursor() {
+            private CSVRecord record;
+
+            @Override
+            public boolean next() {
+                record = records.hasNext() ? records.next() : null;
+                return record != null;
+            }
+
+            @Override
+            public int getWidth() {
+                return record.size();
+            }
+
+            @Override
+            public String get(int column) {
+                return column >= 0 && column < record.size() ? record.get(column) : null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+    }
+
+    /**
+     * Opens the raw CSV bytes.
+     */
+    interface Opener {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,452 @@
+package im.abe.pdfdata;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single column of a {@link ColumnStore}. Values are held in a primitive vector chosen by the column's contents,
+ * with nulls tracked in a bitmap. Every value reads back as exactly the string it was built from.
+ */
+public abstract class Column {
+    /**
+     * The physical type of a column's values.
+     */
+    public enum Type {
+        /**
+         * Every value is a canonical decimal integer that fits in a {@code long}.
+         */
+        LONG,
+
+        /**
+         * Every value is a canonical {@code double} as printed by {@link Double#toString(double)}.
+         */
+        DOUBLE,
+
+        /**
+         * Every value is {@code true} or {@code false}.
+         */
+        BOOLEAN,
+
+        /**
+         * Every value is an ISO 8601 calendar date, {@code yyyy-MM-dd}, in the years 0000 to 9999. Held as days since
+         * 1970-01-01.
+         */
+        DATE,
+
+        /**
+         * Anything else. Values are dictionary-encoded.
+         */
+        STRING
+    }
+
+    /**
+     * Rows whose value is null.
+     */
+    protected final BitSet nulls;
+
+    /**
+     * The number of values in this column.
+     */
+    protected final int size;
+
+    private Column(BitSet nulls, int size) {
+        this.nulls = nulls;
+        this.size = size;
+    }
+
+    public abstract Type getType();
+
+    /**
+     * Returns the value in the given row as a string.
+     *
+     * @param row The row index.
+     * @return The value, or null if it is null or the row is out of range.
+     */
+    public abstract String get(int row);
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return row < 0 || row >= size || nulls.get(row);
+    }
+
+    public long getLong(int row) {
+        throw new IllegalStateException("Not a LONG column: " + getType());
+    }
+
+    public double getDouble(int row) {
+        throw new IllegalStateException("Not a DOUBLE column: " + getType());
+    }
+
+    public boolean getBoolean(int row) {
+        throw new IllegalStateException("Not a BOOLEAN column: " + getType());
+    }
+
+    /**
+     * @param row The row index.
+     * @return The row's date as the number of days since 1970-01-01, as in {@link LocalDate#toEpochDay()}.
+     */
+    public int getEpochDay(int row) {
+        throw new IllegalStateException("Not a DATE column: " + getType());
+    }
+
+    /**
+     * @return The distinct values of a STRING column, indexed by {@link #getCode(int)}.
+     */
+    String[] getDictionary() {
+        throw new IllegalStateException("Not a STRING column: " + getType());
+    }
+
+    /**
+     * @param row The row index.
+     * @return The index of the row's value in {@link #getDictionary()}. Meaningless for null rows.
+     */
+    int getCode(int row) {
+        throw new IllegalStateException("Not a STRING column: " + getType());
+    }
+
+    // Factories for decoders that already hold typed vectors, such as BinaryTable. The arrays are not copied.
+
+    static Column ofLongs(BitSet nulls, int size, long[] values) {
+        return new LongColumn(nulls, size, values);
+    }
+
+    static Column ofDoubles(BitSet nulls, int size, double[] values) {
+        return new DoubleColumn(nulls, size, values);
+    }
+
+    static Column ofBooleans(BitSet nulls, int size, BitSet values) {
+        return new BooleanColumn(nulls, size, values);
+    }
+
+    static Column ofDates(BitSet nulls, int size, int[] epochDays) {
+        return new DateColumn(nulls, size, epochDays);
+    }
+
+    static Column ofStrings(BitSet nulls, int size, String[] dictionary, int[] codes) {
+        return new StringColumn(nulls, size, dictionary, codes);
+    }
+
+    private static class LongColumn extends Column {
+        private final long[] values;
+
+        private LongColumn(BitSet nulls, int size, long[] values) {
+            super(nulls, size);
+            this.values = values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.LONG;
+        }
+
+        @Override
+        public String get(int row) {
+            return isNull(row) ? null : Long.toString(values[row]);
+        }
+
+        @Override
+        public long getLong(int row) {
+            return values[row];
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        private final double[] values;
+
+        private DoubleColumn(BitSet nulls, int size, double[] values) {
+            super(nulls, size);
+            this.values = values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DOUBLE;
+        }
+
+        @Override
+        public String get(int row) {
+            return isNull(row) ? null : Double.toString(values[row]);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+    }
+
+    private static class BooleanColumn extends Column {
+        private final BitSet values;
+
+        private BooleanColumn(BitSet nulls, int size, BitSet values) {
+            super(nulls, size);
+            this.values = values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.BOOLEAN;
+        }
+
+        @Override
+        public String get(int row) {
+            return isNull(row) ? null : Boolean.toString(values.get(row));
+        }
+
+        @Override
+        public boolean getBoolean(int row) {
+            return values.get(row);
+        }
+    }
+
+    private static class DateColumn extends Column {
+        private final int[] values;
+
+        private DateColumn(BitSet nulls, int size, int[] values) {
+            super(nulls, size);
+            this.values = values;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.DATE;
+        }
+
+        @Override
+        public String get(int row) {
+            return isNull(row) ? null : LocalDate.ofEpochDay(values[row]).toString();
+        }
+
+        @Override
+        public int getEpochDay(int row) {
+            return values[row];
+        }
+    }
+
+    private static class StringColumn extends Column {
+        private final String[] dictionary;
+        private final int[] codes;
+
+        private StringColumn(BitSet nulls, int size, String[] dictionary, int[] codes) {
+            super(nulls, size);
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+
+        @Override
+        public Type getType() {
+            return Type.STRING;
+        }
+
+        @Override
+        public String get(int row) {
+            return isNull(row) ? null : dictionary[codes[row]];
+        }
+
+        @Override
+        String[] getDictionary() {
+            return dictionary;
+        }
+
+        @Override
+        int getCode(int row) {
+            return codes[row];
+        }
+    }
+
+    /**
+     * Accumulates string values for one column, dictionary-encoding them as they arrive.
+     * {@link #build()} then picks the narrowest type that reproduces every value exactly.
+     */
+    public static class Builder {
+        private final Map<String, Integer> codesByValue = new HashMap<>();
+        private String[] dictionary = new String[16];
+        private int[] codes = new int[16];
+        private final BitSet nulls = new BitSet();
+        private int size;
+
+        public Builder add(String value) {
+            if (size == codes.length)
+                codes = Arrays.copyOf(codes, size * 2);
+
+            if (value == null) {
+                nulls.set(size);
+            } else {
+                Integer code = codesByValue.get(value);
+                if (code == null) {
+                    code = codesByValue.size();
+                    if (code == dictionary.length)
+                        dictionary = Arrays.copyOf(dictionary, code * 2);
+                    dictionary[code] = value;
+                    codesByValue.put(value, code);
+                }
+                codes[size] = code;
+            }
+
+            size++;
+            return this;
+        }
+
+        /**
+         * Pads this column with nulls until it holds the given number of values.
+         *
+         * @param rows The target size.
+         * @return This builder.
+         */
+        public Builder fill(int rows) {
+            while (size < rows)
+                add(null);
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Column build() {
+            int distinct = codesByValue.size();
+            if (distinct > 0) {
+                long[] longs = parseLongs(distinct);
+                if (longs != null) {
+                    long[] values = new long[size];
+                    for (int row = 0; row < size; row++) {
+                        if (!nulls.get(row))
+                            values[row] = longs[codes[row]];
+                    }
+                    return new LongColumn(nulls, size, values);
+                }
+
+                double[] doubles = parseDoubles(distinct);
+                if (doubles != null) {
+                    double[] values = new double[size];
+                    for (int row = 0; row < size; row++) {
+                        if (!nulls.get(row))
+                            values[row] = doubles[codes[row]];
+                    }
+                    return new DoubleColumn(nulls, size, values);
+                }
+
+                if (isBooleans(distinct)) {
+                    BitSet values = new BitSet(size);
+                    for (int row = 0; row < size; row++) {
+                        if (!nulls.get(row) && dictionary[codes[row]].equals("true"))
+                            values.set(row);
+                    }
+                    return new BooleanColumn(nulls, size, values);
+                }
+
+                int[] dates = parseDates(distinct);
+                if (dates != null) {
+                    int[] values = new int[size];
+                    for (int row = 0; row < size; row++) {
+                        if (!nulls.get(row))
+                            values[row] = dates[codes[row]];
+                    }
+                    return new DateColumn(nulls, size, values);
+                }
+            }
+
+            return new StringColumn(nulls, size, Arrays.copyOf(dictionary, distinct), Arrays.copyOf(codes, size));
+        }
+
+        // Only the dictionary needs checking, so each distinct value is parsed once.
+
+        private long[] parseLongs(int distinct) {
+            long[] parsed = new long[distinct];
+            for (int i = 0; i < distinct; i++) {
+                String value = dictionary[i];
+                if (!looksLikeLong(value))
+                    return null;
+                try {
+                    parsed[i] = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    return null; // overflow
+                }
+            }
+            return parsed;
+        }
+
+        private double[] parseDoubles(int distinct) {
+            double[] parsed = new double[distinct];
+            for (int i = 0; i < distinct; i++) {
+                String value = dictionary[i];
+                if (value.isEmpty() || value.length() > 32)
+                    return null;
+                char first = value.charAt(0);
+                if (first != '-' && first != 'N' && first != 'I' && (first < '0' || first > '9'))
+                    return null;
+                try {
+                    parsed[i] = Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (!Double.toString(parsed[i]).equals(value))
+                    return null;
+            }
+            return parsed;
+        }
+
+        private boolean isBooleans(int distinct) {
+            for (int i = 0; i < distinct; i++) {
+                if (!dictionary[i].equals("true") && !dictionary[i].equals("false"))
+                    return false;
+            }
+            return true;
+        }
+
+        private int[] parseDates(int distinct) {
+            int[] parsed = new int[distinct];
+            for (int i = 0; i < distinct; i++) {
+                String value = dictionary[i];
+                if (!looksLikeDate(value))
+                    return null;
+                try {
+                    parsed[i] = (int) LocalDate.of(digits(value, 0, 4), digits(value, 5, 7), digits(value, 8, 10))
+                            .toEpochDay();
+                } catch (DateTimeException e) {
+                    return null; // no such day, like February 30th
+                }
+            }
+            return parsed;
+        }
+
+        private static boolean looksLikeDate(String value) {
+            if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-')
+                return false;
+            for (int i = 0; i < 10; i++) {
+                char c = value.charAt(i);
+                if (i != 4 && i != 7 && (c < '0' || c > '9'))
+                    return false;
+            }
+            return true;
+        }
+
+        private static int digits(String value, int start, int end) {
+            int parsed = 0;
+            for (int i = start; i < end; i++)
+                parsed = parsed * 10 + value.charAt(i) - '0';
+            return parsed;
+        }
+
+        private static boolean looksLikeLong(String value) {
+            int length = value.length();
+            int start = length > 0 && value.charAt(0) == '-' ? 1 : 0;
+            if (length == start || length - start > 19)
+                return false;
+            if (value.charAt(start) == '0')
+                return length == 1; // no leading zeros and no "-0"
+            for (int i = start; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9')
+                    return false;
+            }
+            return true;
+        }
+    }
+}
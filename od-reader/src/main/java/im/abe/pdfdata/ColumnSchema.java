@@ -0,0 +1,175 @@
+package im.abe.pdfdata;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.google.common.net.UrlEscapers;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.rdf.model.impl.Util;
+
+import java.util.*;
+
+/**
+ * The per-column details of a {@link Table} that its output formats need, worked out once per table so that writers
+ * only have to deal with values for each cell: a name and type for every column, and the column's name as CSV, JSON,
+ * RDF and Parquet each spell it. A schema covers the headed columns and the stored ones, whichever there are more of.
+ * It's immutable, so it can be shared by writers on different threads.
+ */
+final class ColumnSchema {
+    /**
+     * The base that column and table names are resolved against where RDF needs absolute IRIs, as N-Triples, N-Quads
+     * and RDF/XML do. Set with the {@code pdfdata.rdfBase} system property; it shouldn't have a fragment.
+     */
+    static final String RDF_BASE = System.getProperty("pdfdata.rdfBase", "urn:pdfdata:table");
+
+    private final List<String> names;
+    private final Column.Type[] types;
+    private final String[] csvHeader;
+    private final SerializedString[] jsonKeys;
+    private final Node[] rdfProperties;
+    private final Node[] absoluteRDFProperties;
+    private final Node[] xmlRDFProperties;
+    private final List<String> uniqueNames;
+
+    ColumnSchema(List<String> columnNames, ColumnStore store) {
+        int size = Math.max(columnNames.size(), store.getColumnCount());
+        List<String> names = new ArrayList<>(size);
+        types = new Column.Type[size];
+        jsonKeys = new SerializedString[size];
+        rdfProperties = new Node[size];
+        absoluteRDFProperties = new Node[size];
+        xmlRDFProperties = new Node[size];
+        List<String> uniqueNames = new ArrayList<>(size);
+        Set<String> seen = new HashSet<>();
+
+        for (int i = 0; i < size; i++) {
+            String name = i < columnNames.size() ? columnNames.get(i) : null;
+            names.add(name);
+            types[i] = i < store.getColumnCount() ? store.getColumn(i).getType() : Column.Type.STRING;
+            if (name != null) {
+                jsonKeys[i] = new SerializedString(name);
+                rdfProperties[i] = rdfName(name);
+                absoluteRDFProperties[i] = absoluteRDFName(name);
+                xmlRDFProperties[i] = xmlRDFName(absoluteRDFProperties[i]);
+            }
+
+            String uniqueName = name == null || name.isEmpty() ? "column_" + i : name;
+            while (!seen.add(uniqueName))
+                uniqueName += "_" + i;
+            uniqueNames.add(uniqueName);
+        }
+
+        this.names = Collections.unmodifiableList(names);
+        this.csvHeader = columnNames.toArray(new String[columnNames.size()]);
+        this.uniqueNames = Collections.unmodifiableList(uniqueNames);
+    }
+
+    /**
+     * @return The number of columns.
+     */
+    int size() {
+        return types.length;
+    }
+
+    /**
+     * @return The column's heading, or null if it has none.
+     */
+    String getName(int column) {
+        return names.get(column);
+    }
+
+    /**
+     * @return The type of the column's stored values; STRING for headed columns with nothing stored.
+     */
+    Column.Type getType(int column) {
+        return types[column];
+    }
+
+    /**
+     * @return The headings as written on the first line of CSV output. Only as long as the headings themselves, and
+     * not to be modified.
+     */
+    String[] getCSVHeader() {
+        return csvHeader;
+    }
+
+    /**
+     * @return The column's heading, encoded once as a JSON field name, or null if it has none.
+     */
+    SerializedString getJSONKey(int column) {
+        return jsonKeys[column];
+    }
+
+    /**
+     * @return The RDF property the column's cells are stated under, or null if it has no heading.
+     */
+    Node getRDFProperty(int column) {
+        return rdfProperties[column];
+    }
+
+    /**
+     * @return The column's RDF property as an absolute IRI under {@link #RDF_BASE}, or null if it has no heading.
+     */
+    Node getAbsoluteRDFProperty(int column) {
+        return absoluteRDFProperties[column];
+    }
+
+    /**
+     * @return The column's RDF property as RDF/XML can write it, or null if it has no heading.
+     */
+    Node getXMLRDFProperty(int column) {
+        return xmlRDFProperties[column];
+    }
+
+    /**
+     * @return Names for every column that are non-empty and distinct, as Parquet needs them: columns without a name
+     * are named after their position, and repeated names get their position appended.
+     */
+    List<String> getUniqueNames() {
+        return uniqueNames;
+    }
+
+    /**
+     * @return The XML Schema datatype of the column's RDF literals, or null for plain literals.
+     */
+    RDFDatatype getRDFDatatype(int column) {
+        switch (types[column]) {
+            case LONG:
+                return XSDDatatype.XSDinteger;
+            case DOUBLE:
+                return XSDDatatype.XSDdouble;
+            case BOOLEAN:
+                return XSDDatatype.XSDboolean;
+            case DATE:
+                return XSDDatatype.XSDdate;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The relative IRI a column or table is named by in RDF output.
+     */
+    static Node rdfName(String name) {
+        return NodeFactory.createURI("#" + UrlEscapers.urlFragmentEscaper().escape(name));
+    }
+
+    /**
+     * @return The IRI a column or table is named by where RDF output has to stand on its own: the relative IRI of
+     * {@link #rdfName(String)}, resolved against {@link #RDF_BASE}.
+     */
+    static Node absoluteRDFName(String name) {
+        return NodeFactory.createURI(RDF_BASE + "#" + UrlEscapers.urlFragmentEscaper().escape(name));
+    }
+
+    /**
+     * @return An absolute IRI as RDF/XML can write it as an element name: unchanged if it ends in an XML name, as most
+     * do, or with an underscore appended if it doesn't, as when a heading is empty or ends in a space or a question
+     * mark.
+     */
+    private static Node xmlRDFName(Node absolute) {
+        String uri = absolute.getURI();
+        return Util.splitNamespaceXML(uri) < uri.length() ? absolute : NodeFactory.createURI(uri + "_");
+    }
+}
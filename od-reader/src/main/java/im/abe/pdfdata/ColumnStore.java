@@ -0,0 +1,164 @@
+package im.abe.pdfdata;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar backing storage for a {@link Table}. Each column is a typed vector (see {@link Column}); rows are only
+ * materialized as lightweight views when asked for.
+ * <p>
+ * Rows may be ragged. A row's width is the number of cells it was built with, so the row views returned by
+ * {@link #rows()} have exactly the same sizes as the lists that went in.
+ */
+public class ColumnStore {
+    private final Column[] columns;
+    private final int rowCount;
+
+    /**
+     * The width of each row, or null if every row spans every column.
+     */
+    private final int[] rowWidths;
+
+    private ColumnStore(Column[] columns, int rowCount, int[] rowWidths) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.rowWidths = rowWidths;
+    }
+
+    /**
+     * Copies a row-oriented list of cells into a new store.
+     *
+     * @param rows The rows. Must not be null.
+     * @return The new store.
+     */
+    public static ColumnStore of(List<List<String>> rows) {
+        Builder builder = new Builder();
+        for (List<String> row : rows)
+            builder.addRow(row);
+        return builder.build();
+    }
+
+    /**
+     * Wraps columns that were decoded directly, such as by {@link BinaryTable}. Nothing is copied.
+     *
+     * @param columns   The columns, each holding {@code rowCount} values.
+     * @param rowCount  The number of rows.
+     * @param rowWidths The width of each row, or null if every row spans every column.
+     * @return The new store.
+     */
+    static ColumnStore of(Column[] columns, int rowCount, int[] rowWidths) {
+        return new ColumnStore(columns, rowCount, rowWidths);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public Column getColumn(int column) {
+        return columns[column];
+    }
+
+    public int getRowWidth(int row) {
+        return rowWidths == null ? columns.length : rowWidths[row];
+    }
+
+    public String get(int row, int column) {
+        if (row >= 0 && row < rowCount && column >= 0 && column < getRowWidth(row)) {
+            return columns[column].get(row);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a read-only view of this store as a list of rows. Neither the outer list nor the rows hold any cell
+     * values; each {@code get} reads straight from the column vectors.
+     *
+     * @return The row view.
+     */
+    public List<List<String>> rows() {
+        return new RowsView();
+    }
+
+    private class RowsView extends AbstractList<List<String>> implements RandomAccess {
+        @Override
+        public List<String> get(int index) {
+            if (index < 0 || index >= rowCount)
+                throw new IndexOutOfBoundsException("Row " + index + " of " + rowCount);
+            return new RowView(index);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    private class RowView extends AbstractList<String> implements RandomAccess {
+        private final int row;
+
+        private RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Column " + index + " of " + size());
+            return columns[index].get(row);
+        }
+
+        @Override
+        public int size() {
+            return getRowWidth(row);
+        }
+    }
+
+    /**
+     * Builds a store one row at a time. Columns are added as wider rows arrive.
+     */
+    public static class Builder {
+        private final List<Column.Builder> columns = new ArrayList<>();
+        private int[] rowWidths = new int[16];
+        private int rowCount;
+
+        public Builder addRow(List<String> row) {
+            int width = row.size();
+            while (columns.size() < width)
+                columns.add(new Column.Builder().fill(rowCount));
+
+            for (int i = 0; i < width; i++)
+                columns.get(i).add(row.get(i));
+            for (int i = width; i < columns.size(); i++)
+                columns.get(i).add(null);
+
+            if (rowCount == rowWidths.length)
+                rowWidths = Arrays.copyOf(rowWidths, rowCount * 2);
+            rowWidths[rowCount++] = width;
+            return this;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public ColumnStore build() {
+            Column[] built = new Column[columns.size()];
+            for (int i = 0; i < built.length; i++)
+                built[i] = columns.get(i).build();
+
+            boolean uniform = true;
+            for (int row = 0; row < rowCount && uniform; row++)
+                uniform = rowWidths[row] == built.length;
+
+            return new ColumnStore(built, rowCount, uniform ? null : Arrays.copyOf(rowWidths, rowCount));
+        }
+    }
+}
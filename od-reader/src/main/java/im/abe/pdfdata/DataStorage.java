@@ -5,8 +5,10 @@ import com.adobe.xmp.XMPMeta;
 import com.adobe.xmp.XMPMetaFactory;
 import com.google.common.io.Files;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,15 +30,61 @@ public abstract class DataStorage {
     }
 
     /**
-     * Returns the triples stored in the given document.
+     * Returns the tables stored in the given document as sources that can be read row by row. Sources may read
+     * lazily from the document, so they must be consumed before it is closed.
      *
      * @param doc The document.
      * @param xmp The document's XMP metadata.
-     * @return The stored triples.
+     * @return The stored tables.
      * @throws XMPException If an XMP error occurs.
      * @throws IOException  If an I/O error occurs. (Unlikely.)
      */
-    public abstract List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException, IOException;
+    public abstract List<TableSource> sources(PDDocument doc, XMPMeta xmp) throws XMPException, IOException;
+
+    /**
+     * Returns the tables stored in the given document, read fully into memory.
+     *
+     * @param doc The document.
+     * @param xmp The document's XMP metadata.
+     * @return The stored tables.
+     * @throws XMPException If an XMP error occurs.
+     * @throws IOException  If an I/O error occurs. (Unlikely.)
+     */
+    public List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
+        List<Table> tables = new ArrayList<>();
+        for (TableSource source : sources(doc, xmp))
+            tables.add(Table.copyOf(source));
+        return tables;
+    }
+
+    /**
+     * Returns a visitor that reads this storage as part of a {@link DocumentScan}. By default the visitor skips the
+     * page walk and simply calls {@link #sources(PDDocument, XMPMeta)} when the scan finishes.
+     *
+     * @param doc The document.
+     * @param xmp The document's XMP metadata.
+     * @return The visitor.
+     */
+    public DocumentScan.Visitor visitor(PDDocument doc, XMPMeta xmp) {
+        return () -> sources(doc, xmp);
+    }
+
+    /**
+     * Parses the given document's XMP metadata, or creates an empty packet if it has none.
+     *
+     * @param doc The document.
+     * @return The document's metadata.
+     * @throws XMPException If the metadata is malformed.
+     * @throws IOException  If the metadata stream can't be read.
+     */
+    public static XMPMeta loadXMP(PDDocument doc) throws XMPException, IOException {
+        PDMetadata metadata = doc.getDocumentCatalog().getMetadata();
+        if (metadata == null) {
+            return XMPMetaFactory.create();
+        } else {
+            return XMPMetaFactory.parse(metadata.createInputStream());
+        }
+    }
 
     /**
      * Return true if this file name denotes an XLS or XLSX file.  Perhaps it would be better to test the
@@ -44,7 +92,9 @@ public abstract class DataStorage {
      *
      * @param fileName the file name to test
      * @return true if it's an XLS or XLSX file, false otherwise
+     * @deprecated Use {@link TableFormats#forFileName(String)}, or let {@link TableFormats#read} work it out.
      */
+    @Deprecated
     public static boolean isXlsFile(String fileName) {
         final String extension = Files.getFileExtension(fileName).toLowerCase();
         return "xls".equals(extension) || "xlsx".equals(extension);
@@ -55,9 +105,40 @@ public abstract class DataStorage {
      *
      * @param mime the MIME type to test
      * @return true if it's an XLS or XLSX file, false otherwise
+     * @deprecated Use {@link TableFormats#forMimeType(String)}, or let {@link TableFormats#read} work it out.
      */
+    @Deprecated
     public static boolean isXlsType(String mime) {
         return "application/vnd.ms-excel".equals(mime) ||
                 "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet".equals(mime);
     }
+
+    /**
+     * Return true if this file name denotes a JSON or newline-delimited JSON file.
+     *
+     * @param fileName the file name to test
+     * @return true if it's a .json, .ndjson or .jsonl file, false otherwise
+     * @deprecated Use {@link TableFormats#forFileName(String)}, or let {@link TableFormats#read} work it out.
+     */
+    @Deprecated
+    public static boolean isJsonFile(String fileName) {
+        final String extension = Files.getFileExtension(fileName).toLowerCase();
+        return "json".equals(extension) || "ndjson".equals(extension) || "jsonl".equals(extension);
+    }
+
+    /**
+     * Return true if this MIME type denotes JSON or newline-delimited JSON.
+     *
+     * @param mime the MIME type to test, possibly with parameters
+     * @return true if it's JSON, false otherwise
+     * @deprecated Use {@link TableFormats#forMimeType(String)}, or let {@link TableFormats#read} work it out.
+     */
+    @Deprecated
+    public static boolean isJsonType(String mime) {
+        if (mime == null)
+            return false;
+        String type = mime.split(";")[0].trim().toLowerCase();
+        return Format.JSON.getMime().equals(type) || Format.NDJSON.getMime().equals(type)
+                || "application/jsonl".equals(type);
+    }
 }
@@ -1,5 +1,10 @@
 package im.abe.pdfdata;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSUpdateInfo;
 import org.apache.pdfbox.pdmodel.*;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
@@ -11,6 +16,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,12 +26,49 @@ public abstract class Destination {
     private static final String KEY_NAMEDDEST = "nameddest";
     private static final String KEY_PAGE = "page";
 
-    public abstract void writeAttachment(PDDocument doc, PDComplexFileSpecification file) throws IOException;
+    public void writeAttachment(PDDocument doc, PDComplexFileSpecification file) throws IOException {
+        writeAttachments(doc, Collections.singletonList(file));
+    }
+
+    /**
+     * Attaches several files here at once, updating the document's name tree or annotation list only once. The
+     * document's cached {@link AttachmentIndex}, if any, is dropped.
+     *
+     * @param doc   The document.
+     * @param files The files, in order.
+     * @throws IOException If reading the document fails.
+     */
+    public abstract void writeAttachments(PDDocument doc, List<PDComplexFileSpecification> files) throws IOException;
 
     public abstract String nameAttachment(PDDocument doc, String pdfName);
 
     public abstract String toFragmentIdentifier();
 
+    /**
+     * Flags objects that a write changed, so that an {@link IncrementalSave} writes them out again. Objects the
+     * write created don't need flagging; they're always saved.
+     */
+    private static void markUpdated(COSUpdateInfo... objects) {
+        for (COSUpdateInfo object : objects)
+            if (object != null)
+                object.setNeedToBeUpdated(true);
+    }
+
+    /**
+     * Flags a page and the page tree nodes above it, up to the catalog. An incremental save only follows flagged
+     * objects, so a changed page is never reached unless the whole path to it is flagged too.
+     */
+    private static void markPageUpdated(PDDocument doc, PDPage page) {
+        markUpdated(doc.getDocumentCatalog().getCOSObject());
+        COSBase node = page.getCOSObject();
+        while (node instanceof COSDictionary) {
+            COSDictionary dict = (COSDictionary) node;
+            COSBase kids = dict.getDictionaryObject(COSName.KIDS);
+            markUpdated(dict, kids instanceof COSArray ? (COSArray) kids : null);
+            node = dict.getDictionaryObject(COSName.PARENT, COSName.P);
+        }
+    }
+
     private static Map<String, String> parseFragmentIdentifier(String fragment) throws IllegalArgumentException {
         try {
             if (fragment.startsWith("#")) // remove hash on beginning of fragment
@@ -78,7 +121,7 @@ public abstract class Destination {
 
     private static class DocumentDestination extends Destination {
         @Override
-        public void writeAttachment(PDDocument doc, PDComplexFileSpecification file) throws IOException {
+        public void writeAttachments(PDDocument doc, List<PDComplexFileSpecification> files) throws IOException {
             PDDocumentNameDictionary names = doc.getDocumentCatalog().getNames();
             if (names == null)
                 names = new PDDocumentNameDictionary(doc.getDocumentCatalog());
@@ -87,12 +130,21 @@ public abstract class Destination {
             if (efTree == null)
                 efTree = new PDEmbeddedFilesNameTreeNode();
 
+            // Every file attached to the document has the same fragment, so number the keys of all but the first
+            // one; otherwise each would replace the last.
             Map<String, PDComplexFileSpecification> efMap = intoMap(efTree.getNames());
-            efMap.put(file.getFileDescription(), file);
+            for (PDComplexFileSpecification file : files) {
+                String key = file.getFileDescription();
+                for (int i = 2; efMap.containsKey(key); i++)
+                    key = file.getFileDescription() + i;
+                efMap.put(key, file);
+            }
             efTree.setNames(efMap);
 
             names.setEmbeddedFiles(efTree);
             doc.getDocumentCatalog().setNames(names);
+            markUpdated(doc.getDocumentCatalog().getCOSObject(), names.getCOSObject(), efTree.getCOSObject());
+            AttachmentIndex.invalidate(doc);
         }
 
         @Override
@@ -116,33 +168,38 @@ public abstract class Destination {
 
     private static class PageDestination extends Destination {
         private int pageNumber;
-        private PDPage page;
 
         public PageDestination(int pageNumber) {
             this.pageNumber = pageNumber;
         }
 
+        /**
+         * The page is looked up on every write, since a destination may be reused for several documents.
+         */
         @Override
-        public void writeAttachment(PDDocument doc, PDComplexFileSpecification file) throws IOException {
-            if (page == null)
-                page = doc.getDocumentCatalog().getPages().get(pageNumber);
-
-            PDAnnotationFileAttachment annotation = new PDAnnotationFileAttachment();
-            annotation.setFile(file);
-            annotation.setPage(page);
-            annotation.setAttachementName(PDAnnotationFileAttachment.ATTACHMENT_NAME_PAPERCLIP);
-            annotation.setSubject(AttachmentDataStorage.STORED_DATA);
-
-            PDRectangle rect = new PDRectangle();
-            rect.setLowerLeftX(5);
-            rect.setLowerLeftY(5);
-            rect.setUpperRightX(15);
-            rect.setUpperRightY(25);
-            annotation.setRectangle(rect);
+        public void writeAttachments(PDDocument doc, List<PDComplexFileSpecification> files) throws IOException {
+            PDPage page = doc.getDocumentCatalog().getPages().get(pageNumber);
 
             List<PDAnnotation> annotations = page.getAnnotations();
-            annotations.add(annotation);
+            for (PDComplexFileSpecification file : files) {
+                PDAnnotationFileAttachment annotation = new PDAnnotationFileAttachment();
+                annotation.setFile(file);
+                annotation.setPage(page);
+                annotation.setAttachementName(PDAnnotationFileAttachment.ATTACHMENT_NAME_PAPERCLIP);
+                annotation.setSubject(AttachmentDataStorage.STORED_DATA);
+
+                PDRectangle rect = new PDRectangle();
+                rect.setLowerLeftX(5);
+                rect.setLowerLeftY(5);
+                rect.setUpperRightX(15);
+                rect.setUpperRightY(25);
+                annotation.setRectangle(rect);
+
+                annotations.add(annotation);
+            }
             page.setAnnotations(annotations);
+            markPageUpdated(doc, page);
+            AttachmentIndex.invalidate(doc);
         }
 
         @Override
@@ -164,30 +221,34 @@ public abstract class Destination {
         }
 
         @Override
-        public void writeAttachment(PDDocument doc, PDComplexFileSpecification file) throws IOException {
-            PDAnnotationFileAttachment annotation = new PDAnnotationFileAttachment();
+        public void writeAttachments(PDDocument doc, List<PDComplexFileSpecification> files) throws IOException {
             Position position = findPosition(doc);
 
             if (position.x == -1 && position.y == -1) {
-                new PageDestination(position.pageNum).writeAttachment(doc, file);
+                new PageDestination(position.pageNum).writeAttachments(doc, files);
             } else {
                 PDPage page = position.page;
 
-                annotation.setFile(file);
-                annotation.setPage(page);
-                annotation.setAttachementName(PDAnnotationFileAttachment.ATTACHMENT_NAME_PAPERCLIP);
-                annotation.setSubject(AttachmentDataStorage.STORED_DATA);
-
-                PDRectangle rect = new PDRectangle();
-                rect.setLowerLeftX(position.x);
-                rect.setLowerLeftY(position.y + 20);
-                rect.setUpperRightX(position.x + 10);
-                rect.setUpperRightY(position.y);
-                annotation.setRectangle(rect);
-
                 List<PDAnnotation> annotations = page.getAnnotations();
-                annotations.add(annotation);
+                for (PDComplexFileSpecification file : files) {
+                    PDAnnotationFileAttachment annotation = new PDAnnotationFileAttachment();
+                    annotation.setFile(file);
+                    annotation.setPage(page);
+                    annotation.setAttachementName(PDAnnotationFileAttachment.ATTACHMENT_NAME_PAPERCLIP);
+                    annotation.setSubject(AttachmentDataStorage.STORED_DATA);
+
+                    PDRectangle rect = new PDRectangle();
+                    rect.setLowerLeftX(position.x);
+                    rect.setLowerLeftY(position.y + 20);
+                    rect.setUpperRightX(position.x + 10);
+                    rect.setUpperRightY(position.y);
+                    annotation.setRectangle(rect);
+
+                    annotations.add(annotation);
+                }
                 page.setAnnotations(annotations);
+                markPageUpdated(doc, page);
+                AttachmentIndex.invalidate(doc);
             }
         }
 
@@ -0,0 +1,146 @@
+package im.abe.pdfdata;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads any number of storages from a document in a single pass. The page tree and each page's annotation array are
+ * walked at most once, and every annotation is handed to each storage's {@link Visitor} in turn.
+ */
+public class DocumentScan {
+    private final PDDocument doc;
+    private final XMPMeta xmp;
+    private final List<DataStorage> storages = new ArrayList<>();
+
+    public DocumentScan(PDDocument doc, XMPMeta xmp) {
+        this.doc = doc;
+        this.xmp = xmp;
+    }
+
+    /**
+     * Convenience method to read several storages into memory in one scan.
+     *
+     * @param doc      The document.
+     * @param xmp      The document's XMP metadata.
+     * @param storages The storages to read, in output order.
+     * @return Every storage's tables, grouped by storage in the order given.
+     * @throws XMPException If an XMP error occurs.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public static List<Table> read(PDDocument doc, XMPMeta xmp, DataStorage... storages)
+            throws XMPException, IOException {
+        return of(doc, xmp, storages).read();
+    }
+
+    /**
+     * Convenience method to find the table sources of several storages in one scan.
+     *
+     * @param doc      The document.
+     * @param xmp      The document's XMP metadata.
+     * @param storages The storages to read, in output order.
+     * @return Every storage's sources, grouped by storage in the order given.
+     * @throws XMPException If an XMP error occurs.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public static List<TableSource> sources(PDDocument doc, XMPMeta xmp, DataStorage... storages)
+            throws XMPException, IOException {
+        return of(doc, xmp, storages).sources();
+    }
+
+    private static DocumentScan of(PDDocument doc, XMPMeta xmp, DataStorage... storages) {
+        DocumentScan scan = new DocumentScan(doc, xmp);
+        for (DataStorage storage : storages)
+            scan.add(storage);
+        return scan;
+    }
+
+    public DocumentScan add(DataStorage storage) {
+        storages.add(storage);
+        return this;
+    }
+
+    /**
+     * Runs the scan and reads every table found into memory.
+     *
+     * @return Every added storage's tables, grouped by storage in the order they were added.
+     * @throws XMPException If an XMP error occurs.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public List<Table> read() throws XMPException, IOException {
+        List<Table> tables = new ArrayList<>();
+        for (TableSource source : sources())
+            tables.add(Table.copyOf(source));
+        return tables;
+    }
+
+    /**
+     * Runs the scan.
+     *
+     * @return Every added storage's table sources, grouped by storage in the order they were added.
+     * @throws XMPException If an XMP error occurs.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public List<TableSource> sources() throws XMPException, IOException {
+        List<Visitor> visitors = new ArrayList<>();
+        List<Visitor> pageVisitors = new ArrayList<>();
+        for (DataStorage storage : storages) {
+            Visitor visitor = storage.visitor(doc, xmp);
+            visitors.add(visitor);
+            if (visitor.visitsPages())
+                pageVisitors.add(visitor);
+        }
+
+        if (!pageVisitors.isEmpty()) {
+            int pageIndex = 0;
+            for (PDPage page : doc.getDocumentCatalog().getPages()) {
+                for (PDAnnotation annotation : page.getAnnotations()) {
+                    for (Visitor visitor : pageVisitors)
+                        visitor.visitAnnotation(page, pageIndex, annotation);
+                }
+                pageIndex++;
+            }
+        }
+
+        List<TableSource> sources = new ArrayList<>();
+        for (Visitor visitor : visitors)
+            sources.addAll(visitor.finish());
+        return sources;
+    }
+
+    /**
+     * A storage's view of a scan. Visitors that don't need the page walk can leave {@link #visitsPages()} false, and
+     * the scan will skip the walk entirely if no visitor needs it.
+     */
+    public interface Visitor {
+        default boolean visitsPages() {
+            return false;
+        }
+
+        /**
+         * Called once for every annotation in the document, in page order.
+         *
+         * @param page       The page the annotation is on.
+         * @param pageIndex  The zero-based index of the page.
+         * @param annotation The annotation.
+         * @throws IOException If an I/O error occurs.
+         */
+        default void visitAnnotation(PDPage page, int pageIndex, PDAnnotation annotation) throws IOException {
+        }
+
+        /**
+         * Called after the page walk.
+         *
+         * @return The tables found by this visitor.
+         * @throws XMPException If an XMP error occurs.
+         * @throws IOException  If an I/O error occurs.
+         */
+        List<TableSource> finish() throws XMPException, IOException;
+    }
+}
@@ -18,7 +18,7 @@ import java.util.List;
  */
 public class FormDataStorage extends DataStorage {
     @Override
-    public List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
+    public List<TableSource> sources(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
         PDAcroForm form = doc.getDocumentCatalog().getAcroForm();
         if (form == null || form.getFields().isEmpty())
             return new ArrayList<>();
@@ -37,6 +37,6 @@ public class FormDataStorage extends DataStorage {
                 cells.add("");
             }
         }
-        return Lists.newArrayList(new Table("Form", columns, Collections.singletonList(cells)));
+        return Lists.<TableSource>newArrayList(new Table("Form", columns, Collections.singletonList(cells)));
     }
 }
@@ -1,16 +1,36 @@
 package im.abe.pdfdata;
 
-public enum Format {
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The built-in {@link TableFormat}s. Every one can be written; CSV, JSON, NDJSON and Arrow can be read too.
+ * <p>
+ * Apache Arrow is an optional dependency, since it needs a newer Jackson than some applications can use. Without it
+ * on the classpath, the Arrow formats can be neither read nor written.
+ */
+public enum Format implements TableFormat {
     /**
      * CSV data format. Columns separated by commas, rows by lines. Values can be quoted.
      */
     CSV(".csv", "text/csv"),
 
     /**
-     * JSON format. Written using JavaScript object syntax.
+     * JSON format. Written using JavaScript object syntax. Cells of numeric and boolean columns are written as JSON
+     * numbers and booleans; everything else is a string.
      */
     JSON(".json", "application/json"),
 
+    /**
+     * Newline-delimited JSON. One object per row, each on its own line, with no enclosing array.
+     */
+    NDJSON(".ndjson", "application/x-ndjson"),
+
     /**
      * XML-based representation of raw RDF data.
      */
@@ -19,7 +39,41 @@ public enum Format {
     /**
      * The most concise, idiomatic RDF format.
      */
-    TURTLE(".turtle", "text/turtle");
+    TURTLE(".turtle", "text/turtle"),
+
+    /**
+     * The simplest RDF format: one triple per line.
+     */
+    NTRIPLES(".nt", "application/n-triples"),
+
+    /**
+     * N-Triples with a graph name on each line. Each table's triples are put in a graph named after it.
+     */
+    NQUADS(".nq", "application/n-quads"),
+
+    /**
+     * Apache Arrow IPC file format, with typed columns. Binary, so it can only be written to a stream.
+     */
+    ARROW_FILE(".arrow", "application/vnd.apache.arrow.file", true),
+
+    /**
+     * Apache Arrow IPC streaming format. Like {@link #ARROW_FILE}, without the footer that allows random access.
+     */
+    ARROW_STREAM(".arrows", "application/vnd.apache.arrow.stream", true),
+
+    /**
+     * Apache Parquet, with typed, dictionary-encoded and compressed columns. Binary, and write-only.
+     */
+    PARQUET(".parquet", "application/vnd.apache.parquet", true);
+
+    private static final byte[] ARROW_MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Every message of an Arrow stream starts with this marker, including the schema at its very start.
+     */
+    private static final byte[] ARROW_CONTINUATION = {-1, -1, -1, -1};
+
+    private static final boolean ARROW_PRESENT = isPresent("org.apache.arrow.vector.VectorSchemaRoot");
 
     /**
      * The file extension associated with this format.
@@ -31,9 +85,19 @@ public enum Format {
      */
     private String mime;
 
+    /**
+     * Whether this format is binary, rather than text.
+     */
+    private boolean binary;
+
     Format(String extension, String mime) {
+        this(extension, mime, false);
+    }
+
+    Format(String extension, String mime, boolean binary) {
         this.extension = extension;
         this.mime = mime;
+        this.binary = binary;
     }
 
     public String getExtension() {
@@ -44,25 +108,135 @@ public enum Format {
         return mime;
     }
 
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+
+    @Override
+    public List<String> getAliases() {
+        switch (this) {
+            case NDJSON:
+                return Arrays.asList("JSONL", "JSON_LINES");
+            case RDF_XML:
+                return Arrays.asList("RDF", "RDF/XML", "RDFXML");
+            case NTRIPLES:
+                return Arrays.asList("N-TRIPLES", "NT");
+            case NQUADS:
+                return Arrays.asList("N-QUADS", "NQ");
+            case ARROW_FILE:
+                return Arrays.asList("ARROW", "FEATHER");
+            case ARROW_STREAM:
+                return Collections.singletonList("ARROWS");
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        switch (this) {
+            case NDJSON:
+                return Arrays.asList(extension, ".jsonl");
+            case TURTLE:
+                return Arrays.asList(extension, ".ttl");
+            case ARROW_FILE:
+                return Arrays.asList(extension, ".feather");
+            default:
+                return Collections.singletonList(extension);
+        }
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return this == NDJSON ? Arrays.asList(mime, "application/jsonl") : Collections.singletonList(mime);
+    }
+
+    /**
+     * Recognizes Arrow data by its magic numbers. The text formats have nothing distinctive enough to claim data by,
+     * so they're left to {@link TableFormats#detect(byte[], int, String, String)}'s later checks.
+     */
+    @Override
+    public boolean sniff(byte[] head, int length) {
+        switch (this) {
+            case ARROW_FILE:
+                return TableFormats.startsWith(head, length, ARROW_MAGIC);
+            case ARROW_STREAM:
+                return TableFormats.startsWith(head, length, ARROW_CONTINUATION);
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public boolean canRead() {
+        switch (this) {
+            case CSV:
+            case JSON:
+            case NDJSON:
+                return true;
+            case ARROW_FILE:
+            case ARROW_STREAM:
+                return ARROW_PRESENT;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public List<Table> read(String name, InputStream in) throws IOException {
+        switch (this) {
+            case CSV:
+                return Collections.singletonList(Table.fromCSV(name, in));
+            case JSON:
+            case NDJSON:
+                return Collections.singletonList(Table.fromJSON(name, in));
+            case ARROW_FILE:
+            case ARROW_STREAM:
+                return Collections.singletonList(Table.fromArrow(name, in));
+            default:
+                return TableFormat.super.read(name, in);
+        }
+    }
+
+    @Override
+    public boolean canWrite() {
+        return (this != ARROW_FILE && this != ARROW_STREAM) || ARROW_PRESENT;
+    }
+
+    @Override
+    public void write(Table table, OutputStream out) throws IOException {
+        table.writeTo(this, out);
+    }
+
     /**
-     * Find a format by the given name. "RDF", "RDF_XML", "RDF/XML", "RDFXML" all map to the same thing.
+     * Find a format by the given name or one of its aliases. "RDF", "RDF_XML", "RDF/XML", "RDFXML" all map to the same
+     * thing, as do "NDJSON", "JSONL" and "JSON_LINES", "NTRIPLES", "N-TRIPLES" and "NT", "NQUADS", "N-QUADS" and "NQ",
+     * "ARROW", "ARROW_FILE" and "FEATHER", and "ARROWS" and "ARROW_STREAM". Only built-in formats are found; see
+     * {@link TableFormats#find(String)} for plugins too.
      *
      * @param name The name to look up.
      * @return The format if found; CSV otherwise.
      */
     public static Format find(String name) {
-        switch (name.toUpperCase()) {
-            case "JSON":
-                return Format.JSON;
-            case "RDF":
-            case "RDF_XML":
-            case "RDF/XML":
-            case "RDFXML":
-                return Format.RDF_XML;
-            case "TURTLE":
-                return Format.TURTLE;
-            default:
-                return Format.CSV;
+        for (Format format : values()) {
+            if (TableFormats.isNamed(format, name))
+                return format;
+        }
+        return Format.CSV;
+    }
+
+    private static boolean isPresent(String className) {
+        try {
+            Class.forName(className, false, Format.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
         }
     }
 }
@@ -0,0 +1,118 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the changes made to a document as an incremental update: a new revision appended after the original bytes,
+ * holding only the objects that were added or flagged as updated. Adding a small table to a large PDF then costs
+ * about as much as the table itself, and the original revision (including any signatures over it) is left intact.
+ * {@link Destination} flags every object it touches, so anything written through a {@link WritableDataStorage} is
+ * picked up.
+ * <p>
+ * Only documents that were loaded from a file or stream can be saved this way. Encrypted documents are saved in
+ * full, as before.
+ */
+public class IncrementalSave {
+    private IncrementalSave() {
+    }
+
+    /**
+     * Writes the document's original bytes followed by a revision with its changes.
+     *
+     * @param doc The document.
+     * @param out The stream to write to. Not closed.
+     * @throws IOException If writing fails.
+     */
+    public static void save(PDDocument doc, OutputStream out) throws IOException {
+        if (doc.isEncrypted())
+            doc.save(out);
+        else
+            doc.saveIncremental(out);
+    }
+
+    /**
+     * Appends a revision with the document's changes to the file it was loaded from, without rewriting the rest of
+     * the file. If writing fails, the file is truncated back to its original length.
+     *
+     * @param doc  The document, loaded with {@link PDDocument#load(File)} and not saved since.
+     * @param file The file the document was loaded from.
+     * @throws IOException If writing fails.
+     */
+    public static void append(PDDocument doc, File file) throws IOException {
+        if (doc.isEncrypted()) {
+            replace(doc, file);
+            return;
+        }
+
+        long length = file.length();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            try {
+                channel.position(length);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                // the writer copies the original revision before appending to it, and that's already in the file
+                doc.saveIncremental(new SkipOutputStream(out, length));
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                channel.truncate(length);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Saves the whole document to a temporary file next to the given one, then moves it over it. The document may
+     * still be reading from the file, so it can't be written in place.
+     */
+    private static void replace(PDDocument doc, File file) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                doc.save(out);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Drops the first bytes written to it, and passes the rest through.
+     */
+    private static class SkipOutputStream extends FilterOutputStream {
+        private long skip;
+
+        private SkipOutputStream(OutputStream out, long skip) {
+            super(out);
+            this.skip = skip;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (skip > 0)
+                skip--;
+            else
+                out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            if (len > skipped)
+                out.write(b, off + skipped, len - skipped);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the caller owns the file
+            flush();
+        }
+    }
+}
@@ -12,7 +12,7 @@ import java.util.List;
 
 public class PDFMetaDataStorage extends DataStorage {
     @Override
-    public List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
+    public List<TableSource> sources(PDDocument doc, XMPMeta xmp) throws XMPException, IOException {
         List<String> keys = new ArrayList<>();
         List<String> values = new ArrayList<>();
 
@@ -26,7 +26,7 @@ public class PDFMetaDataStorage extends DataStorage {
             }
         }
 
-        List<Table> tables = new ArrayList<>();
+        List<TableSource> tables = new ArrayList<>();
         List<List<String>> cells = new ArrayList<>();
         cells.add(values);
         tables.add(new Table("Metadata", keys, cells));
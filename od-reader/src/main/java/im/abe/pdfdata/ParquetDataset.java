@@ -0,0 +1,225 @@
+package im.abe.pdfdata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Collects the tables from any number of documents into a single Parquet file, for bulk extraction runs. Tables
+ * rarely share columns, so they're stored in long form, one row per cell, under a schema every table fits:
+ * <pre>
+ * document       string   the document the table came from
+ * table          string   the table's name
+ * row            int64    the cell's row in the table, from 0
+ * column         string   the cell's column heading, or null if it has none
+ * long_value     int64    the cell's value, if its column is of type LONG
+ * double_value   double   ... DOUBLE
+ * boolean_value  boolean  ... BOOLEAN
+ * date_value     date     ... DATE
+ * string_value   string   ... STRING
+ * </pre>
+ * Exactly one of the value columns is set in each row; null cells are left out. Cells are buffered and written out
+ * in row groups, so the repetitive document, table and column names cost next to nothing once dictionary-encoded,
+ * and memory stays bounded however many documents are added.
+ */
+public class ParquetDataset implements Closeable {
+    private static final List<String> NAMES = Arrays.asList("document", "table", "row", "column",
+            "long_value", "double_value", "boolean_value", "date_value", "string_value");
+    private static final List<Column.Type> TYPES = Arrays.asList(Column.Type.STRING, Column.Type.STRING,
+            Column.Type.LONG, Column.Type.STRING,
+            Column.Type.LONG, Column.Type.DOUBLE, Column.Type.BOOLEAN, Column.Type.DATE, Column.Type.STRING);
+
+    private final OutputStream out;
+    private final ParquetWriter writer;
+    private final int rowGroupSize;
+    private Buffer[] buffers;
+    private int buffered;
+
+    /**
+     * Starts a dataset with row groups of {@link ParquetWriter#ROW_GROUP_SIZE} cells.
+     *
+     * @param out The stream to write to. Closed by {@link #close()}.
+     * @throws IOException If writing fails.
+     */
+    public ParquetDataset(OutputStream out) throws IOException {
+        this(out, ParquetWriter.ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Starts a dataset.
+     *
+     * @param out          The stream to write to. Closed by {@link #close()}.
+     * @param rowGroupSize The number of cells to buffer before writing them out as a row group.
+     * @throws IOException If writing fails.
+     */
+    public ParquetDataset(OutputStream out, int rowGroupSize) throws IOException {
+        if (rowGroupSize < 1)
+            throw new IllegalArgumentException("Row groups must hold at least one row");
+
+        this.out = out;
+        this.writer = new ParquetWriter(out, NAMES, TYPES);
+        this.rowGroupSize = rowGroupSize;
+        this.buffers = newBuffers();
+    }
+
+    /**
+     * Adds every cell of a table to the dataset.
+     *
+     * @param document The name of the document the table came from, such as its path.
+     * @param table    The table.
+     * @throws IOException If a full row group can't be written.
+     */
+    public void append(String document, Table table) throws IOException {
+        ColumnStore store = table.getStore();
+        ColumnSchema schema = table.getSchema();
+        for (int row = 0; row < store.getRowCount(); row++) {
+            for (int i = 0; i < store.getColumnCount(); i++) {
+                Column column = store.getColumn(i);
+                if (column.isNull(row))
+                    continue;
+
+                buffers[0].addString(document);
+                buffers[1].addString(table.getName());
+                buffers[2].addLong(row);
+                buffers[3].addString(schema.getName(i));
+                for (int value = 4; value < buffers.length; value++) {
+                    if (TYPES.get(value) == column.getType())
+                        buffers[value].add(column, row);
+                    else
+                        buffers[value].addString(null);
+                }
+
+                if (++buffered == rowGroupSize)
+                    flush();
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        Column[] columns = new Column[buffers.length];
+        for (int i = 0; i < buffers.length; i++)
+            columns[i] = buffers[i].build();
+        writer.writeRowGroup(columns, 0, buffered);
+
+        buffers = newBuffers();
+        buffered = 0;
+    }
+
+    /**
+     * Writes out any buffered cells and the file's footer, then closes the stream.
+     *
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (buffered > 0)
+                flush();
+            writer.finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Buffer[] newBuffers() {
+        Buffer[] buffers = new Buffer[TYPES.size()];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = new Buffer(TYPES.get(i));
+        return buffers;
+    }
+
+    /**
+     * Accumulates the values of one dataset column for the current row group, already typed, so that nothing has
+     * to be parsed again when the row group is written.
+     */
+    private static class Buffer {
+        private final Column.Type type;
+        private final BitSet nulls = new BitSet();
+        private final BitSet booleans = new BitSet();
+        private final Map<String, Integer> codesByValue = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+
+        /**
+         * LONG values, DOUBLE values' bits, DATE values' day numbers, or STRING values' dictionary codes.
+         */
+        private long[] values = new long[16];
+        private int size;
+
+        private Buffer(Column.Type type) {
+            this.type = type;
+        }
+
+        /**
+         * Adds a value of this buffer's type from another column.
+         */
+        private void add(Column column, int row) {
+            switch (type) {
+                case LONG:
+                    addLong(column.getLong(row));
+                    break;
+                case DOUBLE:
+                    addLong(Double.doubleToRawLongBits(column.getDouble(row)));
+                    break;
+                case BOOLEAN:
+                    booleans.set(size, column.getBoolean(row));
+                    addLong(0);
+                    break;
+                case DATE:
+                    addLong(column.getEpochDay(row));
+                    break;
+                default:
+                    addString(column.get(row));
+            }
+        }
+
+        private void addLong(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        /**
+         * Adds a string to a STRING buffer, or a null to a buffer of any type.
+         */
+        private void addString(String value) {
+            if (value == null) {
+                nulls.set(size);
+                addLong(0);
+                return;
+            }
+
+            Integer code = codesByValue.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codesByValue.put(value, code);
+            }
+            addLong(code);
+        }
+
+        private Column build() {
+            switch (type) {
+                case LONG:
+                    return Column.ofLongs(nulls, size, Arrays.copyOf(values, size));
+                case DOUBLE:
+                    double[] doubles = new double[size];
+                    for (int row = 0; row < size; row++)
+                        doubles[row] = Double.longBitsToDouble(values[row]);
+                    return Column.ofDoubles(nulls, size, doubles);
+                case BOOLEAN:
+                    return Column.ofBooleans(nulls, size, booleans);
+                case DATE:
+                    int[] dates = new int[size];
+                    for (int row = 0; row < size; row++)
+                        dates[row] = (int) values[row];
+                    return Column.ofDates(nulls, size, dates);
+                default:
+                    int[] codes = new int[size];
+                    for (int row = 0; row < size; row++)
+                        codes[row] = (int) values[row];
+                    return Column.ofStrings(nulls, size, dictionary.toArray(new String[dictionary.size()]), codes);
+            }
+        }
+    }
+}
@@ -0,0 +1,723 @@
+package im.abe.pdfdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes typed columns as an Apache Parquet file: a row group at a time, then a footer describing them all. Only as
+ * much of the format as flat tables need is implemented, so there are no dependencies beyond the JDK:
+ * <ul>
+ * <li>Every column is an optional, non-repeated leaf: an INT64, DOUBLE, BOOLEAN, DATE-annotated INT32 or UTF-8
+ * BYTE_ARRAY, following the column's {@link Column.Type}.</li>
+ * <li>Each column chunk is a single version 1 data page, with definition levels in the RLE/bit-packing hybrid encoding.
+ * Chunks are GZIP-compressed, unless that wouldn't make them any smaller.</li>
+ * <li>String columns, and numeric columns with few distinct values, are dictionary-encoded: a dictionary page, then
+ * bit-packed or run-length encoded indices. Other values are plain-encoded.</li>
+ * <li>Chunks carry null counts and min/max statistics, so readers can skip row groups.</li>
+ * </ul>
+ * Metadata is written with the Thrift compact protocol, by hand.
+ */
+final class ParquetWriter {
+    /**
+     * Rows per row group when writing a whole table.
+     */
+    static final int ROW_GROUP_SIZE = 1 << 20;
+
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Numeric columns with more distinct values than this in a chunk are plain-encoded.
+     */
+    private static final int MAX_NUMERIC_DICTIONARY = 1 << 16;
+
+    /**
+     * String statistics longer than this are left out rather than truncated.
+     */
+    private static final int MAX_STATISTICS_LENGTH = 64;
+
+    // parquet.thrift enum values
+    private static final int TYPE_BOOLEAN = 0;
+    private static final int TYPE_INT32 = 1;
+    private static final int TYPE_INT64 = 2;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_BYTE_ARRAY = 6;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_PLAIN_DICTIONARY = 2;
+    private static final int ENCODING_RLE = 3;
+    private static final int CODEC_UNCOMPRESSED = 0;
+    private static final int CODEC_GZIP = 2;
+    private static final int PAGE_DATA = 0;
+    private static final int PAGE_DICTIONARY = 2;
+    private static final int REPETITION_OPTIONAL = 1;
+    private static final int CONVERTED_UTF8 = 0;
+    private static final int CONVERTED_DATE = 6;
+
+    private final OutputStream out;
+    private final List<String> names;
+    private final List<Column.Type> types;
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+    private long position;
+
+    /**
+     * Starts a Parquet file.
+     *
+     * @param out   The stream to write to. Not closed.
+     * @param names The column names. Must be unique and not empty.
+     * @param types The type of each column.
+     * @throws IOException If writing fails.
+     */
+    ParquetWriter(OutputStream out, List<String> names, List<Column.Type> types) throws IOException {
+        this.out = out;
+        this.names = new ArrayList<>(names);
+        this.types = new ArrayList<>(types);
+        write(MAGIC);
+    }
+
+    /**
+     * Writes a table as a Parquet file on its own, in row groups of {@link #ROW_GROUP_SIZE} rows. Column types are
+     * those of the table's {@link ColumnStore}. Columns without a name get one from their position, and repeated
+     * names get their position appended, since Parquet needs them unique.
+     *
+     * @param table The table.
+     * @param out   The stream to write to. Not closed.
+     * @throws IOException If writing fails.
+     */
+    static void write(Table table, OutputStream out) throws IOException {
+        ColumnStore store = table.getStore();
+        ColumnSchema schema = table.getSchema();
+
+        Column[] columns = new Column[schema.size()];
+        List<Column.Type> types = new ArrayList<>(schema.size());
+        for (int i = 0; i < schema.size(); i++) {
+            columns[i] = i < store.getColumnCount() ? store.getColumn(i) : null;
+            types.add(schema.getType(i));
+        }
+
+        ParquetWriter writer = new ParquetWriter(out, schema.getUniqueNames(), types);
+        int rowCount = store.getRowCount();
+        for (int start = 0; start < rowCount; start += ROW_GROUP_SIZE)
+            writer.writeRowGroup(columns, start, Math.min(start + ROW_GROUP_SIZE, rowCount));
+        writer.finish();
+    }
+
+    /**
+     * Writes rows {@code [start, end)} of the given columns as a row group.
+     *
+     * @param columns One column per name, each of the type given for it. A null column is written as all nulls.
+     * @param start   The first row.
+     * @param end     The row after the last.
+     * @throws IOException If writing fails.
+     */
+    void writeRowGroup(Column[] columns, int start, int end) throws IOException {
+        RowGroup group = new RowGroup(end - start);
+        for (int i = 0; i < names.size(); i++)
+            group.chunks.add(writeChunk(columns[i], types.get(i), start, end));
+        rowGroups.add(group);
+    }
+
+    /**
+     * Writes the footer and flushes the stream.
+     *
+     * @throws IOException If writing fails.
+     */
+    void finish() throws IOException {
+        long rowCount = 0;
+        for (RowGroup group : rowGroups)
+            rowCount += group.rowCount;
+
+        Thrift meta = new Thrift();
+        meta.i32(1, 1);
+        meta.listBegin(2, Thrift.STRUCT, names.size() + 1);
+        meta.structBegin();
+        meta.string(4, "schema");
+        meta.i32(5, names.size());
+        meta.structEnd();
+        for (int i = 0; i < names.size(); i++) {
+            meta.structBegin();
+            meta.i32(1, physicalType(types.get(i)));
+            meta.i32(3, REPETITION_OPTIONAL);
+            meta.string(4, names.get(i));
+            if (types.get(i) == Column.Type.STRING) {
+                meta.i32(6, CONVERTED_UTF8);
+                meta.fieldStructBegin(10); // LogicalType
+                meta.fieldStructBegin(1); // StringType
+                meta.structEnd();
+                meta.structEnd();
+            } else if (types.get(i) == Column.Type.DATE) {
+                meta.i32(6, CONVERTED_DATE);
+                meta.fieldStructBegin(10); // LogicalType
+                meta.fieldStructBegin(6); // DateType
+                meta.structEnd();
+                meta.structEnd();
+            }
+            meta.structEnd();
+        }
+        meta.i64(3, rowCount);
+
+        meta.listBegin(4, Thrift.STRUCT, rowGroups.size());
+        for (RowGroup group : rowGroups) {
+            meta.structBegin();
+            long totalSize = 0;
+            meta.listBegin(1, Thrift.STRUCT, group.chunks.size());
+            for (int i = 0; i < group.chunks.size(); i++) {
+                Chunk chunk = group.chunks.get(i);
+                totalSize += chunk.uncompressedSize;
+                writeChunkMetadata(meta, chunk, types.get(i), names.get(i));
+            }
+            meta.i64(2, totalSize);
+            meta.i64(3, group.rowCount);
+            meta.structEnd();
+        }
+        meta.string(6, "pdfdata");
+
+        // TypeDefinedOrder for every column, so readers trust min_value and max_value
+        meta.listBegin(7, Thrift.STRUCT, names.size());
+        for (int i = 0; i < names.size(); i++) {
+            meta.structBegin();
+            meta.fieldStructBegin(1);
+            meta.structEnd();
+            meta.structEnd();
+        }
+        meta.structEnd();
+
+        byte[] footer = meta.toByteArray();
+        write(footer);
+        write(new byte[]{(byte) footer.length, (byte) (footer.length >>> 8),
+                (byte) (footer.length >>> 16), (byte) (footer.length >>> 24)});
+        write(MAGIC);
+        out.flush();
+    }
+
+    private static void writeChunkMetadata(Thrift meta, Chunk chunk, Column.Type type, String name) {
+        meta.structBegin();
+        meta.i64(2, chunk.dictionaryOffset >= 0 ? chunk.dictionaryOffset : chunk.dataOffset);
+        meta.fieldStructBegin(3);
+        meta.i32(1, physicalType(type));
+        if (chunk.dictionaryOffset >= 0) {
+            meta.listBegin(2, Thrift.I32, 3);
+            meta.i32(ENCODING_PLAIN_DICTIONARY);
+            meta.i32(ENCODING_PLAIN);
+            meta.i32(ENCODING_RLE);
+        } else {
+            meta.listBegin(2, Thrift.I32, 2);
+            meta.i32(ENCODING_PLAIN);
+            meta.i32(ENCODING_RLE);
+        }
+        meta.listBegin(3, Thrift.BINARY, 1);
+        meta.string(name);
+        meta.i32(4, chunk.compressed ? CODEC_GZIP : CODEC_UNCOMPRESSED);
+        meta.i64(5, chunk.valueCount);
+        meta.i64(6, chunk.uncompressedSize);
+        meta.i64(7, chunk.compressedSize);
+        meta.i64(9, chunk.dataOffset);
+        if (chunk.dictionaryOffset >= 0)
+            meta.i64(11, chunk.dictionaryOffset);
+        meta.fieldStructBegin(12);
+        meta.i64(3, chunk.nullCount);
+        if (chunk.max != null) {
+            meta.binary(5, chunk.max);
+            meta.binary(6, chunk.min);
+        }
+        meta.structEnd();
+        meta.structEnd();
+        meta.structEnd();
+    }
+
+    private Chunk writeChunk(Column column, Column.Type type, int start, int end) throws IOException {
+        int count = end - start;
+        Chunk chunk = new Chunk(count);
+
+        int[] levels = new int[count];
+        int defined = 0;
+        for (int row = start; row < end; row++) {
+            if (column != null && !column.isNull(row)) {
+                levels[row - start] = 1;
+                defined++;
+            }
+        }
+        chunk.nullCount = count - defined;
+
+        Output body = new Output();
+        Output levelData = new Output();
+        writeHybrid(levelData, levels, count, 1);
+        body.writeIntLE(levelData.size());
+        levelData.writeTo(body);
+
+        Dictionary dictionary = defined == 0 ? null : Dictionary.of(column, type, start, end);
+        Output dictionaryBody = new Output();
+        if (dictionary != null) {
+            for (int i = 0; i < dictionary.size; i++)
+                writePlain(dictionaryBody, column, type, dictionary.rows[i]);
+
+            int bitWidth = Math.max(1, 32 - Integer.numberOfLeadingZeros(dictionary.size - 1));
+            body.write(bitWidth);
+            writeHybrid(body, dictionary.indices, defined, bitWidth);
+        } else if (type == Column.Type.BOOLEAN) {
+            int bits = 0;
+            int buffer = 0;
+            for (int row = start; row < end; row++) {
+                if (levels[row - start] == 0)
+                    continue;
+                buffer |= (column.getBoolean(row) ? 1 : 0) << bits;
+                if (++bits == 8) {
+                    body.write(buffer);
+                    buffer = 0;
+                    bits = 0;
+                }
+            }
+            if (bits > 0)
+                body.write(buffer);
+        } else {
+            for (int row = start; row < end; row++) {
+                if (levels[row - start] == 1)
+                    writePlain(body, column, type, row);
+            }
+        }
+
+        byte[] dictionaryPage = dictionaryBody.toByteArray();
+        byte[] dataPage = body.toByteArray();
+        byte[] compressedDictionaryPage = gzip(dictionaryPage);
+        byte[] compressedDataPage = gzip(dataPage);
+        chunk.compressed = compressedDictionaryPage.length + compressedDataPage.length
+                < dictionaryPage.length + dataPage.length;
+
+        if (dictionary != null) {
+            chunk.dictionaryOffset = position;
+            writePage(chunk, PAGE_DICTIONARY, dictionary.size, dictionaryPage, compressedDictionaryPage);
+        }
+        chunk.dataOffset = position;
+        writePage(chunk, PAGE_DATA, count, dataPage, compressedDataPage);
+        if (defined > 0)
+            statistics(chunk, column, type, start, end);
+        return chunk;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Writes a page header and its body, compressed if the chunk is, and adds them to the chunk's sizes.
+     */
+    private void writePage(Chunk chunk, int pageType, int valueCount, byte[] body,
+                           byte[] compressedBody) throws IOException {
+        byte[] stored = chunk.compressed ? compressedBody : body;
+
+        Thrift header = new Thrift();
+        header.i32(1, pageType);
+        header.i32(2, body.length);
+        header.i32(3, stored.length);
+        if (pageType == PAGE_DATA) {
+            header.fieldStructBegin(5);
+            header.i32(1, valueCount);
+            header.i32(2, chunk.dictionaryOffset >= 0 ? ENCODING_PLAIN_DICTIONARY : ENCODING_PLAIN);
+            header.i32(3, ENCODING_RLE);
+            header.i32(4, ENCODING_RLE);
+            header.structEnd();
+        } else {
+            header.fieldStructBegin(7);
+            header.i32(1, valueCount);
+            header.i32(2, ENCODING_PLAIN_DICTIONARY);
+            header.structEnd();
+        }
+        header.structEnd();
+
+        byte[] headerBytes = header.toByteArray();
+        write(headerBytes);
+        write(stored);
+        chunk.uncompressedSize += headerBytes.length + body.length;
+        chunk.compressedSize += headerBytes.length + stored.length;
+    }
+
+    /**
+     * Plain-encodes a single value. Booleans are bit-packed a page at a time instead, and never come through here.
+     */
+    private static void writePlain(Output out, Column column, Column.Type type, int row) {
+        switch (type) {
+            case LONG:
+                out.writeLongLE(column.getLong(row));
+                break;
+            case DOUBLE:
+                out.writeLongLE(Double.doubleToLongBits(column.getDouble(row)));
+                break;
+            case DATE:
+                out.writeIntLE(column.getEpochDay(row));
+                break;
+            default:
+                byte[] bytes = column.get(row).getBytes(StandardCharsets.UTF_8);
+                out.writeIntLE(bytes.length);
+                out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Records a chunk's min and max values, in the byte form Parquet expects for its type.
+     */
+    private static void statistics(Chunk chunk, Column column, Column.Type type, int start, int end) {
+        Output min = new Output();
+        Output max = new Output();
+        switch (type) {
+            case LONG: {
+                long low = Long.MAX_VALUE;
+                long high = Long.MIN_VALUE;
+                for (int row = start; row < end; row++) {
+                    if (!column.isNull(row)) {
+                        low = Math.min(low, column.getLong(row));
+                        high = Math.max(high, column.getLong(row));
+                    }
+                }
+                min.writeLongLE(low);
+                max.writeLongLE(high);
+                break;
+            }
+            case DOUBLE: {
+                double low = Double.POSITIVE_INFINITY;
+                double high = Double.NEGATIVE_INFINITY;
+                for (int row = start; row < end; row++) {
+                    if (column.isNull(row))
+                        continue;
+                    double value = column.getDouble(row);
+                    if (Double.isNaN(value))
+                        return;
+                    low = Math.min(low, value);
+                    high = Math.max(high, value);
+                }
+                // the format asks for signed zeros at the edges, since readers can't tell which was seen
+                min.writeLongLE(Double.doubleToLongBits(low == 0 ? -0.0 : low));
+                max.writeLongLE(Double.doubleToLongBits(high == 0 ? 0.0 : high));
+                break;
+            }
+            case DATE: {
+                int low = Integer.MAX_VALUE;
+                int high = Integer.MIN_VALUE;
+                for (int row = start; row < end; row++) {
+                    if (!column.isNull(row)) {
+                        low = Math.min(low, column.getEpochDay(row));
+                        high = Math.max(high, column.getEpochDay(row));
+                    }
+                }
+                min.writeIntLE(low);
+                max.writeIntLE(high);
+                break;
+            }
+            case BOOLEAN: {
+                boolean low = true;
+                boolean high = false;
+                for (int row = start; row < end; row++) {
+                    if (!column.isNull(row)) {
+                        low &= column.getBoolean(row);
+                        high |= column.getBoolean(row);
+                    }
+                }
+                min.write(low ? 1 : 0);
+                max.write(high ? 1 : 0);
+                break;
+            }
+            default: {
+                byte[] low = null;
+                byte[] high = null;
+                for (int row = start; row < end; row++) {
+                    if (column.isNull(row))
+                        continue;
+                    byte[] value = column.get(row).getBytes(StandardCharsets.UTF_8);
+                    if (low == null || compareUnsigned(value, low) < 0)
+                        low = value;
+                    if (high == null || compareUnsigned(value, high) > 0)
+                        high = value;
+                }
+                if (low.length > MAX_STATISTICS_LENGTH || high.length > MAX_STATISTICS_LENGTH)
+                    return;
+                min.write(low, 0, low.length);
+                max.write(high, 0, high.length);
+            }
+        }
+        chunk.min = min.toByteArray();
+        chunk.max = max.toByteArray();
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (difference != 0)
+                return difference;
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Writes values in the RLE/bit-packing hybrid encoding. Runs of eight or more equal values are run-length
+     * encoded; everything else is bit-packed in groups of eight, the last one padded with zeros.
+     */
+    private static void writeHybrid(Output out, int[] values, int count, int bitWidth) {
+        int byteWidth = (bitWidth + 7) / 8;
+        int i = 0;
+        while (i < count) {
+            int run = runLength(values, i, count);
+            if (run >= 8) {
+                out.writeVarint((long) run << 1);
+                for (int b = 0; b < byteWidth; b++)
+                    out.write(values[i] >>> (8 * b));
+                i += run;
+                continue;
+            }
+
+            int start = i;
+            int groups = 0;
+            do {
+                i += 8;
+                groups++;
+            } while (i < count && runLength(values, i, count) < 8);
+
+            out.writeVarint(((long) groups << 1) | 1);
+            long buffer = 0;
+            int bits = 0;
+            for (int j = start; j < start + groups * 8; j++) {
+                buffer |= (long) (j < count ? values[j] : 0) << bits;
+                bits += bitWidth;
+                while (bits >= 8) {
+                    out.write((int) buffer);
+                    buffer >>>= 8;
+                    bits -= 8;
+                }
+            }
+        }
+    }
+
+    private static int runLength(int[] values, int start, int count) {
+        int end = start + 1;
+        while (end < count && values[end] == values[start])
+            end++;
+        return end - start;
+    }
+
+    private static int physicalType(Column.Type type) {
+        switch (type) {
+            case LONG:
+                return TYPE_INT64;
+            case DOUBLE:
+                return TYPE_DOUBLE;
+            case BOOLEAN:
+                return TYPE_BOOLEAN;
+            case DATE:
+                return TYPE_INT32;
+            default:
+                return TYPE_BYTE_ARRAY;
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    /**
+     * A chunk's dictionary: the row holding each distinct value, and the dictionary index of each defined value.
+     */
+    private static class Dictionary {
+        private final int[] rows;
+        private final int[] indices;
+        private final int size;
+
+        private Dictionary(int[] rows, int[] indices, int size) {
+            this.rows = rows;
+            this.indices = indices;
+            this.size = size;
+        }
+
+        /**
+         * Builds the dictionary for rows {@code [start, end)} of a column, or returns null if the chunk should be
+         * plain-encoded instead. String columns reuse the column's own dictionary codes; numeric columns are only
+         * dictionary-encoded if they repeat themselves enough to be worth it.
+         */
+        private static Dictionary of(Column column, Column.Type type, int start, int end) {
+            if (type == Column.Type.BOOLEAN)
+                return null;
+
+            int[] rows = new int[16];
+            int[] indices = new int[end - start];
+            int size = 0;
+            int defined = 0;
+            if (type == Column.Type.STRING) {
+                int[] indexByCode = new int[column.getDictionary().length];
+                Arrays.fill(indexByCode, -1);
+                for (int row = start; row < end; row++) {
+                    if (column.isNull(row))
+                        continue;
+                    int code = column.getCode(row);
+                    if (indexByCode[code] < 0) {
+                        if (size == rows.length)
+                            rows = Arrays.copyOf(rows, size * 2);
+                        rows[size] = row;
+                        indexByCode[code] = size++;
+                    }
+                    indices[defined++] = indexByCode[code];
+                }
+                return new Dictionary(rows, indices, size);
+            }
+
+            Map<Long, Integer> indexByValue = new HashMap<>();
+            for (int row = start; row < end; row++) {
+                if (column.isNull(row))
+                    continue;
+                long value = type == Column.Type.LONG ? column.getLong(row)
+                        : type == Column.Type.DATE ? column.getEpochDay(row)
+                        : Double.doubleToLongBits(column.getDouble(row));
+                Integer index = indexByValue.get(value);
+                if (index == null) {
+                    if (size == MAX_NUMERIC_DICTIONARY)
+                        return null;
+                    if (size == rows.length)
+                        rows = Arrays.copyOf(rows, size * 2);
+                    rows[size] = row;
+                    index = size++;
+                    indexByValue.put(value, index);
+                }
+                indices[defined++] = index;
+            }
+            return size * 2 <= defined ? new Dictionary(rows, indices, size) : null;
+        }
+    }
+
+    private static class RowGroup {
+        private final List<Chunk> chunks = new ArrayList<>();
+        private final long rowCount;
+
+        private RowGroup(long rowCount) {
+            this.rowCount = rowCount;
+        }
+    }
+
+    private static class Chunk {
+        private final long valueCount;
+        private long dictionaryOffset = -1;
+        private long dataOffset;
+        private long uncompressedSize;
+        private long compressedSize;
+        private long nullCount;
+        private boolean compressed;
+        private byte[] min;
+        private byte[] max;
+
+        private Chunk(long valueCount) {
+            this.valueCount = valueCount;
+        }
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeIntLE(int value) {
+            for (int shift = 0; shift < 32; shift += 8)
+                write(value >>> shift);
+        }
+
+        void writeLongLE(long value) {
+            for (int shift = 0; shift < 64; shift += 8)
+                write((int) (value >>> shift));
+        }
+
+        private void writeTo(Output out) {
+            out.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * Writes structs in the Thrift compact protocol. Fields are written in increasing id order, as the protocol's
+     * field id deltas need, and every struct begun must be ended.
+     */
+    private static class Thrift extends Output {
+        private static final int BINARY = 8;
+        private static final int I32 = 5;
+        private static final int I64 = 6;
+        private static final int LIST = 9;
+        private static final int STRUCT = 12;
+
+        private final Deque<Integer> lastIds = new ArrayDeque<>();
+        private int lastId;
+
+        private void field(int id, int type) {
+            if (id > lastId && id - lastId <= 15) {
+                write(((id - lastId) << 4) | type);
+            } else {
+                write(type);
+                writeVarint((id << 1) ^ (id >> 31));
+            }
+            lastId = id;
+        }
+
+        private void i32(int id, int value) {
+            field(id, I32);
+            i32(value);
+        }
+
+        private void i32(int value) {
+            writeVarint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        private void i64(int id, long value) {
+            field(id, I64);
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void binary(int id, byte[] value) {
+            field(id, BINARY);
+            writeVarint(value.length);
+            write(value, 0, value.length);
+        }
+
+        private void string(int id, String value) {
+            binary(id, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void listBegin(int id, int elementType, int size) {
+            field(id, LIST);
+            if (size < 15) {
+                write((size << 4) | elementType);
+            } else {
+                write(0xF0 | elementType);
+                writeVarint(size);
+            }
+        }
+
+        /**
+         * Begins a struct that's a list element, or the top-level struct.
+         */
+        private void structBegin() {
+            lastIds.push(lastId);
+            lastId = 0;
+        }
+
+        /**
+         * Begins a struct that's a field of the current one.
+         */
+        private void fieldStructBegin(int id) {
+            field(id, STRUCT);
+            structBegin();
+        }
+
+        private void structEnd() {
+            write(0);
+            lastId = lastIds.isEmpty() ? 0 : lastIds.pop();
+        }
+    }
+}
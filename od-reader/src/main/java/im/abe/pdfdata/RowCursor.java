@@ -0,0 +1,32 @@
+package im.abe.pdfdata;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A pull-based cursor over the rows of a {@link TableSource}. Only the current row is guaranteed to be held in memory.
+ */
+public interface RowCursor extends Closeable {
+    /**
+     * Advances to the next row.
+     *
+     * @return False if there are no more rows.
+     * @throws IOException If reading fails.
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return The number of cells in the current row.
+     */
+    int getWidth();
+
+    /**
+     * @param column The column index.
+     * @return The value of the given cell in the current row, or null if the row has no such cell.
+     */
+    String get(int column);
+
+    @Override
+    default void close() throws IOException {
+    }
+}
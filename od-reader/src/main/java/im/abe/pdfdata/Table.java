@@ -1,61 +1,58 @@
 package im.abe.pdfdata;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.*;
 import com.google.common.collect.Lists;
-import com.google.common.net.UrlEscapers;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.Resource;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.Reader;
-import java.io.StringWriter;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.writer.WriterStreamRDFBlocks;
+import org.apache.jena.sparql.core.Quad;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 /**
- * A set of tabular data with optional column headings.
+ * A set of tabular data with optional column headings. Cells are held column by column in a {@link ColumnStore}.
  */
-public class Table {
+public class Table implements TableSource {
     private static final CSVFormat FORMAT = CSVFormat.EXCEL.withHeader();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
 
     private String name;
     private List<String> columnNames;
-    private List<List<String>> cells;
+    private ColumnStore store;
+    private volatile ColumnSchema schema;
 
     public Table(String name, List<String> columnNames, List<List<String>> cells) {
+        this(name, columnNames, ColumnStore.of(cells));
+    }
+
+    public Table(String name, List<String> columnNames, ColumnStore store) {
         this.name = name;
         this.columnNames = columnNames;
-        this.cells = cells;
+        this.store = store;
     }
 
     public String get(int row, int column) {
-        if (row >= 0 && row < cells.size() && column >= 0) {
-            List<String> rowList = cells.get(row);
-            if (column < rowList.size()) {
-                return rowList.get(column);
-            } else {
-                return null;
-            }
-        } else {
-            return null;
-        }
+        return store.get(row, column);
     }
 
+    @Override
     public String getName() {
         return name;
     }
@@ -64,87 +61,279 @@ public class Table {
         this.name = name;
     }
 
-    private String getColumnName(int column) {
-        if (column >= 0 && column < columnNames.size()) {
-            return columnNames.get(column);
-        } else {
-            return null;
-        }
+    /**
+     * @return The per-column details the output formats share, worked out the first time they're needed.
+     */
+    ColumnSchema getSchema() {
+        ColumnSchema schema = this.schema;
+        if (schema == null)
+            this.schema = schema = new ColumnSchema(columnNames, store);
+        return schema;
     }
 
+    @Override
     public List<String> getColumnNames() {
         return columnNames;
     }
 
+    @Override
+    public RowCursor open() {
+        return new RowCursor() {
+            private int row = -1;
+
+            @Override
+            public boolean next() {
+                return ++row < store.getRowCount();
+            }
+
+            @Override
+            public int getWidth() {
+                return store.getRowWidth(row);
+            }
+
+            @Override
+            public String get(int column) {
+                return store.get(row, column);
+            }
+        };
+    }
+
+    /**
+     * Returns the cells of this table as a read-only list of rows. The list is a view over the column store; rows
+     * are not materialized.
+     *
+     * @return The rows.
+     */
     public List<List<String>> getCells() {
-        return cells;
+        return store.rows();
     }
 
+    public ColumnStore getStore() {
+        return store;
+    }
+
+    /**
+     * Serializes this table to a string. Convenient for small tables; use
+     * {@link #writeTo(Format, OutputStream)} for anything that could be large.
+     *
+     * @param format The output format.
+     * @return The serialized table.
+     */
     public String to(Format format) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(format, writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // StringWriter doesn't throw
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Streams this table to the given output, UTF-8 encoded. Rows are written one at a time through a bounded
+     * buffer, which is flushed before returning. The stream is not closed.
+     *
+     * @param format The output format.
+     * @param out    The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(Format format, OutputStream out) throws IOException {
+        switch (format) {
+            case RDF_XML:
+                toRdfModel().write(out, "RDF/XML");
+                break;
+            case ARROW_FILE:
+            case ARROW_STREAM:
+                if (!format.canWrite())
+                    throw new IOException("Apache Arrow isn't on the classpath");
+                ArrowTables.write(this, out, format == Format.ARROW_STREAM);
+                break;
+            case PARQUET:
+                ParquetWriter.write(this, out);
+                break;
+            default:
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                writeTo(format, writer);
+                writer.flush();
+        }
+        out.flush();
+    }
+
+    /**
+     * Streams this table to the given writer. The writer is flushed but not closed.
+     *
+     * @param format The output format. Must not be binary.
+     * @param writer The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(Format format, Writer writer) throws IOException {
+        if (format.isBinary())
+            throw new IllegalArgumentException(format + " is a binary format; write it to a stream");
+
         switch (format) {
             case JSON:
-                try {
-                    return toJSON(false);
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
+                writeJSON(writer, false);
+                break;
+            case NDJSON:
+                writeNDJSON(writer);
+                break;
             case RDF_XML:
-                return toRdfFormat("RDF/XML");
+                toRdfModel().write(writer, "RDF/XML");
+                break;
             case TURTLE:
-                return toRdfFormat("TURTLE");
+                writeRDF(new WriterStreamRDFBlocks(writer), getSchema()::getRDFProperty, false, null);
+                break;
+            case NTRIPLES:
+                writeRDF(StreamRDFLib.writer(writer), getSchema()::getAbsoluteRDFProperty, true, null);
+                break;
+            case NQUADS:
+                writeRDF(StreamRDFLib.writer(writer), getSchema()::getAbsoluteRDFProperty, true,
+                        name == null ? null : ColumnSchema.absoluteRDFName(name));
+                break;
             default:
-                return toCSV();
+                writeCSV(writer);
         }
+        writer.flush();
     }
 
-    private String toCSV() {
-        StringBuilder builder = new StringBuilder();
-        try {
-            CSVPrinter printer = FORMAT.withHeader(columnNames.toArray(new String[columnNames.size()])).print(builder);
-            printer.printRecords(cells);
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void writeCSV(Writer writer) throws IOException {
+        CSVPrinter printer = FORMAT.withHeader(getSchema().getCSVHeader()).print(writer);
+        for (int row = 0; row < store.getRowCount(); row++) {
+            int width = store.getRowWidth(row);
+            for (int i = 0; i < width; i++)
+                printer.print(store.get(row, i));
+            printer.println();
         }
-        return builder.toString();
+        printer.flush();
     }
 
-    private static List<Map<String, String>> toJSONData(Table table) {
-        List<Map<String, String>> data = new ArrayList<>();
-        for (List<String> row : table.cells) {
-            Map<String, String> map = new HashMap<>();
-            for (int i = 0; i < row.size(); i++) {
-                String cell = row.get(i);
-                map.put(table.getColumnName(i), cell);
-            }
-            data.add(map);
+    private void writeJSON(Writer writer, boolean prettyPrint) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+        if (prettyPrint)
+            generator.useDefaultPrettyPrinter();
+
+        ColumnSchema schema = getSchema();
+        generator.writeStartArray();
+        for (int row = 0; row < store.getRowCount(); row++)
+            writeJSONRow(generator, schema, row);
+        generator.writeEndArray();
+        generator.close(); // AUTO_CLOSE_TARGET is off; this only flushes
+    }
+
+    /**
+     * Writes one object per line, with no enclosing array, so that rows can be consumed one at a time.
+     */
+    private void writeNDJSON(Writer writer) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+        generator.setRootValueSeparator(null);
+
+        ColumnSchema schema = getSchema();
+        for (int row = 0; row < store.getRowCount(); row++) {
+            writeJSONRow(generator, schema, row);
+            generator.writeRaw('\n');
         }
-        return data;
+        generator.close();
     }
 
-    private String toJSON(boolean prettyPrint) throws JsonProcessingException {
-        List<Map<String, String>> data = toJSONData(this);
-        if (prettyPrint) {
-            return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(data);
-        } else {
-            return new ObjectMapper().writeValueAsString(data);
+    private void writeJSONRow(JsonGenerator generator, ColumnSchema schema, int row) throws IOException {
+        generator.writeStartObject();
+        int width = Math.min(store.getRowWidth(row), schema.size());
+        for (int i = 0; i < width; i++) {
+            if (schema.getJSONKey(i) == null)
+                continue;
+
+            generator.writeFieldName(schema.getJSONKey(i));
+            writeJSONValue(generator, store.getColumn(i), row);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a cell as the JSON type closest to its column's: numbers and booleans bare, and everything else as a
+     * string. That includes NaN and the infinities, which JSON has no numbers for.
+     */
+    private static void writeJSONValue(JsonGenerator generator, Column column, int row) throws IOException {
+        if (column.isNull(row)) {
+            generator.writeNull();
+            return;
+        }
+
+        switch (column.getType()) {
+            case LONG:
+                generator.writeNumber(column.getLong(row));
+                break;
+            case DOUBLE:
+                double value = column.getDouble(row);
+                if (Double.isNaN(value) || Double.isInfinite(value))
+                    generator.writeString(Double.toString(value));
+                else
+                    generator.writeNumber(value);
+                break;
+            case BOOLEAN:
+                generator.writeBoolean(column.getBoolean(row));
+                break;
+            default:
+                generator.writeString(column.get(row));
         }
     }
 
-    private String toRdfFormat(String lang) {
+    /**
+     * Only RDF/XML still needs the whole graph in memory, since Jena can't write it as a stream. RDF/XML writes
+     * properties as element names, so columns are named by IRIs that can be: see
+     * {@link ColumnSchema#getXMLRDFProperty(int)}.
+     */
+    private Model toRdfModel() {
         Model model = ModelFactory.createDefaultModel();
+        writeRDF(StreamRDFLib.graph(model.getGraph()), getSchema()::getXMLRDFProperty, false, null);
+        return model;
+    }
 
-        for (List<String> columns : cells) {
-            Resource row = model.createResource();
-            for (int i = 0; i < columns.size(); i++) {
-                String cell = columns.get(i);
-                String escapedName = UrlEscapers.urlFragmentEscaper().escape(columnNames.get(i));
-                row.addLiteral(model.createProperty("#", escapedName), cell);
+    /**
+     * Streams this table into an RDF sink a row at a time. Each row is a blank node, with a literal for each of its
+     * non-null cells under a property named after the cell's column. Cells in columns without a name are left out.
+     * Literals are typed after their column: xsd:integer, xsd:double, xsd:boolean, xsd:date, or plain for strings.
+     * <p>
+     * Line-based formats have to stand on their own, since their output is meant to be concatenated: there, columns
+     * are named by absolute IRIs, and blank node labels start with a prefix drawn afresh for every write, so that rows
+     * from different tables never become the same node.
+     *
+     * @param stream     The sink.
+     * @param properties The property each column's cells are stated under, by column, or null to leave it out.
+     * @param standalone Whether the output has to stand on its own.
+     * @param graph      The graph to put every triple in, or null for the default graph.
+     */
+    private void writeRDF(StreamRDF stream, IntFunction<Node> properties, boolean standalone, Node graph) {
+        ColumnSchema schema = getSchema();
+        // a counter after the prefix saves generating a UUID per row
+        String labelPrefix = standalone ? UUID.randomUUID().toString().replace("-", "") + "r" : "r";
+        stream.start();
+        for (int row = 0; row < store.getRowCount(); row++) {
+            Node subject = NodeFactory.createBlankNode(labelPrefix + row);
+            int width = Math.min(store.getRowWidth(row), schema.size());
+            for (int i = 0; i < width; i++) {
+                Node property = properties.apply(i);
+                String value = store.get(row, i);
+                if (property == null || value == null)
+                    continue;
+
+                Node object = rdfLiteral(value, schema.getRDFDatatype(i));
+                if (graph == null)
+                    stream.triple(Triple.create(subject, property, object));
+                else
+                    stream.quad(Quad.create(graph, subject, property, object));
             }
         }
+        stream.finish();
+    }
 
-        StringWriter writer = new StringWriter();
-        model.write(writer, lang);
-        return writer.toString();
+    private static Node rdfLiteral(String value, RDFDatatype datatype) {
+        if (datatype == null)
+            return NodeFactory.createLiteral(value);
+
+        // XML Schema spells the non-finite doubles differently to Java
+        if (datatype == XSDDatatype.XSDdouble && value.endsWith("Infinity"))
+            value = value.startsWith("-") ? "-INF" : "INF";
+        return NodeFactory.createLiteral(value, datatype);
     }
 
     @Override
@@ -154,12 +343,12 @@ public class Table {
         Table table = (Table) o;
         return Objects.equals(name, table.name) &&
                 Objects.equals(columnNames, table.columnNames) &&
-                Objects.equals(cells, table.cells);
+                Objects.equals(getCells(), table.getCells());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, columnNames, cells);
+        return Objects.hash(name, columnNames, getCells());
     }
 
     @Override
@@ -167,58 +356,196 @@ public class Table {
         return "Table{" +
                 "name='" + name + '\'' +
                 ", columnNames=" + columnNames +
-                ", cells=" + cells +
+                ", cells=" + getCells() +
                 '}';
     }
 
     public static Table fromCSV(String name, Reader reader) throws IOException {
-        CSVParser parser = FORMAT.parse(reader);
+        return fromCSV(name, FORMAT.parse(reader));
+    }
 
+    private static Table fromCSV(String name, CSVParser parser) {
         List<String> headers = getHeaders(parser);
-        List<List<String>> cells = new ArrayList<>();
+        ColumnStore.Builder cells = new ColumnStore.Builder();
+        List<String> row = new ArrayList<>();
         for (CSVRecord record : parser) {
-            List<String> row = new ArrayList<>();
+            row.clear();
             for (String value : record)
                 row.add(value);
-            cells.add(row);
+            cells.addRow(row);
         }
 
-        return new Table(name, headers, cells);
+        return new Table(name, headers, cells.build());
     }
 
-    public static Table fromXLS(String name, InputStream inputStream) throws IOException {
-        final Workbook wb;
-        try {
-            wb = WorkbookFactory.create(inputStream);
-        } catch (InvalidFormatException e) {
-            throw new IOException("Reading workbook", e);
+    /**
+     * Reads a table from UTF-8 encoded CSV. A byte order mark and any leading whitespace are skipped. Rows are
+     * parsed as they are decoded, so the input is never held in memory as a whole.
+     *
+     * @param name The name of the new table.
+     * @param in   The CSV data.
+     * @return The table.
+     * @throws IOException If reading fails.
+     */
+    public static Table fromCSV(String name, InputStream in) throws IOException {
+        return fromCSV(name, openCSV(in));
+    }
+
+    /**
+     * Reads a table from JSON: either an array of objects, or objects one after another as in NDJSON. Each object is
+     * a row, and each distinct key a column, in the order they first appear. Strings, numbers and booleans are read
+     * as their text, nested arrays and objects as compact JSON, and missing keys and nulls as null. Rows are parsed
+     * straight into the table as they are read, so the document is never held in memory as a whole.
+     *
+     * @param name The name of the new table.
+     * @param in   The JSON data, in any encoding JSON allows. Not closed.
+     * @return The table.
+     * @throws IOException If reading fails or the data isn't a list of objects.
+     */
+    public static Table fromJSON(String name, InputStream in) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            return fromJSON(name, parser);
         }
+    }
 
-        // for now, only handle the first sheet
-        final Sheet sheet = wb.getSheetAt(0);
+    public static Table fromJSON(String name, Reader reader) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(reader)) {
+            return fromJSON(name, parser);
+        }
+    }
+
+    private static Table fromJSON(String name, JsonParser parser) throws IOException {
+        List<String> columnNames = new ArrayList<>();
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        ColumnStore.Builder cells = new ColumnStore.Builder();
+        List<String> row = new ArrayList<>();
+
+        JsonToken token = parser.nextToken();
+        boolean array = token == JsonToken.START_ARRAY;
+        if (array)
+            token = parser.nextToken();
+
+        while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+            if (token != JsonToken.START_OBJECT)
+                throw new JsonParseException("Expected an object for each row, but found " + token,
+                        parser.getCurrentLocation());
+
+            row.clear();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.getCurrentName();
+                Integer index = columnIndexes.get(key);
+                if (index == null) {
+                    index = columnNames.size();
+                    columnNames.add(key);
+                    columnIndexes.put(key, index);
+                }
+                while (row.size() <= index)
+                    row.add(null);
+
+                parser.nextToken();
+                row.set(index, readJSONValue(parser));
+            }
+            cells.addRow(row);
+            token = parser.nextToken();
+        }
 
-        final Row headerRow = sheet.getRow(0);
-        List<String> headers = getHeaders(headerRow);
+        return new Table(name, columnNames, cells.build());
+    }
+
+    private static String readJSONValue(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_NULL:
+                return null;
+            case START_ARRAY:
+            case START_OBJECT:
+                StringWriter nested = new StringWriter();
+                try (JsonGenerator generator = JSON_FACTORY.createGenerator(nested)) {
+                    generator.copyCurrentStructure(parser);
+                }
+                return nested.toString();
+            default:
+                return parser.getText();
+        }
+    }
 
-        int runningWidth = headers.size();
-        List<List<String>> tableCells = new ArrayList<>();
+    /**
+     * Reads a table from Apache Arrow IPC data, in either the file or the streaming format.
+     *
+     * @param name The name of the new table.
+     * @param in   The Arrow data.
+     * @return The table.
+     * @throws IOException If reading fails, or Apache Arrow isn't on the classpath.
+     */
+    public static Table fromArrow(String name, InputStream in) throws IOException {
+        if (!Format.ARROW_FILE.canRead())
+            throw new IOException("Apache Arrow isn't on the classpath");
+        return ArrowTables.read(name, in);
+    }
 
-        final Iterator<Row> rows = sheet.rowIterator();
-        rows.next();
-        while (rows.hasNext()) {
-            final List<String> resultRow = new LinkedList<>();
-            final Row row = rows.next();
-            for (Cell cell : row) {
-                resultRow.add(getCellValueAsString(cell));
+    /**
+     * Copies a table source into memory. Tables are returned as they are.
+     *
+     * @param source The source.
+     * @return The table.
+     * @throws IOException If reading the source fails.
+     */
+    public static Table copyOf(TableSource source) throws IOException {
+        if (source instanceof Table)
+            return (Table) source;
+
+        ColumnStore.Builder cells = new ColumnStore.Builder();
+        List<String> row = new ArrayList<>();
+        try (RowCursor cursor = source.open()) {
+            while (cursor.next()) {
+                row.clear();
+                for (int i = 0; i < cursor.getWidth(); i++)
+                    row.add(cursor.get(i));
+                cells.addRow(row);
             }
-            tableCells.add(resultRow);
-            runningWidth = Math.max(runningWidth, resultRow.size());
         }
 
-        return new Table(name, headers, tableCells);
+        return new Table(source.getName(), source.getColumnNames(), cells.build());
+    }
+
+    static CSVParser openCSV(InputStream in) throws IOException {
+        PushbackReader reader = new PushbackReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int c;
+        do {
+            c = reader.read();
+        } while (c == '\uFEFF' || (c != -1 && Character.isWhitespace(c)));
+        if (c != -1)
+            reader.unread(c);
+
+        return FORMAT.parse(reader);
     }
 
-    private static List<String> getHeaders(CSVParser parser) {
+    /**
+     * Reads the first sheet of an Excel workbook, .xls or .xlsx, using its first row as the header. The format is
+     * detected from the data itself. Cells are streamed into the table as the sheet is parsed; see
+     * {@link WorkbookReader} for how they're converted to strings.
+     *
+     * @param name        The name of the new table.
+     * @param inputStream The workbook data. Not closed.
+     * @return The table.
+     * @throws IOException If reading fails or the data isn't a workbook.
+     */
+    public static Table fromXLS(String name, InputStream inputStream) throws IOException {
+        return WorkbookReader.read(name, inputStream);
+    }
+
+    /**
+     * Reads every worksheet of an Excel workbook, .xls or .xlsx, into its own table named after the sheet. Each
+     * sheet's first row is its header, and sheets without any rows are skipped.
+     *
+     * @param inputStream The workbook data. Not closed.
+     * @return The tables, in workbook order.
+     * @throws IOException If reading fails or the data isn't a workbook.
+     */
+    public static List<Table> fromXLSSheets(InputStream inputStream) throws IOException {
+        return WorkbookReader.readAll(inputStream);
+    }
+
+    static List<String> getHeaders(CSVParser parser) {
         if (parser.getHeaderMap() == null)
             return new ArrayList<>();
 
@@ -226,36 +553,4 @@ public class Table {
         entries.sort(Comparator.comparing(Map.Entry::getValue));
         return entries.stream().map(Map.Entry::getKey).collect(Collectors.toList());
     }
-
-    private static List<String> getHeaders(Row headerRow) {
-        final Iterable<Cell> iterable = headerRow::cellIterator;
-        final Stream<Cell> stream = StreamSupport.stream(iterable.spliterator(), false);
-        return stream.map(Table::getCellValueAsString).collect(Collectors.toList());
-    }
-
-    private static String getCellValueAsString(Cell cell) {
-        switch (cell.getCellType()) {
-            case Cell.CELL_TYPE_BLANK: {
-                return "";
-            }
-            case Cell.CELL_TYPE_BOOLEAN: {
-                return Boolean.toString(cell.getBooleanCellValue());
-            }
-            case Cell.CELL_TYPE_ERROR: {
-                return "!! ERROR !!";
-            }
-            case Cell.CELL_TYPE_FORMULA: {
-                return cell.getCellFormula();
-            }
-            case Cell.CELL_TYPE_NUMERIC: {
-                return Double.toString(cell.getNumericCellValue());
-            }
-            case Cell.CELL_TYPE_STRING: {
-                return cell.getStringCellValue();
-            }
-            default: {
-                return "!! UNKNOWN CELL TYPE " + cell.getCellType() + " !!";
-            }
-        }
-    }
 }
@@ -0,0 +1,96 @@
+package im.abe.pdfdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A format tables can be read from, written in, or both. The built-in formats are the {@link Format}s and Excel
+ * workbooks; others are plugged in with {@link java.util.ServiceLoader}, by listing their implementing classes in a
+ * {@code META-INF/services/im.abe.pdfdata.TableFormat} file on the classpath. The command-line tool and the web
+ * service look every format up through {@link TableFormats}, so a plugin is all it takes to add one.
+ */
+public interface TableFormat {
+    /**
+     * @return The name the format is chosen by, such as "CSV". Matched without regard to case.
+     */
+    String getName();
+
+    /**
+     * @return Other names the format can be chosen by.
+     */
+    default List<String> getAliases() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return The file extensions of the format, in lower case and with the dot. The first is given to files written
+     * in it.
+     */
+    List<String> getExtensions();
+
+    /**
+     * @return The MIME types of the format, in lower case and without parameters. The first is given to data
+     * written in it.
+     */
+    List<String> getMimeTypes();
+
+    /**
+     * @return Whether the format is binary, rather than text.
+     */
+    default boolean isBinary() {
+        return false;
+    }
+
+    /**
+     * Checks whether some data starts the way this format's does. Only formats with something distinctive to look
+     * for, like a magic number, should claim data, since the first format to claim it is the one it's read with.
+     *
+     * @param head   The start of the data: up to {@link TableFormats#SNIFF_LENGTH} bytes of it.
+     * @param length The number of bytes in {@code head}, which is less than its length if the data is short.
+     * @return True if the data looks like it's in this format.
+     */
+    default boolean sniff(byte[] head, int length) {
+        return false;
+    }
+
+    /**
+     * @return Whether {@link #read(String, InputStream)} is supported.
+     */
+    default boolean canRead() {
+        return false;
+    }
+
+    /**
+     * Reads the tables in some data. Formats that hold a single table give it the name passed in; formats that hold
+     * several, like workbooks, name each one themselves.
+     *
+     * @param name The name of the table.
+     * @param in   The data. Not closed.
+     * @return The tables.
+     * @throws IOException If reading fails or the data isn't in this format.
+     */
+    default List<Table> read(String name, InputStream in) throws IOException {
+        throw new UnsupportedOperationException(getName() + " can't be read");
+    }
+
+    /**
+     * @return Whether {@link #write(Table, OutputStream)} is supported.
+     */
+    default boolean canWrite() {
+        return false;
+    }
+
+    /**
+     * Writes a table in this format.
+     *
+     * @param table The table.
+     * @param out   The stream to write to. Flushed, but not closed.
+     * @throws IOException If writing fails.
+     */
+    default void write(Table table, OutputStream out) throws IOException {
+        throw new UnsupportedOperationException(getName() + " can't be written");
+    }
+}
@@ -0,0 +1,194 @@
+package im.abe.pdfdata;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * The registry of {@link TableFormat}s: the ones plugged in with {@link ServiceLoader}, then the built-in ones. Since
+ * plugins come first, one can take over a built-in format's name, extension or MIME type.
+ * <p>
+ * Input with a magic number is identified by its content: the first {@link #SNIFF_LENGTH} bytes are offered to each
+ * format in turn, which is how workbooks and Arrow data are recognized whatever they're called. Anything else goes by
+ * its file name, then its MIME type. Failing those, text that opens with a bracket or brace is read as JSON, and
+ * anything else as CSV.
+ */
+public final class TableFormats {
+    /**
+     * How much of the input formats get to look at when it's sniffed.
+     */
+    public static final int SNIFF_LENGTH = 8192;
+
+    private static final List<TableFormat> PLUGINS = loadPlugins();
+    private static final List<TableFormat> FORMATS = withBuiltIns(PLUGINS);
+
+    private TableFormats() {
+    }
+
+    private static List<TableFormat> loadPlugins() {
+        List<TableFormat> plugins = new ArrayList<>();
+        for (TableFormat format : ServiceLoader.load(TableFormat.class))
+            plugins.add(format);
+        return Collections.unmodifiableList(plugins);
+    }
+
+    private static List<TableFormat> withBuiltIns(List<TableFormat> plugins) {
+        List<TableFormat> formats = new ArrayList<>(plugins);
+        formats.add(WorkbookReader.FORMAT);
+        formats.addAll(Arrays.asList(Format.values()));
+        return Collections.unmodifiableList(formats);
+    }
+
+    /**
+     * @return Every format, plugins first.
+     */
+    public static List<TableFormat> all() {
+        return FORMATS;
+    }
+
+    /**
+     * @return The formats plugged in with {@link ServiceLoader}, in the order they were found.
+     */
+    public static List<TableFormat> plugins() {
+        return PLUGINS;
+    }
+
+    /**
+     * Finds a format by its name or one of its aliases, without regard to case.
+     *
+     * @param name The name.
+     * @return The format, or null if there's none by that name.
+     */
+    public static TableFormat find(String name) {
+        for (TableFormat format : FORMATS) {
+            if (isNamed(format, name))
+                return format;
+        }
+        return null;
+    }
+
+    static boolean isNamed(TableFormat format, String name) {
+        if (format.getName().equalsIgnoreCase(name))
+            return true;
+        for (String alias : format.getAliases()) {
+            if (alias.equalsIgnoreCase(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the readable format a file name's extension belongs to.
+     *
+     * @param fileName The file name, or null.
+     * @return The format, or null if the extension isn't known or there is none.
+     */
+    public static TableFormat forFileName(String fileName) {
+        if (fileName == null || Files.getFileExtension(fileName).isEmpty())
+            return null;
+
+        String extension = "." + Files.getFileExtension(fileName).toLowerCase();
+        for (TableFormat format : FORMATS) {
+            if (format.canRead() && format.getExtensions().contains(extension))
+                return format;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the readable format a MIME type belongs to.
+     *
+     * @param mime The MIME type, possibly with parameters, or null.
+     * @return The format, or null if the type isn't known.
+     */
+    public static TableFormat forMimeType(String mime) {
+        if (mime == null)
+            return null;
+
+        String type = mime.split(";")[0].trim().toLowerCase();
+        for (TableFormat format : FORMATS) {
+            if (format.canRead() && format.getMimeTypes().contains(type))
+                return format;
+        }
+        return null;
+    }
+
+    /**
+     * Works out which readable format some data is in: by its content if any format recognizes its magic number,
+     * otherwise by its file name, then its MIME type. If none of those settle it, data whose first character is a
+     * bracket or brace is taken for JSON, since CSV rarely starts that way, and anything else for CSV.
+     *
+     * @param head     The start of the data, up to {@link #SNIFF_LENGTH} bytes.
+     * @param length   The number of bytes in {@code head}.
+     * @param fileName The data's file name, or null if it has none.
+     * @param mime     The data's MIME type, or null if it isn't known.
+     * @return The format.
+     */
+    public static TableFormat detect(byte[] head, int length, String fileName, String mime) {
+        for (TableFormat format : FORMATS) {
+            if (format.canRead() && format.sniff(head, length))
+                return format;
+        }
+
+        TableFormat format = forFileName(fileName);
+        if (format == null)
+            format = forMimeType(mime);
+        if (format != null)
+            return format;
+
+        // a guess that a known name or type should always override, since a CSV heading can start with a bracket
+        int first = firstCharacter(head, length);
+        if (first == '[')
+            return Format.JSON;
+        return first == '{' ? Format.NDJSON : Format.CSV;
+    }
+
+    /**
+     * Reads the tables in some data, in whichever format {@link #detect(byte[], int, String, String)} finds it's in.
+     *
+     * @param name     The name for the table, if the format holds just one.
+     * @param in       The data. Not closed.
+     * @param fileName The data's file name, or null if it has none.
+     * @param mime     The data's MIME type, or null if it isn't known.
+     * @return The tables.
+     * @throws IOException If reading fails.
+     */
+    public static List<Table> read(String name, InputStream in, String fileName, String mime) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, SNIFF_LENGTH);
+        buffered.mark(SNIFF_LENGTH);
+        byte[] head = new byte[SNIFF_LENGTH];
+        int length = ByteStreams.read(buffered, head, 0, head.length);
+        buffered.reset();
+
+        return detect(head, length, fileName, mime).read(name, buffered);
+    }
+
+    // Helpers for sniffing.
+
+    /**
+     * @return True if the data begins with the given bytes.
+     */
+    static boolean startsWith(byte[] head, int length, byte[] prefix) {
+        if (length < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (head[i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The first character of the data that isn't whitespace or a UTF-8 byte order mark, or -1 if there's none.
+     */
+    static int firstCharacter(byte[] head, int length) {
+        int i = startsWith(head, length, new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}) ? 3 : 0;
+        while (i < length && (head[i] == ' ' || head[i] == '\t' || head[i] == '\r' || head[i] == '\n'))
+            i++;
+        return i < length ? head[i] & 0xFF : -1;
+    }
+}
@@ -0,0 +1,30 @@
+package im.abe.pdfdata;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A named source of tabular data that can be read row by row without holding the whole table in memory.
+ * {@link Table} is itself a source; storages return sources that read straight from the document where they can.
+ * <p>
+ * Sources that read from a document are only valid while the document is open.
+ */
+public interface TableSource {
+    String getName();
+
+    /**
+     * Returns the column headings of this source. May need to read the start of the underlying data.
+     *
+     * @return The column names.
+     * @throws IOException If reading fails.
+     */
+    List<String> getColumnNames() throws IOException;
+
+    /**
+     * Opens a new cursor positioned before the first row. Each call starts again from the beginning.
+     *
+     * @return The cursor. Must be closed by the caller.
+     * @throws IOException If the data can't be opened.
+     */
+    RowCursor open() throws IOException;
+}
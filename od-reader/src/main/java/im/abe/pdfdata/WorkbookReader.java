@@ -0,0 +1,705 @@
+package im.abe.pdfdata;
+
+import org.apache.poi.POIXMLDocument;
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.SharedFormula;
+import org.apache.poi.ss.formula.ptg.ExpPtg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads Excel workbooks with POI's event APIs: SAX over the sheet XML for .xlsx, and the record stream for .xls.
+ * Cells go straight into a {@link ColumnStore.Builder} as they're parsed, so no workbook model is ever built.
+ * <p>
+ * The input is spooled to a temporary file first, which lets both formats be read from disk rather than memory and
+ * lets the format be told from the file's magic bytes rather than its name.
+ * <p>
+ * Cells are converted the same way the old usermodel-based reader did: numbers with {@link Double#toString(double)},
+ * formula cells to their formula text, errors to {@code "!! ERROR !!"}, and blank cells to "". Like the usermodel,
+ * only cells that are present in the file are read, so a row's cells are packed together in column order.
+ */
+class WorkbookReader {
+    private static final String ERROR = "!! ERROR !!";
+
+    /**
+     * Parses the sheets of .xlsx workbooks. Bounded, and kept apart from the common fork-join pool, since sheet
+     * parsing blocks on I/O and callers such as the CLI's parallel reads and the web service use that pool too.
+     */
+    private static final ExecutorService SHEET_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "workbook-sheets");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Excel workbooks, .xls or .xlsx, as a read-only {@link TableFormat}. Workbooks are recognized by the OLE2 or ZIP
+     * header they start with, which is as far as POI itself looks. Every sheet is read, into a table named after it.
+     */
+    static final TableFormat FORMAT = new TableFormat() {
+        private final byte[] ole2Magic = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+                (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+        private final byte[] zipMagic = {'P', 'K', 3, 4};
+
+        @Override
+        public String getName() {
+            return "EXCEL";
+        }
+
+        @Override
+        public List<String> getAliases() {
+            return Arrays.asList("XLS", "XLSX", "WORKBOOK");
+        }
+
+        @Override
+        public List<String> getExtensions() {
+            return Arrays.asList(".xlsx", ".xls");
+        }
+
+        @Override
+        public List<String> getMimeTypes() {
+            return Arrays.asList("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+                    "application/vnd.ms-excel");
+        }
+
+        @Override
+        public boolean isBinary() {
+            return true;
+        }
+
+        @Override
+        public boolean sniff(byte[] head, int length) {
+            return TableFormats.startsWith(head, length, ole2Magic) || TableFormats.startsWith(head, length, zipMagic);
+        }
+
+        @Override
+        public boolean canRead() {
+            return true;
+        }
+
+        @Override
+        public List<Table> read(String name, InputStream in) throws IOException {
+            return readAll(in);
+        }
+    };
+
+    private WorkbookReader() {
+    }
+
+    /**
+     * Reads the first sheet of a workbook. The sheet's first row is used as the table's header.
+     *
+     * @param name The name of the new table.
+     * @param in   The .xls or .xlsx data. Not closed.
+     * @return The table.
+     * @throws IOException If reading fails or the data isn't an Excel workbook.
+     */
+    static Table read(String name, InputStream in) throws IOException {
+        List<SheetBuilder> sheets = read(in, true);
+        if (sheets.isEmpty())
+            throw new IOException("Workbook has no sheets");
+        return sheets.get(0).build(name);
+    }
+
+    /**
+     * Reads every worksheet of a workbook into a table named after the sheet, in workbook order. Sheets without any
+     * rows are left out. The sheets of an .xlsx workbook are parsed concurrently once its shared strings are loaded.
+     *
+     * @param in The .xls or .xlsx data. Not closed.
+     * @return The tables.
+     * @throws IOException If reading fails or the data isn't an Excel workbook.
+     */
+    static List<Table> readAll(InputStream in) throws IOException {
+        List<Table> tables = new ArrayList<>();
+        for (SheetBuilder sheet : read(in, false)) {
+            if (sheet.headers != null)
+                tables.add(sheet.build(sheet.name));
+        }
+        return tables;
+    }
+
+    private static List<SheetBuilder> read(InputStream in, boolean firstOnly) throws IOException {
+        Path file = Files.createTempFile("pdfdata", ".workbook");
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+
+            final boolean ole2, ooxml;
+            try (InputStream header = new BufferedInputStream(Files.newInputStream(file))) {
+                ole2 = POIFSFileSystem.hasPOIFSHeader(header);
+                ooxml = !ole2 && POIXMLDocument.hasOOXMLHeader(header);
+            }
+
+            if (ole2) {
+                return readHSSF(file, firstOnly);
+            } else if (ooxml) {
+                return readXSSF(file, firstOnly);
+            } else {
+                throw new IOException("Not an Excel workbook");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<SheetBuilder> readXSSF(Path file, boolean firstOnly) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+            List<SheetBuilder> sheets = new ArrayList<>();
+            List<PackagePart> parts = new ArrayList<>();
+            XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (iterator.hasNext() && !(firstOnly && !sheets.isEmpty())) {
+                iterator.next().close(); // opened eagerly by the iterator; each sheet is re-opened by its own task
+                sheets.add(new SheetBuilder(iterator.getSheetName()));
+                parts.add(iterator.getSheetPart());
+            }
+
+            if (sheets.size() == 1) {
+                parseSheet(parts.get(0), new SheetHandler(strings, 0, sheets.get(0)));
+                return sheets;
+            }
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < sheets.size(); i++) {
+                PackagePart part = parts.get(i);
+                SheetHandler handler = new SheetHandler(strings, i, sheets.get(i));
+                tasks.add(SHEET_EXECUTOR.submit(() -> {
+                    parseSheet(part, handler);
+                    return null;
+                }));
+            }
+            joinAll(tasks);
+            return sheets;
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Reading workbook", e);
+        } finally {
+            if (pkg != null)
+                pkg.revert(); // read-only, so there's nothing to save
+        }
+    }
+
+    private static void parseSheet(PackagePart part, SheetHandler handler) throws IOException, SAXException {
+        try (InputStream sheetData = part.getInputStream()) {
+            XMLReader xmlReader = SAXHelper.newXMLReader();
+            xmlReader.setContentHandler(handler);
+            xmlReader.parse(new InputSource(sheetData));
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Waits for every sheet task, then rethrows whatever the first of them failed with. The tasks are all waited for,
+     * even after one has failed or the wait is interrupted, since they read from a package that's closed and deleted
+     * as soon as this returns.
+     */
+    private static void joinAll(List<Future<?>> tasks) throws IOException, SAXException {
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading workbook");
+        }
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof SAXException)
+            throw (SAXException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure != null)
+            throw new IOException("Reading workbook", failure);
+    }
+
+    private static List<SheetBuilder> readHSSF(Path file, boolean firstOnly) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file.toFile())) {
+            RecordListener listener = new RecordListener(firstOnly);
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(listener);
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+            return listener.sheets;
+        } catch (HSSFUserException e) {
+            throw new IOException("Reading workbook", e);
+        }
+    }
+
+    /**
+     * Collects one sheet's rows. The first row becomes the header; the rest go into the column store.
+     */
+    private static class SheetBuilder {
+        private final String name;
+        private final ColumnStore.Builder cells = new ColumnStore.Builder();
+        private final List<String> row = new ArrayList<>();
+        private List<String> headers;
+
+        SheetBuilder(String name) {
+            this.name = name;
+        }
+
+        void startRow() {
+            row.clear();
+        }
+
+        void cell(String value) {
+            row.add(value);
+        }
+
+        void endRow() {
+            if (headers == null)
+                headers = new ArrayList<>(row);
+            else
+                cells.addRow(row);
+        }
+
+        Table build(String name) {
+            return new Table(name, headers == null ? new ArrayList<>() : headers, cells.build());
+        }
+    }
+
+    /**
+     * SAX handler for one worksheet part. Shared formulas are re-based onto each cell the same way
+     * {@code XSSFCell.getCellFormula()} does it; if that isn't possible without the workbook (a formula that uses a
+     * defined name, say), the cell's cached value is used instead.
+     */
+    private static class SheetHandler extends DefaultHandler {
+        private final ReadOnlySharedStringsTable strings;
+        private final int sheetIndex;
+        private final SheetBuilder sheet;
+
+        /**
+         * Shared formulas by their "si" index: the formula text and the cell it's written relative to.
+         */
+        private final Map<String, String[]> sharedFormulas = new HashMap<>();
+
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        private final StringBuilder inlineString = new StringBuilder();
+        private StringBuilder text;
+
+        private String cellType;
+        private String cellReference;
+        private int column;
+        private int rowIndex;
+        private boolean hasValue;
+        private boolean hasFormula;
+        private String sharedIndex;
+        private String sharedRange;
+        private boolean inPhonetic;
+
+        SheetHandler(ReadOnlySharedStringsTable strings, int sheetIndex, SheetBuilder sheet) {
+            this.strings = strings;
+            this.sheetIndex = sheetIndex;
+            this.sheet = sheet;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = r == null ? rowIndex + 1 : Integer.parseInt(r) - 1;
+                    column = -1;
+                    sheet.startRow();
+                    break;
+                case "c":
+                    cellType = attributes.getValue("t");
+                    cellReference = attributes.getValue("r");
+                    column = cellReference == null ? column + 1 : getColumn(cellReference);
+                    value.setLength(0);
+                    formula.setLength(0);
+                    inlineString.setLength(0);
+                    hasValue = false;
+                    hasFormula = false;
+                    sharedIndex = null;
+                    sharedRange = null;
+                    break;
+                case "v":
+                    hasValue = true;
+                    text = value;
+                    break;
+                case "f":
+                    hasFormula = true;
+                    if ("shared".equals(attributes.getValue("t"))) {
+                        sharedIndex = attributes.getValue("si");
+                        sharedRange = attributes.getValue("ref");
+                    }
+                    text = formula;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    if ("inlineStr".equals(cellType) && !inPhonetic) {
+                        hasValue = true;
+                        text = inlineString;
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (text != null)
+                text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "f":
+                case "t":
+                    text = null;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "c":
+                    sheet.cell(getCellValue());
+                    break;
+                case "row":
+                    sheet.endRow();
+                    break;
+            }
+        }
+
+        private String getCellValue() {
+            if (hasFormula) {
+                String f = sharedIndex == null ? formula.toString() : getSharedFormula();
+                if (f != null)
+                    return f;
+            }
+
+            if (!hasValue)
+                return "";
+
+            if (cellType == null)
+                return Double.toString(Double.parseDouble(value.toString()));
+            switch (cellType) {
+                case "n":
+                    return Double.toString(Double.parseDouble(value.toString()));
+                case "s":
+                    return strings.getEntryAt(Integer.parseInt(value.toString()));
+                case "inlineStr":
+                    return inlineString.toString();
+                case "b":
+                    return Boolean.toString("1".equals(value.toString()));
+                case "e":
+                    return ERROR;
+                default:
+                    return value.toString();
+            }
+        }
+
+        /**
+         * Works out the zero-based column of an A1-style cell reference. Much cheaper than a {@link CellReference},
+         * which matters since every cell has one.
+         */
+        private static int getColumn(String reference) {
+            int column = 0;
+            for (int i = 0; i < reference.length(); i++) {
+                char c = reference.charAt(i);
+                if (c >= 'A' && c <= 'Z')
+                    column = column * 26 + c - 'A' + 1;
+                else if (c != '$')
+                    break;
+            }
+            return column - 1;
+        }
+
+        /**
+         * @return The formula text of a shared formula cell, or null if it can't be worked out.
+         */
+        private String getSharedFormula() {
+            if (sharedRange != null)
+                sharedFormulas.put(sharedIndex, new String[]{formula.toString(), sharedRange.split(":")[0]});
+
+            String[] shared = sharedFormulas.get(sharedIndex);
+            if (shared == null)
+                return null;
+
+            try {
+                CellReference anchor = new CellReference(shared[1]);
+                XSSFEvaluationWorkbook workbook = XSSFEvaluationWorkbook.create(null);
+                Ptg[] ptgs = FormulaParser.parse(shared[0], workbook, FormulaType.CELL, sheetIndex);
+                ptgs = new SharedFormula(SpreadsheetVersion.EXCEL2007)
+                        .convertSharedFormulas(ptgs, rowIndex - anchor.getRow(), column - anchor.getCol());
+                return FormulaRenderer.toFormulaString(workbook, ptgs);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Record listener for the worksheets of a BIFF8 workbook. Rows are declared by {@link RowRecord}s in blocks ahead
+     * of their cells; declared rows that never get a cell still come out, as empty rows, in row order.
+     */
+    private static class RecordListener extends AbortableHSSFListener {
+        private final boolean firstOnly;
+        private final List<SheetBuilder> sheets = new ArrayList<>();
+
+        /**
+         * Collects the workbook-level records that formulas need to be turned back into text.
+         */
+        private final EventWorkbookBuilder.SheetRecordCollectingListener workbookListener =
+                new EventWorkbookBuilder.SheetRecordCollectingListener(record -> {
+                });
+        private SSTRecord strings;
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<>();
+        private BoundSheetRecord[] orderedSheets;
+
+        /**
+         * Nesting depth of BOF records. Sheet substreams are at depth 1; anything deeper is an embedded chart or the
+         * like.
+         */
+        private int depth;
+        private int substream = -1;
+
+        /**
+         * The worksheet being read, or null outside one.
+         */
+        private SheetBuilder sheet;
+
+        private final TreeSet<Integer> declaredRows = new TreeSet<>();
+        private int currentRow = -1;
+        private final Map<Integer, SharedFormulaRecord> sharedFormulas = new HashMap<>();
+        private FormulaRecord lastFormula;
+
+        /**
+         * Cells of the current row whose shared formula hadn't been seen yet when they were read, by position.
+         */
+        private final Map<Integer, FormulaRecord> pendingFormulas = new HashMap<>();
+        private final List<String> row = new ArrayList<>();
+
+        RecordListener(boolean firstOnly) {
+            this.firstOnly = firstOnly;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            workbookListener.processRecord(record);
+
+            if (record instanceof SSTRecord) {
+                strings = (SSTRecord) record;
+                return 0;
+            } else if (record instanceof BoundSheetRecord) {
+                boundSheets.add((BoundSheetRecord) record);
+                return 0;
+            }
+
+            if (record instanceof BOFRecord) {
+                int type = ((BOFRecord) record).getType();
+                if (++depth == 1 && type != BOFRecord.TYPE_WORKBOOK) {
+                    substream++;
+                    if (type == BOFRecord.TYPE_WORKSHEET)
+                        startSheet();
+                }
+                return 0;
+            }
+
+            if (record instanceof EOFRecord) {
+                if (--depth == 0 && sheet != null) {
+                    endRow();
+                    while (!declaredRows.isEmpty())
+                        emptyRow();
+                    sheet = null;
+                    if (firstOnly)
+                        return 1;
+                }
+                return 0;
+            }
+            if (sheet == null || depth > 1)
+                return 0;
+
+            if (record instanceof RowRecord) {
+                int rowNumber = ((RowRecord) record).getRowNumber();
+                if (rowNumber > currentRow)
+                    declaredRows.add(rowNumber);
+            } else if (record instanceof SharedFormulaRecord && lastFormula != null) {
+                sharedFormulas.put(key(lastFormula.getRow(), lastFormula.getColumn()), (SharedFormulaRecord) record);
+            } else if (record instanceof CellValueRecordInterface) {
+                cell((CellValueRecordInterface) record);
+            } else if (record instanceof MulBlankRecord) {
+                MulBlankRecord blanks = (MulBlankRecord) record;
+                startRow(blanks.getRow());
+                for (int i = 0; i < blanks.getNumColumns(); i++)
+                    row.add("");
+            } else if (record instanceof MulRKRecord) {
+                MulRKRecord numbers = (MulRKRecord) record;
+                startRow(numbers.getRow());
+                for (int i = 0; i < numbers.getNumColumns(); i++)
+                    row.add(Double.toString(numbers.getRKNumberAt(i)));
+            }
+            return 0;
+        }
+
+        private void startSheet() {
+            if (orderedSheets == null)
+                orderedSheets = BoundSheetRecord.orderByBofPosition(boundSheets);
+            String name = substream < orderedSheets.length
+                    ? orderedSheets[substream].getSheetname() : "Sheet" + (substream + 1);
+
+            sheet = new SheetBuilder(name);
+            sheets.add(sheet);
+            declaredRows.clear();
+            currentRow = -1;
+            sharedFormulas.clear();
+            lastFormula = null;
+        }
+
+        private void cell(CellValueRecordInterface record) {
+            startRow(record.getRow());
+
+            if (record instanceof FormulaRecord) {
+                FormulaRecord formula = (FormulaRecord) record;
+                lastFormula = formula;
+                if (formula.isSharedFormula()) {
+                    pendingFormulas.put(row.size(), formula);
+                    row.add(null);
+                } else {
+                    row.add(toFormulaString(formula.getParsedExpression()));
+                }
+            } else if (record instanceof NumberRecord) {
+                row.add(Double.toString(((NumberRecord) record).getValue()));
+            } else if (record instanceof RKRecord) {
+                row.add(Double.toString(((RKRecord) record).getRKNumber()));
+            } else if (record instanceof LabelSSTRecord) {
+                row.add(strings.getString(((LabelSSTRecord) record).getSSTIndex()).getString());
+            } else if (record instanceof LabelRecord) {
+                row.add(((LabelRecord) record).getValue());
+            } else if (record instanceof BoolErrRecord) {
+                BoolErrRecord boolErr = (BoolErrRecord) record;
+                row.add(boolErr.isBoolean() ? Boolean.toString(boolErr.getBooleanValue()) : ERROR);
+            } else if (record instanceof BlankRecord) {
+                row.add("");
+            }
+        }
+
+        private void startRow(int rowNumber) {
+            if (rowNumber == currentRow)
+                return;
+
+            endRow();
+            while (!declaredRows.isEmpty() && declaredRows.first() < rowNumber)
+                emptyRow();
+            declaredRows.remove(rowNumber);
+            currentRow = rowNumber;
+        }
+
+        private void endRow() {
+            if (currentRow < 0)
+                return;
+
+            for (Map.Entry<Integer, FormulaRecord> pending : pendingFormulas.entrySet())
+                row.set(pending.getKey(), getSharedFormula(pending.getValue()));
+            pendingFormulas.clear();
+
+            sheet.startRow();
+            for (String value : row)
+                sheet.cell(value);
+            sheet.endRow();
+            row.clear();
+            currentRow = -1;
+        }
+
+        /**
+         * Emits the first declared row that hasn't been seen yet. It has no cells.
+         */
+        private void emptyRow() {
+            declaredRows.pollFirst();
+            sheet.startRow();
+            sheet.endRow();
+        }
+
+        private String getSharedFormula(FormulaRecord formula) {
+            Ptg[] ptgs = formula.getParsedExpression();
+            if (ptgs.length > 0 && ptgs[0] instanceof ExpPtg) {
+                ExpPtg anchor = (ExpPtg) ptgs[0];
+                SharedFormulaRecord shared = sharedFormulas.get(key(anchor.getRow(), anchor.getColumn()));
+                if (shared != null)
+                    return toFormulaString(shared.getFormulaTokens(formula));
+            }
+            return Double.toString(formula.getValue());
+        }
+
+        private String toFormulaString(Ptg[] ptgs) {
+            return HSSFFormulaParser.toFormulaString(workbookListener.getStubHSSFWorkbook(), ptgs);
+        }
+
+        private static int key(int row, int column) {
+            return row << 8 | column & 0xFF;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.adobe.xmp.XMPMeta;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.io.IOException;
+import java.util.List;
 
 public abstract class WritableDataStorage extends DataStorage {
     /**
@@ -19,4 +20,41 @@ public abstract class WritableDataStorage extends DataStorage {
      */
     public abstract void write(PDDocument doc, XMPMeta xmp, Table data,
                                Destination destination) throws XMPException, IOException;
+
+    /**
+     * Writes several tables to the given document at once. Storage methods override this to update each part of the
+     * document they touch once for the whole batch, rather than once per table. By default, the tables are simply
+     * written one by one.
+     *
+     * @param doc        The document.
+     * @param xmp        The document's metadata. Can be modified to update it on disk.
+     * @param placements The tables to write and where to write them, in order.
+     * @throws XMPException If an XMP error occurs.
+     * @throws IOException  If an I/O error occurs. (Unlikely.)
+     */
+    public void writeAll(PDDocument doc, XMPMeta xmp, List<Placement> placements) throws XMPException, IOException {
+        for (Placement placement : placements)
+            write(doc, xmp, placement.getTable(), placement.getDestination());
+    }
+
+    /**
+     * A table and the destination it's to be written to.
+     */
+    public static class Placement {
+        private final Table table;
+        private final Destination destination;
+
+        public Placement(Table table, Destination destination) {
+            this.table = table;
+            this.destination = destination;
+        }
+
+        public Table getTable() {
+            return table;
+        }
+
+        public Destination getDestination() {
+            return destination;
+        }
+    }
 }
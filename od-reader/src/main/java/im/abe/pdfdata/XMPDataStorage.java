@@ -6,7 +6,6 @@ import com.adobe.xmp.properties.XMPProperty;
 import com.google.common.collect.Lists;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -19,7 +18,7 @@ public class XMPDataStorage extends DataStorage {
     private static final String PROP_COLUMNS = "Columns";
 
     @Override
-    public List<Table> read(PDDocument doc, XMPMeta xmp) throws XMPException {
+    public List<TableSource> sources(PDDocument doc, XMPMeta xmp) throws XMPException {
         if (xmp.getProperty(SCHEMA_OD, PROP_DATA) != null) {
             int rowSize = xmp.getPropertyInteger(SCHEMA_OD, PROP_ROW_SIZE);
             List<XMPProperty> items = xmp.getArray(SCHEMA_OD, PROP_DATA);
@@ -29,25 +28,59 @@ public class XMPDataStorage extends DataStorage {
                 return Lists.newArrayList();
 
             List<String> columns = columnProperties.stream().map(XMPProperty::getValue).collect(Collectors.toList());
+            return Lists.<TableSource>newArrayList(new ArraySource("Metadata", columns, items, Math.max(rowSize, 1)));
+        } else {
+            return Lists.newArrayList();
+        }
+    }
 
-            List<List<String>> cells = new ArrayList<>();
-            List<String> currentRow = new ArrayList<>();
-            int index = 0;
+    /**
+     * Reads rows straight out of the flat {@code od:Data} array. A trailing partial row is ignored.
+     */
+    private static class ArraySource implements TableSource {
+        private final String name;
+        private final List<String> columns;
+        private final List<XMPProperty> items;
+        private final int rowSize;
 
-            for (XMPProperty prop : items) {
-                currentRow.add(prop.getValue());
-                index++;
+        private ArraySource(String name, List<String> columns, List<XMPProperty> items, int rowSize) {
+            this.name = name;
+            this.columns = columns;
+            this.items = items;
+            this.rowSize = rowSize;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
 
-                if (index >= rowSize) {
-                    cells.add(currentRow);
-                    index = 0;
-                    currentRow = new ArrayList<>();
+        @Override
+        public List<String> getColumnNames() {
+            return columns;
+        }
+
+        @Override
+        public RowCursor open() {
+            int rowCount = items.size() / rowSize;
+            return new RowCursor() {
+                private int row = -1;
+
+                @Override
+                public boolean next() {
+                    return ++row < rowCount;
                 }
-            }
 
-            return Lists.newArrayList(new Table("Metadata", columns, cells));
-        } else {
-            return Lists.newArrayList();
+                @Override
+                public int getWidth() {
+                    return rowSize;
+                }
+
+                @Override
+                public String get(int column) {
+                    return column >= 0 && column < rowSize ? items.get(row * rowSize + column).getValue() : null;
+                }
+            };
         }
     }
 }
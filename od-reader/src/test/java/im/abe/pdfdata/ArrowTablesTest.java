@@ -0,0 +1,132 @@
+package im.abe.pdfdata;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes the CSV fixtures in both Arrow IPC formats, reads them back, and checks the columns carry Arrow types
+ * matching the columns' own.
+ */
+public class ArrowTablesTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    private static final List<Format> FORMATS = Arrays.asList(Format.ARROW_FILE, Format.ARROW_STREAM);
+
+    @Test
+    public void fixturesRoundTrip() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            for (Format format : FORMATS) {
+                Table read = Table.fromArrow(fixture, new ByteArrayInputStream(write(table, format)));
+                assertEquals(fixture + " " + format, table, read);
+                for (int i = 0; i < table.getColumnNames().size(); i++) {
+                    assertEquals(fixture + " " + format, table.getStore().getColumn(i).getType(),
+                            read.getStore().getColumn(i).getType());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void columnsAreWrittenWithTheirTypes() throws IOException {
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(
+                     new ByteArrayInputStream(write(csv("country_ranking"), Format.ARROW_STREAM)), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<ArrowType> types = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (Field field : root.getSchema().getFields()) {
+                types.add(field.getType());
+                names.add(field.getName());
+                assertTrue(field.isNullable());
+            }
+
+            assertEquals(Arrays.asList("Year", "Rank", "ID", "Country", "ECI"), names);
+            assertEquals(Arrays.asList(new ArrowType.Int(64, true), new ArrowType.Int(64, true),
+                    ArrowType.Utf8.INSTANCE, ArrowType.Utf8.INSTANCE,
+                    new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), types);
+
+            int rows = 0;
+            while (reader.loadNextBatch())
+                rows += root.getRowCount();
+            assertEquals(122, rows);
+        }
+    }
+
+    @Test
+    public void shortRowsAndNullsReadBackAsNulls() throws IOException {
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : csv("country_ranking").getCells())
+            cells.add(new ArrayList<>(row));
+        cells.get(0).set(4, null);
+        cells.set(1, cells.get(1).subList(0, 2));
+        Table table = new Table("nulls", csv("country_ranking").getColumnNames(), cells);
+
+        for (Format format : FORMATS) {
+            Table read = Table.fromArrow("nulls", new ByteArrayInputStream(write(table, format)));
+            assertNull(format.name(), read.get(0, 4));
+            assertEquals(format.name(), "jpn", read.get(0, 2));
+            assertEquals(format.name(), Arrays.asList("2013", "2", null, null, null), read.getCells().get(1));
+            assertEquals(format.name(), Column.Type.DOUBLE, read.getStore().getColumn(4).getType());
+        }
+    }
+
+    @Test
+    public void largeTablesAreWrittenInSeveralBatches() throws IOException {
+        List<List<String>> cells = new ArrayList<>();
+        for (int i = 0; i < 150000; i++)
+            cells.add(Arrays.asList(Integer.toString(i), i % 3 == 0 ? "fizz" : Integer.toString(i % 7)));
+        Table table = new Table("large", Arrays.asList("n", "s"), cells);
+
+        for (Format format : FORMATS)
+            assertEquals(format.name(), table, Table.fromArrow("large", new ByteArrayInputStream(write(table, format))));
+
+        int batches = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(
+                     new ByteArrayInputStream(write(table, Format.ARROW_STREAM)), allocator)) {
+            while (reader.loadNextBatch())
+                batches++;
+        }
+        assertEquals(3, batches);
+    }
+
+    @Test
+    public void emptyTablesRoundTrip() throws IOException {
+        Table table = new Table("empty", csv("journals").getColumnNames(), new ArrayList<>());
+        for (Format format : FORMATS) {
+            Table read = Table.fromArrow("empty", new ByteArrayInputStream(write(table, format)));
+            assertEquals(format.name(), table.getColumnNames(), read.getColumnNames());
+            assertEquals(format.name(), 0, read.getStore().getRowCount());
+        }
+    }
+
+    private static byte[] write(Table table, Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.writeTo(format, out);
+        return out.toByteArray();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = ArrowTablesTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
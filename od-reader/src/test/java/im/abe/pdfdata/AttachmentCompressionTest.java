@@ -0,0 +1,107 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Attaches the CSV fixtures with various compression settings, and checks which are stored compressed and that all of
+ * them read back the same after the document is saved.
+ */
+public class AttachmentCompressionTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void largeAttachmentsAreFlateCompressed() throws Exception {
+        for (String fixture : Arrays.asList("country_ranking", "journals", "imports_exports")) {
+            byte[] csv = csv(fixture).to(Format.CSV).getBytes(StandardCharsets.UTF_8);
+            try (PDDocument doc = write(new AttachmentDataStorage(), fixture)) {
+                COSStream stream = stream(doc);
+                assertEquals(fixture, COSName.FLATE_DECODE, stream.getFilters());
+                assertEquals(fixture, csv.length, stream.getInt(COSName.DL));
+                assertTrue(fixture, stream.getLength() < csv.length);
+            }
+        }
+    }
+
+    @Test
+    public void smallAttachmentsAreStoredAsTheyAre() throws Exception {
+        // attachment.csv is about a hundred bytes, under the default threshold
+        try (PDDocument doc = write(new AttachmentDataStorage(), "attachment")) {
+            assertNull(stream(doc).getFilters());
+        }
+        try (PDDocument doc = write(new AttachmentDataStorage(Deflater.BEST_SPEED, 0), "attachment")) {
+            assertEquals(COSName.FLATE_DECODE, stream(doc).getFilters());
+        }
+    }
+
+    @Test
+    public void levelZeroTurnsCompressionOff() throws Exception {
+        for (String fixture : FIXTURES) {
+            try (PDDocument doc = write(new AttachmentDataStorage(Deflater.NO_COMPRESSION, 0), fixture)) {
+                assertNull(fixture, stream(doc).getFilters());
+            }
+        }
+    }
+
+    @Test
+    public void everySettingReadsBackTheSame() throws Exception {
+        List<AttachmentDataStorage> storages = Arrays.asList(
+                new AttachmentDataStorage(),
+                new AttachmentDataStorage(Deflater.NO_COMPRESSION, 0),
+                new AttachmentDataStorage(Deflater.BEST_SPEED, 0),
+                new AttachmentDataStorage(Deflater.BEST_COMPRESSION, 0),
+                new AttachmentDataStorage(AttachmentDataStorage.Payload.BINARY, Deflater.BEST_COMPRESSION, 0));
+
+        for (AttachmentDataStorage storage : storages) {
+            for (String fixture : FIXTURES) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (PDDocument doc = write(storage, fixture)) {
+                    doc.save(out);
+                }
+                try (PDDocument doc = PDDocument.load(new ByteArrayInputStream(out.toByteArray()))) {
+                    assertEquals(fixture, Collections.singletonList(csv(fixture)),
+                            new AttachmentDataStorage().read(doc, DataStorage.loadXMP(doc)));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void levelsPastNineAreRejected() {
+        new AttachmentDataStorage(10, 0);
+    }
+
+    private static PDDocument write(AttachmentDataStorage storage, String fixture) throws Exception {
+        PDDocument doc = PDDocument.load(AttachmentCompressionTest.class.getResourceAsStream("/docs/form.pdf"));
+        storage.write(doc, DataStorage.loadXMP(doc), csv(fixture), Destination.document());
+        return doc;
+    }
+
+    private static COSStream stream(PDDocument doc) throws IOException {
+        List<PDComplexFileSpecification> files = AttachmentIndex.of(doc).getDocumentFiles();
+        assertEquals(1, files.size());
+        return files.get(0).getEmbeddedFile().getCOSObject();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = AttachmentCompressionTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
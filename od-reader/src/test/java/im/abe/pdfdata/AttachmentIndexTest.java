@@ -0,0 +1,84 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDEmbeddedFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a document's cached {@link AttachmentIndex} never outlives a change to its attachments, however the
+ * change is made.
+ */
+public class AttachmentIndexTest {
+    @Test
+    public void documentAttachmentsAreSeenAfterADirectWrite() throws Exception {
+        try (PDDocument doc = load("form.pdf")) {
+            AttachmentDataStorage storage = new AttachmentDataStorage();
+            assertTrue(storage.preview(doc).isEmpty()); // caches the index
+
+            Destination.document().writeAttachment(doc, attachment(doc, "country_ranking.csv", "#"));
+
+            assertEquals(1, storage.preview(doc).size());
+            assertEquals(fixture("country_ranking.csv"), storage.find(doc, "country_ranking.csv", "#"));
+        }
+    }
+
+    @Test
+    public void pageAttachmentsAreSeenAfterADirectWrite() throws Exception {
+        try (PDDocument doc = load("form.pdf")) {
+            assertTrue(AttachmentIndex.of(doc).findByPage(0).isEmpty());
+
+            Destination.page(0).writeAttachments(doc, Arrays.asList(
+                    attachment(doc, "journals.csv", "#page=0"),
+                    attachment(doc, "attachment.csv", "#page=0")));
+
+            AttachmentIndex index = AttachmentIndex.of(doc);
+            assertEquals(2, index.findByPage(0).size());
+            assertNotNull(index.findByFileName("attachment.csv"));
+        }
+    }
+
+    @Test
+    public void batchWritesRefreshTheIndex() throws Exception {
+        try (PDDocument doc = load("form.pdf")) {
+            AttachmentDataStorage storage = new AttachmentDataStorage();
+            assertTrue(storage.preview(doc).isEmpty());
+
+            storage.writeAll(doc, DataStorage.loadXMP(doc), Arrays.asList(
+                    new WritableDataStorage.Placement(fixture("journals.csv"), Destination.document()),
+                    new WritableDataStorage.Placement(fixture("attachment.csv"), Destination.page(0))));
+
+            assertEquals(2, storage.preview(doc).size());
+            assertEquals(fixture("attachment.csv"), storage.find(doc, "attachment.csv", null));
+        }
+    }
+
+    private static PDDocument load(String fixture) throws IOException {
+        return PDDocument.load(AttachmentIndexTest.class.getResourceAsStream("/docs/" + fixture));
+    }
+
+    private static Table fixture(String fileName) throws IOException {
+        try (InputStream in = AttachmentIndexTest.class.getResourceAsStream("/data/" + fileName)) {
+            return Table.fromCSV(fileName.replace(".csv", ""), in);
+        }
+    }
+
+    private static PDComplexFileSpecification attachment(PDDocument doc, String fileName, String fragment)
+            throws IOException {
+        PDComplexFileSpecification file = new PDComplexFileSpecification();
+        file.setFile(fileName);
+        file.setFileDescription(fragment);
+        try (InputStream in = AttachmentIndexTest.class.getResourceAsStream("/data/" + fileName)) {
+            PDEmbeddedFile embedded = new PDEmbeddedFile(doc, in);
+            embedded.setSubtype(Format.CSV.getMime());
+            file.setEmbeddedFile(embedded);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,149 @@
+package im.abe.pdfdata;
+
+import com.adobe.xmp.XMPMeta;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes the CSV fixtures into the PDF fixtures as one batch, and checks the result reads back the same as writing
+ * them one at a time.
+ */
+public class BatchWriteTest {
+    private static final List<String> DOCS = Arrays.asList("annotation.pdf", "attachment.pdf",
+            "country_ranking.pdf", "form.pdf", "journals.pdf", "meta.pdf");
+
+    @Test
+    public void batchesReadBackLikeSingleWrites() throws Exception {
+        for (String fixture : DOCS) {
+            List<WritableDataStorage.Placement> placements = placements();
+            AttachmentDataStorage storage = new AttachmentDataStorage();
+
+            List<Table> single;
+            List<String> singleFragments;
+            try (PDDocument doc = load(fixture)) {
+                XMPMeta xmp = DataStorage.loadXMP(doc);
+                for (WritableDataStorage.Placement placement : placements)
+                    storage.write(doc, xmp, placement.getTable(), placement.getDestination());
+                try (PDDocument saved = PDDocument.load(save(doc))) {
+                    single = storage.read(saved, DataStorage.loadXMP(saved));
+                    singleFragments = fragments(storage, saved);
+                }
+            }
+
+            try (PDDocument doc = load(fixture)) {
+                storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
+                try (PDDocument saved = PDDocument.load(save(doc))) {
+                    List<Table> batch = storage.read(saved, DataStorage.loadXMP(saved));
+                    assertEquals(fixture, single.size(), batch.size());
+                    assertTrue(fixture, batch.containsAll(single));
+                    assertTrue(fixture, single.containsAll(batch));
+
+                    List<String> batchFragments = fragments(storage, saved);
+                    Collections.sort(singleFragments);
+                    Collections.sort(batchFragments);
+                    assertEquals(fixture, singleFragments, batchFragments);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tablesForTheSameDestinationAreKeptInOrder() throws Exception {
+        try (PDDocument doc = load("form.pdf")) {
+            List<WritableDataStorage.Placement> placements = new ArrayList<>();
+            for (String name : Arrays.asList("journals", "attachment", "country_ranking"))
+                placements.add(new WritableDataStorage.Placement(csv(name), Destination.page(0)));
+
+            AttachmentDataStorage storage = new AttachmentDataStorage();
+            storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
+
+            List<Table> tables = storage.read(doc, DataStorage.loadXMP(doc));
+            assertEquals(Arrays.asList(csv("journals"), csv("attachment"), csv("country_ranking")), tables);
+        }
+    }
+
+    @Test
+    public void placementsCanBeWrittenToSeveralDocuments() throws Exception {
+        List<WritableDataStorage.Placement> placements = placements();
+        AttachmentDataStorage storage = new AttachmentDataStorage();
+        for (String fixture : Arrays.asList("form.pdf", "annotation.pdf")) {
+            try (PDDocument doc = load(fixture)) {
+                int before = storage.read(doc, DataStorage.loadXMP(doc)).size();
+                storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
+                assertEquals(fixture, before + placements.size(), storage.read(doc, DataStorage.loadXMP(doc)).size());
+            }
+        }
+    }
+
+    @Test
+    public void storagesWithoutABatchWriteWriteOneByOne() throws Exception {
+        List<Table> written = new ArrayList<>();
+        WritableDataStorage storage = new WritableDataStorage() {
+            @Override
+            public void write(PDDocument doc, XMPMeta xmp, Table data, Destination destination) {
+                written.add(data);
+            }
+
+            @Override
+            public List<TableSource> sources(PDDocument doc, XMPMeta xmp) {
+                return Collections.emptyList();
+            }
+        };
+
+        List<WritableDataStorage.Placement> placements = placements();
+        try (PDDocument doc = load("form.pdf")) {
+            storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
+        }
+
+        List<Table> expected = new ArrayList<>();
+        for (WritableDataStorage.Placement placement : placements)
+            expected.add(placement.getTable());
+        assertEquals(expected, written);
+    }
+
+    /**
+     * Each fixture twice over, once on the document and once on the first page.
+     */
+    private static List<WritableDataStorage.Placement> placements() throws IOException {
+        List<WritableDataStorage.Placement> placements = new ArrayList<>();
+        for (String name : Arrays.asList("attachment", "country_ranking", "journals", "imports_exports")) {
+            placements.add(new WritableDataStorage.Placement(csv(name), Destination.document()));
+            placements.add(new WritableDataStorage.Placement(csv(name), Destination.page(0)));
+        }
+        return placements;
+    }
+
+    private static List<String> fragments(AttachmentDataStorage storage, PDDocument doc) throws Exception {
+        List<String> fragments = new ArrayList<>();
+        for (AttachmentDataStorage.FilePreview preview : storage.preview(doc))
+            fragments.add(preview.getFileName() + preview.getFragment());
+        return fragments;
+    }
+
+    private static InputStream save(PDDocument doc) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.save(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static PDDocument load(String fixture) throws IOException {
+        return PDDocument.load(BatchWriteTest.class.getResourceAsStream("/docs/" + fixture));
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = BatchWriteTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package im.abe.pdfdata;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trips the CSV fixtures through {@link BinaryTable}, checking every cell's value, nullness and type, and feeds
+ * it corrupt payloads that must be rejected before anything is allocated for them.
+ */
+public class BinaryTableTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void fixturesRoundTrip() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            Table decoded = roundTrip(table);
+
+            assertEquals(fixture, table, decoded);
+            assertSameColumns(table, decoded);
+        }
+    }
+
+    @Test
+    public void nullsRoundTrip() throws IOException {
+        // the country ranking fixture with every fifth cell of each column dropped, so each type has some nulls
+        Table fixture = csv("country_ranking");
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : fixture.getCells())
+            cells.add(new ArrayList<>(row));
+        for (int row = 0; row < cells.size(); row++)
+            cells.get(row).set(row % 5, null);
+        Table table = new Table("nulls", fixture.getColumnNames(), cells);
+        Table decoded = roundTrip(table);
+
+        assertEquals(Column.Type.LONG, decoded.getStore().getColumn(0).getType());
+        assertEquals(Column.Type.DOUBLE, decoded.getStore().getColumn(4).getType());
+        assertSameColumns(table, decoded);
+    }
+
+    @Test
+    public void extremeValuesRoundTrip() throws IOException {
+        long[] longs = {Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE};
+        double[] doubles = {-0.0, Double.MIN_VALUE, Double.NaN, Double.NEGATIVE_INFINITY, Double.MAX_VALUE};
+        int[] days = {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE};
+        String[] strings = {"", "a,b\n\"c\"", "é中😀", "x", "y"};
+        Column[] columns = {
+                Column.ofLongs(new BitSet(), 5, longs),
+                Column.ofDoubles(new BitSet(), 5, doubles),
+                Column.ofDates(new BitSet(), 5, days),
+                Column.ofStrings(new BitSet(), 5, strings, new int[]{0, 1, 2, 3, 4}),
+        };
+        Table table = new Table("extremes", Arrays.asList("l", "d", "t", "s"), ColumnStore.of(columns, 5, null));
+        Table decoded = roundTrip(table);
+
+        for (int row = 0; row < 5; row++) {
+            assertEquals(longs[row], decoded.getStore().getColumn(0).getLong(row));
+            assertEquals(Double.doubleToRawLongBits(doubles[row]),
+                    Double.doubleToRawLongBits(decoded.getStore().getColumn(1).getDouble(row)));
+            assertEquals(days[row], decoded.getStore().getColumn(2).getEpochDay(row));
+            assertEquals(strings[row], decoded.getStore().getColumn(3).get(row));
+        }
+    }
+
+    @Test
+    public void raggedRowsKeepTheirWidths() throws IOException {
+        // the journals fixture with each row's trailing blank cells dropped
+        Table fixture = csv("journals");
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : fixture.getCells()) {
+            List<String> trimmed = new ArrayList<>(row);
+            while (!trimmed.isEmpty() && trimmed.get(trimmed.size() - 1).isEmpty())
+                trimmed.remove(trimmed.size() - 1);
+            cells.add(trimmed);
+        }
+        Table table = new Table("journals", fixture.getColumnNames(), cells);
+        Table decoded = roundTrip(table);
+
+        assertEquals(cells, decoded.getCells());
+        for (int row = 0; row < cells.size(); row++)
+            assertEquals(cells.get(row).size(), decoded.getStore().getRowWidth(row));
+    }
+
+    @Test
+    public void emptyTableRoundTrips() throws IOException {
+        Table table = new Table("empty", Arrays.asList("a", "b"), Arrays.<List<String>>asList());
+        Table decoded = roundTrip(table);
+
+        assertEquals(table.getColumnNames(), decoded.getColumnNames());
+        assertEquals(0, decoded.getStore().getRowCount());
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws IOException {
+        byte[] encoded = BinaryTable.encode(csv("attachment"));
+        for (int length = 4; length < encoded.length; length++)
+            assertRejected(Arrays.copyOf(encoded, length));
+    }
+
+    @Test
+    public void countsLargerThanTheDataAreRejected() {
+        // no headings, 2^31 - 1 rows, ragged
+        assertRejected(payload(0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, 1));
+        // 2^31 - 1 headings
+        assertRejected(payload(0xFF, 0xFF, 0xFF, 0xFF, 0x07));
+        // no headings or rows, 2^31 - 1 stored columns
+        assertRejected(payload(0, 0, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07));
+        // no headings, 2^28 rows, one stored LONG column with no nulls
+        assertRejected(payload(0, 0x80, 0x80, 0x80, 0x80, 0x01, 0, 1, 2, 0, 0));
+        // no headings, 2^24 rows, one stored DOUBLE column holding a single value
+        assertRejected(payload(0, 0x80, 0x80, 0x80, 0x08, 0, 1, 10, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+        // no headings or rows, one stored STRING column with a dictionary of 2^31 - 1 strings
+        assertRejected(payload(0, 0, 0, 1, 7, 3, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07));
+    }
+
+    @Test
+    public void rowsWiderThanTheStoredColumnsAreRejected() {
+        // no headings, one row two cells wide, one stored LONG column
+        assertRejected(payload(0, 1, 1, 2, 1, 3, 0, 0, 2));
+    }
+
+    @Test
+    public void onlyEncodedTablesAreRecognized() throws IOException {
+        assertTrue(BinaryTable.isBinary(BinaryTable.encode(csv("attachment"))));
+        assertFalse(BinaryTable.isBinary("a,b\n1,2\n".getBytes()));
+        assertFalse(BinaryTable.isBinary(new byte[0]));
+    }
+
+    /**
+     * @return The magic number followed by the given bytes.
+     */
+    private static byte[] payload(int... bytes) {
+        byte[] payload = new byte[4 + bytes.length];
+        payload[0] = 'O';
+        payload[1] = 'D';
+        payload[2] = 'T';
+        payload[3] = 1;
+        for (int i = 0; i < bytes.length; i++)
+            payload[4 + i] = (byte) bytes[i];
+        return payload;
+    }
+
+    private static void assertRejected(byte[] payload) {
+        try {
+            Table table = BinaryTable.decode("corrupt", new ByteArrayInputStream(payload));
+            fail("Decoded " + payload.length + " bytes into " + table.getStore().getRowCount() + " rows");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static Table roundTrip(Table table) throws IOException {
+        return BinaryTable.decode(table.getName(), new ByteArrayInputStream(BinaryTable.encode(table)));
+    }
+
+    private static void assertSameColumns(Table expected, Table actual) {
+        ColumnStore store = expected.getStore();
+        assertEquals(store.getRowCount(), actual.getStore().getRowCount());
+        assertEquals(store.getColumnCount(), actual.getStore().getColumnCount());
+        for (int i = 0; i < store.getColumnCount(); i++) {
+            Column column = store.getColumn(i);
+            Column decoded = actual.getStore().getColumn(i);
+            assertEquals(column.getType(), decoded.getType());
+            for (int row = 0; row < store.getRowCount(); row++) {
+                assertEquals("row " + row + ", column " + i, column.isNull(row), decoded.isNull(row));
+                assertEquals("row " + row + ", column " + i, column.get(row), decoded.get(row));
+            }
+        }
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = BinaryTableTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
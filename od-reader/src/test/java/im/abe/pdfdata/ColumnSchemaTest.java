@@ -0,0 +1,88 @@
+package im.abe.pdfdata;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the names and types a table's {@link ColumnSchema} works out for the CSV fixtures' headings, and for tables
+ * whose headings and stored columns don't line up.
+ */
+public class ColumnSchemaTest {
+    @Test
+    public void schemasAreWorkedOutOncePerTable() throws IOException {
+        Table table = csv("country_ranking");
+        assertSame(table.getSchema(), table.getSchema());
+        table.to(Format.JSON);
+        table.to(Format.NTRIPLES);
+        assertSame(table.getSchema(), table.getSchema());
+    }
+
+    @Test
+    public void typesFollowTheStoredColumns() throws IOException {
+        ColumnSchema schema = csv("country_ranking").getSchema();
+
+        assertEquals(5, schema.size());
+        assertEquals(Arrays.asList(Column.Type.LONG, Column.Type.LONG, Column.Type.STRING, Column.Type.STRING,
+                Column.Type.DOUBLE), Arrays.asList(schema.getType(0), schema.getType(1), schema.getType(2),
+                schema.getType(3), schema.getType(4)));
+        assertNull(schema.getRDFDatatype(2));
+        assertArrayEquals(new String[]{"Year", "Rank", "ID", "Country", "ECI"}, schema.getCSVHeader());
+    }
+
+    @Test
+    public void headingsAreEscapedForEachFormat() throws IOException {
+        ColumnSchema schema = csv("journals").getSchema();
+        int helsinki = csv("journals").getColumnNames().indexOf("Requires Helsinki?");
+
+        assertEquals("Journal title", schema.getName(0));
+        assertEquals("Journal title", schema.getJSONKey(0).getValue());
+        assertEquals("#Journal%20title", schema.getRDFProperty(0).getURI());
+        assertEquals(ColumnSchema.RDF_BASE + "#Journal%20title", schema.getAbsoluteRDFProperty(0).getURI());
+        assertEquals(ColumnSchema.RDF_BASE + "#Journal%20title", schema.getXMLRDFProperty(0).getURI());
+
+        assertEquals(ColumnSchema.RDF_BASE + "#Requires%20Helsinki?", schema.getAbsoluteRDFProperty(helsinki).getURI());
+        assertEquals(ColumnSchema.RDF_BASE + "#Requires%20Helsinki?_", schema.getXMLRDFProperty(helsinki).getURI());
+    }
+
+    @Test
+    public void uniqueNamesCoverBlankAndRepeatedHeadings() {
+        Table table = new Table("t", Arrays.asList("a", "", "a", "column_1"),
+                Collections.singletonList(Arrays.asList("1", "2", "3", "4")));
+
+        assertEquals(Arrays.asList("a", "column_1", "a_2", "column_1_3"), table.getSchema().getUniqueNames());
+        assertEquals(ColumnSchema.RDF_BASE + "#_", table.getSchema().getXMLRDFProperty(1).getURI());
+    }
+
+    @Test
+    public void schemasCoverHeadingsAndStoredColumnsAlike() {
+        List<List<String>> cells = Arrays.asList(Arrays.asList("1", "x", "true"), Collections.singletonList("2"));
+
+        ColumnSchema wide = new Table("t", Collections.singletonList("n"), cells).getSchema();
+        assertEquals(3, wide.size());
+        assertEquals(Column.Type.LONG, wide.getType(0));
+        assertNull(wide.getName(2));
+        assertNull(wide.getJSONKey(2));
+        assertNull(wide.getRDFProperty(2));
+        assertNull(wide.getAbsoluteRDFProperty(2));
+        assertEquals(Arrays.asList("n", "column_1", "column_2"), wide.getUniqueNames());
+
+        ColumnSchema narrow = new Table("t", Arrays.asList("a", "b", "c", "d"),
+                Collections.singletonList(Collections.singletonList("1"))).getSchema();
+        assertEquals(4, narrow.size());
+        assertEquals(Column.Type.STRING, narrow.getType(3));
+        assertEquals("#d", narrow.getRDFProperty(3).getURI());
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = ColumnSchemaTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package im.abe.pdfdata;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds stores from the CSV fixtures and checks that every cell reads back exactly as it went in, whatever type its
+ * column was narrowed to.
+ */
+public class ColumnStoreTest {
+    @Test
+    public void columnsNarrowToTheTypeTheirValuesShare() throws IOException {
+        ColumnStore store = ColumnStore.of(readRows("country_ranking.csv"));
+
+        // Year, Rank, ID, Country, ECI
+        assertEquals(Column.Type.LONG, store.getColumn(0).getType());
+        assertEquals(Column.Type.LONG, store.getColumn(1).getType());
+        assertEquals(Column.Type.STRING, store.getColumn(2).getType());
+        assertEquals(Column.Type.STRING, store.getColumn(3).getType());
+        assertEquals(Column.Type.DOUBLE, store.getColumn(4).getType());
+
+        assertEquals(2013, store.getColumn(0).getLong(0));
+        assertEquals(124, store.getColumn(1).getLong(121));
+        assertEquals(-2.10227, store.getColumn(4).getDouble(121), 0);
+    }
+
+    @Test
+    public void everyCellReadsBackExactly() throws IOException {
+        for (String fixture : Arrays.asList("attachment.csv", "country_ranking.csv", "journals.csv")) {
+            List<List<String>> rows = readRows(fixture);
+            ColumnStore store = ColumnStore.of(rows);
+
+            assertEquals(fixture, rows, store.rows());
+            for (int row = 0; row < rows.size(); row++) {
+                for (int i = 0; i < rows.get(row).size(); i++)
+                    assertEquals(fixture + " row " + row, rows.get(row).get(i), store.get(row, i));
+            }
+        }
+    }
+
+    @Test
+    public void valuesThatWouldPrintDifferentlyStayStrings() {
+        // each would parse, but not print back the same
+        assertEquals(Column.Type.STRING, build("1", "007").getType());
+        assertEquals(Column.Type.STRING, build("1", "-0").getType());
+        assertEquals(Column.Type.STRING, build("2.5", "2.50").getType());
+        assertEquals(Column.Type.STRING, build("2.5", "1e3").getType());
+        assertEquals(Column.Type.STRING, build("true", "TRUE").getType());
+        assertEquals(Column.Type.STRING, build("9223372036854775807", "9223372036854775808").getType());
+        assertEquals(Column.Type.STRING, build("1.0", "1").getType());
+
+        assertEquals(Column.Type.LONG, build("-9223372036854775808", "0").getType());
+        assertEquals(Column.Type.DOUBLE, build("1.0", "2.5", "NaN", "-Infinity").getType());
+        assertEquals(Column.Type.BOOLEAN, build("true", "false").getType());
+    }
+
+    @Test
+    public void emptyCellsAreNotNulls() throws IOException {
+        // the journals fixture leaves most of its Helsinki dates blank
+        ColumnStore store = ColumnStore.of(readRows("journals.csv"));
+        Column dates = store.getColumn(3);
+
+        assertEquals(Column.Type.STRING, dates.getType());
+        assertEquals("1964", dates.get(0));
+        assertEquals("", dates.get(1));
+        assertFalse(dates.isNull(1));
+    }
+
+    @Test
+    public void nullsKeepTheirRowsAndTheColumnsType() throws IOException {
+        List<List<String>> rows = readRows("country_ranking.csv");
+        for (int row = 0; row < rows.size(); row += 5)
+            rows.get(row).set(4, null);
+        ColumnStore store = ColumnStore.of(rows);
+        Column eci = store.getColumn(4);
+
+        assertEquals(Column.Type.DOUBLE, eci.getType());
+        for (int row = 0; row < rows.size(); row++) {
+            assertEquals(row % 5 == 0, eci.isNull(row));
+            assertEquals(rows.get(row).get(4), eci.get(row));
+        }
+        assertTrue(eci.isNull(-1));
+        assertTrue(eci.isNull(rows.size()));
+    }
+
+    @Test
+    public void raggedRowsKeepTheirWidths() throws IOException {
+        // the journals fixture with each row's trailing blank cells dropped
+        List<List<String>> rows = readRows("journals.csv");
+        for (List<String> row : rows) {
+            while (!row.isEmpty() && row.get(row.size() - 1).isEmpty())
+                row.remove(row.size() - 1);
+        }
+        ColumnStore store = ColumnStore.of(rows);
+
+        assertEquals(4, store.getColumnCount());
+        assertEquals(rows, store.rows());
+        for (int row = 0; row < rows.size(); row++) {
+            assertEquals(rows.get(row).size(), store.getRowWidth(row));
+            assertEquals(rows.get(row).size(), store.rows().get(row).size());
+            // cells past a row's end aren't stored as empty
+            if (rows.get(row).size() < 4)
+                assertNull(store.get(row, 3));
+        }
+    }
+
+    @Test
+    public void uniformRowsSpanEveryColumn() throws IOException {
+        ColumnStore store = ColumnStore.of(readRows("attachment.csv"));
+
+        for (int row = 0; row < store.getRowCount(); row++)
+            assertEquals(2, store.getRowWidth(row));
+        assertNull(store.get(0, 2));
+        assertNull(store.get(3, 0));
+    }
+
+    @Test
+    public void stringsAreStoredOncePerDistinctValue() throws IOException {
+        ColumnStore store = ColumnStore.of(readRows("journals.csv"));
+        Column registration = store.getColumn(1);
+
+        Set<String> distinct = new HashSet<>();
+        for (int row = 0; row < store.getRowCount(); row++)
+            distinct.add(registration.get(row));
+        assertEquals(distinct, new HashSet<>(Arrays.asList(registration.getDictionary())));
+        assertEquals(distinct.size(), registration.getDictionary().length);
+        for (int row = 0; row < store.getRowCount(); row++)
+            assertEquals(registration.get(row), registration.getDictionary()[registration.getCode(row)]);
+    }
+
+    private static Column build(String... values) {
+        Column.Builder builder = new Column.Builder();
+        for (String value : values)
+            builder.add(value);
+        return builder.build();
+    }
+
+    /**
+     * Reads a CSV fixture from {@code data/}, skipping its header row.
+     */
+    private static List<List<String>> readRows(String fixture) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (Reader reader = new InputStreamReader(ColumnStoreTest.class.getResourceAsStream("/data/" + fixture),
+                StandardCharsets.UTF_8)) {
+            for (CSVRecord record : CSVFormat.EXCEL.withHeader().parse(reader)) {
+                List<String> row = new ArrayList<>();
+                for (String value : record)
+                    row.add(value);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
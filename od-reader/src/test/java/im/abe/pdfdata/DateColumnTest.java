@@ -0,0 +1,143 @@
+package im.abe.pdfdata;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks which columns are inferred to hold dates, using the attachment fixture with its days rewritten as ISO dates,
+ * and that every output format keeps them typed.
+ */
+public class DateColumnTest {
+    private static final DateTimeFormatter FIXTURE_DAYS = DateTimeFormatter.ofPattern("EEEE, d MMMM yyyy", Locale.UK);
+
+    @Test
+    public void isoDatesNarrowToDate() throws IOException {
+        Table table = isoDays();
+        Column days = table.getStore().getColumn(0);
+
+        assertEquals(Column.Type.DATE, days.getType());
+        assertEquals("2010-11-13", days.get(0));
+        assertEquals(LocalDate.of(2010, 11, 13).toEpochDay(), days.getEpochDay(0));
+        for (int row = 0; row < 3; row++)
+            assertEquals(LocalDate.parse(days.get(row)).toEpochDay(), days.getEpochDay(row));
+    }
+
+    @Test
+    public void otherDatesStayStrings() throws IOException {
+        // written out in words, and years alone
+        assertEquals(Column.Type.STRING, csv("attachment").getStore().getColumn(0).getType());
+        assertEquals(Column.Type.STRING, csv("journals").getStore().getColumn(3).getType());
+    }
+
+    @Test
+    public void onlyRealDaysInTheISOShapeAreDates() {
+        assertEquals(Column.Type.DATE, build("2010-11-15", "0000-01-01", "9999-12-31", "2012-02-29").getType());
+
+        // no such day
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2010-02-30").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2011-02-29").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2010-13-01").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2010-00-10").getType());
+        // not yyyy-MM-dd
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2010-2-03").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "10-11-15").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2010/11/15").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "+2010-11-15").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "12010-11-15").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", " 2010-11-15").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "2010-11-15T00:00").getType());
+        assertEquals(Column.Type.STRING, build("2010-11-15", "").getType());
+    }
+
+    @Test
+    public void nullsKeepTheColumnADate() throws IOException {
+        List<List<String>> cells = copy(isoDays().getCells());
+        cells.get(1).set(0, null);
+        Column days = ColumnStore.of(cells).getColumn(0);
+
+        assertEquals(Column.Type.DATE, days.getType());
+        assertTrue(days.isNull(1));
+        assertNull(days.get(1));
+        assertEquals("2010-11-13", days.get(0));
+    }
+
+    @Test
+    public void jsonWritesDatesAsStringsAndReadsThemBack() throws IOException {
+        Table table = isoDays();
+        String json = table.to(Format.JSON);
+
+        assertTrue(json, json.startsWith("[{\"Day\":\"2010-11-13\",\"Temperature\":2},"));
+        Table read = Table.fromJSON(table.getName(), new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(table, read);
+        assertEquals(Column.Type.DATE, read.getStore().getColumn(0).getType());
+    }
+
+    @Test
+    public void rdfTypesDatesAsXSDDates() throws IOException {
+        String ntriples = isoDays().to(Format.NTRIPLES);
+
+        assertTrue(ntriples, ntriples.contains("\"2010-11-15\"^^<http://www.w3.org/2001/XMLSchema#date>"));
+        assertTrue(ntriples, ntriples.contains("\"7\"^^<http://www.w3.org/2001/XMLSchema#integer>"));
+    }
+
+    @Test
+    public void binaryFormatsKeepTheType() throws IOException {
+        Table table = isoDays();
+
+        Table decoded = BinaryTable.decode(table.getName(), new ByteArrayInputStream(BinaryTable.encode(table)));
+        assertEquals(table, decoded);
+        assertEquals(Column.Type.DATE, decoded.getStore().getColumn(0).getType());
+
+        for (Format format : Arrays.asList(Format.ARROW_FILE, Format.ARROW_STREAM)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            table.writeTo(format, out);
+            Table read = Table.fromArrow(table.getName(), new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(format.name(), table, read);
+            assertEquals(format.name(), Column.Type.DATE, read.getStore().getColumn(0).getType());
+        }
+    }
+
+    /**
+     * The attachment fixture with each day written as an ISO date, as in 2010-11-13 for Saturday, 13 November 2010.
+     */
+    private static Table isoDays() throws IOException {
+        Table fixture = csv("attachment");
+        List<List<String>> cells = copy(fixture.getCells());
+        for (List<String> row : cells)
+            row.set(0, LocalDate.parse(row.get(0), FIXTURE_DAYS).toString());
+        return new Table("attachment", fixture.getColumnNames(), cells);
+    }
+
+    private static List<List<String>> copy(List<List<String>> cells) {
+        List<List<String>> copy = new ArrayList<>();
+        for (List<String> row : cells)
+            copy.add(new ArrayList<>(row));
+        return copy;
+    }
+
+    private static Column build(String... values) {
+        Column.Builder builder = new Column.Builder();
+        for (String value : values)
+            builder.add(value);
+        return builder.build();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = DateColumnTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
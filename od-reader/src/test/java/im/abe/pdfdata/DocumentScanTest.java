@@ -0,0 +1,122 @@
+package im.abe.pdfdata;
+
+import com.adobe.xmp.XMPMeta;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scans the PDF fixtures with every storage at once, and checks the scan finds what reading each storage on its own
+ * does while walking the pages only once.
+ */
+public class DocumentScanTest {
+    private static final List<String> DOCS = Arrays.asList("annotation.pdf", "attachment.pdf",
+            "country_ranking.pdf", "form.pdf", "journals.pdf", "meta.pdf");
+
+    @Test
+    public void scanFindsWhatEachStorageReadsAlone() throws Exception {
+        int found = 0;
+        for (String fixture : DOCS) {
+            try (PDDocument doc = load(fixture)) {
+                XMPMeta xmp = DataStorage.loadXMP(doc);
+                DataStorage[] storages = storages();
+
+                List<Table> expected = new ArrayList<>();
+                for (DataStorage storage : storages)
+                    expected.addAll(storage.read(doc, xmp));
+
+                assertEquals(fixture, expected, DocumentScan.read(doc, xmp, storages));
+                found += expected.size();
+            }
+        }
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void tablesAreGroupedByStorageInTheOrderAdded() throws Exception {
+        try (PDDocument doc = load("annotation.pdf")) {
+            XMPMeta xmp = DataStorage.loadXMP(doc);
+            DataStorage annotations = new AnnotationDataStorage();
+            DataStorage meta = new PDFMetaDataStorage();
+
+            List<Table> expected = new ArrayList<>(meta.read(doc, xmp));
+            expected.addAll(annotations.read(doc, xmp));
+            assertFalse(annotations.read(doc, xmp).isEmpty());
+            assertEquals(expected, DocumentScan.read(doc, xmp, meta, annotations));
+        }
+    }
+
+    @Test
+    public void everyAnnotationIsVisitedOnceInPageOrder() throws Exception {
+        for (String fixture : DOCS) {
+            try (PDDocument doc = load(fixture)) {
+                List<PDAnnotation> expected = new ArrayList<>();
+                for (PDPage page : doc.getDocumentCatalog().getPages())
+                    expected.addAll(page.getAnnotations());
+
+                XMPMeta xmp = DataStorage.loadXMP(doc);
+                Recorder first = new Recorder();
+                Recorder second = new Recorder();
+                new DocumentScan(doc, xmp).add(first).add(new AttachmentDataStorage()).add(second).sources();
+
+                assertEquals(fixture, expected.size(), first.annotations.size());
+                for (int i = 0; i < expected.size(); i++)
+                    assertEquals(fixture, expected.get(i).getCOSObject(), first.annotations.get(i).getCOSObject());
+                assertEquals(fixture, first.annotations, second.annotations);
+                assertEquals(fixture, 1, first.finished);
+            }
+        }
+    }
+
+    private static DataStorage[] storages() {
+        return new DataStorage[]{new AttachmentDataStorage(), new AnnotationDataStorage(), new FormDataStorage(),
+                new PDFMetaDataStorage(), new XMPDataStorage()};
+    }
+
+    private static PDDocument load(String fixture) throws Exception {
+        return PDDocument.load(DocumentScanTest.class.getResourceAsStream("/docs/" + fixture));
+    }
+
+    /**
+     * A storage that finds nothing but remembers every annotation its visitor is shown.
+     */
+    private static class Recorder extends DataStorage {
+        private final List<PDAnnotation> annotations = new ArrayList<>();
+        private int finished;
+
+        @Override
+        public List<TableSource> sources(PDDocument doc, XMPMeta xmp) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public DocumentScan.Visitor visitor(PDDocument doc, XMPMeta xmp) {
+            return new DocumentScan.Visitor() {
+                @Override
+                public boolean visitsPages() {
+                    return true;
+                }
+
+                @Override
+                public void visitAnnotation(PDPage page, int pageIndex, PDAnnotation annotation) {
+                    assertSame(doc.getPage(pageIndex).getCOSObject(), page.getCOSObject());
+                    annotations.add(annotation);
+                }
+
+                @Override
+                public List<TableSource> finish() {
+                    finished++;
+                    return Collections.emptyList();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
+import org.apache.pdfbox.pdmodel.common.filespecification.PDEmbeddedFile;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Embeds the CSV fixtures under each kind of stream filter, and checks that every one decodes back to the fixture's
+ * bytes and tables.
+ */
+public class EmbeddedFileTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void everyFilterDecodesToTheSameBytes() throws IOException {
+        try (PDDocument doc = load("form.pdf")) {
+            for (String fixture : FIXTURES) {
+                byte[] data = bytes(fixture);
+                for (PDEmbeddedFile file : encodings(doc, data)) {
+                    try (InputStream in = AttachmentDataStorage.openEmbeddedFile(file)) {
+                        assertArrayEquals(fixture + " " + file.getFilters(), data, readAll(in));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void flateIsDecodedAsItIsRead() throws IOException {
+        try (PDDocument doc = load("form.pdf")) {
+            PDEmbeddedFile file = new PDEmbeddedFile(doc, new ByteArrayInputStream(bytes("journals")),
+                    COSName.FLATE_DECODE);
+            try (InputStream in = AttachmentDataStorage.openEmbeddedFile(file)) {
+                assertTrue(in instanceof InflaterInputStream);
+            }
+        }
+    }
+
+    @Test
+    public void tablesReadBackUnderEveryFilter() throws Exception {
+        for (String fixture : FIXTURES) {
+            try (PDDocument doc = load("form.pdf")) {
+                List<PDComplexFileSpecification> files = new ArrayList<>();
+                for (PDEmbeddedFile file : encodings(doc, bytes(fixture))) {
+                    PDComplexFileSpecification fs = new PDComplexFileSpecification();
+                    fs.setFile(fixture + ".csv");
+                    fs.setFileDescription("#");
+                    file.setSubtype(Format.CSV.getMime());
+                    fs.setEmbeddedFile(file);
+                    files.add(fs);
+                }
+                Destination.document().writeAttachments(doc, files);
+
+                List<Table> tables = new AttachmentDataStorage().read(doc, DataStorage.loadXMP(doc));
+                assertEquals(fixture, files.size(), tables.size());
+                for (Table table : tables)
+                    assertEquals(fixture, csv(fixture), table);
+            }
+        }
+    }
+
+    /**
+     * The given bytes stored unfiltered, Flate-compressed, hex-encoded, and hex-encoded Flate.
+     */
+    private static List<PDEmbeddedFile> encodings(PDDocument doc, byte[] data) throws IOException {
+        COSArray chain = new COSArray();
+        chain.add(COSName.ASCII_HEX_DECODE);
+        chain.add(COSName.FLATE_DECODE);
+
+        return Arrays.asList(
+                new PDEmbeddedFile(doc, new ByteArrayInputStream(data)),
+                new PDEmbeddedFile(doc, new ByteArrayInputStream(data), COSName.FLATE_DECODE),
+                new PDEmbeddedFile(doc, new ByteArrayInputStream(data), COSName.ASCII_HEX_DECODE),
+                new PDEmbeddedFile(new PDStream(doc, new ByteArrayInputStream(data), chain).getCOSObject()));
+    }
+
+    private static PDDocument load(String fixture) throws IOException {
+        return PDDocument.load(EmbeddedFileTest.class.getResourceAsStream("/docs/" + fixture));
+    }
+
+    private static byte[] bytes(String fixture) throws IOException {
+        try (InputStream in = EmbeddedFileTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        return out.toByteArray();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = EmbeddedFileTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes the CSV fixtures into the PDF fixtures as incremental updates, and checks that the original revision is left
+ * byte for byte as it was while the new tables read back alongside the old ones.
+ */
+public class IncrementalSaveTest {
+    private static final List<String> DOCS = Arrays.asList("annotation.pdf", "attachment.pdf",
+            "country_ranking.pdf", "form.pdf", "journals.pdf", "meta.pdf");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void savedRevisionFollowsTheOriginalBytes() throws Exception {
+        for (String fixture : DOCS) {
+            byte[] original = bytes(fixture);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (PDDocument doc = PDDocument.load(new ByteArrayInputStream(original))) {
+                write(doc, "journals");
+                IncrementalSave.save(doc, out);
+            }
+
+            byte[] saved = out.toByteArray();
+            assertTrue(fixture, saved.length > original.length);
+            assertArrayEquals(fixture, original, Arrays.copyOf(saved, original.length));
+            try (PDDocument doc = PDDocument.load(new ByteArrayInputStream(saved))) {
+                assertEquals(fixture, csv("journals"), find(read(doc), "journals"));
+            }
+        }
+    }
+
+    @Test
+    public void appendedTablesReadBackAlongsideTheOldOnes() throws Exception {
+        for (String fixture : DOCS) {
+            File file = copy(fixture);
+            byte[] original = Files.readAllBytes(file.toPath());
+
+            List<Table> before;
+            try (PDDocument doc = PDDocument.load(file)) {
+                before = read(doc);
+                write(doc, "country_ranking");
+                IncrementalSave.append(doc, file);
+            }
+
+            byte[] appended = Files.readAllBytes(file.toPath());
+            assertArrayEquals(fixture, original, Arrays.copyOf(appended, original.length));
+            try (PDDocument doc = PDDocument.load(file)) {
+                List<Table> after = read(doc);
+                assertEquals(fixture, before.size() + 1, after.size());
+                assertTrue(fixture, after.containsAll(before));
+                assertEquals(fixture, csv("country_ranking"), find(after, "country_ranking"));
+            }
+        }
+    }
+
+    @Test
+    public void eachAppendKeepsTheRevisionsBeforeIt() throws Exception {
+        File file = copy("form.pdf");
+        try (PDDocument doc = PDDocument.load(file)) {
+            write(doc, "attachment");
+            IncrementalSave.append(doc, file);
+        }
+        byte[] first = Files.readAllBytes(file.toPath());
+
+        try (PDDocument doc = PDDocument.load(file)) {
+            write(doc, "journals");
+            IncrementalSave.append(doc, file);
+        }
+        byte[] second = Files.readAllBytes(file.toPath());
+
+        assertArrayEquals(first, Arrays.copyOf(second, first.length));
+        try (PDDocument doc = PDDocument.load(file)) {
+            List<Table> tables = read(doc);
+            assertEquals(csv("attachment"), find(tables, "attachment"));
+            assertEquals(csv("journals"), find(tables, "journals"));
+        }
+    }
+
+    private static void write(PDDocument doc, String fixture) throws Exception {
+        new AttachmentDataStorage().writeAll(doc, DataStorage.loadXMP(doc), Collections.singletonList(
+                new WritableDataStorage.Placement(csv(fixture), Destination.document())));
+    }
+
+    private static List<Table> read(PDDocument doc) throws Exception {
+        return new AttachmentDataStorage().read(doc, DataStorage.loadXMP(doc));
+    }
+
+    private static Table find(List<Table> tables, String name) {
+        for (Table table : tables) {
+            if (table.getName().equals(name))
+                return table;
+        }
+        fail("No table named " + name + " in " + tables);
+        return null;
+    }
+
+    private File copy(String fixture) throws IOException {
+        File file = folder.newFile(fixture);
+        try (InputStream in = IncrementalSaveTest.class.getResourceAsStream("/docs/" + fixture)) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    private static byte[] bytes(String fixture) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = IncrementalSaveTest.class.getResourceAsStream("/docs/" + fixture)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = IncrementalSaveTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package im.abe.pdfdata;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes the CSV fixtures as JSON and NDJSON and reads them back with {@link Table#fromJSON(String, InputStream)},
+ * and checks how the reader copes with rows that don't all look alike.
+ */
+public class JSONTableTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void fixturesRoundTrip() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            assertEquals(fixture, table, Table.fromJSON(fixture, stream(table.to(Format.JSON))));
+            assertEquals(fixture, table, Table.fromJSON(fixture, stream(table.to(Format.NDJSON))));
+            assertEquals(fixture, table, Table.fromJSON(fixture, new StringReader(table.to(Format.NDJSON))));
+        }
+    }
+
+    @Test
+    public void typedColumnsAreWrittenAsJSONValues() throws IOException {
+        String json = csv("country_ranking").to(Format.JSON);
+        assertTrue(json, json.startsWith(
+                "[{\"Year\":2013,\"Rank\":1,\"ID\":\"jpn\",\"Country\":\"Japan\",\"ECI\":2.29217},"));
+
+        // a blank cell keeps its column a string
+        String journals = csv("journals").to(Format.NDJSON);
+        assertTrue(journals, journals.contains("\"Helsinki date\":\"1964\"}"));
+    }
+
+    @Test
+    public void ndjsonHasOneRowPerLine() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            String[] lines = table.to(Format.NDJSON).split("\n");
+
+            assertEquals(fixture, table.getStore().getRowCount(), lines.length);
+            for (int row = 0; row < lines.length; row++) {
+                assertEquals(fixture + " row " + row, table.getCells().get(row),
+                        Table.fromJSON(fixture, stream(lines[row])).getCells().get(0));
+            }
+        }
+    }
+
+    @Test
+    public void nullsRoundTrip() throws IOException {
+        // the country ranking fixture with every fifth cell of each column dropped
+        Table fixture = csv("country_ranking");
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : fixture.getCells())
+            cells.add(new ArrayList<>(row));
+        for (int row = 0; row < cells.size(); row++)
+            cells.get(row).set(row % 5, null);
+        Table table = new Table("nulls", fixture.getColumnNames(), cells);
+
+        for (Format format : Arrays.asList(Format.JSON, Format.NDJSON)) {
+            Table read = Table.fromJSON("nulls", stream(table.to(format)));
+            assertEquals(format.name(), table.getColumnNames(), read.getColumnNames());
+            for (int row = 0; row < cells.size(); row++) {
+                for (int i = 0; i < 5; i++)
+                    assertEquals(format + " row " + row, cells.get(row).get(i), read.get(row, i));
+            }
+        }
+    }
+
+    @Test
+    public void keysBecomeColumnsInOrderOfFirstAppearance() throws IOException {
+        Table table = Table.fromJSON("t", stream("[{\"b\": 1, \"a\": \"x\"}, {\"c\": true, \"a\": \"y\"}, {}]"));
+
+        assertEquals(Arrays.asList("b", "a", "c"), table.getColumnNames());
+        assertEquals(Arrays.asList("1", "x"), table.getCells().get(0));
+        assertEquals(Arrays.asList(null, "y", "true"), table.getCells().get(1));
+        assertEquals(0, table.getStore().getRowWidth(2));
+    }
+
+    @Test
+    public void valuesKeepTheirText() throws IOException {
+        Table table = Table.fromJSON("t", stream("{\"n\": 2.50, \"s\": \"a\\\"b\", \"z\": null, "
+                + "\"list\": [1, {\"k\": \"v\"}], \"obj\": {\"k\": [true, null]}}"));
+
+        assertEquals(Arrays.asList("2.50", "a\"b", null, "[1,{\"k\":\"v\"}]", "{\"k\":[true,null]}"),
+                table.getCells().get(0));
+    }
+
+    @Test
+    public void arraysAndNDJSONReadTheSame() throws IOException {
+        String rows = "{\"a\": 1, \"b\": \"x\"}\n{\"b\": \"y\"}\n\n{\"a\": 3}\n";
+        Table ndjson = Table.fromJSON("t", stream(rows));
+        Table array = Table.fromJSON("t", stream("[" + rows.trim().replaceAll("\n+", ",") + "]"));
+
+        assertEquals(array, ndjson);
+        assertEquals(3, ndjson.getStore().getRowCount());
+    }
+
+    @Test
+    public void anyEncodingJSONAllowsIsRead() throws IOException {
+        String json = csv("journals").to(Format.JSON);
+        Table utf8 = Table.fromJSON("journals", stream(json));
+        Table utf16 = Table.fromJSON("journals", new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_16BE)));
+
+        assertEquals(utf8, utf16);
+    }
+
+    @Test
+    public void emptyInputIsAnEmptyTable() throws IOException {
+        assertEquals(0, Table.fromJSON("t", stream("[]")).getStore().getRowCount());
+        assertEquals(0, Table.fromJSON("t", stream("")).getStore().getRowCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rowsMustBeObjects() throws IOException {
+        Table.fromJSON("t", stream("[{\"a\": 1}, [1, 2]]"));
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedJSONIsRejected() throws IOException {
+        Table.fromJSON("t", stream("{\"a\": 1"));
+    }
+
+    private static InputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = JSONTableTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package im.abe.pdfdata;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads a {@link ParquetDataset} of the CSV fixtures back with parquet-mr and checks it against the tables that went
+ * in.
+ */
+public class ParquetDatasetTest {
+    private static final List<String> VALUE_FIELDS = Arrays.asList("long_value", "double_value", "boolean_value",
+            "date_value", "string_value");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyCellIsARow() throws IOException {
+        // every type of column, then nulls in every column
+        Table first = ParquetWriterTest.ranked();
+        Table second = ParquetWriterTest.withNulls();
+
+        File file = folder.newFile("dataset.parquet");
+        // a small row group size, so cells are spread over several and tables straddle them
+        try (ParquetDataset dataset = new ParquetDataset(new FileOutputStream(file), 37)) {
+            dataset.append("a.pdf", first);
+            dataset.append("b.pdf", second);
+        }
+
+        List<Group> rows = ParquetWriterTest.readRows(file);
+        int index = 0;
+        index = assertCells(rows, index, "a.pdf", first);
+        index = assertCells(rows, index, "b.pdf", second);
+        assertEquals(rows.size(), index);
+
+        List<BlockMetaData> blocks = ParquetWriterTest.readFooter(file).getBlocks();
+        assertEquals((rows.size() + 36) / 37, blocks.size());
+        for (int i = 0; i < blocks.size() - 1; i++)
+            assertEquals(37, blocks.get(i).getRowCount());
+    }
+
+    @Test
+    public void emptyDatasetIsReadable() throws IOException {
+        File file = folder.newFile("empty.parquet");
+        new ParquetDataset(new FileOutputStream(file)).close();
+
+        assertTrue(ParquetWriterTest.readRows(file).isEmpty());
+        assertEquals(9, ParquetWriterTest.readFooter(file).getFileMetaData().getSchema().getFieldCount());
+    }
+
+    /**
+     * Checks the dataset rows for a table's non-null cells, in row then column order.
+     *
+     * @return The index of the row after the table's.
+     */
+    private static int assertCells(List<Group> rows, int index, String document, Table table) {
+        ColumnStore store = table.getStore();
+        for (int row = 0; row < store.getRowCount(); row++) {
+            for (int i = 0; i < store.getColumnCount(); i++) {
+                Column column = store.getColumn(i);
+                if (column.isNull(row))
+                    continue;
+
+                Group cell = rows.get(index++);
+                assertEquals(document, cell.getString("document", 0));
+                assertEquals(table.getName(), cell.getString("table", 0));
+                assertEquals(row, cell.getLong("row", 0));
+                assertEquals(table.getColumnNames().get(i), cell.getString("column", 0));
+
+                String field = valueField(column.getType());
+                for (String other : VALUE_FIELDS) {
+                    if (!other.equals(field))
+                        assertEquals(other, 0, cell.getFieldRepetitionCount(other));
+                }
+                int fieldIndex = cell.getType().getFieldIndex(field);
+                assertEquals(column.get(row), ParquetWriterTest.value(cell, fieldIndex, column.getType()));
+            }
+        }
+        return index;
+    }
+
+    private static String valueField(Column.Type type) {
+        switch (type) {
+            case LONG:
+                return "long_value";
+            case DOUBLE:
+                return "double_value";
+            case BOOLEAN:
+                return "boolean_value";
+            case DATE:
+                return "date_value";
+            default:
+                return "string_value";
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package im.abe.pdfdata;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes the CSV fixtures as Parquet and reads them back with parquet-mr, so the hand-written encoder is checked
+ * against a real reader rather than against itself.
+ */
+public class ParquetWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fixturesRoundTrip() throws IOException {
+        for (Table table : Arrays.asList(csv("attachment"), csv("country_ranking"), csv("journals"),
+                csv("imports_exports"), ranked(), withNulls())) {
+            File file = write(table);
+
+            assertRowsEqual(table, 0, readRows(file));
+            ParquetMetadata footer = readFooter(file);
+            assertEquals(table.getName(), 1, footer.getBlocks().size());
+            assertEquals(table.getName(), table.getStore().getRowCount(), footer.getBlocks().get(0).getRowCount());
+        }
+    }
+
+    @Test
+    public void schemaHasLogicalTypes() throws IOException {
+        MessageType schema = readFooter(write(ranked())).getFileMetaData().getSchema();
+        assertEquals(Arrays.asList("Year", "Rank", "ID", "Country", "ECI", "Above average", "Ranked on", "Notes"),
+                fieldNames(schema));
+        for (Type field : schema.getFields())
+            assertEquals(Type.Repetition.OPTIONAL, field.getRepetition());
+
+        assertEquals(PrimitiveType.PrimitiveTypeName.INT64, primitive(schema, "Rank"));
+        assertEquals(PrimitiveType.PrimitiveTypeName.DOUBLE, primitive(schema, "ECI"));
+        assertEquals(PrimitiveType.PrimitiveTypeName.BOOLEAN, primitive(schema, "Above average"));
+        assertEquals(PrimitiveType.PrimitiveTypeName.INT32, primitive(schema, "Ranked on"));
+        assertEquals(LogicalTypeAnnotation.dateType(), schema.getType("Ranked on").getLogicalTypeAnnotation());
+        assertEquals(PrimitiveType.PrimitiveTypeName.BINARY, primitive(schema, "Country"));
+        assertEquals(LogicalTypeAnnotation.stringType(), schema.getType("Country").getLogicalTypeAnnotation());
+    }
+
+    @Test
+    public void repetitiveColumnsAreDictionaryEncoded() throws IOException {
+        BlockMetaData block = readFooter(write(ranked())).getBlocks().get(0);
+        // one year, and seven days
+        assertTrue(isDictionaryEncoded(chunk(block, "Year")));
+        assertTrue(isDictionaryEncoded(chunk(block, "Ranked on")));
+        // strings always are
+        assertTrue(isDictionaryEncoded(chunk(block, "Country")));
+
+        // too many distinct values for a dictionary to pay off, so these fall back to plain encoding
+        assertFalse(isDictionaryEncoded(chunk(block, "Rank")));
+        assertFalse(isDictionaryEncoded(chunk(block, "ECI")));
+        assertFalse(isDictionaryEncoded(chunk(block, "Above average")));
+    }
+
+    @Test
+    public void statisticsMatchTheValues() throws IOException {
+        Table table = withNulls();
+        BlockMetaData block = readFooter(write(table)).getBlocks().get(0);
+
+        Column rank = table.getStore().getColumn(1);
+        Column eci = table.getStore().getColumn(4);
+        long minRank = Long.MAX_VALUE;
+        long maxRank = Long.MIN_VALUE;
+        double minEci = Double.POSITIVE_INFINITY;
+        double maxEci = Double.NEGATIVE_INFINITY;
+        int nullRanks = 0;
+        for (int row = 0; row < table.getStore().getRowCount(); row++) {
+            if (rank.isNull(row)) {
+                nullRanks++;
+            } else {
+                minRank = Math.min(minRank, rank.getLong(row));
+                maxRank = Math.max(maxRank, rank.getLong(row));
+            }
+            if (!eci.isNull(row)) {
+                minEci = Math.min(minEci, eci.getDouble(row));
+                maxEci = Math.max(maxEci, eci.getDouble(row));
+            }
+        }
+
+        assertEquals(minRank, chunk(block, "Rank").getStatistics().genericGetMin());
+        assertEquals(maxRank, chunk(block, "Rank").getStatistics().genericGetMax());
+        assertEquals(nullRanks, chunk(block, "Rank").getStatistics().getNumNulls());
+        assertEquals(minEci, chunk(block, "ECI").getStatistics().genericGetMin());
+        assertEquals(maxEci, chunk(block, "ECI").getStatistics().genericGetMax());
+        assertEquals(2013L, chunk(block, "Year").getStatistics().genericGetMin());
+
+        BlockMetaData ranked = readFooter(write(ranked())).getBlocks().get(0);
+        assertEquals((int) LocalDate.of(2013, 1, 1).toEpochDay(),
+                ranked.getColumns().get(6).getStatistics().genericGetMin());
+        assertEquals((int) LocalDate.of(2013, 1, 7).toEpochDay(),
+                ranked.getColumns().get(6).getStatistics().genericGetMax());
+        assertEquals(122, chunk(ranked, "Notes").getStatistics().getNumNulls());
+    }
+
+    @Test
+    public void rowGroupsCanChangeEncoding() throws IOException {
+        // the first row group repeats itself enough for a dictionary, the second doesn't
+        int rows = 300;
+        long[] values = new long[rows];
+        for (int row = 0; row < rows; row++)
+            values[row] = row < 100 ? row % 3 : row;
+        Column column = Column.ofLongs(new java.util.BitSet(), rows, values);
+
+        File file = folder.newFile("groups.parquet");
+        try (OutputStream out = new FileOutputStream(file)) {
+            ParquetWriter writer = new ParquetWriter(out, Arrays.asList("value"), Arrays.asList(Column.Type.LONG));
+            writer.writeRowGroup(new Column[]{column}, 0, 100);
+            writer.writeRowGroup(new Column[]{column}, 100, 250);
+            writer.writeRowGroup(new Column[]{column}, 250, rows);
+            writer.finish();
+        }
+
+        List<BlockMetaData> blocks = readFooter(file).getBlocks();
+        assertEquals(3, blocks.size());
+        assertEquals(100, blocks.get(0).getRowCount());
+        assertEquals(150, blocks.get(1).getRowCount());
+        assertEquals(50, blocks.get(2).getRowCount());
+        assertTrue(isDictionaryEncoded(chunk(blocks.get(0), "value")));
+        assertFalse(isDictionaryEncoded(chunk(blocks.get(1), "value")));
+
+        List<Group> read = readRows(file);
+        assertEquals(rows, read.size());
+        for (int row = 0; row < rows; row++)
+            assertEquals(values[row], read.get(row).getLong("value", 0));
+    }
+
+    @Test
+    public void tableSpreadOverRowGroupsRoundTrips() throws IOException {
+        for (Table table : Arrays.asList(csv("journals"), ranked())) {
+            ColumnSchema schema = table.getSchema();
+            int rows = table.getStore().getRowCount();
+            Column[] columns = new Column[schema.size()];
+            List<Column.Type> types = new ArrayList<>();
+            for (int i = 0; i < schema.size(); i++) {
+                columns[i] = i < table.getStore().getColumnCount() ? table.getStore().getColumn(i) : null;
+                types.add(schema.getType(i));
+            }
+
+            File file = folder.newFile(table.getName() + "-spread.parquet");
+            try (OutputStream out = new FileOutputStream(file)) {
+                ParquetWriter writer = new ParquetWriter(out, schema.getUniqueNames(), types);
+                for (int start = 0; start < rows; start += 32)
+                    writer.writeRowGroup(columns, start, Math.min(start + 32, rows));
+                writer.finish();
+            }
+
+            assertEquals((rows + 31) / 32, readFooter(file).getBlocks().size());
+            assertRowsEqual(table, 0, readRows(file));
+        }
+    }
+
+    @Test
+    public void emptyTableIsReadable() throws IOException {
+        Table table = new Table("empty", Arrays.asList("a", "b"), new ArrayList<>());
+        File file = folder.newFile("empty.parquet");
+        try (OutputStream out = new FileOutputStream(file)) {
+            table.writeTo(Format.PARQUET, out);
+        }
+
+        assertEquals(Arrays.asList("a", "b"), fieldNames(readFooter(file).getFileMetaData().getSchema()));
+        assertTrue(readRows(file).isEmpty());
+    }
+
+    /**
+     * Checks that rows read back hold the same values as a table's, starting at one of its rows.
+     */
+    static void assertRowsEqual(Table table, int start, List<Group> rows) {
+        ColumnStore store = table.getStore();
+        assertEquals(store.getRowCount() - start, rows.size());
+        for (int row = start; row < store.getRowCount(); row++) {
+            Group group = rows.get(row - start);
+            for (int i = 0; i < store.getColumnCount(); i++) {
+                Column column = store.getColumn(i);
+                if (column.isNull(row)) {
+                    assertEquals("row " + row + ", column " + i, 0, group.getFieldRepetitionCount(i));
+                } else {
+                    assertEquals("row " + row + ", column " + i, column.get(row), value(group, i, column.getType()));
+                }
+            }
+            for (int i = store.getColumnCount(); i < group.getType().getFieldCount(); i++)
+                assertEquals(0, group.getFieldRepetitionCount(i));
+        }
+    }
+
+    /**
+     * @return A value read back, as the string the column holds it as.
+     */
+    static String value(Group group, int field, Column.Type type) {
+        switch (type) {
+            case LONG:
+                return Long.toString(group.getLong(field, 0));
+            case DOUBLE:
+                return Double.toString(group.getDouble(field, 0));
+            case BOOLEAN:
+                return Boolean.toString(group.getBoolean(field, 0));
+            case DATE:
+                return LocalDate.ofEpochDay(group.getInteger(field, 0)).toString();
+            default:
+                return group.getString(field, 0);
+        }
+    }
+
+    static List<Group> readRows(File file) throws IOException {
+        List<Group> rows = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI()))
+                .withConf(new Configuration()).build()) {
+            Group group;
+            while ((group = reader.read()) != null)
+                rows.add(group);
+        }
+        return rows;
+    }
+
+    static ParquetMetadata readFooter(File file) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                HadoopInputFile.fromPath(new Path(file.toURI()), new Configuration()))) {
+            return reader.getFooter();
+        }
+    }
+
+    private static List<String> fieldNames(MessageType schema) {
+        List<String> names = new ArrayList<>();
+        for (Type field : schema.getFields())
+            names.add(field.getName());
+        return names;
+    }
+
+    private static PrimitiveType.PrimitiveTypeName primitive(MessageType schema, String name) {
+        return schema.getType(name).asPrimitiveType().getPrimitiveTypeName();
+    }
+
+    private static ColumnChunkMetaData chunk(BlockMetaData block, String name) {
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+            if (chunk.getPath().toDotString().equals(name))
+                return chunk;
+        }
+        throw new AssertionError("No column " + name);
+    }
+
+    private static boolean isDictionaryEncoded(ColumnChunkMetaData chunk) {
+        for (Encoding encoding : chunk.getEncodings()) {
+            if (encoding.usesDictionary())
+                return true;
+        }
+        return false;
+    }
+
+    private File write(Table table) throws IOException {
+        File file = folder.newFile(table.getName() + ".parquet");
+        try (OutputStream out = new FileOutputStream(file)) {
+            table.writeTo(Format.PARQUET, out);
+        }
+        return file;
+    }
+
+    static Table csv(String fixture) throws IOException {
+        try (InputStream in = ParquetWriterTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+
+    /**
+     * The country ranking fixture with a column of every type: whether each country's ECI is above zero, a date a day
+     * later for every twenty ranks, and a heading with nothing stored under it.
+     */
+    static Table ranked() throws IOException {
+        Table fixture = csv("country_ranking");
+        List<String> headings = new ArrayList<>(fixture.getColumnNames());
+        headings.addAll(Arrays.asList("Above average", "Ranked on", "Notes"));
+
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : fixture.getCells()) {
+            List<String> cellsOfRow = new ArrayList<>(row);
+            cellsOfRow.add(Boolean.toString(Double.parseDouble(row.get(4)) > 0));
+            cellsOfRow.add(LocalDate.of(Integer.parseInt(row.get(0)), 1, 1)
+                    .plusDays(Integer.parseInt(row.get(1)) / 20).toString());
+            cells.add(cellsOfRow);
+        }
+        return new Table("ranked", headings, cells);
+    }
+
+    /**
+     * The country ranking fixture with every fifth cell of each column dropped, so each column has some nulls.
+     */
+    static Table withNulls() throws IOException {
+        Table fixture = csv("country_ranking");
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : fixture.getCells())
+            cells.add(new ArrayList<>(row));
+        for (int row = 0; row < cells.size(); row++)
+            cells.get(row).set(row % 5, null);
+        return new Table("nulls", fixture.getColumnNames(), cells);
+    }
+}
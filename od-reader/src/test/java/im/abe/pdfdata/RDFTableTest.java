@@ -0,0 +1,86 @@
+package im.abe.pdfdata;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes the CSV fixtures in each RDF format and parses them back with Jena, so every format's output is checked to
+ * be valid and to state the same triples.
+ */
+public class RDFTableTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void everyFormatStatesTheSameTriples() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            Model ntriples = parse(table, Format.NTRIPLES, Lang.NTRIPLES);
+            Model turtle = parse(table, Format.TURTLE, Lang.TURTLE);
+            Model rdfXml = parse(table, Format.RDF_XML, Lang.RDFXML);
+
+            assertTrue(fixture, ntriples.isIsomorphicWith(turtle));
+            assertEquals(fixture, ntriples.size(), rdfXml.size());
+            assertEquals(fixture, ntriples.listSubjects().toList().size(), rdfXml.listSubjects().toList().size());
+        }
+    }
+
+    @Test
+    public void rdfXmlNamesColumnsLikeTheLineFormats() throws IOException {
+        for (String fixture : Arrays.asList("attachment", "country_ranking")) {
+            Table table = csv(fixture);
+            assertTrue(fixture, parse(table, Format.NTRIPLES, Lang.NTRIPLES)
+                    .isIsomorphicWith(parse(table, Format.RDF_XML, Lang.RDFXML)));
+        }
+    }
+
+    @Test
+    public void rdfXmlGivesHeadingsItCantEndWithAnUnderscore() throws IOException {
+        Model model = parse(csv("journals"), Format.RDF_XML, Lang.RDFXML);
+
+        Property title = model.createProperty(ColumnSchema.RDF_BASE + "#Journal%20title");
+        Property helsinki = model.createProperty(ColumnSchema.RDF_BASE + "#Requires%20Helsinki?_");
+        assertEquals(200, model.listStatements(null, title, (String) null).toList().size());
+        assertEquals(200, model.listStatements(null, helsinki, (String) null).toList().size());
+        assertTrue(model.contains(null, title, "Abdominal imaging"));
+    }
+
+    @Test
+    public void literalsAreTypedAfterTheirColumns() throws IOException {
+        Model model = parse(csv("country_ranking"), Format.RDF_XML, Lang.RDFXML);
+
+        Property rank = model.createProperty(ColumnSchema.RDF_BASE + "#Rank");
+        Property eci = model.createProperty(ColumnSchema.RDF_BASE + "#ECI");
+        Property country = model.createProperty(ColumnSchema.RDF_BASE + "#Country");
+        assertTrue(model.contains(null, rank, model.createTypedLiteral(BigInteger.ONE)));
+        assertTrue(model.contains(null, eci, model.createTypedLiteral(2.29217)));
+        assertTrue(model.contains(null, country, "Japan"));
+    }
+
+    private static Model parse(Table table, Format format, Lang lang) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, new ByteArrayInputStream(table.to(format).getBytes(StandardCharsets.UTF_8)),
+                ColumnSchema.RDF_BASE, lang);
+        return model;
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = RDFTableTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package im.abe.pdfdata;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Walks the CSV fixtures with the cursors of each kind of {@link TableSource}, and checks they see exactly the rows
+ * the fixtures hold, re-reading the data for each cursor and releasing it when closed.
+ */
+public class RowCursorTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void tableCursorsWalkEveryRow() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            assertEquals(fixture, table.getCells(), rows(table));
+        }
+    }
+
+    @Test
+    public void cellsPastTheEndOfARowAreNull() throws IOException {
+        for (TableSource source : Arrays.asList(csv("attachment"), csvSource("attachment", new ArrayList<>()))) {
+            try (RowCursor cursor = source.open()) {
+                assertTrue(cursor.next());
+                assertEquals(2, cursor.getWidth());
+                assertNull(cursor.get(2));
+                assertNull(cursor.get(-1));
+            }
+        }
+    }
+
+    @Test
+    public void csvSourcesReopenTheirDataForEachCursor() throws IOException {
+        List<TrackedStream> opened = new ArrayList<>();
+        TableSource source = csvSource("country_ranking", opened);
+
+        assertEquals(csv("country_ranking").getColumnNames(), source.getColumnNames());
+        assertEquals(1, opened.size());
+        assertTrue(opened.get(0).closed);
+
+        try (RowCursor first = source.open(); RowCursor second = source.open()) {
+            assertEquals(3, opened.size());
+            assertTrue(first.next());
+            assertTrue(first.next());
+            assertTrue(second.next());
+            assertEquals("jpn", second.get(2));
+            assertEquals("che", first.get(2));
+        }
+        assertTrue(opened.get(1).closed);
+        assertTrue(opened.get(2).closed);
+
+        assertEquals(csv("country_ranking"), Table.copyOf(source));
+    }
+
+    @Test
+    public void storedSourcesMatchTheirTables() throws Exception {
+        for (AttachmentDataStorage.Payload payload : AttachmentDataStorage.Payload.values()) {
+            try (PDDocument doc = PDDocument.load(RowCursorTest.class.getResourceAsStream("/docs/form.pdf"))) {
+                AttachmentDataStorage storage = new AttachmentDataStorage(payload, Deflater.DEFAULT_COMPRESSION,
+                        AttachmentDataStorage.DEFAULT_MIN_COMPRESSED_SIZE);
+                List<WritableDataStorage.Placement> placements = new ArrayList<>();
+                for (String fixture : FIXTURES)
+                    placements.add(new WritableDataStorage.Placement(csv(fixture), Destination.document()));
+                storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
+
+                List<TableSource> sources = storage.sources(doc, DataStorage.loadXMP(doc));
+                assertEquals(payload.name(), FIXTURES.size(), sources.size());
+                for (TableSource source : sources) {
+                    Table fixture = csv(source.getName());
+                    assertEquals(payload + " " + source.getName(), fixture.getColumnNames(), source.getColumnNames());
+                    assertEquals(payload + " " + source.getName(), fixture.getCells(), rows(source));
+                    assertEquals(payload + " " + source.getName(), fixture.getCells(), rows(source));
+                }
+            }
+        }
+    }
+
+    private static List<List<String>> rows(TableSource source) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (RowCursor cursor = source.open()) {
+            while (cursor.next()) {
+                List<String> row = new ArrayList<>();
+                for (int i = 0; i < cursor.getWidth(); i++)
+                    row.add(cursor.get(i));
+                rows.add(row);
+            }
+            assertFalse(cursor.next());
+        }
+        return rows;
+    }
+
+    /**
+     * A source over a CSV fixture that records every stream it opens.
+     */
+    private static TableSource csvSource(String fixture, List<TrackedStream> opened) {
+        return new CSVSource(fixture, () -> {
+            TrackedStream in = new TrackedStream(bytes(fixture));
+            opened.add(in);
+            return in;
+        });
+    }
+
+    private static class TrackedStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        TrackedStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static byte[] bytes(String fixture) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = RowCursorTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = RowCursorTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package im.abe.pdfdata;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link TableFormats#detect(byte[], int, String, String)} weighs content against names and MIME types,
+ * with the fixtures written in each format.
+ */
+public class TableFormatsTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    @Test
+    public void csvNameBeatsAnOpeningBracket() throws IOException {
+        List<Table> tables = TableFormats.read("t", stream("[id],name\n1,x\n"), "data.csv", "text/csv");
+
+        assertEquals(1, tables.size());
+        assertEquals(Arrays.asList("[id]", "name"), tables.get(0).getColumnNames());
+        assertEquals(Arrays.asList(Arrays.asList("1", "x")), tables.get(0).getCells());
+    }
+
+    @Test
+    public void csvTypeBeatsAnOpeningBrace() {
+        assertSame(Format.CSV, detect("{a},b\n1,2\n", null, "text/csv"));
+    }
+
+    @Test
+    public void unnamedTextGoesByItsFirstCharacter() {
+        assertSame(Format.JSON, detect("\uFEFF [{\"a\": 1}]", null, null));
+        assertSame(Format.NDJSON, detect("{\"a\": 1}\n{\"a\": 2}\n", "data.dat", "application/octet-stream"));
+        assertSame(Format.CSV, detect("a,b\n1,2\n", null, null));
+        assertSame(Format.CSV, detect("", null, null));
+    }
+
+    @Test
+    public void magicNumbersBeatNames() {
+        byte[] arrow = "ARROW1\0\0".getBytes(StandardCharsets.US_ASCII);
+        assertSame(Format.ARROW_FILE, TableFormats.detect(arrow, arrow.length, "data.csv", "text/csv"));
+    }
+
+    @Test
+    public void fixturesAreRecognizedByTheirContentsAlone() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            for (Format format : Arrays.asList(Format.CSV, Format.JSON, Format.NDJSON, Format.ARROW_FILE,
+                    Format.ARROW_STREAM)) {
+                byte[] data = write(table, format);
+                assertSame(fixture + " as " + format, format, TableFormats.detect(data, data.length, null, null));
+
+                List<Table> read = TableFormats.read(fixture, new ByteArrayInputStream(data), null, null);
+                assertEquals(fixture + " as " + format, Arrays.asList(table), read);
+            }
+        }
+    }
+
+    @Test
+    public void fixturesAreRecognizedByTheirNames() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            for (Format format : Arrays.asList(Format.CSV, Format.JSON, Format.NDJSON)) {
+                byte[] data = write(table, format);
+                // a leading letter hides the bracket or brace, so there is only the name or type to go by
+                byte[] padded = new byte[data.length + 1];
+                padded[0] = 'x';
+                System.arraycopy(data, 0, padded, 1, data.length);
+                assertSame(fixture + " as " + format, format,
+                        TableFormats.detect(padded, padded.length, fixture + format.getExtension(), null));
+                assertSame(fixture + " as " + format, format,
+                        TableFormats.detect(padded, padded.length, null, format.getMime()));
+            }
+        }
+    }
+
+    @Test
+    public void workbookFixturesBeatTheirNames() throws IOException {
+        for (String fixture : Arrays.asList("imports_exports.xls", "imports_exports.xlsx")) {
+            try (InputStream in = TableFormatsTest.class.getResourceAsStream("/data/" + fixture)) {
+                List<Table> tables = TableFormats.read("imports_exports", in, "imports_exports.csv", "text/csv");
+
+                assertEquals(fixture, 1, tables.size());
+                assertEquals(fixture, "Period", tables.get(0).getColumnNames().get(0));
+                assertEquals(fixture, 56, tables.get(0).getStore().getRowCount());
+            }
+        }
+    }
+
+    private static byte[] write(Table table, Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.writeTo(format, out);
+        return out.toByteArray();
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = TableFormatsTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+
+    private static TableFormat detect(String data, String fileName, String mime) {
+        byte[] head = data.getBytes(StandardCharsets.UTF_8);
+        return TableFormats.detect(head, head.length, fileName, mime);
+    }
+
+    private static ByteArrayInputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
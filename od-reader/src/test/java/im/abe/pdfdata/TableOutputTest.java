@@ -0,0 +1,136 @@
+package im.abe.pdfdata;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams the CSV fixtures in every text format and checks the output is what {@link Table#to(Format)} gives, and
+ * that the streams are flushed but left open.
+ */
+public class TableOutputTest {
+    private static final List<String> FIXTURES = Arrays.asList("attachment", "country_ranking", "journals",
+            "imports_exports");
+
+    /**
+     * Row subjects are fresh blank nodes each time, so RDF output is compared by what it states rather than its text.
+     */
+    private static final Map<Format, Lang> RDF = new EnumMap<>(Format.class);
+
+    static {
+        RDF.put(Format.RDF_XML, Lang.RDFXML);
+        RDF.put(Format.TURTLE, Lang.TURTLE);
+        RDF.put(Format.NTRIPLES, Lang.NTRIPLES);
+        RDF.put(Format.NQUADS, Lang.NQUADS);
+    }
+
+    @Test
+    public void streamsMatchTheStringOutput() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            for (Format format : Format.values()) {
+                if (format.isBinary())
+                    continue;
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                table.writeTo(format, out);
+                StringWriter writer = new StringWriter();
+                table.writeTo(format, writer);
+
+                String expected = table.to(format);
+                String streamed = new String(out.toByteArray(), StandardCharsets.UTF_8);
+                if (RDF.containsKey(format)) {
+                    assertSameStatements(fixture + " " + format, RDF.get(format), expected, streamed);
+                    assertSameStatements(fixture + " " + format, RDF.get(format), expected, writer.toString());
+                } else {
+                    assertEquals(fixture + " " + format, expected, streamed);
+                    assertEquals(fixture + " " + format, expected, writer.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamsAreFlushedAndLeftOpen() throws IOException {
+        Table table = csv("journals");
+        for (Format format : Format.values()) {
+            if (!format.canWrite())
+                continue;
+
+            TrackedStream out = new TrackedStream();
+            table.writeTo(format, out);
+            assertTrue(format.name(), out.size() > 0);
+            assertFalse(format.name(), out.closed);
+            assertEquals(format.name(), out.size(), out.flushed);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void binaryFormatsNeedAStream() throws IOException {
+        csv("attachment").writeTo(Format.PARQUET, new StringWriter());
+    }
+
+    @Test
+    public void csvRoundTrips() throws IOException {
+        for (String fixture : FIXTURES) {
+            Table table = csv(fixture);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            table.writeTo(Format.CSV, out);
+            assertEquals(fixture, table, Table.fromCSV(fixture, new ByteArrayInputStream(out.toByteArray())));
+        }
+    }
+
+    private static void assertSameStatements(String message, Lang lang, String expected, String actual) {
+        Dataset expectedData = parse(lang, expected);
+        Dataset actualData = parse(lang, actual);
+
+        assertFalse(message, expectedData.getDefaultModel().isEmpty() && !expectedData.listNames().hasNext());
+        assertTrue(message, expectedData.getDefaultModel().isIsomorphicWith(actualData.getDefaultModel()));
+        List<String> names = new ArrayList<>();
+        expectedData.listNames().forEachRemaining(names::add);
+        List<String> actualNames = new ArrayList<>();
+        actualData.listNames().forEachRemaining(actualNames::add);
+        assertEquals(message, names, actualNames);
+        for (String name : names)
+            assertTrue(message, expectedData.getNamedModel(name).isIsomorphicWith(actualData.getNamedModel(name)));
+    }
+
+    private static Dataset parse(Lang lang, String data) {
+        Dataset dataset = DatasetFactory.createMem();
+        RDFDataMgr.read(dataset, new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)),
+                ColumnSchema.RDF_BASE, lang);
+        return dataset;
+    }
+
+    /**
+     * Remembers how much had been written at the last flush, and whether it was closed.
+     */
+    private static class TrackedStream extends ByteArrayOutputStream {
+        private int flushed = -1;
+        private boolean closed;
+
+        @Override
+        public void flush() {
+            flushed = size();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static Table csv(String fixture) throws IOException {
+        try (InputStream in = TableOutputTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package im.abe.pdfdata;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads workbooks with {@link WorkbookReader}'s event-based parsers and checks the cells against what POI's usermodel
+ * makes of the same file, converted the way the usermodel-based reader used to.
+ */
+public class WorkbookReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void xlsMatchesTheUsermodel() throws Exception {
+        File file = fixture("imports_exports.xls");
+        assertEquals(readWithUsermodel(file), read(file));
+    }
+
+    @Test
+    public void xlsxMatchesTheUsermodel() throws Exception {
+        File file = fixture("imports_exports.xlsx");
+        assertEquals(readWithUsermodel(file), read(file));
+    }
+
+    @Test
+    public void bothFormatsReadTheSameTable() throws Exception {
+        Table xls = read(fixture("imports_exports.xls"));
+        Table xlsx = read(fixture("imports_exports.xlsx"));
+
+        assertEquals(xls.getColumnNames(), xlsx.getColumnNames());
+        assertEquals(xls.getCells(), xlsx.getCells());
+        assertEquals(56, xls.getStore().getRowCount());
+        assertEquals("Period", xls.getColumnNames().get(0));
+        assertEquals("1960.0", xls.get(0, 0));
+    }
+
+    @Test
+    public void everyKindOfCellMatchesTheUsermodel() throws Exception {
+        for (Workbook workbook : new Workbook[]{new HSSFWorkbook(), new XSSFWorkbook()}) {
+            File file = writeEveryKindOfCell(workbook);
+            Table table = read(file);
+
+            assertEquals(file.getName(), readWithUsermodel(file), table);
+            assertEquals("B2*2", table.get(0, 2));
+            assertEquals("true", table.get(0, 3));
+            assertEquals("!! ERROR !!", table.get(0, 4));
+            assertEquals("", table.get(1, 3));
+        }
+    }
+
+    @Test
+    public void everySheetIsReadIntoItsOwnTable() throws Exception {
+        List<String> fixtures = Arrays.asList("attachment", "country_ranking", "journals");
+        for (Workbook workbook : new Workbook[]{new HSSFWorkbook(), new XSSFWorkbook()}) {
+            File file = writeSheets(workbook, fixtures);
+            List<Table> tables;
+            try (InputStream in = new FileInputStream(file)) {
+                tables = WorkbookReader.readAll(in);
+            }
+
+            // the empty sheet is left out
+            assertEquals(file.getName(), fixtures.size(), tables.size());
+            for (int i = 0; i < fixtures.size(); i++) {
+                Table expected = readCSV(fixtures.get(i));
+                assertEquals(fixtures.get(i), tables.get(i).getName());
+                assertEquals(expected.getColumnNames(), tables.get(i).getColumnNames());
+                assertEquals(expected.getCells(), tables.get(i).getCells());
+            }
+        }
+    }
+
+    @Test
+    public void aBrokenSheetFailsTheWholeWorkbook() throws Exception {
+        File file = writeSheets(new XSSFWorkbook(), Arrays.asList("attachment", "country_ranking", "journals"));
+        File broken = breakSheet(file, "xl/worksheets/sheet3.xml");
+
+        try (InputStream in = new FileInputStream(broken)) {
+            WorkbookReader.readAll(in);
+            fail("Read a workbook with a broken sheet");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the other sheets' tasks were waited for, and the executor is still usable
+        try (InputStream in = new FileInputStream(file)) {
+            assertEquals(3, WorkbookReader.readAll(in).size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherDataIsRejected() throws IOException {
+        try (InputStream in = WorkbookReaderTest.class.getResourceAsStream("/data/imports_exports.csv")) {
+            WorkbookReader.read("csv", in);
+        }
+    }
+
+    /**
+     * Writes the attachment fixture to a sheet with a formula, a boolean, an error and a blank cell added to it.
+     */
+    private File writeEveryKindOfCell(Workbook workbook) throws IOException {
+        Table attachment = readCSV("attachment");
+
+        Sheet sheet = workbook.createSheet("attachment");
+        Row header = sheet.createRow(0);
+        String[] headings = {"Day", "Temperature", "Doubled", "Warm", "Note"};
+        for (int i = 0; i < headings.length; i++)
+            header.createCell(i).setCellValue(headings[i]);
+
+        for (int row = 0; row < attachment.getStore().getRowCount(); row++) {
+            Row cells = sheet.createRow(row + 1);
+            cells.createCell(0).setCellValue(attachment.get(row, 0));
+            cells.createCell(1).setCellValue(Double.parseDouble(attachment.get(row, 1)));
+            cells.createCell(2).setCellFormula("B" + (row + 2) + "*2");
+            if (row == 0) {
+                cells.createCell(3).setCellValue(true);
+                cells.createCell(4).setCellErrorValue(FormulaError.DIV0.getCode());
+            } else {
+                cells.createCell(3, Cell.CELL_TYPE_BLANK);
+            }
+        }
+
+        File file = folder.newFile("cells" + (workbook instanceof HSSFWorkbook ? ".xls" : ".xlsx"));
+        try (OutputStream out = new FileOutputStream(file)) {
+            workbook.write(out);
+        }
+        workbook.close();
+        return file;
+    }
+
+    /**
+     * Writes each CSV fixture to a sheet of its own, as text cells, with an empty sheet after the first.
+     */
+    private File writeSheets(Workbook workbook, List<String> fixtures) throws IOException {
+        for (String fixture : fixtures) {
+            Table table = readCSV(fixture);
+            Sheet sheet = workbook.createSheet(fixture);
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < table.getColumnNames().size(); i++)
+                header.createCell(i).setCellValue(table.getColumnNames().get(i));
+            for (int row = 0; row < table.getStore().getRowCount(); row++) {
+                Row cells = sheet.createRow(row + 1);
+                for (int i = 0; i < table.getStore().getRowWidth(row); i++)
+                    cells.createCell(i).setCellValue(table.get(row, i));
+            }
+
+            if (workbook.getNumberOfSheets() == 1)
+                workbook.createSheet("empty");
+        }
+
+        File file = folder.newFile("sheets" + (workbook instanceof HSSFWorkbook ? ".xls" : ".xlsx"));
+        try (OutputStream out = new FileOutputStream(file)) {
+            workbook.write(out);
+        }
+        workbook.close();
+        return file;
+    }
+
+    /**
+     * Copies an .xlsx package, cutting one part off half way through.
+     */
+    private File breakSheet(File file, String partName) throws IOException {
+        File broken = folder.newFile("broken.xlsx");
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(file));
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(broken))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                    data.write(buffer, 0, read);
+
+                byte[] bytes = data.toByteArray();
+                if (entry.getName().equals(partName))
+                    bytes = new String(bytes, StandardCharsets.UTF_8).substring(0, bytes.length / 2)
+                            .getBytes(StandardCharsets.UTF_8);
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(bytes);
+                out.closeEntry();
+            }
+        }
+        return broken;
+    }
+
+    private static Table readCSV(String fixture) throws IOException {
+        try (InputStream in = WorkbookReaderTest.class.getResourceAsStream("/data/" + fixture + ".csv")) {
+            return Table.fromCSV(fixture, in);
+        }
+    }
+
+    private static File fixture(String fileName) throws Exception {
+        return new File(WorkbookReaderTest.class.getResource("/data/" + fileName).toURI());
+    }
+
+    private static Table read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return WorkbookReader.read(file.getName(), in);
+        }
+    }
+
+    /**
+     * Reads the first sheet with POI's usermodel, converting cells as the usermodel-based reader did.
+     */
+    private static Table readWithUsermodel(File file) throws Exception {
+        try (Workbook workbook = WorkbookFactory.create(file)) {
+            Sheet sheet = workbook.getSheetAt(0);
+            List<String> headers = new ArrayList<>();
+            List<List<String>> rows = new ArrayList<>();
+            for (Row row : sheet) {
+                List<String> cells = row.getRowNum() == 0 ? headers : new ArrayList<>();
+                for (Cell cell : row)
+                    cells.add(toString(cell));
+                if (row.getRowNum() > 0)
+                    rows.add(cells);
+            }
+            return new Table(file.getName(), headers, rows);
+        }
+    }
+
+    private static String toString(Cell cell) {
+        switch (cell.getCellType()) {
+            case Cell.CELL_TYPE_BLANK:
+                return "";
+            case Cell.CELL_TYPE_BOOLEAN:
+                return Boolean.toString(cell.getBooleanCellValue());
+            case Cell.CELL_TYPE_ERROR:
+                return "!! ERROR !!";
+            case Cell.CELL_TYPE_FORMULA:
+                return cell.getCellFormula();
+            case Cell.CELL_TYPE_NUMERIC:
+                return Double.toString(cell.getNumericCellValue());
+            default:
+                return cell.getStringCellValue();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package im.abe.pdfdata;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPIterator;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.IteratorOptions;
+import com.adobe.xmp.options.ParseOptions;
+import com.adobe.xmp.properties.XMPProperty;
+import com.adobe.xmp.properties.XMPPropertyInfo;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Looks up properties, fields and qualifiers by name in trees wide enough for xmpcore to index them, before and
+ * after the trees are changed, and checks each is found exactly where it is.
+ */
+public class XMPLookupTest {
+    private static final String NS = "http://ns.example.com/";
+    private static final int WIDE = 100;
+
+    static {
+        try {
+            XMPMetaFactory.getSchemaRegistry().registerNamespace(NS, "ex");
+        } catch (XMPException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void everyPropertyOfTheFixturesIsFound() throws Exception {
+        int found = 0;
+        for (String fixture : Arrays.asList("annotation.pdf", "attachment.pdf", "country_ranking.pdf", "form.pdf",
+                "journals.pdf", "meta.pdf")) {
+            XMPMeta meta = fixture(fixture);
+            if (meta == null)
+                continue;
+
+            XMPIterator iterator = meta.iterator(new IteratorOptions().setJustLeafnodes(true));
+            while (iterator.hasNext()) {
+                XMPPropertyInfo info = (XMPPropertyInfo) iterator.next();
+                String path = info.getPath();
+                if (path == null || path.contains("?"))
+                    continue;
+                // array items don't carry their namespace
+                String namespace = XMPMetaFactory.getSchemaRegistry()
+                        .getNamespaceURI(path.substring(0, path.indexOf(':')));
+                assertNotNull(fixture + " " + path, meta.getProperty(namespace, path));
+                found++;
+            }
+        }
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void propertiesAreFoundAsTheyComeAndGo() throws Exception {
+        XMPMeta meta = XMPMetaFactory.create();
+        for (int i = 0; i < WIDE; i++)
+            meta.setProperty(NS, "p" + i, "v" + i);
+        for (int i = 0; i < WIDE; i += 2)
+            meta.deleteProperty(NS, "p" + i);
+        for (int i = 0; i < WIDE; i += 4)
+            meta.setProperty(NS, "p" + i, "again" + i);
+        for (int i = 1; i < WIDE; i += 2)
+            meta.setProperty(NS, "p" + i, "changed" + i);
+
+        for (int i = 0; i < WIDE; i++) {
+            String expected = i % 4 == 0 ? "again" + i : i % 2 == 0 ? null : "changed" + i;
+            assertEquals("p" + i, expected, meta.getPropertyString(NS, "p" + i));
+        }
+    }
+
+    @Test
+    public void fieldsAndQualifiersAreFoundAsTheyComeAndGo() throws Exception {
+        XMPMeta meta = XMPMetaFactory.create();
+        meta.setProperty(NS, "q", "value");
+        for (int i = 0; i < WIDE; i++) {
+            meta.setStructField(NS, "s", NS, "f" + i, "v" + i);
+            meta.setQualifier(NS, "q", NS, "q" + i, "v" + i);
+        }
+        for (int i = 0; i < WIDE; i += 3) {
+            meta.deleteStructField(NS, "s", NS, "f" + i);
+            meta.deleteQualifier(NS, "q", NS, "q" + i);
+        }
+
+        for (int i = 0; i < WIDE; i++) {
+            String expected = i % 3 == 0 ? null : "v" + i;
+            assertEquals("f" + i, expected, value(meta.getStructField(NS, "s", NS, "f" + i)));
+            assertEquals("q" + i, expected, value(meta.getQualifier(NS, "q", NS, "q" + i)));
+        }
+    }
+
+    @Test
+    public void sortedAndClonedTreesFindTheSameProperties() throws Exception {
+        XMPMeta meta = XMPMetaFactory.create();
+        for (int i = WIDE; i > 0; i--)
+            meta.setStructField(NS, "s", NS, "f" + i, "v" + i);
+
+        XMPMeta clone = (XMPMeta) meta.clone();
+        meta.sort();
+        clone.deleteStructField(NS, "s", NS, "f1");
+        clone.setStructField(NS, "s", NS, "g", "new");
+
+        for (int i = 1; i <= WIDE; i++)
+            assertEquals("v" + i, value(meta.getStructField(NS, "s", NS, "f" + i)));
+        assertNull(meta.getStructField(NS, "s", NS, "g"));
+        assertNull(clone.getStructField(NS, "s", NS, "f1"));
+        assertEquals("v2", value(clone.getStructField(NS, "s", NS, "f2")));
+        assertEquals("new", value(clone.getStructField(NS, "s", NS, "g")));
+    }
+
+    @Test
+    public void wideArraysKeepTheirItems() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 1; i <= WIDE; i++)
+            items.append("<rdf:li>item ").append(i).append("</rdf:li>");
+        String packet = packet("<ex:list><rdf:Bag>" + items + "</rdf:Bag></ex:list>");
+
+        for (boolean streaming : new boolean[]{true, false}) {
+            XMPMeta meta = parse(packet, streaming);
+            assertEquals(WIDE, meta.countArrayItems(NS, "list"));
+            for (int i = 1; i <= WIDE; i++)
+                assertEquals("item " + i, meta.getArrayItem(NS, "list", i).getValue());
+        }
+    }
+
+    @Test
+    public void duplicatePropertiesAreRejectedHoweverManyThereAre() {
+        StringBuilder properties = new StringBuilder();
+        for (int i = 0; i < WIDE; i++)
+            properties.append("<ex:p").append(i).append(">v</ex:p").append(i).append(">");
+        String packet = packet(properties + "<ex:p50>again</ex:p50>");
+
+        for (boolean streaming : new boolean[]{true, false}) {
+            try {
+                parse(packet, streaming);
+                fail("streaming: " + streaming);
+            } catch (XMPException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Duplicate"));
+            }
+        }
+    }
+
+    private static String value(XMPProperty property) {
+        return property == null ? null : property.getValue();
+    }
+
+    private static String packet(String properties) {
+        return "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">"
+                + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">"
+                + "<rdf:Description rdf:about=\"\" xmlns:ex=\"" + NS + "\">" + properties + "</rdf:Description>"
+                + "</rdf:RDF></x:xmpmeta>";
+    }
+
+    private static XMPMeta parse(String packet, boolean streaming) throws XMPException {
+        return XMPMetaFactory.parseFromBuffer(packet.getBytes(StandardCharsets.UTF_8),
+                new ParseOptions().setStreaming(streaming));
+    }
+
+    /**
+     * @return A fixture's parsed XMP packet, or null if it has none.
+     */
+    private static XMPMeta fixture(String fixture) throws IOException, XMPException {
+        try (PDDocument doc = PDDocument.load(XMPLookupTest.class.getResourceAsStream("/docs/" + fixture))) {
+            PDMetadata metadata = doc.getDocumentCatalog().getMetadata();
+            return metadata == null ? null : XMPMetaFactory.parseFromBuffer(metadata.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package im.abe.pdfdata;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.ParseOptions;
+import com.adobe.xmp.options.SerializeOptions;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses the fixtures' XMP packets with both of xmpcore's parsers, the streaming one and the DOM one, which have to
+ * build the same tree.
+ */
+public class XMPParsingTest {
+    private static final String PACKET_START = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">"
+            + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">"
+            + "<rdf:Description rdf:about=\"\" xmlns:ex=\"http://ns.example.com/\" ex:a=\"";
+    private static final String PACKET_END = "\"/></rdf:RDF></x:xmpmeta>";
+
+    @Test
+    public void bothParsersBuildTheSameTree() throws Exception {
+        for (String fixture : Arrays.asList("annotation.pdf", "attachment.pdf", "country_ranking.pdf", "form.pdf",
+                "journals.pdf", "meta.pdf")) {
+            byte[] packet = packet(fixture);
+            if (packet == null)
+                continue;
+
+            XMPMeta streamed = XMPMetaFactory.parseFromBuffer(packet, new ParseOptions().setStreaming(true));
+            XMPMeta dom = XMPMetaFactory.parseFromBuffer(packet, new ParseOptions().setStreaming(false));
+
+            assertEquals(fixture, dom.dumpObject(), streamed.dumpObject());
+            assertEquals(fixture, serialize(dom), serialize(streamed));
+        }
+    }
+
+    @Test
+    public void streamingIsTheDefault() throws Exception {
+        assertTrue(new ParseOptions().getStreaming());
+
+        byte[] packet = packet("meta.pdf");
+        assertEquals(XMPMetaFactory.parseFromBuffer(packet, new ParseOptions().setStreaming(false)).dumpObject(),
+                XMPMetaFactory.parseFromBuffer(packet).dumpObject());
+    }
+
+    @Test
+    public void bothParsersReadPlainPackets() throws Exception {
+        String packet = PACKET_START + "plain" + PACKET_END;
+        assertEquals("plain", parse(packet, true).getPropertyString("http://ns.example.com/", "a"));
+        assertEquals("plain", parse(packet, false).getPropertyString("http://ns.example.com/", "a"));
+    }
+
+    @Test
+    public void bothParsersRefuseInternalEntities() {
+        String packet = "<!DOCTYPE x [<!ENTITY e \"boom\">]>" + PACKET_START + "&e;" + PACKET_END;
+        assertRefused(packet, true);
+        assertRefused(packet, false);
+    }
+
+    @Test
+    public void bothParsersRefuseExternalEntities() {
+        String packet = "<!DOCTYPE x [<!ENTITY e SYSTEM \"file:///etc/hostname\">]>" + PACKET_START + "&e;"
+                + PACKET_END;
+        assertRefused(packet, true);
+        assertRefused(packet, false);
+    }
+
+    private static void assertRefused(String packet, boolean streaming) {
+        try {
+            XMPMeta meta = parse(packet, streaming);
+            fail((streaming ? "Streaming" : "DOM") + " parser read "
+                    + meta.getPropertyString("http://ns.example.com/", "a"));
+        } catch (XMPException e) {
+            // expected
+        }
+    }
+
+    private static XMPMeta parse(String packet, boolean streaming) throws XMPException {
+        return XMPMetaFactory.parseFromBuffer(packet.getBytes(StandardCharsets.UTF_8),
+                new ParseOptions().setStreaming(streaming));
+    }
+
+    private static String serialize(XMPMeta meta) throws XMPException {
+        return XMPMetaFactory.serializeToString(meta, new SerializeOptions().setOmitPacketWrapper(true));
+    }
+
+    /**
+     * @return A fixture's XMP packet, or null if it has none.
+     */
+    private static byte[] packet(String fixture) throws IOException {
+        try (PDDocument doc = PDDocument.load(XMPParsingTest.class.getResourceAsStream("/docs/" + fixture))) {
+            PDMetadata metadata = doc.getDocumentCatalog().getMetadata();
+            return metadata == null ? null : metadata.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package im.abe.pdfdata.web;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of extraction results, so that a document that is submitted over and over is only parsed once.
+ * Results are keyed by a SHA-256 of the PDF's bytes, or, for documents fetched by URL, by the URL and its ETag or
+ * Last-Modified header.
+ * <p>
+ * There are two tiers. Recently used results are kept in memory, up to a total size; every result is also written
+ * through to a directory on disk, which has its own size limit. Both tiers evict least recently used entries first,
+ * and entries older than the time to live are never returned. A disk hit small enough for memory is promoted back
+ * into it; larger ones are streamed from their file.
+ * <p>
+ * Results are never rendered into memory first: a {@link Recording} streams each one to the client as it's written,
+ * copying it into the disk tier as it goes, and into the memory tier only while it still fits there.
+ */
+@Component
+public class ExtractionCache {
+    private static final int MAGIC = 0x4f444332; // "ODC2": the body runs to the end of the file
+    private static final String SUFFIX = ".entry";
+
+    /**
+     * Rough per-entry overhead counted against the memory limit, on top of the body itself.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final long ttlMillis;
+    private final File directory;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    /**
+     * Every entry on disk, by file name, with its size in bytes.
+     */
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    @Autowired
+    public ExtractionCache(@Value("${extraction.cache.memoryBytes:67108864}") long maxMemoryBytes,
+                           @Value("${extraction.cache.diskBytes:1073741824}") long maxDiskBytes,
+                           @Value("${extraction.cache.ttlSeconds:86400}") long ttlSeconds,
+                           @Value("${extraction.cache.directory:}") String directory) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.directory = directory.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "pdfdata-cache") : new File(directory);
+
+        if (maxDiskBytes > 0)
+            loadDiskIndex();
+    }
+
+    /**
+     * Finds the entries already on disk, oldest first, so that they are the first to go.
+     */
+    private void loadDiskIndex() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Failed to create extraction cache directory!");
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null)
+            return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            disk.put(file.getName(), file.length());
+            diskBytes += file.length();
+        }
+        trimDisk();
+    }
+
+    /**
+     * Computes a cache key from the contents of a document.
+     *
+     * @param in The document's bytes. Read to the end, but not closed.
+     * @return The key.
+     * @throws IOException If reading fails.
+     */
+    public static String contentKey(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (DigestInputStream digestIn = new DigestInputStream(new FilterInputStream(in) {
+            @Override
+            public void close() {
+                // leave the caller's stream open
+            }
+        }, digest)) {
+            while (digestIn.read(buffer) != -1) {
+                // just digesting
+            }
+        }
+        return "sha256:" + hex(digest.digest());
+    }
+
+    /**
+     * Computes a cache key for a document fetched by URL, if the server gave it a validator.
+     *
+     * @param url          The document's URL.
+     * @param etag         The ETag response header, or null.
+     * @param lastModified The Last-Modified response header, or null.
+     * @return The key, or null if there's no validator to key on.
+     */
+    public static String urlKey(String url, String etag, String lastModified) {
+        if (etag != null)
+            return "url:" + url + "\netag:" + etag;
+        if (lastModified != null)
+            return "url:" + url + "\nmodified:" + lastModified;
+        return null;
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param key The key.
+     * @return The cached result, or null.
+     */
+    public Entry get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (now - entry.created <= ttlMillis) {
+                    memoryHits.incrementAndGet();
+                    return entry;
+                }
+                removeFromMemory(key);
+                expirations.incrementAndGet();
+            }
+        }
+
+        Entry entry = maxDiskBytes > 0 ? readFromDisk(key, now) : null;
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        diskHits.incrementAndGet();
+        if (entry.body != null) {
+            synchronized (this) {
+                addToMemory(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Starts rendering a result that wasn't in the cache. The response's headers are set straight away, and
+     * everything written to the recording goes to the client as it's written. The result is only stored once it's
+     * {@link Recording#commit() committed}, so one that fails partway is never served again.
+     *
+     * @param key         The key.
+     * @param contentType The result's content type.
+     * @param disposition The result's Content-Disposition header, or null for none.
+     * @param response    The response to stream the result to.
+     * @return The recording. Must be closed.
+     * @throws IOException If the response can't be written.
+     */
+    public Recording record(String key, String contentType, String disposition, HttpServletResponse response)
+            throws IOException {
+        response.setContentType(contentType);
+        if (disposition != null)
+            response.setHeader("Content-Disposition", disposition);
+        return new Recording(key, contentType, disposition, response.getOutputStream());
+    }
+
+    private void addToMemory(String key, Entry entry) {
+        removeFromMemory(key);
+        long size = entry.body.length + ENTRY_OVERHEAD;
+        if (size > maxMemoryBytes)
+            return;
+
+        memory.put(key, entry);
+        memoryBytes += size;
+
+        Iterator<Entry> eldest = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes) {
+            memoryBytes -= eldest.next().body.length + ENTRY_OVERHEAD;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        Entry old = memory.remove(key);
+        if (old != null)
+            memoryBytes -= old.body.length + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Opens a result on disk. One small enough for the memory tier is read in whole; a larger one is left open, to be
+     * streamed by {@link Entry#writeTo(HttpServletResponse)}, so that it's still readable if it's evicted meanwhile.
+     */
+    private Entry readFromDisk(String key, long now) {
+        String name = fileName(key);
+        synchronized (this) {
+            if (disk.get(name) == null)
+                return null;
+        }
+
+        File file = new File(directory, name);
+        FileInputStream fileIn = null;
+        try {
+            fileIn = new FileInputStream(file);
+            CountingInputStream counting = new CountingInputStream(new BufferedInputStream(fileIn));
+            DataInputStream in = new DataInputStream(counting);
+            if (in.readInt() != MAGIC) {
+                // written by an older version
+                fileIn.close();
+                removeFromDisk(name);
+                return null;
+            }
+            if (!in.readUTF().equals(key)) {
+                fileIn.close();
+                return null;
+            }
+
+            long created = in.readLong();
+            String contentType = in.readUTF();
+            String disposition = in.readUTF();
+            long length = fileIn.getChannel().size() - counting.getCount();
+
+            if (now - created > ttlMillis) {
+                fileIn.close();
+                removeFromDisk(name);
+                expirations.incrementAndGet();
+                return null;
+            }
+
+            if (length + ENTRY_OVERHEAD > maxMemoryBytes)
+                return new Entry(contentType, disposition.isEmpty() ? null : disposition, in, length, created);
+
+            byte[] body = new byte[(int) length];
+            in.readFully(body);
+            fileIn.close();
+            return new Entry(contentType, disposition.isEmpty() ? null : disposition, body, created);
+        } catch (IOException e) {
+            // evicted underneath us, or a partial file from a crash; either way it's a miss
+            closeQuietly(fileIn);
+            removeFromDisk(name);
+            return null;
+        }
+    }
+
+    /**
+     * Moves a finished result into the disk tier.
+     */
+    private void addToDisk(String key, File temp) throws IOException {
+        String name = fileName(key);
+        long size = temp.length();
+        if (size > maxDiskBytes)
+            return;
+        Files.move(temp.toPath(), new File(directory, name).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            Long old = disk.put(name, size);
+            diskBytes += size - (old == null ? 0 : old);
+            trimDisk();
+        }
+    }
+
+    private synchronized void removeFromDisk(String name) {
+        Long size = disk.remove(name);
+        if (size != null)
+            diskBytes -= size;
+        new File(directory, name).delete();
+    }
+
+    private synchronized void trimDisk() {
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            new File(directory, entry.getKey()).delete();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return A snapshot of the hit, miss and eviction counters and of each tier's size.
+     */
+    public synchronized Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("memoryEntries", (long) memory.size());
+        stats.put("memoryBytes", memoryBytes);
+        stats.put("diskEntries", (long) disk.size());
+        stats.put("diskBytes", diskBytes);
+        return stats;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing more to do with it
+        }
+    }
+
+    private static String fileName(String key) {
+        MessageDigest digest = sha256();
+        return hex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + SUFFIX;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // every JRE has SHA-256
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return builder.toString();
+    }
+
+    /**
+     * A rendered extraction result: the response body and the headers that go with it. The body is either held in
+     * memory, and can be written any number of times, or an open file from the disk tier, which is written once.
+     */
+    public static class Entry {
+        private final String contentType;
+        private final String disposition;
+        private final byte[] body;
+        private final InputStream bodyIn;
+        private final long length;
+        private final long created;
+
+        private Entry(String contentType, String disposition, byte[] body, long created) {
+            this.contentType = contentType;
+            this.disposition = disposition;
+            this.body = body;
+            this.bodyIn = null;
+            this.length = body.length;
+            this.created = created;
+        }
+
+        private Entry(String contentType, String disposition, InputStream bodyIn, long length, long created) {
+            this.contentType = contentType;
+            this.disposition = disposition;
+            this.body = null;
+            this.bodyIn = bodyIn;
+            this.length = length;
+            this.created = created;
+        }
+
+        /**
+         * Writes this result to an HTTP response.
+         *
+         * @param response The response.
+         * @throws IOException If writing fails.
+         */
+        public void writeTo(HttpServletResponse response) throws IOException {
+            response.setContentType(contentType);
+            if (disposition != null)
+                response.setHeader("Content-Disposition", disposition);
+            if (length <= Integer.MAX_VALUE)
+                response.setContentLength((int) length);
+
+            if (body != null) {
+                response.getOutputStream().write(body);
+            } else {
+                try (InputStream in = bodyIn) {
+                    ByteStreams.copy(in, response.getOutputStream());
+                }
+            }
+        }
+    }
+
+    /**
+     * A result being rendered: a stream that passes everything through to the client and copies it into the cache's
+     * tiers. The disk copy is dropped if writing it fails or it outgrows the disk tier, and the memory copy as soon as
+     * it outgrows the memory tier, without the response being affected either way.
+     */
+    public class Recording extends OutputStream {
+        private final String key;
+        private final String contentType;
+        private final String disposition;
+        private final long created = System.currentTimeMillis();
+        private final OutputStream response;
+
+        private ByteArrayOutputStream memoryCopy = new ByteArrayOutputStream();
+        private File temp;
+        private DataOutputStream diskCopy;
+        private long length;
+
+        private Recording(String key, String contentType, String disposition, OutputStream response) {
+            this.key = key;
+            this.contentType = contentType;
+            this.disposition = disposition;
+            this.response = response;
+
+            if (maxDiskBytes > 0) {
+                try {
+                    temp = File.createTempFile("entry", ".tmp", directory);
+                    diskCopy = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                    diskCopy.writeInt(MAGIC);
+                    diskCopy.writeUTF(key);
+                    diskCopy.writeLong(created);
+                    diskCopy.writeUTF(contentType);
+                    diskCopy.writeUTF(disposition == null ? "" : disposition);
+                } catch (IOException e) {
+                    // the disk tier is best effort
+                    e.printStackTrace();
+                    dropDiskCopy();
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            response.write(b, off, len);
+            length += len;
+
+            if (memoryCopy != null) {
+                if (length + ENTRY_OVERHEAD > maxMemoryBytes)
+                    memoryCopy = null;
+                else
+                    memoryCopy.write(b, off, len);
+            }
+
+            if (diskCopy != null) {
+                try {
+                    diskCopy.write(b, off, len);
+                    if (length > maxDiskBytes)
+                        dropDiskCopy();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    dropDiskCopy();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            response.flush();
+        }
+
+        /**
+         * Stores the result, now that it's been written in full.
+         *
+         * @throws IOException If the response can't be flushed.
+         */
+        public void commit() throws IOException {
+            response.flush();
+
+            if (memoryCopy != null) {
+                synchronized (ExtractionCache.this) {
+                    addToMemory(key, new Entry(contentType, disposition, memoryCopy.toByteArray(), created));
+                }
+                memoryCopy = null;
+            }
+
+            if (diskCopy != null) {
+                try {
+                    diskCopy.close();
+                    diskCopy = null;
+                    addToDisk(key, temp);
+                } catch (IOException e) {
+                    // the disk tier is best effort; the client has the result either way
+                    e.printStackTrace();
+                } finally {
+                    dropDiskCopy();
+                }
+            }
+        }
+
+        /**
+         * Discards whatever wasn't committed. The response itself is left open.
+         */
+        @Override
+        public void close() {
+            memoryCopy = null;
+            dropDiskCopy();
+        }
+
+        private void dropDiskCopy() {
+            closeQuietly(diskCopy);
+            diskCopy = null;
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp.toPath());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                temp = null;
+            }
+        }
+    }
+}
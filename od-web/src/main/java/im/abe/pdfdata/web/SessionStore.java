@@ -0,0 +1,446 @@
+package im.abe.pdfdata.web;
+
+import com.adobe.xmp.XMPException;
+import im.abe.pdfdata.IncrementalSave;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Editor sessions: one PDF per session, stored on disk under an unguessable token.
+ * <p>
+ * Sessions are evicted when they've been idle for too long, and least recently used sessions are evicted whenever
+ * the files on disk exceed the quota. The most recently used sessions also keep their parsed {@link PDDocument} in
+ * memory, so that a run of edits to the same document doesn't parse it again each time. Every change is saved to
+ * disk before it's acknowledged, so a document can be dropped from memory at any time.
+ * <p>
+ * A background sweeper enforces the idle timeouts. Requests for the same session are serialized; requests for
+ * different sessions run concurrently.
+ */
+@Component
+public class SessionStore {
+    private static final String PREFIX = "file_";
+    private static final int TOKEN_LENGTH = 32;
+    private static final Pattern TOKEN = Pattern.compile(PREFIX + "[a-zA-Z0-9]{" + TOKEN_LENGTH + "}");
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private final File directory;
+    private final long maxDiskBytes;
+    private final int maxHotSessions;
+    private final long idleMillis;
+    private final long hotIdleMillis;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Every session, least recently used first. Guarded by this.
+     */
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The sessions allowed to keep a loaded document, least recently used first. Guarded by this.
+     */
+    private final LinkedHashMap<String, Session> hot = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+
+    @Autowired
+    public SessionStore(@Value("${session.store.directory:}") String directory,
+                        @Value("${session.store.diskBytes:1073741824}") long maxDiskBytes,
+                        @Value("${session.store.hotSessions:16}") int maxHotSessions,
+                        @Value("${session.store.idleMinutes:60}") long idleMinutes,
+                        @Value("${session.store.hotIdleMinutes:5}") long hotIdleMinutes,
+                        @Value("${session.store.sweepSeconds:60}") long sweepSeconds) {
+        this.directory = directory.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"), "pdfdata-sessions") : new File(directory);
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxHotSessions = maxHotSessions;
+        this.idleMillis = TimeUnit.MINUTES.toMillis(idleMinutes);
+        this.hotIdleMillis = TimeUnit.MINUTES.toMillis(hotIdleMinutes);
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new RuntimeException("Failed to create session directory!");
+        }
+        loadIndex();
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Picks up the sessions left on disk by a previous run, as if each was last used when its file was written.
+     * Leftover temporary files are deleted.
+     */
+    private void loadIndex() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (TOKEN.matcher(file.getName()).matches()) {
+                Session session = new Session(file, file.length(), file.lastModified());
+                sessions.put(file.getName(), session);
+                diskBytes += session.size;
+            } else if (file.getName().endsWith(".tmp")) {
+                file.delete();
+            }
+        }
+        removeAll(trimToQuota(null));
+    }
+
+    /**
+     * Starts a new session.
+     *
+     * @param pdf The PDF to edit. Not closed.
+     * @return The new session's token.
+     * @throws IOException If the PDF can't be stored.
+     */
+    public String create(InputStream pdf) throws IOException {
+        String token = newToken();
+        File file = new File(directory, token);
+        long size = Files.copy(pdf, file.toPath());
+        if (size > maxDiskBytes) {
+            Files.delete(file.toPath());
+            throw new IOException("Document too large to edit");
+        }
+
+        Session session = new Session(file, size, System.currentTimeMillis());
+        List<Session> evicted;
+        synchronized (this) {
+            sessions.put(token, session);
+            diskBytes += size;
+            evicted = trimToQuota(session);
+        }
+        removeAll(evicted);
+        return token;
+    }
+
+    private String newToken() {
+        StringBuilder builder = new StringBuilder(PREFIX);
+        for (int i = 0; i < TOKEN_LENGTH; i++)
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return builder.toString();
+    }
+
+    /**
+     * Runs a read-only operation on a session's document.
+     *
+     * @param token    The session token.
+     * @param callback The operation. Must not modify the document.
+     * @param <T>      The result type.
+     * @return The operation's result.
+     * @throws IOException  If the document can't be loaded, or the operation fails.
+     * @throws XMPException If the operation fails.
+     */
+    public <T> T read(String token, Callback<T> callback) throws IOException, XMPException {
+        Session session = acquire(token);
+        try {
+            synchronized (session) {
+                return callback.apply(load(session));
+            }
+        } finally {
+            unloadCold();
+        }
+    }
+
+    /**
+     * Runs an operation that modifies a session's document, then saves the document. If the operation fails, the
+     * in-memory copy is dropped and the session is left as it was last saved.
+     *
+     * @param token    The session token.
+     * @param callback The operation.
+     * @param <T>      The result type.
+     * @return The operation's result.
+     * @throws IOException  If the document can't be loaded or saved, or the operation fails.
+     * @throws XMPException If the operation fails.
+     */
+    public <T> T update(String token, Callback<T> callback) throws IOException, XMPException {
+        Session session = acquire(token);
+        List<Session> evicted;
+        T result;
+        try {
+            long size;
+            synchronized (session) {
+                PDDocument doc = load(session);
+                try {
+                    result = callback.apply(doc);
+                    size = save(session, doc);
+                } catch (IOException | XMPException | RuntimeException e) {
+                    unload(session);
+                    throw e;
+                }
+            }
+
+            synchronized (this) {
+                if (sessions.containsKey(token)) {
+                    diskBytes += size - session.size;
+                    session.size = size;
+                }
+                evicted = trimToQuota(session);
+            }
+        } finally {
+            unloadCold();
+        }
+        removeAll(evicted);
+        return result;
+    }
+
+    /**
+     * Returns a session's PDF file, as last saved. The file is replaced atomically by each save, so a stream opened
+     * on it always sees a complete document, but it may be deleted once the session is evicted.
+     *
+     * @param token The session token.
+     * @return The file.
+     */
+    public File getFile(String token) {
+        return acquire(token).file;
+    }
+
+    /**
+     * Ends a session, deleting its file. Does nothing if the session has already been evicted.
+     *
+     * @param token The session token.
+     */
+    public void remove(String token) {
+        Session session;
+        synchronized (this) {
+            session = sessions.remove(token);
+            if (session == null)
+                return;
+            hot.remove(token);
+            diskBytes -= session.size;
+        }
+        removeAll(Collections.singletonList(session));
+    }
+
+    /**
+     * Looks up a session and marks it as used.
+     */
+    private synchronized Session acquire(String token) {
+        if (token == null || !TOKEN.matcher(token).matches())
+            throw new IllegalArgumentException("Invalid token!");
+
+        Session session = sessions.get(token);
+        if (session == null)
+            throw new IllegalArgumentException("Unknown or expired session.");
+
+        session.lastAccess = System.currentTimeMillis();
+        hot.put(token, session);
+        return session;
+    }
+
+    /**
+     * Returns the session's document, loading it if it isn't in memory. Called with the session's lock held.
+     */
+    private PDDocument load(Session session) throws IOException {
+        if (session.removed)
+            throw new IllegalArgumentException("Unknown or expired session.");
+
+        if (session.doc == null) {
+            // loaded into memory rather than from the file, which is replaced on every save
+            try (InputStream in = new BufferedInputStream(new FileInputStream(session.file))) {
+                session.doc = PDDocument.load(in);
+            }
+        }
+        return session.doc;
+    }
+
+    /**
+     * Saves the session's document over its file. The document's changes are appended to the bytes it was loaded
+     * from as an incremental update, so only what was added since then is serialized again. Called with the
+     * session's lock held.
+     *
+     * @return The new size of the file.
+     */
+    private long save(Session session, PDDocument doc) throws IOException {
+        File temp = File.createTempFile("session", ".tmp", directory);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                IncrementalSave.save(doc, out);
+            }
+            long size = temp.length();
+            Files.move(temp.toPath(), session.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Drops the session's document from memory. Called with the session's lock held.
+     */
+    private static void unload(Session session) {
+        if (session.doc != null) {
+            try {
+                session.doc.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            session.doc = null;
+        }
+    }
+
+    /**
+     * Evicts least recently used sessions until the files on disk fit the quota. Called with this lock held.
+     *
+     * @param keep A session that mustn't be evicted, or null.
+     * @return The evicted sessions, which the caller must pass to {@link #removeAll(List)} once it holds no locks.
+     */
+    private List<Session> trimToQuota(Session keep) {
+        List<Session> evicted = new ArrayList<>();
+        Iterator<Session> eldest = sessions.values().iterator();
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Session session = eldest.next();
+            if (session == keep)
+                continue;
+            eldest.remove();
+            hot.remove(session.file.getName());
+            diskBytes -= session.size;
+            evicted.add(session);
+        }
+        return evicted;
+    }
+
+    /**
+     * Closes and deletes sessions that have already been taken out of the index. Must be called without holding any
+     * lock, since it takes each session's lock in turn.
+     */
+    private void removeAll(List<Session> removed) {
+        for (Session session : removed) {
+            synchronized (session) {
+                session.removed = true;
+                unload(session);
+                session.file.delete();
+            }
+        }
+    }
+
+    /**
+     * Drops the documents of any sessions that have fallen out of the hot tier. Must be called without holding any
+     * lock.
+     */
+    private void unloadCold() {
+        List<Session> cold = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Session> eldest = hot.values().iterator();
+            while (hot.size() > maxHotSessions) {
+                cold.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        unloadAll(cold);
+    }
+
+    private void unloadAll(List<Session> cold) {
+        for (Session session : cold) {
+            synchronized (session) {
+                synchronized (this) {
+                    if (hot.containsKey(session.file.getName()))
+                        continue; // used again in the meantime
+                }
+                unload(session);
+            }
+        }
+    }
+
+    /**
+     * Evicts idle sessions, and drops the documents of sessions that haven't been used for a while.
+     */
+    void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Session> idle = new ArrayList<>();
+            List<Session> cold = new ArrayList<>();
+            synchronized (this) {
+                Iterator<Session> eldest = sessions.values().iterator();
+                while (eldest.hasNext()) {
+                    Session session = eldest.next();
+                    if (now - session.lastAccess <= idleMillis)
+                        break; // everything after this was used more recently
+                    eldest.remove();
+                    hot.remove(session.file.getName());
+                    diskBytes -= session.size;
+                    idle.add(session);
+                }
+
+                Iterator<Session> hotEldest = hot.values().iterator();
+                while (hotEldest.hasNext()) {
+                    Session session = hotEldest.next();
+                    if (now - session.lastAccess <= hotIdleMillis)
+                        break;
+                    hotEldest.remove();
+                    cold.add(session);
+                }
+            }
+            removeAll(idle);
+            unloadAll(cold);
+        } catch (RuntimeException e) {
+            // keep the sweeper scheduled
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the sweeper and closes every loaded document. Session files are kept, and picked up again on restart.
+     */
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+
+        List<Session> all;
+        synchronized (this) {
+            all = new ArrayList<>(sessions.values());
+            hot.clear();
+        }
+        for (Session session : all) {
+            synchronized (session) {
+                unload(session);
+            }
+        }
+    }
+
+    /**
+     * An operation on a session's document.
+     *
+     * @param <T> The result type.
+     */
+    public interface Callback<T> {
+        T apply(PDDocument doc) throws IOException, XMPException;
+    }
+
+    private static class Session {
+        private final File file;
+        private long size;
+        private volatile long lastAccess;
+
+        /**
+         * The loaded document, or null. Guarded by the session's own lock.
+         */
+        private PDDocument doc;
+        private boolean removed;
+
+        private Session(File file, long size, long lastAccess) {
+            this.file = file;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
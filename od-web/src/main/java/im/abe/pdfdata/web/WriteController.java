@@ -1,11 +1,10 @@
 package im.abe.pdfdata.web;
 
 import com.adobe.xmp.XMPException;
-import com.adobe.xmp.XMPMeta;
-import com.adobe.xmp.XMPMetaFactory;
+import com.google.common.io.ByteStreams;
 import im.abe.pdfdata.*;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -22,23 +21,16 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
 import java.util.*;
-import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 @Controller
 public class WriteController {
-    /**
-     * The system temp directory.
-     */
-    private static final File TEMP_DIR = new File(System.getProperty("java.io.tmpdir", "pdfdata_tmp"));
+    @Autowired
+    private ExtractionCache extractionCache;
 
-    static {
-        if (!TEMP_DIR.exists() && !TEMP_DIR.mkdirs()) {
-            throw new RuntimeException("Failed to create temporary upload directory!");
-            // this shouldn't happen - temp is writable - but we need a safeguard
-        }
-    }
+    @Autowired
+    private SessionStore sessionStore;
 
     /**
      * This is the homepage of the site. Static, GET only.
@@ -64,36 +56,23 @@ public class WriteController {
     public String edit(@RequestParam("pdf") MultipartFile pdf,
                        Model model) throws IOException, XMPException {
 
-        InputStream in = pdf.getInputStream();
-        PDDocument doc = PDDocument.load(in);
-        in.close();
+        String token;
+        try (InputStream in = pdf.getInputStream()) {
+            token = sessionStore.create(in);
+        }
 
-        // File.getName() is called because Opera sometimes sends the full path. Ew.
-        model.addAttribute("fileName", new File(pdf.getOriginalFilename()).getName());
-        model.addAttribute("contents", getPreview(doc));
-
-        doc.close();
-
-        StringBuilder tokenBuilder = new StringBuilder("file_");
-        Random random = new Random();
-        for (int i = 0; i < 32; i++) {
-            int choice = random.nextInt(8);
-            if (choice < 6) {
-                tokenBuilder.append((char) ('a' + random.nextInt(26)));
-            } else if (choice == 6) {
-                tokenBuilder.append((char) ('A' + random.nextInt(26)));
-            } else if (choice == 7) {
-                if (tokenBuilder.charAt(tokenBuilder.length() - 1) == '_')
-                    tokenBuilder.append(random.nextInt(10));
-                else
-                    tokenBuilder.append('_');
-            }
+        List<AttachmentDataStorage.FilePreview> contents;
+        try {
+            contents = sessionStore.read(token, this::getPreview);
+        } catch (IOException | XMPException | RuntimeException e) {
+            // not a PDF we can read, so there's nothing to edit
+            sessionStore.remove(token);
+            throw e;
         }
 
-        String token = tokenBuilder.toString();
-        File file = new File(TEMP_DIR, token);
-        file.deleteOnExit();
-        pdf.transferTo(file);
+        // File.getName() is called because Opera sometimes sends the full path. Ew.
+        model.addAttribute("fileName", new File(pdf.getOriginalFilename()).getName());
+        model.addAttribute("contents", contents);
         model.addAttribute("token", token);
 
         return "editor";
@@ -101,36 +80,33 @@ public class WriteController {
 
     /**
      * This endpoint (POST only) simply downloads every stored data object in the uploaded PDF file.
+     * Results are cached by the SHA-256 of the file, so resubmitting a document doesn't parse it again.
      *
-     * @param pdf      The PDF file.
-     * @param response A ZIP file response with the data in it.
+     * @param pdf        The PDF file.
+     * @param formatName The format to download the data in: CSV (the default), JSON, PARQUET, or any plugged-in one.
+     * @param response   A ZIP file response with the data in it.
      * @throws IOException  If reading or writing fails.
      * @throws XMPException If the PDF's XMP data is improperly formatted.
      */
     @RequestMapping(value = "/write", method = RequestMethod.POST, params = "download=true")
     public void downloadAll(@RequestParam("pdf") MultipartFile pdf,
+                            @RequestParam(value = "format", defaultValue = "CSV") String formatName,
                             HttpServletResponse response) throws IOException, XMPException {
 
-        InputStream in = pdf.getInputStream();
-        PDDocument doc = PDDocument.load(in);
-        in.close();
+        TableFormat format = writableFormat(formatName);
+        String key;
+        try (InputStream in = pdf.getInputStream()) {
+            key = formatKey(ExtractionCache.contentKey(in), format);
+        }
 
-        PDDocumentCatalog catalog = doc.getDocumentCatalog();
-        XMPMeta xmp;
-        if (catalog.getMetadata() == null) {
-            xmp = XMPMetaFactory.create();
+        ExtractionCache.Entry result = extractionCache.get(key);
+        if (result != null) {
+            result.writeTo(response);
         } else {
-            xmp = XMPMetaFactory.parse(catalog.getMetadata().createInputStream());
+            try (InputStream in = pdf.getInputStream()) {
+                extract(in, format, key, response);
+            }
         }
-
-        List<Table> tables = new ArrayList<>();
-
-        tables.addAll(new AnnotationDataStorage().read(doc, xmp));
-        tables.addAll(new AttachmentDataStorage().read(doc, xmp));
-        tables.addAll(new FormDataStorage().read(doc, xmp));
-        tables.addAll(new XMPDataStorage().read(doc, xmp));
-
-        zipAll(tables, Format.CSV, response);
     }
 
     /**
@@ -138,7 +114,8 @@ public class WriteController {
      *
      * @param token    The session token.
      * @param fileName The filename of the PDF.
-     * @param data     The new data to add. CSV format.
+     * @param data     The new data to add, in any readable format. Recognized by its magic number, or else by its
+     *                 file name or content type.
      * @param fragment The fragment location to add the data to.
      * @param model    The template data model.
      * @return The editor template.
@@ -152,67 +129,43 @@ public class WriteController {
                          @RequestParam("fragment") String fragment,
                          Model model) throws IOException, XMPException {
 
-        if (Pattern.matches("[^a-zA-Z0-9_]", token))
-            throw new IllegalArgumentException("Invalid token!");
-
-        File pdf = new File(TEMP_DIR, token);
-
-        InputStream pdfIn = new FileInputStream(pdf);
-        PDDocument doc = PDDocument.load(pdfIn);
-        pdfIn.close();
-
-        InputStream dataIn = data.getInputStream();
-        Destination destination = Destination.fragment(fragment);
-
-        final String name = destination.nameAttachment(doc, fileName);
-        final Table table;
-        if (DataStorage.isXlsFile(data.getOriginalFilename())) {
-            table = Table.fromXLS(name, dataIn);
-        } else {
-            // assume CSV
-            table = Table.fromCSV(name, new InputStreamReader(dataIn));
-        }
-
-        dataIn.close();
+        List<AttachmentDataStorage.FilePreview> contents = sessionStore.update(token, doc -> {
+            Destination destination = Destination.fragment(fragment);
 
-        write(new AttachmentDataStorage(), doc, table, destination);
+            final List<Table> tables;
+            try (InputStream dataIn = data.getInputStream()) {
+                tables = readData(doc, fileName, dataIn, data.getOriginalFilename(), data.getContentType(),
+                        destination);
+            }
 
-        OutputStream pdfOut = new FileOutputStream(pdf);
-        doc.save(pdfOut);
+            List<WritableDataStorage.Placement> placements = new ArrayList<>();
+            for (Table table : tables)
+                placements.add(new WritableDataStorage.Placement(table, destination));
+            writeAll(new AttachmentDataStorage(), doc, placements);
+            return getPreview(doc);
+        });
 
         model.addAttribute("token", token);
         model.addAttribute("fileName", fileName);
-        model.addAttribute("contents", getPreview(doc));
-
-        doc.close();
+        model.addAttribute("contents", contents);
 
         return "editor";
     }
 
     @RequestMapping(value = "/write/find", method = RequestMethod.POST)
-    @ResponseBody
-    public String find(@RequestParam("token") String token,
+    public void find(@RequestParam("token") String token,
                        @RequestParam("fileName") String fileName,
                        @RequestParam("fragment") String fragment,
                        HttpServletResponse response) throws IOException, XMPException {
 
-        if (Pattern.matches("[^a-zA-Z0-9_]", token))
-            throw new IllegalArgumentException("Invalid token!");
-
-        File pdf = new File(TEMP_DIR, token);
-
-        InputStream pdfIn = new FileInputStream(pdf);
-        PDDocument doc = PDDocument.load(pdfIn);
-        pdfIn.close();
-
-        Table found = new AttachmentDataStorage().find(doc, fileName, fragment);
+        Table found = sessionStore.read(token, doc -> new AttachmentDataStorage().find(doc, fileName, fragment));
         if (found == null)
             throw new IllegalArgumentException("Unknown attachment.");
 
         response.setHeader("Content-Type", "application/octet-stream");
         response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
 
-        return found.to(Format.CSV);
+        found.writeTo(Format.CSV, response.getOutputStream());
     }
 
     /**
@@ -227,17 +180,15 @@ public class WriteController {
             @PathVariable("token") String token,
             @PathVariable("fileName") String fileName) throws IOException, XMPException {
 
-        if (Pattern.matches("[^a-zA-Z0-9_]", token))
-            throw new IllegalArgumentException("Invalid token!");
-
-        File pdf = new File(TEMP_DIR, token);
+        // the length comes from the open file, since a concurrent upload may replace the session's file
+        FileInputStream pdfIn = new FileInputStream(sessionStore.getFile(token));
 
         HttpHeaders respHeaders = new HttpHeaders();
         respHeaders.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-        respHeaders.setContentLength(pdf.length());
+        respHeaders.setContentLength(pdfIn.getChannel().size());
         respHeaders.setContentDispositionFormData("attachment", fileName + ".pdf");
 
-        InputStreamResource isr = new InputStreamResource(new FileInputStream(pdf));
+        InputStreamResource isr = new InputStreamResource(pdfIn);
         return new ResponseEntity<>(isr, respHeaders, HttpStatus.OK);
     }
 
@@ -246,7 +197,8 @@ public class WriteController {
      * The {@code data} array should be at least as long as the {@code loc} array.
      *
      * @param pdfUrl   The PDF file's URL.
-     * @param data     An ordered set of CSV data file URLs.
+     * @param data     An ordered set of data file URLs, in any readable format. Recognized by their magic numbers, or
+     *                 else by their path or content type.
      * @param loc      An ordered set of fragment locations in the PDF corresponding to target locations for data files.
      * @param pdfName  The filename to output with. Optional.
      * @param response The HTTP response.
@@ -267,65 +219,157 @@ public class WriteController {
         PDDocument doc = PDDocument.load(pdfIn);
         pdfIn.close();
 
+        List<WritableDataStorage.Placement> placements = new ArrayList<>();
         for (int i = 0; i < data.length; i++) {
             URLConnection dataConnection = loadUrl(data[i]);
             InputStream dataIn = dataConnection.getInputStream();
             Destination destination = Destination.fragment(loc.length > i ? loc[i] : "#");
 
-            final String attachmentName = destination.nameAttachment(doc, pdfName);
-            final Table table;
-            if (DataStorage.isXlsType(dataConnection.getContentType())) {
-                table = Table.fromXLS(attachmentName, dataIn);
-            } else {
-                // assume CSV
-                table = Table.fromCSV(attachmentName, new InputStreamReader(dataIn));
-            }
-
+            final List<Table> tables = readData(doc, pdfName, dataIn, dataConnection.getURL().getPath(),
+                    dataConnection.getContentType(), destination);
             dataIn.close();
 
-            write(new AttachmentDataStorage(), doc, table, destination);
+            for (Table table : tables)
+                placements.add(new WritableDataStorage.Placement(table, destination));
         }
+        writeAll(new AttachmentDataStorage(), doc, placements);
 
         response.setContentType("application/pdf");
         response.setHeader("Content-Disposition", "attachment; filename=\"download.pdf\"");
-        doc.save(response.getOutputStream());
+        // only the new attachments are serialized; the rest is the original file, byte for byte
+        IncrementalSave.save(doc, response.getOutputStream());
     }
 
     /**
      * This endpoint allows for quick extraction of the contents of a PDF at a given URL.
-     * Intended for use by other web services or on the command line.
+     * Intended for use by other web services or on the command line. Results are cached by URL and ETag or
+     * Last-Modified header, or by the SHA-256 of the document if the server sends neither.
      *
-     * @param pdfUrl   The PDF file's URL. Must be accessible by the PDFData server (i.e. not password-protected).
-     * @param response The HttpServletResponse object for the request.
+     * @param pdfUrl     The PDF file's URL. Must be accessible by the PDFData server (i.e. not password-protected).
+     * @param formatName The format to return the data in: CSV (the default), JSON, PARQUET, or any plugged-in one.
+     * @param response   The HttpServletResponse object for the request.
      * @throws IOException        If reading or writing the inputs/response fails.
      * @throws XMPException       If the XMP data in the PDF is improperly formatted.
      * @throws URISyntaxException If the provided URL is invalid.
      */
     @RequestMapping("/extract")
     public void quickExtract(@RequestParam("pdf") String pdfUrl,
+                             @RequestParam(value = "format", defaultValue = "CSV") String formatName,
                              HttpServletResponse response) throws IOException, XMPException, URISyntaxException {
 
+        TableFormat format = writableFormat(formatName);
         URLConnection pdfConnection = loadUrl(pdfUrl);
-        InputStream pdfIn = pdfConnection.getInputStream();
-        PDDocument doc = PDDocument.load(pdfIn);
-        pdfIn.close();
+        String key = formatKey(ExtractionCache.urlKey(pdfUrl,
+                pdfConnection.getHeaderField("ETag"), pdfConnection.getHeaderField("Last-Modified")), format);
+
+        if (key != null) {
+            ExtractionCache.Entry result = extractionCache.get(key);
+            if (result != null) {
+                result.writeTo(response);
+                return;
+            }
+            try (InputStream pdfIn = pdfConnection.getInputStream()) {
+                extract(pdfIn, format, key, response);
+            }
+            return;
+        }
 
-        PDDocumentCatalog catalog = doc.getDocumentCatalog();
-        XMPMeta xmp;
-        if (catalog.getMetadata() == null) {
-            xmp = XMPMetaFactory.create();
-        } else {
-            xmp = XMPMetaFactory.parse(catalog.getMetadata().createInputStream());
+        // no validator, so the document has to be downloaded to tell whether it's been seen before; it's spooled
+        // to disk rather than held in memory, then hashed and, on a miss, extracted from there
+        File spooled = File.createTempFile("extract", ".pdf");
+        try {
+            try (InputStream pdfIn = pdfConnection.getInputStream();
+                 OutputStream out = new FileOutputStream(spooled)) {
+                ByteStreams.copy(pdfIn, out);
+            }
+            try (InputStream in = new FileInputStream(spooled)) {
+                key = formatKey(ExtractionCache.contentKey(in), format);
+            }
+
+            ExtractionCache.Entry result = extractionCache.get(key);
+            if (result != null) {
+                result.writeTo(response);
+            } else {
+                try (InputStream in = new FileInputStream(spooled)) {
+                    extract(in, format, key, response);
+                }
+            }
+        } finally {
+            java.nio.file.Files.deleteIfExists(spooled.toPath());
         }
+    }
+
+    /**
+     * Reports the extraction cache's hit, miss and eviction counts and the size of each tier.
+     *
+     * @return The counters, by name.
+     */
+    @RequestMapping(value = "/extract/stats", method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Long> extractionStats() {
+        return extractionCache.getStats();
+    }
 
-        List<Table> tables = new ArrayList<>();
+    /**
+     * Look up a format tables can be written in.
+     *
+     * @param formatName The format's name or one of its aliases.
+     * @return The format.
+     * @throws IllegalArgumentException If there's no such format, or it can't be written.
+     */
+    private static TableFormat writableFormat(String formatName) {
+        TableFormat format = TableFormats.find(formatName);
+        if (format == null || !format.canWrite())
+            throw new IllegalArgumentException("Unknown output format: " + formatName);
+        return format;
+    }
 
-        tables.addAll(new AnnotationDataStorage().read(doc, xmp));
-        tables.addAll(new AttachmentDataStorage().read(doc, xmp));
-        tables.addAll(new FormDataStorage().read(doc, xmp));
-        tables.addAll(new XMPDataStorage().read(doc, xmp));
+    /**
+     * Extends a cache key with the format a result is rendered in. CSV keys are left as they were.
+     *
+     * @param key    The document's key, or null.
+     * @param format The format.
+     * @return The key for the document in that format, or null.
+     */
+    private static String formatKey(String key, TableFormat format) {
+        return key == null || format == Format.CSV ? key : key + "\nformat:" + format.getName();
+    }
+
+    /**
+     * Extract every table from a PDF and stream them to the client, zipped if there's more than one, caching the
+     * result as it's written.
+     *
+     * @param pdfIn    The PDF file. Not closed.
+     * @param format   The format to render the tables in.
+     * @param key      The key to cache the result under.
+     * @param response The response to write the result to.
+     * @throws IOException  If reading the PDF or writing the tables fails.
+     * @throws XMPException If the PDF's XMP data is improperly formatted.
+     */
+    private void extract(InputStream pdfIn, TableFormat format, String key, HttpServletResponse response)
+            throws IOException, XMPException {
+        PDDocument doc = PDDocument.load(pdfIn);
+        try {
+            zipAll(readAll(doc), format, key, response);
+        } finally {
+            doc.close();
+        }
+    }
 
-        zipAll(tables, Format.CSV, response);
+    /**
+     * Read the tables from every storage method the web service exposes, in a single pass over the document.
+     *
+     * @param doc The document. Must not be null.
+     * @return Every table found.
+     * @throws IOException  If there's a read error in PDF processing.
+     * @throws XMPException If there's a read error in XMP processing.
+     */
+    private List<Table> readAll(PDDocument doc) throws IOException, XMPException {
+        return DocumentScan.read(doc, DataStorage.loadXMP(doc),
+                new AnnotationDataStorage(),
+                new AttachmentDataStorage(),
+                new FormDataStorage(),
+                new XMPDataStorage());
     }
 
     /**
@@ -353,59 +397,78 @@ public class WriteController {
     }
 
     /**
-     * Write a table to a destination using the given storage method.
+     * Read uploaded data in whichever format it turns out to be in, naming each table after the destination it's
+     * headed for: single tables by the name given, and workbook sheets by their own names.
      *
-     * @param storage     The storage method. Must be writable.
      * @param doc         The PDF document.
-     * @param table       The table to write.
-     * @param destination The destination.
+     * @param name        The name for the table, if the data holds just one.
+     * @param in          The data. Not closed.
+     * @param fileName    The data's file name or path, or null.
+     * @param mime        The data's content type, or null.
+     * @param destination The destination the tables will be written to.
+     * @return The tables.
+     * @throws IOException If reading the data fails.
+     */
+    private List<Table> readData(PDDocument doc, String name, InputStream in, String fileName, String mime,
+                                 Destination destination) throws IOException {
+        List<Table> tables = TableFormats.read(name, in, fileName, mime);
+        for (Table table : tables)
+            table.setName(destination.nameAttachment(doc, table.getName()));
+        return tables;
+    }
+
+    /**
+     * Write tables to their destinations using the given storage method, loading the document's metadata once.
+     *
+     * @param storage    The storage method. Must be writable.
+     * @param doc        The PDF document.
+     * @param placements The tables to write and their destinations.
      * @throws IOException  If there's a read/write error in PDF processing.
      * @throws XMPException If there's a read/write error in XMP processing.
      */
-    private void write(WritableDataStorage storage, PDDocument doc, Table table, Destination destination)
+    private void writeAll(WritableDataStorage storage, PDDocument doc, List<WritableDataStorage.Placement> placements)
             throws IOException, XMPException {
-        PDDocumentCatalog catalog = doc.getDocumentCatalog();
-        XMPMeta xmp;
-        if (catalog.getMetadata() == null) {
-            xmp = XMPMetaFactory.create();
-        } else {
-            xmp = XMPMetaFactory.parse(catalog.getMetadata().createInputStream());
-        }
-
-        storage.write(doc, xmp, table, destination);
+        storage.writeAll(doc, DataStorage.loadXMP(doc), placements);
     }
 
     /**
-     * Write a list of tables to zipped files and output the ZIP to the given HTTP response.
+     * Write a list of tables to zipped files. A single table is written on its own, unzipped. The result is streamed
+     * to the client as it's written, and only cached once it's complete.
      *
      * @param tables   The tables to write. Each should be named, but names need not be unique.
      * @param format   The format to write tables in. CSV, Turtle, etc.
-     * @param response The response to write to.
+     * @param key      The key to cache the result under.
+     * @param response The response to write the result to.
      * @throws IOException If the write operation fails.
      */
-    private void zipAll(List<Table> tables, Format format, HttpServletResponse response) throws IOException {
+    private void zipAll(List<Table> tables, TableFormat format, String key, HttpServletResponse response)
+            throws IOException {
         if (tables.size() != 1) {
-            response.setContentType("application/zip");
-            response.setHeader("Content-Disposition", "attachment; filename=\"download.zip\"");
-            ZipOutputStream zos = new ZipOutputStream(response.getOutputStream());
-            Map<String, Integer> nameCounts = new HashMap<>();
-            for (Table table : tables) {
-                int count = nameCounts.getOrDefault(table.getName(), 0);
-                nameCounts.put(table.getName(), count + 1);
-
-                ZipEntry entry = new ZipEntry(table.getName() + (count == 0 ? "" : "_" + count)
-                        + format.getExtension());
-                byte[] serialized = table.to(format).getBytes("UTF-8");
-                entry.setSize(serialized.length);
-                zos.putNextEntry(entry);
-                zos.write(serialized);
-                zos.closeEntry();
+            try (ExtractionCache.Recording out = extractionCache.record(key, "application/zip",
+                    "attachment; filename=\"download.zip\"", response);
+                 ZipOutputStream zos = new ZipOutputStream(out)) {
+                Map<String, Integer> nameCounts = new HashMap<>();
+                for (Table table : tables) {
+                    int count = nameCounts.getOrDefault(table.getName(), 0);
+                    nameCounts.put(table.getName(), count + 1);
+
+                    ZipEntry entry = new ZipEntry(table.getName() + (count == 0 ? "" : "_" + count)
+                            + format.getExtensions().get(0));
+                    zos.putNextEntry(entry);
+                    format.write(table, zos);
+                    zos.closeEntry();
+                }
+
+                // finished before committing, since closing would close the recording first
+                zos.finish();
+                out.commit();
             }
-
-            zos.close();
         } else {
-            response.setContentType(format.getMime());
-            response.getOutputStream().write(tables.get(0).to(format).getBytes("UTF-8"));
+            try (ExtractionCache.Recording out = extractionCache.record(key, format.getMimeTypes().get(0), null,
+                    response)) {
+                format.write(tables.get(0), out);
+                out.commit();
+            }
         }
     }
 
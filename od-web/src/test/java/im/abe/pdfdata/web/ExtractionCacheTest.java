@@ -0,0 +1,168 @@
+package im.abe.pdfdata.web;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records results into caches with small limits, and checks which tier each is served from afterwards.
+ */
+public class ExtractionCacheTest {
+    private static final String CSV = "text/csv";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void contentKeysDependOnlyOnTheBytes() throws IOException {
+        byte[] data = body(1000, 1);
+        InputStream in = new ByteArrayInputStream(data);
+        String key = ExtractionCache.contentKey(in);
+
+        assertEquals(-1, in.read()); // read to the end
+        assertEquals(key, ExtractionCache.contentKey(new ByteArrayInputStream(data.clone())));
+        data[999]++;
+        assertNotEquals(key, ExtractionCache.contentKey(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void urlKeysNeedAValidator() {
+        assertNull(ExtractionCache.urlKey("http://example.com/a.pdf", null, null));
+        assertNotEquals(ExtractionCache.urlKey("http://example.com/a.pdf", "\"1\"", null),
+                ExtractionCache.urlKey("http://example.com/a.pdf", "\"2\"", null));
+        assertNotEquals(ExtractionCache.urlKey("http://example.com/a.pdf", null, "Mon, 1 Jan 2001 00:00:00 GMT"),
+                ExtractionCache.urlKey("http://example.com/b.pdf", null, "Mon, 1 Jan 2001 00:00:00 GMT"));
+    }
+
+    @Test
+    public void recordingsStreamToTheClientAndAreServedAgain() throws IOException {
+        ExtractionCache cache = cache(1 << 20, 0, 60);
+        byte[] body = body(5000, 2);
+        assertNull(cache.get("a"));
+
+        MockHttpServletResponse first = record(cache, "a", body, true);
+        assertArrayEquals(body, first.getContentAsByteArray());
+        assertEquals("attachment; filename=a.csv", first.getHeader("Content-Disposition"));
+
+        assertArrayEquals(body, serve(cache.get("a")).getContentAsByteArray());
+        assertArrayEquals(body, serve(cache.get("a")).getContentAsByteArray());
+        assertEquals(2L, (long) cache.getStats().get("memoryHits"));
+        assertEquals(1L, (long) cache.getStats().get("misses"));
+    }
+
+    @Test
+    public void uncommittedRecordingsAreNeverServed() throws IOException {
+        ExtractionCache cache = cache(1 << 20, 1 << 20, 60);
+        MockHttpServletResponse response = record(cache, "a", body(100, 3), false);
+
+        assertEquals(100, response.getContentAsByteArray().length);
+        assertNull(cache.get("a"));
+        assertEquals(0L, (long) cache.getStats().get("diskEntries"));
+        assertEquals(0, folder.getRoot().listFiles((dir, name) -> name.endsWith(".tmp")).length);
+    }
+
+    @Test
+    public void leastRecentlyUsedResultsLeaveMemoryFirst() throws IOException {
+        // room for two of these at a time
+        ExtractionCache cache = cache(2500, 0, 60);
+        record(cache, "a", body(1000, 4), true);
+        record(cache, "b", body(1000, 5), true);
+        assertNotNull(cache.get("a"));
+        record(cache, "c", body(1000, 6), true);
+
+        assertNull(cache.get("b"));
+        assertArrayEquals(body(1000, 4), serve(cache.get("a")).getContentAsByteArray());
+        assertArrayEquals(body(1000, 6), serve(cache.get("c")).getContentAsByteArray());
+        assertEquals(1L, (long) cache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void resultsOutliveTheCacheOnDisk() throws IOException {
+        byte[] small = body(1000, 7);
+        byte[] large = body(50000, 8);
+        ExtractionCache cache = cache(10000, 1 << 20, 60);
+        record(cache, "small", small, true);
+        record(cache, "large", large, true);
+
+        ExtractionCache restarted = cache(10000, 1 << 20, 60);
+        assertArrayEquals(small, serve(restarted.get("small")).getContentAsByteArray());
+        assertArrayEquals(large, serve(restarted.get("large")).getContentAsByteArray());
+        assertEquals(2L, (long) restarted.getStats().get("diskHits"));
+
+        // the small one is promoted back into memory, the large one never fits there
+        assertArrayEquals(small, serve(restarted.get("small")).getContentAsByteArray());
+        assertArrayEquals(large, serve(restarted.get("large")).getContentAsByteArray());
+        assertEquals(1L, (long) restarted.getStats().get("memoryHits"));
+        assertEquals(3L, (long) restarted.getStats().get("diskHits"));
+    }
+
+    @Test
+    public void theDiskTierKeepsToItsLimit() throws IOException {
+        ExtractionCache cache = cache(0, 25000, 60);
+        for (int i = 0; i < 5; i++)
+            record(cache, "k" + i, body(10000, i), true);
+
+        long entries = cache.getStats().get("diskEntries");
+        assertTrue(entries <= 2);
+        assertTrue(cache.getStats().get("diskBytes") <= 25000);
+        assertEquals(entries, folder.getRoot().listFiles((dir, name) -> name.endsWith(".entry")).length);
+        assertNull(cache.get("k0"));
+        assertArrayEquals(body(10000, 4), serve(cache.get("k4")).getContentAsByteArray());
+    }
+
+    @Test
+    public void expiredResultsAreMisses() throws Exception {
+        ExtractionCache cache = cache(1 << 20, 1 << 20, 0);
+        record(cache, "a", body(100, 9), true);
+        Thread.sleep(20);
+
+        assertNull(cache.get("a"));
+        // dropped from both tiers
+        assertEquals(2L, (long) cache.getStats().get("expirations"));
+        assertEquals(0L, (long) cache.getStats().get("memoryEntries"));
+        assertEquals(0L, (long) cache.getStats().get("diskEntries"));
+        assertEquals(0, folder.getRoot().listFiles((dir, name) -> name.endsWith(".entry")).length);
+    }
+
+    private ExtractionCache cache(long memoryBytes, long diskBytes, long ttlSeconds) {
+        return new ExtractionCache(memoryBytes, diskBytes, ttlSeconds, folder.getRoot().getPath());
+    }
+
+    private static MockHttpServletResponse record(ExtractionCache cache, String key, byte[] body, boolean commit)
+            throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try (ExtractionCache.Recording recording = cache.record(key, CSV, "attachment; filename=" + key + ".csv",
+                response)) {
+            // in pieces, as a writer would
+            for (int off = 0; off < body.length; off += 777)
+                recording.write(body, off, Math.min(777, body.length - off));
+            if (commit)
+                recording.commit();
+        }
+        assertEquals(CSV, response.getContentType());
+        return response;
+    }
+
+    private static MockHttpServletResponse serve(ExtractionCache.Entry entry) throws IOException {
+        assertNotNull(entry);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        entry.writeTo(response);
+        assertEquals(CSV, response.getContentType());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        return response;
+    }
+
+    private static byte[] body(int length, int seed) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++)
+            body[i] = (byte) ('a' + (i * 31 + seed) % 26);
+        return body;
+    }
+}
@@ -0,0 +1,201 @@
+package im.abe.pdfdata.web;
+
+import com.adobe.xmp.XMPException;
+import im.abe.pdfdata.AttachmentDataStorage;
+import im.abe.pdfdata.DataStorage;
+import im.abe.pdfdata.Destination;
+import im.abe.pdfdata.Table;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs sessions through stores with small limits, and checks what is kept, saved and evicted.
+ */
+public class SessionStoreTest {
+    private static final Table TABLE = new Table("rainfall", Arrays.asList("Day", "mm"),
+            Arrays.asList(Arrays.asList("Monday", "3"), Arrays.asList("Tuesday", "0")));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<SessionStore> stores = new ArrayList<>();
+
+    @After
+    public void closeStores() {
+        for (SessionStore store : stores)
+            store.close();
+    }
+
+    @Test
+    public void sessionsHoldTheirDocument() throws Exception {
+        SessionStore store = store(1 << 20, 60);
+        byte[] pdf = pdf(3);
+        String token = store.create(new ByteArrayInputStream(pdf));
+
+        assertEquals(3, (int) store.read(token, PDDocument::getNumberOfPages));
+        assertArrayEquals(pdf, Files.readAllBytes(store.getFile(token).toPath()));
+        assertNotEquals(token, store.create(new ByteArrayInputStream(pdf)));
+    }
+
+    @Test
+    public void updatesAreSavedAfterTheOriginalBytes() throws Exception {
+        SessionStore store = store(1 << 20, 60);
+        byte[] pdf = pdf(1);
+        String token = store.create(new ByteArrayInputStream(pdf));
+
+        store.update(token, doc -> {
+            write(doc);
+            return null;
+        });
+
+        byte[] saved = Files.readAllBytes(store.getFile(token).toPath());
+        assertArrayEquals(pdf, Arrays.copyOf(saved, pdf.length));
+        assertEquals(TABLE, store.read(token, SessionStoreTest::readTable));
+        try (PDDocument doc = PDDocument.load(saved)) {
+            assertEquals(TABLE, readTable(doc));
+        }
+    }
+
+    @Test
+    public void failedUpdatesLeaveTheLastSave() throws Exception {
+        SessionStore store = store(1 << 20, 60);
+        String token = store.create(new ByteArrayInputStream(pdf(1)));
+        byte[] before = Files.readAllBytes(store.getFile(token).toPath());
+
+        try {
+            store.update(token, doc -> {
+                write(doc);
+                throw new IOException("failed partway");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("failed partway", e.getMessage());
+        }
+
+        assertArrayEquals(before, Files.readAllBytes(store.getFile(token).toPath()));
+        assertNull(store.read(token, SessionStoreTest::readTable));
+    }
+
+    @Test
+    public void leastRecentlyUsedSessionsAreEvictedOverTheQuota() throws Exception {
+        byte[] pdf = pdf(1);
+        // room for two
+        SessionStore store = store(pdf.length * 5 / 2, 60);
+        String a = store.create(new ByteArrayInputStream(pdf));
+        String b = store.create(new ByteArrayInputStream(pdf));
+        File fileB = store.getFile(b);
+        store.read(a, PDDocument::getNumberOfPages);
+        String c = store.create(new ByteArrayInputStream(pdf));
+
+        assertEvicted(store, b);
+        assertFalse(fileB.exists());
+        assertEquals(1, (int) store.read(a, PDDocument::getNumberOfPages));
+        assertEquals(1, (int) store.read(c, PDDocument::getNumberOfPages));
+    }
+
+    @Test
+    public void documentsLargerThanTheQuotaAreRefused() throws Exception {
+        byte[] pdf = pdf(1);
+        SessionStore store = store(pdf.length - 1, 60);
+        try {
+            store.create(new ByteArrayInputStream(pdf));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void idleSessionsAreSwept() throws Exception {
+        SessionStore store = store(1 << 20, 0);
+        String token = store.create(new ByteArrayInputStream(pdf(1)));
+        File file = store.getFile(token);
+        Thread.sleep(20);
+
+        store.sweep();
+        assertEvicted(store, token);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void removedSessionsAreGone() throws Exception {
+        SessionStore store = store(1 << 20, 60);
+        String token = store.create(new ByteArrayInputStream(pdf(1)));
+        File file = store.getFile(token);
+
+        store.remove(token);
+        store.remove(token);
+        assertEvicted(store, token);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void sessionsSurviveARestart() throws Exception {
+        SessionStore store = store(1 << 20, 60);
+        String token = store.create(new ByteArrayInputStream(pdf(2)));
+        store.update(token, doc -> {
+            write(doc);
+            return null;
+        });
+        store.close();
+        File leftover = folder.newFile("session123.tmp");
+
+        SessionStore restarted = store(1 << 20, 60);
+        assertEquals(TABLE, restarted.read(token, SessionStoreTest::readTable));
+        assertFalse(leftover.exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokensMustBeWellFormed() throws Exception {
+        store(1 << 20, 60).getFile("../session");
+    }
+
+    private SessionStore store(long diskBytes, long idleMinutes) {
+        SessionStore store = new SessionStore(folder.getRoot().getPath(), diskBytes, 1, idleMinutes, 5, 3600);
+        stores.add(store);
+        return store;
+    }
+
+    private static void assertEvicted(SessionStore store, String token) throws Exception {
+        try {
+            store.read(token, PDDocument::getNumberOfPages);
+            fail(token + " is still there");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void write(PDDocument doc) throws IOException, XMPException {
+        new AttachmentDataStorage().write(doc, DataStorage.loadXMP(doc), TABLE, Destination.document());
+    }
+
+    private static Table readTable(PDDocument doc) throws IOException, XMPException {
+        return new AttachmentDataStorage().find(doc, TABLE.getName() + ".csv", "#");
+    }
+
+    private static byte[] pdf(int pages) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            for (int i = 0; i < pages; i++)
+                doc.addPage(new PDPage());
+            doc.save(out);
+        }
+        return out.toByteArray();
+    }
+}
@@ -857,8 +857,29 @@ public class ParseRDF implements XMPError, XMPConst {
      */
     private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode,
                                         String value, boolean isTopLevel) throws XMPException {
+        return addChildNode(xmp, xmpParent, xmlNode.getNamespaceURI(), xmlNode.getPrefix(),
+                xmlNode.getLocalName(), value, isTopLevel);
+    }
+
+
+    /**
+     * Adds a child node. This is the part of {@link #addChildNode(XMPMetaImpl, XMPNode, Node,
+     * String, boolean)} that doesn't depend on the DOM, shared with {@link ParseRDFStream}.
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param namespace  the namespace URI of the XML element or attribute, or <code>null</code>
+     * @param xmlPrefix  the prefix of the XML element or attribute, or <code>null</code>
+     * @param localName  the local name of the XML element or attribute
+     * @param value      Node value
+     * @param isTopLevel Flag if the node is a top-level node
+     * @return Returns the newly created child node.
+     * @throws XMPException thown on parsing errors
+     */
+    static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, String namespace,
+                                String xmlPrefix, String localName, String value, boolean isTopLevel)
+            throws XMPException {
         XMPSchemaRegistry registry = XMPMetaFactory.getSchemaRegistry();
-        String namespace = xmlNode.getNamespaceURI();
         String childName;
         if (namespace != null) {
             if (NS_DC_DEPRECATED.equals(namespace)) {
@@ -868,10 +889,10 @@ public class ParseRDF implements XMPError, XMPConst {
 
             String prefix = registry.getNamespacePrefix(namespace);
             if (prefix == null) {
-                prefix = xmlNode.getPrefix() != null ? xmlNode.getPrefix() : DEFAULT_PREFIX;
+                prefix = xmlPrefix != null ? xmlPrefix : DEFAULT_PREFIX;
                 prefix = registry.registerNamespace(namespace, prefix);
             }
-            childName = prefix + xmlNode.getLocalName();
+            childName = prefix + localName;
         } else {
             throw new XMPException(
                     "XML namespace required for all elements and attributes", BADRDF);
@@ -945,7 +966,7 @@ public class ParseRDF implements XMPError, XMPConst {
      * @return Returns the newly created child node.
      * @throws XMPException thown on parsing errors
      */
-    private static XMPNode addQualifierNode(XMPNode xmpParent, String name, String value)
+    static XMPNode addQualifierNode(XMPNode xmpParent, String name, String value)
             throws XMPException {
         boolean isLang = XML_LANG.equals(name);
 
@@ -969,7 +990,7 @@ public class ParseRDF implements XMPError, XMPConst {
      * @param xmpParent the parent xmp node
      * @throws XMPException thown on parsing errors
      */
-    private static void fixupQualifiedNode(XMPNode xmpParent) throws XMPException {
+    static void fixupQualifiedNode(XMPNode xmpParent) throws XMPException {
         assert xmpParent.getOptions().isStruct() && xmpParent.hasChildren();
 
         XMPNode valueNode = xmpParent.getChild(1);
@@ -1051,7 +1072,7 @@ public class ParseRDF implements XMPError, XMPConst {
      * @param term the term id
      * @return Return true if the term is a property element name.
      */
-    private static boolean isPropertyElementName(int term) {
+    static boolean isPropertyElementName(int term) {
         if (term == RDFTERM_DESCRIPTION || isOldTerm(term)) {
             return false;
         } else {
@@ -1105,6 +1126,20 @@ public class ParseRDF implements XMPError, XMPConst {
             namespace = NS_RDF;
         }
 
+        return getRDFTermKind(namespace, localName);
+    }
+
+
+    /**
+     * Determines the ID for a certain RDF Term, given the namespace and local name of an element
+     * or attribute. Unqualified about and ID attributes must already have been given the RDF
+     * namespace by the caller.
+     *
+     * @param namespace the namespace URI, or <code>null</code>
+     * @param localName the local name
+     * @return Returns the term ID.
+     */
+    static int getRDFTermKind(String namespace, String localName) {
         if (NS_RDF.equals(namespace)) {
             if ("li".equals(localName)) {
                 return RDFTERM_LI;
@@ -0,0 +1,956 @@
+package com.adobe.xmp.impl;
+
+import com.adobe.xmp.XMPConst;
+import com.adobe.xmp.XMPError;
+import com.adobe.xmp.XMPException;
+import org.xml.sax.InputSource;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * The streaming counterpart of {@link ParseRDF}. The XMP tree is built straight from StAX events,
+ * so the packet is never held in memory as a DOM. Both parsers implement the same productions and
+ * produce the same tree; {@link ParseRDF} is kept for
+ * {@link com.adobe.xmp.options.ParseOptions#setStreaming(boolean) non-streaming} parses and for
+ * environments without a StAX implementation.
+ * <p/>
+ * Attributes are visited sorted by their qualified name, which is the order a DOM parser reports
+ * them in, so that struct fields and qualifiers come out in the same order as with
+ * {@link ParseRDF}. Everything in the document after the root <code>rdf:RDF</code> element is
+ * still read, so that a malformed packet fails the same way it would with a DOM parser. Both
+ * parsers refuse packets with a DTD.
+ * <p/>
+ * The one difference is CDATA: sections are coalesced into the surrounding text here, where the
+ * DOM parser rejects them as non-text children of a literal property.
+ */
+final class ParseRDFStream implements XMPError, XMPConst, XMLStreamConstants {
+    /**
+     * the StAX factory, or <code>null</code> if none is available
+     */
+    private static final XMLInputFactory factory = createInputFactory();
+
+    /**
+     * Orders attributes the way a DOM parser's <code>NamedNodeMap</code> does.
+     */
+    private static final Comparator<Attribute> ATTRIBUTE_ORDER = new Comparator<Attribute>() {
+        public int compare(Attribute a, Attribute b) {
+            return a.name.compareTo(b.name);
+        }
+    };
+
+
+    /**
+     * Hidden constructor.
+     */
+    private ParseRDFStream() {
+        // EMPTY
+    }
+
+
+    /**
+     * @return Returns whether a StAX implementation could be configured.
+     */
+    static boolean isAvailable() {
+        return factory != null;
+    }
+
+
+    /**
+     * Parses an XMP packet. The root <code>rdf:RDF</code> element is searched for the same way as
+     * <code>XMPMetaParser.findRootNode()</code> does, in document order. This is a raw parse, the
+     * normalisation of the XMP tree happens outside.
+     *
+     * @param source          the input, either a byte stream or a character stream
+     * @param xmpmetaRequired flag if a surrounding x:xmpmeta element is required
+     * @return Returns an XMP metadata object (not normalized),
+     * or <code>null</code> if there is no XMP root in the document.
+     * @throws XMPException Occurs if the parsing fails for any reason.
+     */
+    static XMPMetaImpl parse(InputSource source, boolean xmpmetaRequired) throws XMPException {
+        XMLStreamReader reader = null;
+        try {
+            if (source.getCharacterStream() != null) {
+                reader = factory.createXMLStreamReader(source.getCharacterStream());
+            } else {
+                reader = factory.createXMLStreamReader(source.getByteStream());
+            }
+
+            XMPMetaImpl xmp = findRoot(reader, xmpmetaRequired);
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            return xmp;
+        } catch (XMLStreamException e) {
+            if (e.getNestedException() instanceof IOException) {
+                throw new XMPException("Error reading the XML-file", BADSTREAM, e);
+            }
+            throw new XMPException("XML parsing failure", BADXML, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // the underlying stream is owned by the caller
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Reads up to the root <code>rdf:RDF</code> element and parses it. The first x:xmpmeta element
+     * found limits the search to its content, after which any rdf:RDF element is accepted.
+     *
+     * @param reader          the reader, positioned at the start of the document
+     * @param xmpmetaRequired flag if a surrounding x:xmpmeta element is required
+     * @return Returns the XMP metadata object or <code>null</code>.
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static XMPMetaImpl findRoot(XMLStreamReader reader, boolean xmpmetaRequired)
+            throws XMLStreamException, XMPException {
+        String packetHeader = null;
+        int depth = 0;
+        int xmpmetaDepth = -1;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case PROCESSING_INSTRUCTION:
+                    if (XMP_PI.equals(reader.getPITarget())) {
+                        packetHeader = reader.getPIData();
+                    }
+                    break;
+
+                case START_ELEMENT:
+                    depth++;
+                    String namespace = namespace(reader.getNamespaceURI());
+                    String localName = reader.getLocalName();
+                    if ((TAG_XMPMETA.equals(localName) || TAG_XAPMETA.equals(localName)) &&
+                            NS_X.equals(namespace)) {
+                        xmpmetaDepth = depth;
+                    } else if ((xmpmetaDepth > 0 || !xmpmetaRequired) &&
+                            "RDF".equals(localName) && NS_RDF.equals(namespace)) {
+                        XMPMetaImpl xmp = new XMPMetaImpl();
+                        rdf_RDF(xmp, reader);
+                        xmp.setPacketHeader(packetHeader);
+                        return xmp;
+                    }
+                    break;
+
+                case END_ELEMENT:
+                    if (depth == xmpmetaDepth) {
+                        // an x:xmpmeta element without rdf:RDF, give up
+                        return null;
+                    }
+                    depth--;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * 7.2.9 RDF
+     *
+     * @param xmp    the xmp metadata object that is generated
+     * @param reader the reader, positioned at the start of the rdf:RDF element
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_RDF(XMPMetaImpl xmp, XMLStreamReader reader)
+            throws XMLStreamException, XMPException {
+        if (reader.getAttributeCount() > 0 || reader.getNamespaceCount() > 0) {
+            rdf_NodeElementList(xmp, xmp.getRoot(), reader);
+        } else {
+            throw new XMPException("Invalid attributes of rdf:RDF element", BADRDF);
+        }
+    }
+
+
+    /**
+     * 7.2.10 nodeElementList<br>
+     * ws* ( nodeElement ws* )*
+     *
+     * @param xmp       the xmp metadata object that is generated
+     * @param xmpParent the parent xmp node
+     * @param reader    the reader, positioned at the start of the rdf:RDF element
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_NodeElementList(XMPMetaImpl xmp, XMPNode xmpParent,
+                                            XMLStreamReader reader) throws XMLStreamException, XMPException {
+        while (true) {
+            switch (reader.next()) {
+                case START_ELEMENT:
+                    rdf_NodeElement(xmp, xmpParent, reader, true);
+                    break;
+
+                case END_ELEMENT:
+                    return;
+
+                case CHARACTERS:
+                case SPACE:
+                case CDATA:
+                    if (reader.isWhiteSpace() || isWhitespace(reader.getText())) {
+                        break;
+                    }
+                    // text is neither rdf:Description nor a typed node
+                    throw new XMPException("Top level typed node not allowed", BADXMP);
+
+                case PROCESSING_INSTRUCTION:
+                    throw new XMPException("Top level typed node not allowed", BADXMP);
+
+                default:
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * 7.2.11 nodeElement
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param reader     the reader, positioned at the start of the node element
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_NodeElement(XMPMetaImpl xmp, XMPNode xmpParent, XMLStreamReader reader,
+                                        boolean isTopLevel) throws XMLStreamException, XMPException {
+        Element element = new Element(reader);
+        int nodeTerm = element.getTermKind();
+        if (nodeTerm != ParseRDF.RDFTERM_DESCRIPTION && nodeTerm != ParseRDF.RDFTERM_OTHER) {
+            throw new XMPException("Node element must be rdf:Description or typed node",
+                    BADRDF);
+        } else if (isTopLevel && nodeTerm == ParseRDF.RDFTERM_OTHER) {
+            throw new XMPException("Top level typed node not allowed", BADXMP);
+        } else {
+            rdf_NodeElementAttrs(xmp, xmpParent, element, isTopLevel);
+            rdf_PropertyElementList(xmp, xmpParent, reader, isTopLevel);
+        }
+    }
+
+
+    /**
+     * 7.2.11 nodeElement, the attribute list.
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param element    the node element
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMPException thrown on parsing errors
+     */
+    private static void rdf_NodeElementAttrs(XMPMetaImpl xmp, XMPNode xmpParent, Element element,
+                                             boolean isTopLevel) throws XMPException {
+        // Used to detect attributes that are mutually exclusive.
+        int exclusiveAttrs = 0;
+
+        for (int i = 0; i < element.attributes.length; i++) {
+            Attribute attribute = element.attributes[i];
+            int attrTerm = attribute.getTermKind(element);
+
+            switch (attrTerm) {
+                case ParseRDF.RDFTERM_ID:
+                case ParseRDF.RDFTERM_NODE_ID:
+                case ParseRDF.RDFTERM_ABOUT:
+                    if (exclusiveAttrs > 0) {
+                        throw new XMPException("Mutally exclusive about, ID, nodeID attributes",
+                                BADRDF);
+                    }
+
+                    exclusiveAttrs++;
+
+                    if (isTopLevel && (attrTerm == ParseRDF.RDFTERM_ABOUT)) {
+                        if (xmpParent.getName() != null && xmpParent.getName().length() > 0) {
+                            if (!xmpParent.getName().equals(attribute.value)) {
+                                throw new XMPException("Mismatched top level rdf:about values",
+                                        BADXMP);
+                            }
+                        } else {
+                            xmpParent.setName(attribute.value);
+                        }
+                    }
+                    break;
+
+                case ParseRDF.RDFTERM_OTHER:
+                    addChildNode(xmp, xmpParent, attribute, attribute.value, isTopLevel);
+                    break;
+
+                default:
+                    throw new XMPException("Invalid nodeElement attribute", BADRDF);
+            }
+        }
+    }
+
+
+    /**
+     * 7.2.13 propertyEltList<br>
+     * ws* ( propertyElt ws* )*
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param reader     the reader, positioned at the start of the parent element;
+     *                   on return it is positioned at its end
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_PropertyElementList(XMPMetaImpl xmp, XMPNode xmpParent,
+                                                XMLStreamReader reader, boolean isTopLevel)
+            throws XMLStreamException, XMPException {
+        while (true) {
+            switch (reader.next()) {
+                case START_ELEMENT:
+                    rdf_PropertyElement(xmp, xmpParent, reader, isTopLevel);
+                    break;
+
+                case END_ELEMENT:
+                    return;
+
+                case CHARACTERS:
+                case SPACE:
+                case CDATA:
+                    if (reader.isWhiteSpace() || isWhitespace(reader.getText())) {
+                        break;
+                    }
+                    throw new XMPException("Expected property element node not found", BADRDF);
+
+                case PROCESSING_INSTRUCTION:
+                    throw new XMPException("Expected property element node not found", BADRDF);
+
+                default:
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * 7.2.14 propertyElt
+     * <p/>
+     * The form is picked exactly as in {@link ParseRDF}. When the attributes don't decide it, the
+     * element content does: the reader looks ahead until the first child element (a
+     * resourcePropertyElt), the end of the element after some text (a literalPropertyElt), or the
+     * end of an element without content (an emptyPropertyElt). Nothing is added to the XMP tree
+     * until the form is known.
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param reader     the reader, positioned at the start of the property element;
+     *                   on return it is positioned at its end
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_PropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
+                                            XMLStreamReader reader, boolean isTopLevel)
+            throws XMLStreamException, XMPException {
+        Element element = new Element(reader);
+        if (!ParseRDF.isPropertyElementName(element.getTermKind())) {
+            throw new XMPException("Invalid property element name", BADRDF);
+        }
+
+        Attribute[] attributes = element.attributes;
+        if (attributes.length > 3) {
+            // Only an emptyPropertyElt can have more than 3 attributes.
+            rdf_EmptyPropertyElement(xmp, xmpParent, element, reader, false, isTopLevel);
+            return;
+        }
+
+        // Look through the attributes for one that isn't rdf:ID or xml:lang,
+        // it will usually tell what we should be dealing with.
+        // The called routines must verify their specific syntax!
+        for (int i = 0; i < attributes.length; i++) {
+            Attribute attribute = attributes[i];
+            if (!(XML_LANG.equals(attribute.name) &&
+                    !("ID".equals(attribute.localName) && NS_RDF.equals(attribute.namespace)))) {
+                if ("datatype".equals(attribute.localName) && NS_RDF.equals(attribute.namespace)) {
+                    rdf_LiteralPropertyElement(xmp, xmpParent, element, reader, null, isTopLevel);
+                } else if (!("parseType".equals(attribute.localName) &&
+                        NS_RDF.equals(attribute.namespace))) {
+                    rdf_EmptyPropertyElement(xmp, xmpParent, element, reader, false, isTopLevel);
+                } else if ("Literal".equals(attribute.value)) {
+                    throw new XMPException("ParseTypeLiteral property element not allowed", BADXMP);
+                } else if ("Resource".equals(attribute.value)) {
+                    rdf_ParseTypeResourcePropertyElement(xmp, xmpParent, element, reader,
+                            isTopLevel);
+                } else if ("Collection".equals(attribute.value)) {
+                    throw new XMPException("ParseTypeCollection property element not allowed",
+                            BADXMP);
+                } else {
+                    throw new XMPException("ParseTypeOther property element not allowed", BADXMP);
+                }
+
+                return;
+            }
+        }
+
+        // Only rdf:ID and xml:lang, could be a resourcePropertyElt, a literalPropertyElt,
+        // or an emptyPropertyElt. Look at the content to decide which.
+        StringBuilder text = null;
+        while (true) {
+            switch (reader.next()) {
+                case START_ELEMENT:
+                case PROCESSING_INSTRUCTION:
+                    rdf_ResourcePropertyElement(xmp, xmpParent, element, reader,
+                            text != null ? text.toString() : "", isTopLevel);
+                    return;
+
+                case END_ELEMENT:
+                    if (text != null) {
+                        rdf_LiteralPropertyElement(xmp, xmpParent, element, reader,
+                                text.toString(), isTopLevel);
+                    } else {
+                        rdf_EmptyPropertyElement(xmp, xmpParent, element, reader, true,
+                                isTopLevel);
+                    }
+                    return;
+
+                case CHARACTERS:
+                case SPACE:
+                case CDATA:
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(reader.getTextCharacters(), reader.getTextStart(),
+                            reader.getTextLength());
+                    break;
+
+                default:
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * 7.2.15 resourcePropertyElt
+     * start-element ( URI == propertyElementURIs, attributes == set ( idAttr? ) )
+     * ws* nodeElement ws*
+     * end-element()
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param element    the property element
+     * @param reader     the reader, positioned at the first child that isn't text;
+     *                   on return it is positioned at the end of the property element
+     * @param text       the text content read before the reader's position
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_ResourcePropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
+                                                    Element element, XMLStreamReader reader, String text, boolean isTopLevel)
+            throws XMLStreamException, XMPException {
+        if (isTopLevel && "iX:changes".equals(element.name)) {
+            // Strip old "punchcard" chaff which has on the prefix "iX:".
+            skipElement(reader);
+            return;
+        }
+
+        XMPNode newCompound = addChildNode(xmp, xmpParent, element, "", isTopLevel);
+
+        // walk through the attributes
+        for (int i = 0; i < element.attributes.length; i++) {
+            Attribute attribute = element.attributes[i];
+            if (XML_LANG.equals(attribute.name)) {
+                ParseRDF.addQualifierNode(newCompound, XML_LANG, attribute.value);
+            } else if ("ID".equals(attribute.localName) && NS_RDF.equals(attribute.namespace)) {
+                continue;    // Ignore all rdf:ID attributes.
+            } else {
+                throw new XMPException(
+                        "Invalid attribute for resource property element", BADRDF);
+            }
+        }
+
+        if (!isWhitespace(text)) {
+            throw new XMPException(
+                    "Children of resource property element must be XML elements", BADRDF);
+        }
+
+        // walk through the children, starting with the current one
+        boolean found = false;
+        for (int event = reader.getEventType(); event != END_ELEMENT; event = reader.next()) {
+            if (event == START_ELEMENT && !found) {
+                String childNS = namespace(reader.getNamespaceURI());
+                boolean isRDF = NS_RDF.equals(childNS);
+                String childLocal = reader.getLocalName();
+
+                if (isRDF && "Bag".equals(childLocal)) {
+                    newCompound.getOptions().setArray(true);
+                } else if (isRDF && "Seq".equals(childLocal)) {
+                    newCompound.getOptions().setArray(true).setArrayOrdered(true);
+                } else if (isRDF && "Alt".equals(childLocal)) {
+                    newCompound.getOptions().setArray(true).setArrayOrdered(true)
+                            .setArrayAlternate(true);
+                } else {
+                    newCompound.getOptions().setStruct(true);
+                    if (!isRDF && !"Description".equals(childLocal)) {
+                        String typeName = childNS;
+                        if (typeName == null) {
+                            throw new XMPException(
+                                    "All XML elements must be in a namespace", BADXMP);
+                        }
+                        typeName += ':' + childLocal;
+                        ParseRDF.addQualifierNode(newCompound, "rdf:type", typeName);
+                    }
+                }
+
+                rdf_NodeElement(xmp, newCompound, reader, false);
+
+                if (newCompound.getHasValueChild()) {
+                    ParseRDF.fixupQualifiedNode(newCompound);
+                } else if (newCompound.getOptions().isArrayAlternate()) {
+                    XMPNodeUtils.detectAltText(newCompound);
+                }
+
+                found = true;
+            } else if (isIgnorable(reader, event)) {
+                continue;
+            } else if (found) {
+                // found second child element
+                throw new XMPException(
+                        "Invalid child of resource property element", BADRDF);
+            } else {
+                throw new XMPException(
+                        "Children of resource property element must be XML elements", BADRDF);
+            }
+        }
+    }
+
+
+    /**
+     * 7.2.16 literalPropertyElt
+     * start-element ( URI == propertyElementURIs,
+     * attributes == set ( idAttr?, datatypeAttr?) )
+     * text()
+     * end-element()
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param element    the property element
+     * @param reader     the reader; on return it is positioned at the end of the property element
+     * @param text       the text content if it has already been read,
+     *                   or <code>null</code> to read it from the reader
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_LiteralPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
+                                                   Element element, XMLStreamReader reader, String text, boolean isTopLevel)
+            throws XMLStreamException, XMPException {
+        XMPNode newChild = addChildNode(xmp, xmpParent, element, null, isTopLevel);
+
+        for (int i = 0; i < element.attributes.length; i++) {
+            Attribute attribute = element.attributes[i];
+            if (XML_LANG.equals(attribute.name)) {
+                ParseRDF.addQualifierNode(newChild, XML_LANG, attribute.value);
+            } else if (NS_RDF.equals(attribute.namespace) &&
+                    ("ID".equals(attribute.localName) || "datatype".equals(attribute.localName))) {
+                continue;    // Ignore all rdf:ID and rdf:datatype attributes.
+            } else {
+                throw new XMPException(
+                        "Invalid attribute for literal property element", BADRDF);
+            }
+        }
+
+        if (text == null) {
+            StringBuilder buffer = new StringBuilder();
+            for (int event = reader.next(); event != END_ELEMENT; event = reader.next()) {
+                if (event == CHARACTERS || event == SPACE || event == CDATA) {
+                    buffer.append(reader.getTextCharacters(), reader.getTextStart(),
+                            reader.getTextLength());
+                } else if (event != COMMENT) {
+                    throw new XMPException("Invalid child of literal property element", BADRDF);
+                }
+            }
+            text = buffer.toString();
+        }
+        newChild.setValue(text);
+    }
+
+
+    /**
+     * 7.2.18 parseTypeResourcePropertyElt
+     * start-element ( URI == propertyElementURIs,
+     * attributes == set ( idAttr?, parseResource ) )
+     * propertyEltList
+     * end-element()
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param element    the property element
+     * @param reader     the reader, positioned at the start of the property element;
+     *                   on return it is positioned at its end
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_ParseTypeResourcePropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
+                                                             Element element, XMLStreamReader reader, boolean isTopLevel)
+            throws XMLStreamException, XMPException {
+        XMPNode newStruct = addChildNode(xmp, xmpParent, element, "", isTopLevel);
+
+        newStruct.getOptions().setStruct(true);
+
+        for (int i = 0; i < element.attributes.length; i++) {
+            Attribute attribute = element.attributes[i];
+            if (XML_LANG.equals(attribute.name)) {
+                ParseRDF.addQualifierNode(newStruct, XML_LANG, attribute.value);
+            } else if (NS_RDF.equals(attribute.namespace) &&
+                    ("ID".equals(attribute.localName) || "parseType".equals(attribute.localName))) {
+                continue;    // The caller ensured the value is "Resource".
+                // Ignore all rdf:ID attributes.
+            } else {
+                throw new XMPException("Invalid attribute for ParseTypeResource property element",
+                        BADRDF);
+            }
+        }
+
+        rdf_PropertyElementList(xmp, newStruct, reader, false);
+
+        if (newStruct.getHasValueChild()) {
+            ParseRDF.fixupQualifiedNode(newStruct);
+        }
+    }
+
+
+    /**
+     * 7.2.21 emptyPropertyElt
+     * start-element ( URI == propertyElementURIs,
+     * attributes == set (
+     * idAttr?, ( resourceAttr | nodeIdAttr )?, propertyAttr* ) )
+     * end-element()
+     * <p/>
+     * See {@link ParseRDF} for the XMP mapping rules.
+     *
+     * @param xmp        the xmp metadata object that is generated
+     * @param xmpParent  the parent xmp node
+     * @param element    the property element
+     * @param reader     the reader; on return it is positioned at the end of the property element
+     * @param atEnd      flag if the reader is already positioned at the end of the element
+     * @param isTopLevel Flag if the node is a top-level node
+     * @throws XMLStreamException thrown on XML errors
+     * @throws XMPException       thrown on parsing errors
+     */
+    private static void rdf_EmptyPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
+                                                 Element element, XMLStreamReader reader, boolean atEnd, boolean isTopLevel)
+            throws XMLStreamException, XMPException {
+        boolean hasPropertyAttrs = false;
+        boolean hasResourceAttr = false;
+        boolean hasNodeIDAttr = false;
+        boolean hasValueAttr = false;
+
+        Attribute valueNode = null;    // ! Can come from rdf:value or rdf:resource.
+
+        if (!atEnd) {
+            for (int event = reader.next(); event != END_ELEMENT; event = reader.next()) {
+                if (event != COMMENT) {
+                    throw new XMPException(
+                            "Nested content not allowed with rdf:resource or property attributes",
+                            BADRDF);
+                }
+            }
+        }
+
+        // First figure out what XMP this maps to and remember the attribute for a simple value.
+        for (int i = 0; i < element.attributes.length; i++) {
+            Attribute attribute = element.attributes[i];
+            int attrTerm = attribute.getTermKind(element);
+
+            switch (attrTerm) {
+                case ParseRDF.RDFTERM_ID:
+                    // Nothing to do.
+                    break;
+
+                case ParseRDF.RDFTERM_RESOURCE:
+                    if (hasNodeIDAttr) {
+                        throw new XMPException(
+                                "Empty property element can't have both rdf:resource and rdf:nodeID",
+                                BADRDF);
+                    } else if (hasValueAttr) {
+                        throw new XMPException(
+                                "Empty property element can't have both rdf:value and rdf:resource",
+                                BADXMP);
+                    }
+
+                    hasResourceAttr = true;
+                    if (!hasValueAttr) {
+                        valueNode = attribute;
+                    }
+                    break;
+
+                case ParseRDF.RDFTERM_NODE_ID:
+                    if (hasResourceAttr) {
+                        throw new XMPException(
+                                "Empty property element can't have both rdf:resource and rdf:nodeID",
+                                BADRDF);
+                    }
+                    hasNodeIDAttr = true;
+                    break;
+
+                case ParseRDF.RDFTERM_OTHER:
+                    if ("value".equals(attribute.localName) && NS_RDF.equals(attribute.namespace)) {
+                        if (hasResourceAttr) {
+                            throw new XMPException(
+                                    "Empty property element can't have both rdf:value and rdf:resource",
+                                    BADXMP);
+                        }
+                        hasValueAttr = true;
+                        valueNode = attribute;
+                    } else if (!XML_LANG.equals(attribute.name)) {
+                        hasPropertyAttrs = true;
+                    }
+                    break;
+
+                default:
+                    throw new XMPException("Unrecognized attribute of empty property element",
+                            BADRDF);
+            }
+        }
+
+        // Create the right kind of child node and visit the attributes again
+        // to add the fields or qualifiers.
+        XMPNode childNode = addChildNode(xmp, xmpParent, element, "", isTopLevel);
+        boolean childIsStruct = false;
+
+        if (hasValueAttr || hasResourceAttr) {
+            childNode.setValue(valueNode != null ? valueNode.value : "");
+            if (!hasValueAttr) {
+                // ! Might have both rdf:value and rdf:resource.
+                childNode.getOptions().setURI(true);
+            }
+        } else if (hasPropertyAttrs) {
+            childNode.getOptions().setStruct(true);
+            childIsStruct = true;
+        }
+
+        for (int i = 0; i < element.attributes.length; i++) {
+            Attribute attribute = element.attributes[i];
+            if (attribute == valueNode) {
+                continue;    // Skip the rdf:value or rdf:resource attribute holding the value.
+            }
+
+            switch (attribute.getTermKind(element)) {
+                case ParseRDF.RDFTERM_ID:
+                case ParseRDF.RDFTERM_NODE_ID:
+                    break;    // Ignore all rdf:ID and rdf:nodeID attributes.
+
+                case ParseRDF.RDFTERM_RESOURCE:
+                    ParseRDF.addQualifierNode(childNode, "rdf:resource", attribute.value);
+                    break;
+
+                case ParseRDF.RDFTERM_OTHER:
+                    if (!childIsStruct) {
+                        ParseRDF.addQualifierNode(childNode, attribute.name, attribute.value);
+                    } else if (XML_LANG.equals(attribute.name)) {
+                        ParseRDF.addQualifierNode(childNode, XML_LANG, attribute.value);
+                    } else {
+                        addChildNode(xmp, childNode, attribute, attribute.value, false);
+                    }
+                    break;
+
+                default:
+                    throw new XMPException("Unrecognized attribute of empty property element",
+                            BADRDF);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a child node for an element.
+     */
+    private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, Element element,
+                                        String value, boolean isTopLevel) throws XMPException {
+        return ParseRDF.addChildNode(xmp, xmpParent, element.namespace, element.prefix,
+                element.localName, value, isTopLevel);
+    }
+
+
+    /**
+     * Adds a child node for an attribute.
+     */
+    private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, Attribute attribute,
+                                        String value, boolean isTopLevel) throws XMPException {
+        return ParseRDF.addChildNode(xmp, xmpParent, attribute.namespace, attribute.prefix,
+                attribute.localName, value, isTopLevel);
+    }
+
+
+    /**
+     * Skips the rest of the element the reader is in.
+     *
+     * @param reader the reader, positioned somewhere inside the element;
+     *               on return it is positioned at its end
+     * @throws XMLStreamException thrown on XML errors
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = reader.getEventType() == START_ELEMENT ? 1 : 0;
+        while (depth >= 0) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+
+    /**
+     * @param reader the reader
+     * @param event  the current event
+     * @return Returns whether the event is whitespace or a comment.
+     */
+    private static boolean isIgnorable(XMLStreamReader reader, int event) {
+        if (event == COMMENT) {
+            return true;
+        } else if (event == CHARACTERS || event == SPACE || event == CDATA) {
+            return reader.isWhiteSpace() || isWhitespace(reader.getText());
+        } else {
+            return false;
+        }
+    }
+
+
+    /**
+     * @param value a string
+     * @return Returns whether the string contains only whitespaces.
+     */
+    private static boolean isWhitespace(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * StAX reports "no namespace" as either <code>null</code> or an empty string.
+     *
+     * @param namespace a namespace URI from the reader
+     * @return Returns the namespace URI, or <code>null</code> if there is none.
+     */
+    private static String namespace(String namespace) {
+        return namespace == null || namespace.length() == 0 ? null : namespace;
+    }
+
+
+    /**
+     * @return Creates and configures the StAX factory,
+     * or returns <code>null</code> if there is no implementation.
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory;
+        try {
+            factory = XMLInputFactory.newInstance();
+        } catch (Throwable e) {
+            // FactoryConfigurationError, fall back to the DOM parser
+            return null;
+        }
+
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        try {
+            // XMP packets never contain a DTD, so entity declarations are refused outright,
+            // as the DOM parser does
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
+            // Ignore in case the configured parser does not implement the property.
+        }
+        try {
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
+            // Ignore in case the configured parser does not implement the property.
+        }
+        return factory;
+    }
+
+
+    /**
+     * The name and attributes of an element, read when the reader is at its start.
+     */
+    private static final class Element {
+        final String namespace;
+        final String prefix;
+        final String localName;
+        final String name;
+        final Attribute[] attributes;
+
+        Element(XMLStreamReader reader) {
+            namespace = namespace(reader.getNamespaceURI());
+            prefix = prefix(reader.getPrefix());
+            localName = reader.getLocalName();
+            name = prefix != null ? prefix + ':' + localName : localName;
+
+            attributes = new Attribute[reader.getAttributeCount()];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = new Attribute(
+                        namespace(reader.getAttributeNamespace(i)),
+                        prefix(reader.getAttributePrefix(i)),
+                        reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i));
+            }
+            if (attributes.length > 1) {
+                Arrays.sort(attributes, ATTRIBUTE_ORDER);
+            }
+        }
+
+        int getTermKind() {
+            return ParseRDF.getRDFTermKind(namespace, localName);
+        }
+
+        private static String prefix(String prefix) {
+            return prefix == null || prefix.length() == 0 ? null : prefix;
+        }
+    }
+
+
+    /**
+     * An attribute of an element.
+     */
+    private static final class Attribute {
+        final String namespace;
+        final String prefix;
+        final String localName;
+        final String name;
+        final String value;
+
+        Attribute(String namespace, String prefix, String localName, String value) {
+            this.namespace = namespace;
+            this.prefix = prefix;
+            this.localName = localName;
+            this.name = prefix != null ? prefix + ':' + localName : localName;
+            this.value = value;
+        }
+
+        /**
+         * Unqualified about and ID attributes of an RDF element are RDF terms.
+         */
+        int getTermKind(Element owner) {
+            if (namespace == null && ("about".equals(localName) || "ID".equals(localName)) &&
+                    NS_RDF.equals(owner.namespace)) {
+                return ParseRDF.getRDFTermKind(NS_RDF, localName);
+            }
+            return ParseRDF.getRDFTermKind(namespace, localName);
+        }
+    }
+}
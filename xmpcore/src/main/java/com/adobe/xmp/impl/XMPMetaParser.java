@@ -65,16 +65,9 @@ public class XMPMetaParser {
         ParameterAsserts.assertNotNull(input);
         options = options != null ? options : new ParseOptions();
 
-        Document document = parseXml(input, options);
-
-        boolean xmpmetaRequired = options.getRequireXMPMeta();
-        Object[] result = new Object[3];
-        result = findRootNode(document, xmpmetaRequired, result);
-
-        if (result != null && result[1] == XMP_RDF) {
-            XMPMetaImpl xmp = ParseRDF.parse((Node) result[0]);
-            xmp.setPacketHeader((String) result[2]);
+        XMPMetaImpl xmp = parseXml(input, options);
 
+        if (xmp != null) {
             // Check if the XMP object shall be normalized
             if (!options.getOmitNormalization()) {
                 return XMPNormalizer.process(xmp, options);
@@ -102,10 +95,10 @@ public class XMPMetaParser {
      * @param input   the input can be an <code>InputStream</code>, a <code>String</code> or
      *                a byte buffer containing the XMP packet.
      * @param options the parsing options
-     * @return Returns the parsed XML document or an exception.
+     * @return Returns the raw XMP tree, or <code>null</code> if the document has no XMP root.
      * @throws XMPException Thrown if the parsing fails for different reasons
      */
-    private static Document parseXml(Object input, ParseOptions options)
+    private static XMPMetaImpl parseXml(Object input, ParseOptions options)
             throws XMPException {
         if (input instanceof InputStream) {
             return parseXmlFromInputStream((InputStream) input, options);
@@ -123,13 +116,13 @@ public class XMPMetaParser {
      *
      * @param stream  an <code>InputStream</code>
      * @param options the parsing options
-     * @return Returns an XML DOM-Document.
+     * @return Returns the raw XMP tree, or <code>null</code> if the document has no XMP root.
      * @throws XMPException Thrown when the parsing fails.
      */
-    private static Document parseXmlFromInputStream(InputStream stream, ParseOptions options)
+    private static XMPMetaImpl parseXmlFromInputStream(InputStream stream, ParseOptions options)
             throws XMPException {
         if (!options.getAcceptLatin1() && !options.getFixControlChars()) {
-            return parseInputSource(new InputSource(stream));
+            return parseInputSource(new InputSource(stream), options);
         } else {
             // load stream into bytebuffer
             try {
@@ -149,14 +142,14 @@ public class XMPMetaParser {
      *
      * @param buffer  a byte buffer containing the XMP packet
      * @param options the parsing options
-     * @return Returns an XML DOM-Document.
+     * @return Returns the raw XMP tree, or <code>null</code> if the document has no XMP root.
      * @throws XMPException Thrown when the parsing fails.
      */
-    private static Document parseXmlFromBytebuffer(ByteBuffer buffer, ParseOptions options)
+    private static XMPMetaImpl parseXmlFromBytebuffer(ByteBuffer buffer, ParseOptions options)
             throws XMPException {
         InputSource source = new InputSource(buffer.getByteStream());
         try {
-            return parseInputSource(source);
+            return parseInputSource(source, options);
         } catch (XMPException e) {
             if (e.getErrorCode() == XMPError.BADXML ||
                     e.getErrorCode() == XMPError.BADSTREAM) {
@@ -170,7 +163,7 @@ public class XMPMetaParser {
                         Reader fixReader = new FixASCIIControlsReader(
                                 new InputStreamReader(
                                         buffer.getByteStream(), encoding));
-                        return parseInputSource(new InputSource(fixReader));
+                        return parseInputSource(new InputSource(fixReader), options);
                     } catch (UnsupportedEncodingException e1) {
                         // can normally not happen as the encoding is provided by a util function
                         throw new XMPException("Unsupported Encoding",
@@ -178,7 +171,7 @@ public class XMPMetaParser {
                     }
                 }
                 source = new InputSource(buffer.getByteStream());
-                return parseInputSource(source);
+                return parseInputSource(source, options);
             } else {
                 throw e;
             }
@@ -192,18 +185,18 @@ public class XMPMetaParser {
      *
      * @param input   a <code>String</code> containing the XMP packet
      * @param options the parsing options
-     * @return Returns an XML DOM-Document.
+     * @return Returns the raw XMP tree, or <code>null</code> if the document has no XMP root.
      * @throws XMPException Thrown when the parsing fails.
      */
-    private static Document parseXmlFromString(String input, ParseOptions options)
+    private static XMPMetaImpl parseXmlFromString(String input, ParseOptions options)
             throws XMPException {
         InputSource source = new InputSource(new StringReader(input));
         try {
-            return parseInputSource(source);
+            return parseInputSource(source, options);
         } catch (XMPException e) {
             if (e.getErrorCode() == XMPError.BADXML && options.getFixControlChars()) {
                 source = new InputSource(new FixASCIIControlsReader(new StringReader(input)));
-                return parseInputSource(source);
+                return parseInputSource(source, options);
             } else {
                 throw e;
             }
@@ -212,13 +205,44 @@ public class XMPMetaParser {
 
 
     /**
-     * Runs the XML-Parser.
+     * Runs the XML-Parser. With the streaming option the XMP tree is built directly from the
+     * parser's events by {@link ParseRDFStream}; otherwise the packet is parsed into a DOM first
+     * and handed to {@link ParseRDF}.
+     *
+     * @param source  an <code>InputSource</code>
+     * @param options the parsing options
+     * @return Returns the raw XMP tree, or <code>null</code> if the document has no XMP root.
+     * @throws XMPException Wraps parsing and I/O-exceptions into an XMPException.
+     */
+    private static XMPMetaImpl parseInputSource(InputSource source, ParseOptions options)
+            throws XMPException {
+        if (options.getStreaming() && ParseRDFStream.isAvailable()) {
+            return ParseRDFStream.parse(source, options.getRequireXMPMeta());
+        }
+
+        Document document = parseDocument(source);
+
+        Object[] result = new Object[3];
+        result = findRootNode(document, options.getRequireXMPMeta(), result);
+
+        if (result != null && result[1] == XMP_RDF) {
+            XMPMetaImpl xmp = ParseRDF.parse((Node) result[0]);
+            xmp.setPacketHeader((String) result[2]);
+            return xmp;
+        } else {
+            return null;
+        }
+    }
+
+
+    /**
+     * Runs the DOM parser.
      *
      * @param source an <code>InputSource</code>
      * @return Returns an XML DOM-Document.
      * @throws XMPException Wraps parsing and I/O-exceptions into an XMPException.
      */
-    private static Document parseInputSource(InputSource source) throws XMPException {
+    private static Document parseDocument(InputSource source) throws XMPException {
         try {
             DocumentBuilder builder = factory.newDocumentBuilder();
             builder.setErrorHandler(null);
@@ -333,6 +357,15 @@ public class XMPMetaParser {
             // Ignore IllegalArgumentException and ParserConfigurationException
             // in case the configured XML-Parser does not implement the feature.
         }
+
+        try {
+            // XMP packets never contain a DTD, so entity declarations are refused outright,
+            // as the streaming parser does
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (Exception e) {
+            // Ignore ParserConfigurationException
+            // in case the configured XML-Parser does not implement the feature.
+        }
         return factory;
     }
 }
\ No newline at end of file
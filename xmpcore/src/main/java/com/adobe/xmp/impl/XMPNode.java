@@ -31,6 +31,11 @@ import java.util.*;
  * @since 21.02.2006
  */
 class XMPNode implements Comparable {
+    /**
+     * Child and qualifier lists longer than this get a name index on the first lookup.
+     */
+    static final int INDEX_THRESHOLD = 16;
+
     /**
      * name of the node, contains different information depending of the node kind
      */
@@ -51,6 +56,14 @@ class XMPNode implements Comparable {
      * list of qualifier of the node, lazy initialized
      */
     private List<XMPNode> qualifier = null;
+    /**
+     * name index of the children, lazy initialized
+     */
+    private NameIndex childIndex = null;
+    /**
+     * name index of the qualifier, lazy initialized
+     */
+    private NameIndex qualifierIndex = null;
     /**
      * options describing the kind of the node
      */
@@ -110,6 +123,8 @@ class XMPNode implements Comparable {
         value = null;
         children = null;
         qualifier = null;
+        childIndex = null;
+        qualifierIndex = null;
     }
 
 
@@ -141,6 +156,7 @@ class XMPNode implements Comparable {
         assertChildNotExisting(node.getName());
         node.setParent(this);
         getChildren().add(node);
+        indexChild(node);
     }
 
 
@@ -157,6 +173,7 @@ class XMPNode implements Comparable {
         assertChildNotExisting(node.getName());
         node.setParent(this);
         getChildren().add(index - 1, node);
+        indexChild(node);
     }
 
 
@@ -169,7 +186,9 @@ class XMPNode implements Comparable {
      */
     public void replaceChild(int index, XMPNode node) {
         node.setParent(this);
-        getChildren().set(index - 1, node);
+        XMPNode replaced = getChildren().set(index - 1, node);
+        unindexChild(replaced);
+        indexChild(node);
     }
 
 
@@ -179,7 +198,7 @@ class XMPNode implements Comparable {
      * @param itemIndex the index to remove [1..size]
      */
     public void removeChild(int itemIndex) {
-        getChildren().remove(itemIndex - 1);
+        unindexChild(getChildren().remove(itemIndex - 1));
         cleanupChildren();
     }
 
@@ -191,7 +210,9 @@ class XMPNode implements Comparable {
      * @param node the child node to delete.
      */
     public void removeChild(XMPNode node) {
-        getChildren().remove(node);
+        if (getChildren().remove(node)) {
+            unindexChild(node);
+        }
         cleanupChildren();
     }
 
@@ -204,6 +225,7 @@ class XMPNode implements Comparable {
     protected void cleanupChildren() {
         if (children.isEmpty()) {
             children = null;
+            childIndex = null;
         }
     }
 
@@ -213,6 +235,7 @@ class XMPNode implements Comparable {
      */
     public void removeChildren() {
         children = null;
+        childIndex = null;
     }
 
 
@@ -231,7 +254,10 @@ class XMPNode implements Comparable {
      * @return Returns an <code>XMPNode</code> if node has been found, <code>null</code> otherwise.
      */
     public XMPNode findChildByName(String expr) {
-        return find(getChildren(), expr);
+        if (childIndex == null && getChildrenLength() > INDEX_THRESHOLD) {
+            childIndex = new NameIndex(children);
+        }
+        return find(children, childIndex, expr);
     }
 
 
@@ -281,6 +307,10 @@ class XMPNode implements Comparable {
             // other qualifiers are appended
             getQualifier().add(qualNode);
         }
+
+        if (qualifierIndex != null && !qualifierIndex.add(qualNode)) {
+            qualifierIndex = null;
+        }
     }
 
 
@@ -299,10 +329,14 @@ class XMPNode implements Comparable {
             opts.setHasType(false);
         }
 
-        getQualifier().remove(qualNode);
+        if (getQualifier().remove(qualNode) &&
+                qualifierIndex != null && !qualifierIndex.remove(qualNode, qualNode.getName())) {
+            qualifierIndex = null;
+        }
         if (qualifier.isEmpty()) {
             opts.setHasQualifiers(false);
             qualifier = null;
+            qualifierIndex = null;
         }
 
     }
@@ -318,6 +352,7 @@ class XMPNode implements Comparable {
         opts.setHasLanguage(false);
         opts.setHasType(false);
         qualifier = null;
+        qualifierIndex = null;
     }
 
 
@@ -327,7 +362,10 @@ class XMPNode implements Comparable {
      * <code>null</code> otherwise.
      */
     public XMPNode findQualifierByName(String expr) {
-        return find(qualifier, expr);
+        if (qualifierIndex == null && getQualifierLength() > INDEX_THRESHOLD) {
+            qualifierIndex = new NameIndex(qualifier);
+        }
+        return find(qualifier, qualifierIndex, expr);
     }
 
 
@@ -345,7 +383,26 @@ class XMPNode implements Comparable {
      */
     public Iterator iterateChildren() {
         if (children != null) {
-            return getChildren().iterator();
+            final Iterator<XMPNode> it = getChildren().iterator();
+
+            return new Iterator<XMPNode>() {
+                private XMPNode current;
+
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public XMPNode next() {
+                    current = it.next();
+                    return current;
+                }
+
+                public void remove() {
+                    it.remove();
+                    unindexChild(current);
+                }
+
+            };
         } else {
             return Collections.EMPTY_LIST.listIterator();
         }
@@ -472,7 +529,11 @@ class XMPNode implements Comparable {
      * @param name The name to set.
      */
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        if (parent != null) {
+            parent.renamed(this, oldName);
+        }
     }
 
 
@@ -610,12 +671,20 @@ class XMPNode implements Comparable {
                 it.set(qual);
                 qual.sort();
             }
+
+            // the first of several equally named qualifiers may have changed
+            if (qualifierIndex != null && qualifierIndex.hasDuplicates()) {
+                qualifierIndex = null;
+            }
         }
 
         // sort children
         if (hasChildren()) {
             if (!getOptions().isArray()) {
                 Collections.sort(children);
+                if (childIndex != null && childIndex.hasDuplicates()) {
+                    childIndex = null;
+                }
             }
             for (Iterator it = iterateChildren(); it.hasNext(); ) {
                 ((XMPNode) it.next()).sort();
@@ -779,11 +848,15 @@ class XMPNode implements Comparable {
     /**
      * Internal find.
      *
-     * @param list the list to search in
-     * @param expr the search expression
+     * @param list  the list to search in
+     * @param index the name index of the list or <code>null</code>
+     * @param expr  the search expression
      * @return Returns the found node or <code>nulls</code>.
      */
-    private XMPNode find(List<XMPNode> list, String expr) {
+    private XMPNode find(List<XMPNode> list, NameIndex index, String expr) {
+        if (index != null && NameIndex.isIndexed(expr)) {
+            return index.get(expr);
+        }
 
         if (list != null)
             for (XMPNode child : list) {
@@ -795,6 +868,49 @@ class XMPNode implements Comparable {
     }
 
 
+    /**
+     * Adds a new child to the child index, if there is one.
+     *
+     * @param node the new child
+     */
+    private void indexChild(XMPNode node) {
+        if (childIndex != null && !childIndex.add(node)) {
+            childIndex = null;
+        }
+    }
+
+
+    /**
+     * Removes a child from the child index, if there is one.
+     *
+     * @param node the removed child
+     */
+    private void unindexChild(XMPNode node) {
+        if (childIndex != null && !childIndex.remove(node, node.getName())) {
+            childIndex = null;
+        }
+    }
+
+
+    /**
+     * Updates the name indexes after a child or qualifier has been renamed.
+     *
+     * @param node    the renamed node
+     * @param oldName the previous name of the node
+     */
+    private void renamed(XMPNode node, String oldName) {
+        if (node.getOptions().isQualifier()) {
+            if (qualifierIndex != null &&
+                    !(qualifierIndex.remove(node, oldName) && qualifierIndex.add(node))) {
+                qualifierIndex = null;
+            }
+        } else if (childIndex != null &&
+                !(childIndex.remove(node, oldName) && childIndex.add(node))) {
+            childIndex = null;
+        }
+    }
+
+
     /**
      * Checks that a node name is not existing on the same level, except for array items.
      *
@@ -823,6 +939,108 @@ class XMPNode implements Comparable {
         }
     }
 
+    /**
+     * Maps node names to the first node in a list with that name, so that wide structs and
+     * schemas don't need a linear scan for every lookup and every duplicate check. Array items
+     * all share one name and are not indexed.
+     * <p/>
+     * Updates return <code>false</code> when the index can't be kept right without rescanning
+     * the list (only possible when names are duplicated, which the XMP model doesn't allow);
+     * the owner then drops the index and rebuilds it on the next lookup.
+     */
+    private static final class NameIndex {
+        /**
+         * the first node for each name
+         */
+        private final Map<String, XMPNode> nodes;
+        /**
+         * flag if any name occurs more than once in the list
+         */
+        private boolean duplicates;
+
+
+        /**
+         * @param list the list to index
+         */
+        NameIndex(List<XMPNode> list) {
+            nodes = new HashMap<String, XMPNode>(list.size() * 2);
+            for (XMPNode node : list) {
+                if (isIndexed(node.getName()) && nodes.put(node.getName(), node) != null) {
+                    nodes.put(node.getName(), find(list, node.getName()));
+                    duplicates = true;
+                }
+            }
+        }
+
+
+        /**
+         * @param name a node name
+         * @return Returns whether nodes with this name are kept in the index.
+         */
+        static boolean isIndexed(String name) {
+            return name != null && !XMPConst.ARRAY_ITEM_NAME.equals(name);
+        }
+
+
+        /**
+         * @return Returns whether any name occurs more than once.
+         */
+        boolean hasDuplicates() {
+            return duplicates;
+        }
+
+
+        /**
+         * @param name the node name
+         * @return Returns the first node with the name or <code>null</code>.
+         */
+        XMPNode get(String name) {
+            return nodes.get(name);
+        }
+
+
+        /**
+         * @param node a node that has been added to the list
+         * @return Returns <code>false</code> if the index has to be rebuilt.
+         */
+        boolean add(XMPNode node) {
+            if (!isIndexed(node.getName())) {
+                return true;
+            }
+            return nodes.put(node.getName(), node) == null;
+        }
+
+
+        /**
+         * @param node a node that has been removed from the list
+         * @param name the name the node was indexed under
+         * @return Returns <code>false</code> if the index has to be rebuilt.
+         */
+        boolean remove(XMPNode node, String name) {
+            if (!isIndexed(name) || nodes.get(name) != node) {
+                return true;
+            }
+            nodes.remove(name);
+            return !duplicates;
+        }
+
+
+        /**
+         * @param list a list
+         * @param name a node name
+         * @return Returns the first node in the list with the name.
+         */
+        private static XMPNode find(List<XMPNode> list, String name) {
+            for (XMPNode node : list) {
+                if (name.equals(node.getName())) {
+                    return node;
+                }
+            }
+            return null;
+        }
+    }
+
+
     @Override
     public String toString() {
         return "XMPNode{" +
@@ -40,13 +40,18 @@ public final class ParseOptions extends Options {
      * Do not carry run the XMPNormalizer on a packet, leave it as it is.
      */
     public static final int OMIT_NORMALIZATION = 0x0020;
+    /**
+     * Build the XMP tree directly from a StAX event stream instead of parsing the packet into
+     * a DOM first. Falls back to the DOM parser if no StAX implementation is available.
+     */
+    public static final int STREAMING = 0x0040;
 
 
     /**
      * Sets the options to the default values.
      */
     public ParseOptions() {
-        setOption(FIX_CONTROL_CHARS | ACCEPT_LATIN_1, true);
+        setOption(FIX_CONTROL_CHARS | ACCEPT_LATIN_1 | STREAMING, true);
     }
 
 
@@ -140,6 +145,24 @@ public final class ParseOptions extends Options {
     }
 
 
+    /**
+     * @return Returns the option "streaming".
+     */
+    public boolean getStreaming() {
+        return getOption(STREAMING);
+    }
+
+
+    /**
+     * @param value the value to set
+     * @return Returns the instance to call more set-methods.
+     */
+    public ParseOptions setStreaming(boolean value) {
+        setOption(STREAMING, value);
+        return this;
+    }
+
+
     /**
      * @see Options#defineOptionName(int)
      */
@@ -155,6 +178,8 @@ public final class ParseOptions extends Options {
                 return "ACCEPT_LATIN_1";
             case OMIT_NORMALIZATION:
                 return "OMIT_NORMALIZATION";
+            case STREAMING:
+                return "STREAMING";
             default:
                 return null;
         }
@@ -170,6 +195,7 @@ public final class ParseOptions extends Options {
                         STRICT_ALIASING |
                         FIX_CONTROL_CHARS |
                         ACCEPT_LATIN_1 |
-                        OMIT_NORMALIZATION;
+                        OMIT_NORMALIZATION |
+                        STREAMING;
     }
 }
\ No newline at end of file